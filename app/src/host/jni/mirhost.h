@@ -0,0 +1,22 @@
+/*
+ * mirhost.h
+ *
+ * Forcibly included (gcc -include) in every source file of the host build.
+ *
+ * Recent versions of glibc declare fmul, fdiv, fadd and fsub (ISO/IEC TS 18661 narrowing
+ * functions) in <math.h>, which conflict with the MIRACL flash functions of the same name.
+ * Include <math.h> first, then rename the MIRACL functions consistently in all the sources.
+ * The library never uses the flash functions itself, so only the symbol names change.
+ */
+
+#ifndef MIRHOST_H_
+#define MIRHOST_H_
+
+#include <math.h>
+
+#define fmul mr_fmul
+#define fdiv mr_fdiv
+#define fadd mr_fadd
+#define fsub mr_fsub
+
+#endif /* MIRHOST_H_ */
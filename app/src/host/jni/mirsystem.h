@@ -0,0 +1,18 @@
+/*
+ * mirsystem.h
+ *
+ * Forcibly included (gcc -include) in the project's own C++ sources of the host build.
+ *
+ * big.h has default arguments in friend declarations, which only -fpermissive accepts, and which
+ * -fpermissive still reports. The MIRACL headers are included here first, from outside their
+ * directory, so that they are found through -isystem and their diagnostics are suppressed. The
+ * project headers are still found next to the sources, so -Wall applies to them.
+ */
+
+#ifndef MIRSYSTEM_H_
+#define MIRSYSTEM_H_
+
+#include "big.h"
+#include "ecn.h"
+
+#endif /* MIRSYSTEM_H_ */
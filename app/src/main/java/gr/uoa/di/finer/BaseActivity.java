@@ -269,6 +269,7 @@ abstract class BaseActivity extends AppCompatActivity {
                     view.setText(R.string.activity_election_text_initializing);
                     break;
                 case VERIFYING:
+                case VERIFIED:          // The result is being posted.
                     view.setText(R.string.activity_election_text_verifying);
                     break;
                 case ERASING:
@@ -285,6 +286,7 @@ abstract class BaseActivity extends AppCompatActivity {
                     break;
                 case INITIALIZED:
                 case VERIFYING:         // An error occurred earlier.
+                case VERIFIED:          // The result was not posted.
                     view.setText(R.string.activity_election_text_verify);
                     break;
                 case ERASING:
@@ -409,6 +411,7 @@ abstract class BaseActivity extends AppCompatActivity {
                             break;
                         case INITIALIZED:
                         case VERIFYING:             // An error occurred earlier.
+                        case VERIFIED:              // The result was not posted.
                             imageView.setImageResource(R.drawable.ic_cloud_download_white_48dp);
                             imageView.setOnClickListener(initializedElectionListener);
                             break;
@@ -1,5 +1,6 @@
 package gr.uoa.di.finer;
 
+import android.content.ActivityNotFoundException;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
@@ -19,6 +20,8 @@ import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import org.json.JSONObject;
+
 import junit.framework.Assert;
 
 import gr.uoa.di.finer.database.TrusteeContract;
@@ -33,6 +36,7 @@ public class ElectionActivity extends BaseActivity
     private static final String TAG = ElectionActivity.class.getName();
 
     private static final int ELECTION_LOADER_ID = 1;
+    private static final int METRICS_LOADER_ID = 2;
 
     public static final String EXTRA_ELECTION_ID = "gr.uoa.di.finer.extra.ELECTION_ID";
 
@@ -130,6 +134,10 @@ public class ElectionActivity extends BaseActivity
             case R.id.action_erase:
                 openEraseElectionDialog(currentElectionId);
                 return true;
+            case R.id.action_export_metrics:
+                // The metrics are loaded once per request and exported when the load finishes.
+                getSupportLoaderManager().restartLoader(METRICS_LOADER_ID, null, this);
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -155,6 +163,14 @@ public class ElectionActivity extends BaseActivity
                         return store.getElection(currentElectionId, null);
                     }
                 });
+            case METRICS_LOADER_ID:
+                // Return a cursor loader for the task metrics of election 'currentElectionId'.
+                return new SimpleCursorLoader(this, dbHelper, new SimpleCursorLoader.Query() {
+                    @Override
+                    public Cursor make(ReadableDataStore store) throws StoreException {
+                        return store.getElectionMetrics(currentElectionId);
+                    }
+                });
             default:
                 Utils.wtf(TAG, "Invalid loader id");
                 return null;
@@ -169,6 +185,56 @@ public class ElectionActivity extends BaseActivity
             return;
         }
 
+        switch (loader.getId()) {
+            case ELECTION_LOADER_ID:
+                showElection(cursor);
+                break;
+            case METRICS_LOADER_ID:
+                exportMetrics(cursor);
+                // Destroy the loader, so that the metrics are not exported again on rotation.
+                getSupportLoaderManager().destroyLoader(METRICS_LOADER_ID);
+                break;
+            default:
+                Utils.wtf(TAG, "Invalid loader id");
+                break;
+        }
+    }
+
+    /**
+     * Shares the metrics of the last initialization and verification of the election
+     * as a single JSON object, keyed by task name.
+     */
+    private void exportMetrics(Cursor cursor) {
+        if (!cursor.moveToFirst()) {
+            ContextUtils.showToast(this, R.string.toast_no_metrics);
+            return;
+        }
+
+        final int taskColumn = cursor.getColumnIndexOrThrow(
+                TrusteeContract.ElectionMetrics.COLUMN_NAME_TASK);
+        final int metricsColumn = cursor.getColumnIndexOrThrow(
+                TrusteeContract.ElectionMetrics.COLUMN_NAME_METRICS);
+        // The metrics are already JSON objects, so they are copied verbatim.
+        final StringBuilder json = new StringBuilder()
+                .append("{\"electionId\":").append(JSONObject.quote(currentElectionId));
+        do {
+            json.append(',').append(JSONObject.quote(cursor.getString(taskColumn)))
+                    .append(':').append(cursor.getString(metricsColumn));
+        } while (cursor.moveToNext());
+        json.append('}');
+
+        final Intent intent = new Intent(Intent.ACTION_SEND)
+                .setType("text/plain")
+                .putExtra(Intent.EXTRA_SUBJECT, currentElectionId)
+                .putExtra(Intent.EXTRA_TEXT, json.toString());
+        try {
+            startActivity(Intent.createChooser(intent, getText(R.string.export_metrics)));
+        } catch (ActivityNotFoundException ignored) {
+            ContextUtils.showToast(this, R.string.toast_no_share_app);
+        }
+    }
+
+    private void showElection(Cursor cursor) {
         // We don't keep any references to the cursors in this activity. So, just update the UI.
         final boolean succeeded = cursor.moveToFirst();
         int column;
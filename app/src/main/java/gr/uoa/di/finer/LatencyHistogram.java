@@ -0,0 +1,133 @@
+package gr.uoa.di.finer;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A log-linear histogram of latencies in nanoseconds.
+ * <p>
+ * Every power of two is split into {@value #SUB_BUCKETS} linear buckets, so the reported
+ * percentiles are at most 12.5% above the actual values, for any latency from 1ns to 292 years.
+ * Recording a value does not allocate, so it is cheap enough for every store lookup or native
+ * call. Recording is only enabled in builds with {@link BuildConfig#LATENCY_HISTOGRAMS} set.
+ * <p>
+ * Instances of this class are NOT thread-safe.
+ *
+ * @author Vasilis Poulimenos
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Whether latencies should be recorded at all.
+     * Code that records latencies should check this first, to skip the clock reads.
+     */
+    public static final boolean ENABLED = BuildConfig.LATENCY_HISTOGRAMS;
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS get a bucket each. Every other power of two up to 2^62 gets
+    // SUB_BUCKETS buckets.
+    private static final int BUCKETS = (Long.SIZE - 1 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Returns the largest value that falls into the bucket specified.
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a latency. Negative values (clock adjustments) are recorded as 0.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        ++counts[indexOf(nanos)];
+        ++count;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    /**
+     * Discards all the recorded latencies.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the latency that the given fraction of the recorded latencies does not exceed.
+     * The result is the upper bound of the matching bucket, but never more than the maximum.
+     *
+     * @param quantile the fraction, in the range (0, 1]
+     * @return the latency in nanoseconds or 0 if nothing has been recorded
+     */
+    public long getValueAtQuantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.US, "%.1f", nanos / NANOS_PER_MICRO);
+    }
+
+    /**
+     * Returns the count and the p50, p99, p99.9 and maximum latencies as a JSON object.
+     * The latencies are in microseconds.
+     *
+     * @return the JSON summary of this histogram
+     */
+    public String toJson() {
+        return new StringBuilder(96)
+                .append("{\"count\":").append(count)
+                .append(",\"p50Us\":").append(micros(getValueAtQuantile(0.5)))
+                .append(",\"p99Us\":").append(micros(getValueAtQuantile(0.99)))
+                .append(",\"p999Us\":").append(micros(getValueAtQuantile(0.999)))
+                .append(",\"maxUs\":").append(micros(max))
+                .append('}')
+                .toString();
+    }
+
+}
@@ -70,6 +70,15 @@ public interface ReadableDataStore extends TransactionalDataStore {
      */
     String getElectionDecommitmentKey(String electionId) throws StoreException;
 
+    /**
+     * Retrieves the decommitment bundle of the election specified.
+     *
+     * @param electionId the ID of the election to query
+     * @return the decommitment bundle of the election or null if it is not verified yet
+     * @throws StoreException if there was a problem retrieving the bundle from the data store
+     */
+    String getElectionDecommitmentBundle(String electionId) throws StoreException;
+
     /**
      * Retrieves the decommitment value of the ballot specified.
      *
@@ -82,6 +91,16 @@ public interface ReadableDataStore extends TransactionalDataStore {
     String getBallotDecommitment(String electionId, String serialNumber, String voteCode)
             throws StoreException;
 
+    /**
+     * Retrieves the metrics of the heavy tasks of the election specified.
+     *
+     * @param electionId the ID of the election to query
+     * @return a cursor with the task name and the metrics (as a JSON object) of every task
+     *      that has run for the election, the most recent run of each task only
+     * @throws StoreException if there was a problem retrieving the metrics from the data store
+     */
+    Cursor getElectionMetrics(String electionId) throws StoreException;
+
     /**
      * Closes this data store, releasing any system resources associated with it.
      */
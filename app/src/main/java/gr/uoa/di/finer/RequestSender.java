@@ -5,8 +5,10 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.util.Log;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 
 /**
  *
@@ -16,6 +18,29 @@ public abstract class RequestSender {
 
     private static final String TAG = RequestSender.class.getName();
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 1024 * 8;
+
+    /**
+     * The value used for request bodies of unknown length.
+     */
+    public static final long UNKNOWN_LENGTH = -1;
+
+    /**
+     * A producer of request bodies.
+     * This allows large bodies to be streamed with constant memory.
+     */
+    public interface BodyWriter {
+        /**
+         * Writes the request body to the given stream.
+         * Implementations should not close the stream.
+         *
+         * @param out the (buffered) stream to write the body to
+         * @throws IOException
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
     /*
      * http://developer.android.com/training/monitoring-device-state/connectivity-monitoring.html
      * http://stackoverflow.com/a/4009133/1751037
@@ -73,35 +98,52 @@ public abstract class RequestSender {
     public abstract URLConnection sendGetRequest() throws IOException;
 
     /**
+     * Sends a POST request whose body is streamed instead of being buffered in memory.
      *
+     * @param contentLength the exact length of the body in bytes or {@link #UNKNOWN_LENGTH}
      * @return
      * @throws IOException
      */
-    public abstract URLConnection sendPostRequest() throws IOException;
+    public abstract URLConnection sendStreamingPostRequest(long contentLength) throws IOException;
 
     /**
+     * Posts a body of unknown length. The body is streamed (e.g. in chunks) with constant memory.
      *
-     * @param result
-     * @throws IOException
+     * @param body the producer of the request body
+     * @throws IOException if the request failed or the server did not accept the body
      */
-    public void postResult(String result) throws IOException {
+    public void postBody(BodyWriter body) throws IOException {
+        postBody(body, UNKNOWN_LENGTH);
+    }
+
+    /**
+     * Posts a body. The body is streamed with constant memory.
+     *
+     * @param body the producer of the request body
+     * @param contentLength the exact length of the body in bytes or {@link #UNKNOWN_LENGTH}
+     * @throws IOException if the request failed or the server did not accept the body
+     */
+    public void postBody(BodyWriter body, long contentLength) throws IOException {
         URLConnection connection = null;
-        Writer writer = null;
+        OutputStream out = null;
 
-        if (BuildConfig.DEBUG) {
-            Log.d(TAG, "Posting result '" + result + "' to " + urlString);
-        }
         try {
-            connection = sendPostRequest();
-            writer = connection.getOutputStreamWriter();
-            // Buffering for a single bulk write is unnecessary.
-            writer.write(result);
+            connection = sendStreamingPostRequest(contentLength);
+            out = new BufferedOutputStream(connection.getOutputStream(), BUFFER_SIZE);
+            body.writeTo(out);
+            out.close();
+            out = null;
+            // The exchange is not complete until the response is read.
+            final int responseCode = connection.getResponseCode();
+            if (responseCode < 200 || responseCode >= 300) {
+                throw new IOException("Unexpected response code " + responseCode + " from " + urlString);
+            }
         } finally {
-            if (writer != null) {
+            if (out != null) {
                 try {
-                    writer.close();
+                    out.close();
                 } catch (IOException e) {
-                    Log.e(TAG, "Error closing connection output stream writer", e);
+                    Log.e(TAG, "Error closing connection output stream", e);
                 }
             }
             if (connection != null) {
@@ -110,4 +152,22 @@ public abstract class RequestSender {
         }
     }
 
+    /**
+     *
+     * @param result
+     * @throws IOException
+     */
+    public void postResult(String result) throws IOException {
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Posting result '" + result + "' to " + urlString);
+        }
+        final byte[] bytes = result.getBytes(UTF_8);
+        postBody(new BodyWriter() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(bytes);
+            }
+        }, bytes.length);
+    }
+
 }
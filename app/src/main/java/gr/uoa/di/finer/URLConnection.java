@@ -3,8 +3,8 @@ package gr.uoa.di.finer;
 import android.support.annotation.WorkerThread;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
-import java.io.Writer;
 
 /**
  *
@@ -21,11 +21,20 @@ public interface URLConnection {
     Reader getInputStreamReader() throws IOException;
 
     /**
+     * The output stream returned is NOT buffered.
      *
      * @return
      * @throws IOException
      */
-    Writer getOutputStreamWriter() throws IOException;
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * Reads the response status, completing the request if necessary.
+     *
+     * @return the response status code
+     * @throws IOException
+     */
+    int getResponseCode() throws IOException;
 
     /**
      *
@@ -4,6 +4,7 @@ import android.support.annotation.WorkerThread;
 import android.util.Log;
 
 import gr.uoa.di.finer.BuildConfig;
+import gr.uoa.di.finer.LatencyHistogram;
 import gr.uoa.di.finer.service.Cryptosystem;
 
 /**
@@ -27,12 +28,20 @@ public class JNICryptosystem implements Cryptosystem {
         // If your app targets a version of Android earlier than Android 4.3 (Android API level 18),
         // and you use the shared library variant of a given C++ runtime, you must load the shared
         // library before any other library that depends on it.
-        System.loadLibrary("gnustl_shared");
+        // The host build (for JVM tests, see src/host/jni) uses the system C++ runtime instead.
+        if (isAndroid()) {
+            System.loadLibrary("gnustl_shared");
+        }
         System.loadLibrary("cryptosystem");
     }
 
     private static final String TAG = JNICryptosystem.class.getName();
 
+    // Both Dalvik and ART report "Dalvik" as the VM name.
+    private static boolean isAndroid() {
+        return "Dalvik".equals(System.getProperty("java.vm.name"));
+    }
+
     public static String toHex(String asciiValue) {
         char[] chars = asciiValue.toCharArray();
 
@@ -65,6 +74,7 @@ public class JNICryptosystem implements Cryptosystem {
     // Commitment functions
     private native void initializeCommitmentBundle(String hexCommitmentKey);
     private native void addToCommitmentBundle(String commitment);
+    private native void addAllToCommitmentBundle(String[] commitments);
     private native String finalizeCommitmentBundle();
 
     // Decommitment functions
@@ -72,7 +82,7 @@ public class JNICryptosystem implements Cryptosystem {
     private native void addToDecommitmentBundle(String decommitment);
     private native String finalizeDecommitmentBundle();
 
-    private void checkHex(String s) {
+    private static void checkHex(String s) {
         for (int i = 0, len = s.length(); i < len; ++i) {
             char ch = s.charAt(i);
             if (!((ch >= '0' && ch <= '9') || (ch >= 'A' && ch <= 'F'))) {
@@ -88,6 +98,10 @@ public class JNICryptosystem implements Cryptosystem {
         }
     }
 
+    // The latencies of the additions or null unless latency recording is enabled.
+    private final LatencyHistogram addLatency =
+            LatencyHistogram.ENABLED ? new LatencyHistogram() : null;
+
     // For test().
     private JNICryptosystem() {}
 
@@ -102,7 +116,13 @@ public class JNICryptosystem implements Cryptosystem {
 
     @Override
     public void add(String decommitment) {
-        addToDecommitmentBundle(decommitment);
+        if (LatencyHistogram.ENABLED) {
+            final long start = System.nanoTime();
+            addToDecommitmentBundle(decommitment);
+            addLatency.record(System.nanoTime() - start);
+        } else {
+            addToDecommitmentBundle(decommitment);
+        }
     }
 
     @Override
@@ -110,13 +130,163 @@ public class JNICryptosystem implements Cryptosystem {
         return finalizeDecommitmentBundle();
     }
 
+    /**
+     * Returns the latencies of {@link #add} calls, including the JNI transitions.
+     *
+     * @return the histogram or null if latency recording is disabled
+     */
+    public LatencyHistogram getAddLatency() {
+        return addLatency;
+    }
+
 
     // Verify that the commitment bundle matches the decommitment bundle given the right key.
     private native boolean verifyCommitments(
         String commitmentBundle, String decommitmentBundle, String key);
 
-    // Tally the decommitment bundle.
-    private native String tally(String decommitmentBundle, int N, int m);
+    // Verify many commitment bundles at once. Returns the index of the first mismatch or -1.
+    private static native int verifyCommitmentBatch(
+        String[] commitmentBundles, String[] decommitmentBundles, String key);
+
+    /**
+     * Verifies that every commitment bundle matches the decommitment bundle at the same index,
+     * given the key of the election.
+     * <p>
+     * All the pairs are checked together, as a random linear combination of them, so a batch
+     * costs much less than checking each pair on its own. Only if the batch fails are the pairs
+     * checked one by one, to find the first mismatch.
+     * <p>
+     * This needs no instance, so it leaves the decommitment bundle in progress alone.
+     *
+     * @param commitmentBundles the commitment bundles
+     * @param decommitmentBundles the decommitment bundles, in the same order
+     * @param hexKey the key of the election in hex (the same as the decommitment key)
+     * @return the index of the first pair that does not match or -1 if all of them match
+     * @throws IllegalArgumentException if the arrays differ in length or contain null
+     */
+    public static int verifyBundles(String[] commitmentBundles, String[] decommitmentBundles,
+                                    String hexKey) {
+        if (commitmentBundles.length != decommitmentBundles.length) {
+            throw new IllegalArgumentException("Expected " + commitmentBundles.length
+                    + " decommitment bundles, got " + decommitmentBundles.length);
+        }
+        for (int i = 0; i < commitmentBundles.length; ++i) {
+            if (commitmentBundles[i] == null || decommitmentBundles[i] == null) {
+                throw new IllegalArgumentException("Null bundle at index " + i);
+            }
+        }
+        checkHex(hexKey);
+        return verifyCommitmentBatch(commitmentBundles, decommitmentBundles, hexKey);
+    }
+
+    /**
+     * Computes the commitment bundle of the given commitments, the sum of their points.
+     * <p>
+     * All the commitments cross the JNI boundary with one call and the sums are kept in projective
+     * coordinates, so only the final bundle is normalized. The decommitment bundle in progress is
+     * not affected.
+     *
+     * @param hexCommitmentKey the commitment key of the election in hex
+     * @param commitments the commitments, each in the format of a commitment bundle
+     * @return the commitment bundle
+     * @throws IllegalArgumentException if there is a null commitment
+     */
+    public String computeCommitmentBundle(String hexCommitmentKey, String[] commitments) {
+        for (int i = 0; i < commitments.length; ++i) {
+            if (commitments[i] == null) {
+                throw new IllegalArgumentException("Null commitment at index " + i);
+            }
+        }
+        checkHex(hexCommitmentKey);
+        initializeCommitmentBundle(hexCommitmentKey);
+        addAllToCommitmentBundle(commitments);
+        return finalizeCommitmentBundle();
+    }
+
+    // Fills counters with the live buffers, live bytes, total buffers and total bytes.
+    private static native void readNativeAllocations(long[] counters);
+
+    /**
+     * The native buffers that hold data exchanged with Java: the characters of the strings passed
+     * to the native code and the results returned by it. Every native call releases the buffers
+     * it allocates, so the live counters are zero between calls.
+     */
+    public static final class NativeAllocations {
+        public final long liveBuffers;
+        public final long liveBytes;
+        public final long totalBuffers;
+        public final long totalBytes;
+
+        NativeAllocations(long[] counters) {
+            this.liveBuffers = counters[0];
+            this.liveBytes = counters[1];
+            this.totalBuffers = counters[2];
+            this.totalBytes = counters[3];
+        }
+
+        @Override
+        public String toString() {
+            return "live " + liveBuffers + " buffers (" + liveBytes + " bytes), total "
+                    + totalBuffers + " buffers (" + totalBytes + " bytes)";
+        }
+    }
+
+    /**
+     * Returns the native allocations of all the calls so far, of every thread.
+     *
+     * @return the counters of the native allocations
+     */
+    public static NativeAllocations getNativeAllocations() {
+        final long[] counters = new long[4];
+        readNativeAllocations(counters);
+        return new NativeAllocations(counters);
+    }
+
+    // Tally the decommitment bundle. Returns null if the votes do not fit in m counts.
+    private static native String tally(String decommitmentBundle, int N, int m);
+
+    /**
+     * Tallies an election. The first value of the decommitment bundle is the sum of
+     * {@code count_i * (voterCount + 1)^i} over the options, so the vote counts are its digits
+     * in radix {@code voterCount + 1}.
+     * <p>
+     * This needs no instance, so it leaves the decommitment bundle in progress alone.
+     *
+     * @param decommitmentBundle the decommitment bundle of the election
+     * @param voterCount the number of voters, which bounds the count of every option
+     * @param optionCount the number of options
+     * @return the vote counts of the options, in option order, separated by commas
+     * @throws IllegalArgumentException if a count is out of range, the bundle has no comma or
+     *      its first value does not fit in {@code optionCount} counts
+     */
+    public static String computeTally(String decommitmentBundle, int voterCount, int optionCount) {
+        if (voterCount < 0 || voterCount == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid voter count: " + voterCount);
+        }
+        if (optionCount <= 0) {
+            throw new IllegalArgumentException("Invalid option count: " + optionCount);
+        }
+        final int comma = decommitmentBundle.indexOf(',');
+        if (comma == -1) {
+            throw new IllegalArgumentException(
+                    "Invalid decommitment bundle: " + decommitmentBundle);
+        }
+        // A value of zero has no digits, which the native tokenizer skips (reading the second
+        // value instead or, if that is empty too, past the end of the bundle). No votes at all.
+        if (decommitmentBundle.substring(0, comma).trim().isEmpty()) {
+            final StringBuilder tally = new StringBuilder("0");
+            for (int i = 1; i < optionCount; ++i) {
+                tally.append(",0");
+            }
+            return tally.toString();
+        }
+        final String tally = tally(decommitmentBundle, voterCount, optionCount);
+        if (tally == null) {
+            throw new IllegalArgumentException("Decommitment bundle has more than " + optionCount
+                    + " counts: " + decommitmentBundle);
+        }
+        return tally;
+    }
 
     private String decryptVoteCode(byte[] key, String encryptedVoteCode) {
         int whitespaceIndex;
@@ -0,0 +1,297 @@
+package gr.uoa.di.finer.crypto;
+
+import android.support.annotation.WorkerThread;
+
+import java.math.BigInteger;
+
+import gr.uoa.di.finer.service.Cryptosystem;
+
+/**
+ * A cryptosystem implemented in Java, which computes the same decommitment bundles as
+ * {@link JNICryptosystem}, from the same keys and base-64 decommitments.
+ * <p>
+ * It serves as a reference for the native bundles, and as a fallback where the native library
+ * cannot be loaded. Unlike the native cryptosystem, there may be any number of instances, and
+ * instances of this class are thread-safe. The additions to an instance are serialized, though,
+ * so parallel verifications should use an instance per thread and {@link #merge} them.
+ * <p>
+ * The sums are kept in 32-bit limbs, least significant first, one per long. An addition adds
+ * every limb of the value to the limb of the sum without propagating the carries, which are
+ * left in the upper half of the longs. The sums are only normalized (the carries propagated and
+ * the sums reduced mod q) when the bundle is computed or every 2^30 additions, long before any
+ * limb can overflow.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+public class JavaCryptosystem implements Cryptosystem {
+
+    // The group orders of the curves, by curve index (the ecq table of Cryptosystem.cpp).
+    private static final String[] ORDERS = {
+            "ffffffffffffffffffffffff99def836146bc9b1b4d22831",
+            "ffffffffffffffffffffffffffff16a2e0b8f03e13dd29455c5c2a3d",
+            "ffffffff00000000ffffffffffffffffbce6faada7179e84f3b9cac2fc632551",
+            "ffffffffffffffffffffffffffffffffffffffffffffffffc7634d81f4372ddf"
+                    + "581a0db248b0a77aecec196accc52973",
+            "000001ffffffffffffffffffffffffffffffffffffffffffffffffffffffffff"
+                    + "fffffffa51868783bf2f966b7fcc0148f709a5d03bb5c9b8899c47aebb6fb71e91386409",
+    };
+
+    // Every limb is below 2^32, so a long can hold 2^31 of them.
+    private static final int NORMALIZATION_INTERVAL = 1 << 30;
+    private static final long LIMB_MASK = 0xFFFFFFFFL;
+
+    private static final byte[] DIGIT_VALUES = new byte[128];
+
+    static {
+        final String digits =
+                "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < DIGIT_VALUES.length; ++i) {
+            DIGIT_VALUES[i] = -1;
+        }
+        for (int i = 0; i < digits.length(); ++i) {
+            DIGIT_VALUES[digits.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final BigInteger q;
+    private final int limbs;
+    private final long[] sum1;
+    private final long[] sum2;
+    // The limbs of the value being added.
+    private final long[] value;
+    private int pending;
+
+    /**
+     * Creates an empty decommitment bundle.
+     *
+     * @param hexDecommitmentKey the key of the election, as for {@link JNICryptosystem}
+     * @throws IllegalArgumentException if the key is not valid
+     */
+    public JavaCryptosystem(String hexDecommitmentKey) {
+        q = new BigInteger(ORDERS[parseCurve(hexDecommitmentKey)], 16);
+        limbs = (q.bitLength() + 31) / 32;
+        sum1 = new long[limbs];
+        sum2 = new long[limbs];
+        value = new long[limbs];
+    }
+
+    // The key is the hex encoding of "<curve>;<public key>", of which only the curve is needed.
+    private static int parseCurve(String hexKey) {
+        int curve = 0;
+        for (int i = 0; ; i += 2) {
+            if (i + 2 > hexKey.length()) {
+                throw new IllegalArgumentException("Invalid decommitment key: " + hexKey);
+            }
+            final int ch;
+            try {
+                ch = Integer.parseInt(hexKey.substring(i, i + 2), 16);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid decommitment key: " + hexKey, e);
+            }
+            if (ch == ';' && i > 0) {
+                return curve;
+            }
+            if (ch < '0' || ch > '9' || (curve = curve * 10 + ch - '0') >= ORDERS.length) {
+                throw new IllegalArgumentException("Unknown curve in decommitment key: " + hexKey);
+            }
+        }
+    }
+
+    /**
+     * Adds a decommitment ({@code <d1>,<d2>}) to the bundle. Like the native cryptosystem, a
+     * bundle has the format of a decommitment, so adding a bundle merges it with this one.
+     *
+     * @param decommitment the decommitment to add
+     * @throws IllegalArgumentException if the decommitment is not valid
+     */
+    @Override
+    public synchronized void add(String decommitment) {
+        final int comma = decommitment.indexOf(',');
+        if (comma == -1) {
+            throw new IllegalArgumentException("Invalid decommitment: " + decommitment);
+        }
+        if (pending == NORMALIZATION_INTERVAL) {
+            normalize();
+        }
+        addValue(sum1, decommitment, 0, comma);
+        addValue(sum2, decommitment, comma + 1, decommitment.length());
+        ++pending;
+    }
+
+    /**
+     * Adds the decommitments of another bundle, of the same election, to this one.
+     * The other bundle is not changed.
+     *
+     * @param other the bundle to merge
+     * @throws IllegalArgumentException if the other bundle is of a different curve
+     */
+    public void merge(JavaCryptosystem other) {
+        if (!q.equals(other.q)) {
+            throw new IllegalArgumentException("Bundles of different curves");
+        }
+        // The locks are not nested, so two bundles can be merged into each other concurrently.
+        final BigInteger[] sums;
+        synchronized (other) {
+            sums = new BigInteger[] {other.normalize(other.sum1), other.normalize(other.sum2)};
+        }
+        synchronized (this) {
+            if (pending == NORMALIZATION_INTERVAL) {
+                normalize();
+            }
+            addLimbs(sum1, sums[0]);
+            addLimbs(sum2, sums[1]);
+            ++pending;
+        }
+    }
+
+    /**
+     * Computes the bundle of the decommitments added so far. The bundle is not reset, so this can
+     * be called again as more decommitments are added.
+     *
+     * @return the decommitment bundle
+     */
+    @Override
+    public synchronized String computeBundle() {
+        final StringBuilder bundle = new StringBuilder(2 * (limbs * 32 / 6 + 4) + 1);
+        appendNumber(bundle, normalize(sum1));
+        bundle.append(',');
+        appendNumber(bundle, normalize(sum2));
+        return bundle.toString();
+    }
+
+    /**
+     * Tallies an election, like {@link JNICryptosystem#computeTally}.
+     *
+     * @param decommitmentBundle the decommitment bundle of the election
+     * @param voterCount the number of voters, which bounds the count of every option
+     * @param optionCount the number of options
+     * @return the vote counts of the options, in option order, separated by commas
+     * @throws IllegalArgumentException if a count is out of range, the bundle is not valid or
+     *      its first value does not fit in {@code optionCount} counts
+     */
+    public static String computeTally(String decommitmentBundle, int voterCount, int optionCount) {
+        if (voterCount < 0 || voterCount == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid voter count: " + voterCount);
+        }
+        if (optionCount <= 0) {
+            throw new IllegalArgumentException("Invalid option count: " + optionCount);
+        }
+        final int comma = decommitmentBundle.indexOf(',');
+        if (comma == -1) {
+            throw new IllegalArgumentException(
+                    "Invalid decommitment bundle: " + decommitmentBundle);
+        }
+        // MIRACL writes zero without any digits.
+        BigInteger votes = decommitmentBundle.substring(0, comma).trim().isEmpty()
+                ? BigInteger.ZERO : MiraclBase64.decode(decommitmentBundle.substring(0, comma));
+        final BigInteger radix = BigInteger.valueOf(voterCount + 1L);
+        final StringBuilder tally = new StringBuilder();
+        for (int i = 0; i < optionCount; ++i) {
+            final BigInteger[] quotientAndRemainder = votes.divideAndRemainder(radix);
+            if (i > 0) {
+                tally.append(',');
+            }
+            tally.append(quotientAndRemainder[1].intValue());
+            votes = quotientAndRemainder[0];
+        }
+        if (votes.signum() != 0) {
+            throw new IllegalArgumentException("Decommitment bundle has more than " + optionCount
+                    + " counts: " + decommitmentBundle);
+        }
+        return tally.toString();
+    }
+
+    // MIRACL writes zero without any digits.
+    private static void appendNumber(StringBuilder s, BigInteger number) {
+        if (number.signum() != 0) {
+            s.append(MiraclBase64.encode(number));
+        }
+    }
+
+    // Adds a base-64 value (s[start, end)) to sum, decoded straight into limbs.
+    private void addValue(long[] sum, String s, int start, int end) {
+        int limb = 0;
+        long bits = 0;
+        int bitCount = 0;
+        // The digits are read from the least significant one.
+        for (int i = end - 1; i >= start; --i) {
+            final char ch = s.charAt(i);
+            if (ch <= ' ') {
+                continue;
+            }
+            final int digit = ch < DIGIT_VALUES.length ? DIGIT_VALUES[ch] : -1;
+            if (digit == -1) {
+                throw new IllegalArgumentException("Invalid base-64 digit '" + ch + "' in " + s);
+            }
+            bits |= (long) digit << bitCount;
+            bitCount += 6;
+            if (bitCount >= 32) {
+                if (limb == limbs) {
+                    if ((bits & LIMB_MASK) == 0) {
+                        // A leading zero digit.
+                        bits >>>= 32;
+                        bitCount -= 32;
+                        continue;
+                    }
+                    // Only malformed values are wider than q.
+                    addLimbs(sum, MiraclBase64.decode(s.substring(start, end)).mod(q));
+                    return;
+                }
+                value[limb++] = bits & LIMB_MASK;
+                bits >>>= 32;
+                bitCount -= 32;
+            }
+        }
+        if (bits != 0) {
+            if (limb == limbs) {
+                addLimbs(sum, MiraclBase64.decode(s.substring(start, end)).mod(q));
+                return;
+            }
+            value[limb++] = bits;
+        }
+        for (int i = 0; i < limb; ++i) {
+            sum[i] += value[i];
+        }
+    }
+
+    // Adds a value below q to sum.
+    private void addLimbs(long[] sum, BigInteger value) {
+        for (int i = 0; i < limbs; ++i) {
+            sum[i] += value.shiftRight(32 * i).longValue() & LIMB_MASK;
+        }
+    }
+
+    private void normalize() {
+        normalize(sum1);
+        normalize(sum2);
+    }
+
+    // Propagates the carries of sum, reduces it mod q and returns it.
+    private BigInteger normalize(long[] sum) {
+        final byte[] bytes = new byte[4 * limbs + 5];
+        long carry = 0;
+        for (int i = 0; i < limbs; ++i) {
+            carry += sum[i];
+            final int index = bytes.length - 4 * (i + 1);
+            bytes[index] = (byte) (carry >>> 24);
+            bytes[index + 1] = (byte) (carry >>> 16);
+            bytes[index + 2] = (byte) (carry >>> 8);
+            bytes[index + 3] = (byte) carry;
+            carry >>>= 32;
+        }
+        // The sign byte stays zero.
+        bytes[1] = (byte) (carry >>> 24);
+        bytes[2] = (byte) (carry >>> 16);
+        bytes[3] = (byte) (carry >>> 8);
+        bytes[4] = (byte) carry;
+        final BigInteger result = new BigInteger(bytes).mod(q);
+        for (int i = 0; i < limbs; ++i) {
+            sum[i] = 0;
+        }
+        addLimbs(sum, result);
+        pending = 0;
+        return result;
+    }
+
+}
@@ -0,0 +1,86 @@
+package gr.uoa.di.finer.crypto;
+
+import java.math.BigInteger;
+
+/**
+ * The base-64 number format of MIRACL (IOBASE 64), which the cryptosystems use for
+ * decommitments, keys and bundles.
+ * <p>
+ * Unlike the usual base-64 encoding of bytes, a number is written as a series of base-64 digits,
+ * most significant first, with the alphabet {@code A-Z a-z 0-9 + /}. The output is padded with
+ * leading zero digits ('A') to a multiple of 4 digits. On input, whitespace is ignored.
+ * '=' padding, which MIRACL accepts but never writes, is not supported.
+ *
+ * @author Vasilis Poulimenos
+ */
+public final class MiraclBase64 {
+
+    private static final char[] DIGITS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final BigInteger MASK = BigInteger.valueOf(63);
+
+    // Prevent instantiation.
+    private MiraclBase64() {}
+
+    private static int digitValue(char ch) {
+        if (ch >= 'A' && ch <= 'Z') return ch - 'A';
+        if (ch >= 'a' && ch <= 'z') return ch - 'a' + 26;
+        if (ch >= '0' && ch <= '9') return ch - '0' + 52;
+        if (ch == '+') return 62;
+        if (ch == '/') return 63;
+        return -1;
+    }
+
+    /**
+     * Encodes a non-negative number.
+     *
+     * @param value the number to encode
+     * @return the base-64 representation of the number
+     * @throws IllegalArgumentException if the number is negative
+     */
+    public static String encode(BigInteger value) {
+        if (value.signum() < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        int digits = (value.bitLength() + 5) / 6;
+        // Zero is written as a single group of zero digits.
+        digits = Math.max(4, (digits + 3) / 4 * 4);
+
+        final char[] out = new char[digits];
+        BigInteger rest = value;
+        for (int i = digits - 1; i >= 0; --i) {
+            out[i] = DIGITS[rest.and(MASK).intValue()];
+            rest = rest.shiftRight(6);
+        }
+        return new String(out);
+    }
+
+    /**
+     * Decodes a number.
+     *
+     * @param s the base-64 representation of the number
+     * @return the number
+     * @throws NumberFormatException if the string is not a valid base-64 number
+     */
+    public static BigInteger decode(CharSequence s) {
+        BigInteger value = BigInteger.ZERO;
+        boolean empty = true;
+        for (int i = 0, len = s.length(); i < len; ++i) {
+            final char ch = s.charAt(i);
+            if (ch <= ' ') {
+                continue;
+            }
+            final int digit = digitValue(ch);
+            if (digit == -1) {
+                throw new NumberFormatException("Invalid base-64 digit '" + ch + "' in " + s);
+            }
+            value = value.shiftLeft(6).or(BigInteger.valueOf(digit));
+            empty = false;
+        }
+        if (empty) {
+            throw new NumberFormatException("Empty base-64 number");
+        }
+        return value;
+    }
+
+}
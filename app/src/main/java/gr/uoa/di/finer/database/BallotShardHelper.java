@@ -0,0 +1,134 @@
+package gr.uoa.di.finer.database;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteFullException;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import gr.uoa.di.finer.BuildConfig;
+import gr.uoa.di.finer.database.TrusteeContract.BallotPart;
+import gr.uoa.di.finer.service.StoreException;
+
+/**
+ * A class of helper methods for a ballot shard database (see {@link BallotShardOpenHelper}).
+ * Only the ballot methods may be used, since a shard has no other tables.
+ * <p>
+ * Ballots that already exist are ignored. The job checkpoints are saved in the main database,
+ * after the shards have committed, so a shard may already have some of the ballots that a resumed
+ * initialization stores again.
+ * <p>
+ * Like its superclass, this class does not own the database provided upon construction and
+ * instances of this class are *NOT* thread-safe.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+final class BallotShardHelper extends ReadableDatabaseHelper implements BallotSink {
+
+    private static final String TAG = BallotShardHelper.class.getName();
+
+    private static final String INSERT_BALLOT_ERROR_MSG = "Failed to insert ballot";
+
+    private static final String INSERT_BALLOT_STRING = String.format(
+        "INSERT OR IGNORE INTO %s (%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?)",
+        BallotPart.TABLE_NAME,
+        BallotPart.COLUMN_NAME_ELECTION_ID,
+        BallotPart.COLUMN_NAME_SERIAL_NO,
+        BallotPart.COLUMN_NAME_PART,
+        BallotPart.COLUMN_NAME_VOTE_CODE,
+        BallotPart.COLUMN_NAME_DECOMMITMENT
+    );
+
+    private final SQLiteStatement insertBallotStmt = db.compileStatement(INSERT_BALLOT_STRING);
+
+    /**
+     *
+     * @param db a writable ballot shard database
+     */
+    BallotShardHelper(SQLiteDatabase db) {
+        super(db);
+    }
+
+    @Override
+    public void close() {
+        if (!isClosed()) {
+            insertBallotStmt.close();
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Ballot shard helper closed");
+            }
+            super.close();
+        }
+    }
+
+    /**
+     *
+     * @param electionId
+     * @param serialNo
+     * @param partId
+     * @param voteCode
+     * @param decommitment
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    @Override
+    public void saveBallot(
+            String electionId, String serialNo, String partId, String voteCode, String decommitment)
+            throws StoreException {
+        checkNotClosed();
+        insertBallotStmt.bindString(1, electionId);
+        insertBallotStmt.bindString(2, serialNo);
+        insertBallotStmt.bindString(3, partId);
+        insertBallotStmt.bindString(4, voteCode);
+        insertBallotStmt.bindString(5, decommitment);
+
+        try {
+            // -1 means that the ballot was already there.
+            insertBallotStmt.executeInsert();
+        } catch (SQLiteFullException e) {
+            throw new SQLiteStoreFullException(e);
+        } catch (SQLException e) {
+            throw new SQLiteStoreException(INSERT_BALLOT_ERROR_MSG, e);
+        }
+    }
+
+    /**
+     *
+     * @param electionId
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    void eraseBallots(String electionId) throws StoreException {
+        checkNotClosed();
+        try {
+            final String [] whereArgs = new String[] { electionId };
+
+            // Delete the ballots in small parts to avoid SQLiteFullException exceptions.
+            while (db.delete(BallotPart.TABLE_NAME,
+                             WritableDatabaseHelper.DELETE_N_BALLOTS_WHERE_CLAUSE,
+                             whereArgs) == WritableDatabaseHelper.LIMIT) {}
+        } catch (SQLiteFullException e) {
+            throw new SQLiteStoreFullException(e);
+        } catch (SQLException e) {
+            throw new SQLiteStoreException("Failed to delete ballots", e);
+        }
+    }
+
+    /**
+     *
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    void clear() throws StoreException {
+        checkNotClosed();
+        try {
+            TrusteeContract.clearShard(db);
+        } catch (SQLiteFullException e) {
+            throw new SQLiteStoreFullException(e);
+        } catch (SQLException e) {
+            throw new SQLiteStoreException("Emptying database failed", e);
+        }
+    }
+
+}
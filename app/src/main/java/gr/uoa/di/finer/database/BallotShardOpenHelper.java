@@ -0,0 +1,80 @@
+package gr.uoa.di.finer.database;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Class for the creation and version management of a ballot shard database, i.e. one of the files
+ * that the ballots are spread across (see {@link TrusteeContract#shardOf}).
+ * <p>
+ * A shard database only has the ballot table. Everything else about its connections, including
+ * Write-Ahead Logging, is the same as for the main database (see {@link TrusteeOpenHelper}).
+ * The shards have their own writer, so writing to them does not block writers of other shards.
+ * <p>
+ * Instances of this class are thread-safe.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class BallotShardOpenHelper extends TrusteeOpenHelper {
+
+    private static final String TAG = BallotShardOpenHelper.class.getName();
+
+    private static final String DATABASE_NAME_FORMAT = "ballots-%d.db";
+
+    private final String name;
+
+    /**
+     *
+     * @param context the context used to open or create the database
+     * @param shard the index of the shard, from 1 to {@link TrusteeContract#BALLOT_SHARD_COUNT}
+     *      (exclusive), since shard 0 is the main database
+     */
+    public BallotShardOpenHelper(Context context, int shard) {
+        this(context, String.format(DATABASE_NAME_FORMAT, shard));
+        if (shard < 1 || shard >= TrusteeContract.BALLOT_SHARD_COUNT) {
+            throw new IllegalArgumentException("Invalid shard " + shard);
+        }
+    }
+
+    private BallotShardOpenHelper(Context context, String name) {
+        super(context, name);
+        this.name = name;
+    }
+
+    /**
+     * Creates the helpers of all the shards but the main database.
+     *
+     * @param context the context used to open or create the databases
+     * @return the helpers, in shard order (i.e. the helper of shard 1 first)
+     */
+    public static BallotShardOpenHelper[] newShards(Context context) {
+        final BallotShardOpenHelper[] shards =
+                new BallotShardOpenHelper[TrusteeContract.BALLOT_SHARD_COUNT - 1];
+        for (int i = 0; i < shards.length; ++i) {
+            shards[i] = new BallotShardOpenHelper(context, i + 1);
+        }
+        return shards;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        try {
+            // See TrusteeOpenHelper#onCreate.
+            db.execSQL("PRAGMA auto_vacuum = FULL");
+        } catch (SQLException impossible) {
+            Log.wtf(TAG, "Invalid SQL string", impossible);
+        }
+        TrusteeContract.createShard(db);
+        Log.i(TAG, "Created database " + name);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The shards were added in version 4 and have not changed since.
+        Log.i(TAG, "Upgraded database " + name + " from version " + oldVersion + " to " +
+                newVersion);
+    }
+
+}
@@ -0,0 +1,28 @@
+package gr.uoa.di.finer.database;
+
+import android.support.annotation.WorkerThread;
+
+import gr.uoa.di.finer.service.StoreException;
+
+/**
+ * A transactional table of ballots, i.e. the main database or a ballot shard,
+ * written by a {@link DatabaseWriter}.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+interface BallotSink {
+
+    void beginTransaction() throws StoreException;
+
+    void setTransactionSuccessful() throws StoreException;
+
+    void endTransaction() throws StoreException;
+
+    void saveBallot(
+            String electionId, String serialNo, String partId, String voteCode, String decommitment)
+            throws StoreException;
+
+    void close();
+
+}
@@ -0,0 +1,312 @@
+package gr.uoa.di.finer.database;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import gr.uoa.di.finer.BuildConfig;
+import gr.uoa.di.finer.LatencyHistogram;
+import gr.uoa.di.finer.service.BallotBatch;
+import gr.uoa.di.finer.service.BallotWriter;
+import gr.uoa.di.finer.service.JobStore;
+import gr.uoa.di.finer.service.StoreException;
+
+/**
+ * A single thread that owns the ballot writes to the database.
+ * <p>
+ * Tasks submit their ballots in batches (one per transaction of the task) and carry on parsing,
+ * while the writer commits the batches in the background. The batches that are queued when the
+ * writer becomes free, possibly from different tasks, are committed together in a single
+ * transaction (group commit), so concurrent initializations neither contend for the database lock
+ * nor pay for a commit each. If a group fails, its batches are retried one by one, so that a
+ * failure only affects the task that caused it.
+ * <p>
+ * A writer owns one database file. The ballot shards have writers of their own, which
+ * {@link ShardedBallotWriter} coordinates.
+ * <p>
+ * This class takes ownership of the helper provided upon construction and closes it when the
+ * writer stops. Instances of this class are thread-safe.
+ *
+ * @author Vasilis Poulimenos
+ */
+public final class DatabaseWriter implements BallotWriter {
+
+    private static final String TAG = DatabaseWriter.class.getName();
+
+    /**
+     * The maximum number of batches committed in one transaction.
+     */
+    private static final int MAX_GROUP_SIZE = 16;
+
+    private static final Callable<Void> NO_OP = new Callable<Void>() {
+        @Override
+        public Void call() {
+            return null;
+        }
+    };
+
+    /**
+     * A submitted batch. Completed by the writer thread, never run.
+     */
+    private static final class Request extends FutureTask<Void> {
+        final BallotBatch batch;
+        final Future<Void> after;
+        // Batches of other writers, which must be written first.
+        final List<Future<Void>> parallel;
+
+        Request(BallotBatch batch, Future<Void> after, List<Future<Void>> parallel) {
+            super(NO_OP);
+            this.batch = batch;
+            this.after = after;
+            this.parallel = parallel;
+        }
+
+        // Waits for the batches of other writers.
+        void awaitParallel() throws InterruptedException {
+            for (Future<Void> future : parallel) {
+                try {
+                    future.get();
+                } catch (ExecutionException ignored) {
+                    // See isOrphan.
+                }
+            }
+        }
+
+        // Whether a batch that this batch depends on has failed.
+        boolean isOrphan() {
+            for (Future<Void> future : parallel) {
+                if (failed(future)) {
+                    return true;
+                }
+            }
+            // A pending batch that this batch follows is in the same group.
+            return after != null && after.isDone() && failed(after);
+        }
+
+        private static boolean failed(Future<Void> future) {
+            try {
+                future.get();
+                return false;
+            } catch (InterruptedException | ExecutionException e) {
+                return true;
+            }
+        }
+
+        void succeed() {
+            set(null);
+        }
+
+        void fail(Throwable cause) {
+            setException(cause);
+        }
+    }
+
+    private final BallotSink sink;
+    // The job queue or null if the database has none.
+    private final JobStore jobs;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private boolean shutdown;
+
+    /*
+     * The latencies of the group commits or null unless latency recording is enabled.
+     */
+    private final LatencyHistogram writeLatency =
+            LatencyHistogram.ENABLED ? new LatencyHistogram() : null;
+
+    /**
+     *
+     * @param helper the helper used for the writes, which this writer takes ownership of
+     */
+    public DatabaseWriter(WritableDatabaseHelper helper) {
+        this(helper, helper, DatabaseWriter.class.getSimpleName());
+    }
+
+    /**
+     * Creates the writer of a ballot shard. Its batches must not carry checkpoints.
+     *
+     * @param helper the helper of the shard, which this writer takes ownership of
+     * @param shard the index of the shard
+     */
+    DatabaseWriter(BallotShardHelper helper, int shard) {
+        this(helper, null, DatabaseWriter.class.getSimpleName() + '-' + shard);
+    }
+
+    private DatabaseWriter(BallotSink sink, JobStore jobs, String name) {
+        this.sink = sink;
+        this.jobs = jobs;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                processRequests();
+            }
+        }, name);
+        this.thread.start();
+    }
+
+    /**
+     * Returns the latencies of the group commits, from the start of the transaction to the end
+     * of the commit. The histogram is shared by all the tasks that use this writer.
+     *
+     * @return the histogram or null if latency recording is disabled
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    @Override
+    public Future<Void> submit(BallotBatch batch, Future<Void> after) {
+        return submit(batch, after, Collections.<Future<Void>>emptyList());
+    }
+
+    /**
+     * Queues a batch to be written after the batches of other writers specified.
+     * If any of them fails, this batch is not written.
+     *
+     * @see BallotWriter#submit
+     */
+    synchronized Future<Void> submit(
+            BallotBatch batch, Future<Void> after, List<Future<Void>> parallel) {
+        final Request request = new Request(batch, after, parallel);
+        if (shutdown) {
+            request.fail(new StoreException("Database writer is shut down"));
+        } else {
+            queue.add(request);
+        }
+        return request;
+    }
+
+    /**
+     * Stops the writer. The batches that have not been written yet fail.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        thread.interrupt();
+    }
+
+    private void processRequests() {
+        final List<Request> group = new ArrayList<>(MAX_GROUP_SIZE);
+        try {
+            for (;;) {
+                group.add(queue.take());
+                queue.drainTo(group, MAX_GROUP_SIZE - 1);
+                try {
+                    writeGroup(group);
+                } catch (RuntimeException e) {
+                    // Never leave a submitter waiting.
+                    Log.e(TAG, "Unexpected write error", e);
+                    for (Request request : group) {
+                        request.fail(e);
+                    }
+                }
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "Database writer interrupted");
+        } finally {
+            final StoreException e = new StoreException("Database writer is shut down");
+            // Completed requests are not affected.
+            for (Request request : group) {
+                request.fail(e);
+            }
+            for (Request request : queue) {
+                request.fail(e);
+            }
+            queue.clear();
+            sink.close();
+        }
+    }
+
+    private void writeGroup(List<Request> group) throws InterruptedException {
+        final List<Request> writable = new ArrayList<>(group.size());
+        for (Request request : group) {
+            request.awaitParallel();
+        }
+        for (Request request : group) {
+            if (request.isOrphan()) {
+                request.fail(new StoreException("Dependent batch failed"));
+            } else {
+                writable.add(request);
+            }
+        }
+        if (writable.isEmpty()) {
+            return;
+        }
+
+        try {
+            write(writable);
+            for (Request request : writable) {
+                request.succeed();
+            }
+        } catch (StoreException e) {
+            if (writable.size() == 1) {
+                writable.get(0).fail(e);
+                return;
+            }
+            Log.w(TAG, "Group commit failed, retrying batches separately", e);
+            // In submission order, so that the batches that follow a failed one are dropped.
+            for (Request request : writable) {
+                if (request.isOrphan()) {
+                    request.fail(new StoreException("Dependent batch failed"));
+                    continue;
+                }
+                try {
+                    write(request);
+                    request.succeed();
+                } catch (StoreException retryException) {
+                    request.fail(retryException);
+                }
+            }
+        }
+    }
+
+    private void write(Request request) throws StoreException {
+        final List<Request> single = new ArrayList<>(1);
+        single.add(request);
+        write(single);
+    }
+
+    /**
+     * Writes the batches, along with their checkpoints, in a single transaction.
+     *
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    private void write(List<Request> requests) throws StoreException {
+        final long start = LatencyHistogram.ENABLED ? System.nanoTime() : 0;
+        sink.beginTransaction();
+        try {
+            for (Request request : requests) {
+                final BallotBatch batch = request.batch;
+                final String electionId = batch.getElectionId();
+                for (int i = 0, size = batch.size(); i < size; ++i) {
+                    sink.saveBallot(electionId, batch.getSerialNo(i), batch.getPartId(i),
+                                    batch.getVoteCode(i), batch.getDecommitment(i));
+                }
+                if (batch.getJobId() != BallotBatch.NO_JOB) {
+                    if (jobs == null) {
+                        throw new IllegalArgumentException("Checkpoint in a ballot shard");
+                    }
+                    jobs.saveJobCheckpoint(batch.getJobId(), batch.getCheckpoint());
+                }
+            }
+            sink.setTransactionSuccessful();
+        } finally {
+            sink.endTransaction();
+        }
+        if (LatencyHistogram.ENABLED) {
+            writeLatency.record(System.nanoTime() - start);
+        }
+    }
+
+}
@@ -11,10 +11,12 @@ import android.support.annotation.WorkerThread;
 import android.util.Log;
 
 import gr.uoa.di.finer.BuildConfig;
+import gr.uoa.di.finer.LatencyHistogram;
 import gr.uoa.di.finer.ReadableDataStore;
 import gr.uoa.di.finer.database.TrusteeContract.BallotPart;
 import gr.uoa.di.finer.database.TrusteeContract.Election;
 import gr.uoa.di.finer.database.TrusteeContract.ElectionDynamicData;
+import gr.uoa.di.finer.database.TrusteeContract.ElectionMetrics;
 import gr.uoa.di.finer.service.StoreException;
 
 /**
@@ -51,7 +53,7 @@ public class ReadableDatabaseHelper implements ReadableDataStore {
 
     private static final String TAG = WritableDatabaseHelper.class.getName();
 
-    private static final String BALLOT_DECOMMITMENT_QUERY_STRING = String.format(
+    static final String BALLOT_DECOMMITMENT_QUERY_STRING = String.format(
         "SELECT %s " +
         "FROM %s " +
         "WHERE %s = ? AND %s = ? AND %s = ?",
@@ -70,6 +72,13 @@ public class ReadableDatabaseHelper implements ReadableDataStore {
      */
     private final SQLiteStatement ballotDecommitmentQuery;
 
+    /*
+     * The latencies of the ballot lookups and of the transaction ends (mostly commits).
+     * These are null unless latency recording is enabled.
+     */
+    private final LatencyHistogram lookupLatency;
+    private final LatencyHistogram commitLatency;
+
     /**
      * Creates a new ReadableDatabaseHelper.
      *
@@ -82,6 +91,8 @@ public class ReadableDatabaseHelper implements ReadableDataStore {
     public ReadableDatabaseHelper(SQLiteDatabase db) {
         this.db = db;
         this.ballotDecommitmentQuery = db.compileStatement(BALLOT_DECOMMITMENT_QUERY_STRING);
+        this.lookupLatency = LatencyHistogram.ENABLED ? new LatencyHistogram() : null;
+        this.commitLatency = LatencyHistogram.ENABLED ? new LatencyHistogram() : null;
     }
 
     /**
@@ -122,6 +133,26 @@ public class ReadableDatabaseHelper implements ReadableDataStore {
     }
 
 
+    /**
+     * Returns the latencies of {@link #getBallotDecommitment} calls.
+     *
+     * @return the histogram or null if latency recording is disabled
+     */
+    public LatencyHistogram getLookupLatency() {
+        return lookupLatency;
+    }
+
+    /**
+     * Returns the latencies of {@link #endTransaction} calls.
+     * These include the time to commit and, in WAL mode, any checkpoint that the commit causes.
+     *
+     * @return the histogram or null if latency recording is disabled
+     */
+    public LatencyHistogram getCommitLatency() {
+        return commitLatency;
+    }
+
+
     /**
      * Closes this helper.
      * Nothing is done if this helper has already been closed.
@@ -191,11 +222,15 @@ public class ReadableDatabaseHelper implements ReadableDataStore {
     @Override
     public void endTransaction() throws StoreException {
         checkNotClosed();
+        final long start = LatencyHistogram.ENABLED ? System.nanoTime() : 0;
         try {
             db.endTransaction();
         } catch (SQLiteException e) {
             throw new SQLiteStoreException(e);
         }
+        if (LatencyHistogram.ENABLED) {
+            commitLatency.record(System.nanoTime() - start);
+        }
     }
 
 
@@ -389,6 +424,63 @@ public class ReadableDatabaseHelper implements ReadableDataStore {
         }
     }
 
+    private static final String ELECTION_DECOMMITMENT_BUNDLE_QUERY = String.format(
+        "SELECT %s " +
+        "FROM %s " +
+        "WHERE %s = ?",
+        ElectionDynamicData.COLUMN_NAME_DECOMMITMENT_BUNDLE,
+        ElectionDynamicData.TABLE_NAME,
+        ElectionDynamicData.COLUMN_NAME_ELECTION_ID
+    );
+
+    /**
+     * Retrieves the decommitment bundle of the election specified.
+     *
+     * @param electionId the ID of the election to query
+     * @return the decommitment bundle of the election or null if it is not verified yet
+     * @throws StoreException if there was a problem retrieving the bundle from the database
+     */
+    @Override
+    public String getElectionDecommitmentBundle(String electionId) throws StoreException {
+        Cursor cursor = null;
+
+        checkNotClosed();
+        try {
+            cursor = db.rawQuery(ELECTION_DECOMMITMENT_BUNDLE_QUERY, new String[] { electionId });
+            return (cursor.moveToFirst()) ? cursor.getString(0) : null;
+        } catch (SQLiteException e) {
+            throw new SQLiteStoreException("Failed to retrieve decommitment bundle", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the metrics of the heavy tasks of the election specified.
+     *
+     * @param electionId the ID of the election to query
+     * @return a cursor with the task name and the metrics of every task, ordered by task name
+     * @throws StoreException if there was a problem retrieving the metrics from the database
+     */
+    @Override
+    public Cursor getElectionMetrics(String electionId) throws StoreException {
+        checkNotClosed();
+        try {
+            return db.query(
+                    ElectionMetrics.TABLE_NAME,
+                    new String[] {
+                            ElectionMetrics.COLUMN_NAME_TASK, ElectionMetrics.COLUMN_NAME_METRICS },
+                    ElectionMetrics.COLUMN_NAME_ELECTION_ID + " = ?",
+                    new String[] { electionId },
+                    null, null,                     // No GROUP BY or HAVING clauses.
+                    ElectionMetrics.COLUMN_NAME_TASK);
+        } catch (SQLiteException e) {
+            throw new SQLiteStoreException("Failed to retrieve election metrics", e);
+        }
+    }
+
     /**
      *
      * It is assumed that the election ID is valid.
@@ -407,6 +499,7 @@ public class ReadableDatabaseHelper implements ReadableDataStore {
         ballotDecommitmentQuery.bindString(2, serialNumber);
         ballotDecommitmentQuery.bindString(3, voteCode);
 
+        final long start = LatencyHistogram.ENABLED ? System.nanoTime() : 0;
         try {
             return ballotDecommitmentQuery.simpleQueryForString();
         } catch (SQLiteDoneException ignored) {
@@ -414,6 +507,10 @@ public class ReadableDatabaseHelper implements ReadableDataStore {
             return null;
         } catch (SQLiteException e) {
             throw new SQLiteStoreException("Failed to query ballot decommitment", e);
+        } finally {
+            if (LatencyHistogram.ENABLED) {
+                lookupLatency.record(System.nanoTime() - start);
+            }
         }
     }
 
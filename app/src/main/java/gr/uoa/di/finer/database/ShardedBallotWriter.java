@@ -0,0 +1,93 @@
+package gr.uoa.di.finer.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import gr.uoa.di.finer.LatencyHistogram;
+import gr.uoa.di.finer.service.BallotBatch;
+import gr.uoa.di.finer.service.BallotWriter;
+
+/**
+ * Writes the ballots of every batch to their shards (see {@link TrusteeContract#shardOf}), each
+ * shard with its own {@link DatabaseWriter}, so that the inserts are not limited to the single
+ * writer that SQLite allows per database file.
+ * <p>
+ * The part of a batch that belongs to the main database is written last, together with the
+ * checkpoint of the batch, after the other shards have committed their parts. So, the checkpoint
+ * never runs ahead of the ballots, although the shards may (see {@link BallotShardHelper}).
+ * <p>
+ * This class takes ownership of the helper provided upon construction, but not of the shard
+ * databases. Instances of this class are thread-safe.
+ *
+ * @author Vasilis Poulimenos
+ */
+public final class ShardedBallotWriter implements BallotWriter {
+
+    // The writers by shard. The writer of the main database comes first.
+    private final DatabaseWriter[] writers;
+
+    /**
+     *
+     * @param helper the helper of the main database, which this writer takes ownership of
+     * @param shards the other shard databases, in shard order (see {@link BallotShardOpenHelper})
+     * @throws IllegalArgumentException if the number of shards is wrong
+     */
+    public ShardedBallotWriter(WritableDatabaseHelper helper, SQLiteDatabase[] shards) {
+        if (shards.length != TrusteeContract.BALLOT_SHARD_COUNT - 1) {
+            throw new IllegalArgumentException("Expected "
+                    + (TrusteeContract.BALLOT_SHARD_COUNT - 1) + " shards, got " + shards.length);
+        }
+        this.writers = new DatabaseWriter[TrusteeContract.BALLOT_SHARD_COUNT];
+        this.writers[0] = new DatabaseWriter(helper);
+        for (int i = 1; i < writers.length; ++i) {
+            this.writers[i] = new DatabaseWriter(new BallotShardHelper(shards[i - 1]), i);
+        }
+    }
+
+    /**
+     * Returns the latencies of the group commits of the main database, which complete the batches.
+     *
+     * @return the histogram or null if latency recording is disabled
+     * @see DatabaseWriter#getWriteLatency()
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writers[0].getWriteLatency();
+    }
+
+    @Override
+    public Future<Void> submit(BallotBatch batch, Future<Void> after) {
+        final String electionId = batch.getElectionId();
+        final BallotBatch[] parts = new BallotBatch[writers.length];
+        for (int i = 0; i < parts.length; ++i) {
+            parts[i] = new BallotBatch(electionId, batch.size() / parts.length + 1);
+        }
+        for (int i = 0, size = batch.size(); i < size; ++i) {
+            final String serialNo = batch.getSerialNo(i);
+            parts[TrusteeContract.shardOf(serialNo)].add(serialNo, batch.getPartId(i),
+                    batch.getVoteCode(i), batch.getDecommitment(i));
+        }
+        parts[0].setCheckpoint(batch.getJobId(), batch.getCheckpoint());
+
+        final List<Future<Void>> parallel = new ArrayList<>(parts.length - 1);
+        for (int i = 1; i < parts.length; ++i) {
+            if (parts[i].size() > 0) {
+                // The order is kept by every writer, so only the main part waits for the others.
+                parallel.add(writers[i].submit(parts[i], null));
+            }
+        }
+        return writers[0].submit(parts[0], after, parallel);
+    }
+
+    /**
+     * Stops all the writers. The batches that have not been written yet fail.
+     */
+    public void shutdown() {
+        for (DatabaseWriter writer : writers) {
+            writer.shutdown();
+        }
+    }
+
+}
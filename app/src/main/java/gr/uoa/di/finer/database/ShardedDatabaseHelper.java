@@ -0,0 +1,136 @@
+package gr.uoa.di.finer.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.WorkerThread;
+
+import gr.uoa.di.finer.LatencyHistogram;
+import gr.uoa.di.finer.service.StoreException;
+
+/**
+ * A writable database helper that keeps the ballots in their shards (see
+ * {@link TrusteeContract#shardOf}). The ballots of shard 0 and everything else are in the main
+ * database, so the superclass handles them. So are the ballots of every shard that were stored
+ * before the shards were added, which are looked up there if they are not in their shards.
+ * <p>
+ * Transactions only cover the main database. Ballots are written transactionally (and faster)
+ * through a {@link ShardedBallotWriter}. Erasing an election empties its shards first, so that no
+ * ballots are left behind if the erasure is interrupted.
+ * <p>
+ * This class takes ownership of the shard helpers it creates, but not of any database.
+ * Instances of this class are *NOT* thread-safe.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+public class ShardedDatabaseHelper extends WritableDatabaseHelper {
+
+    // The helpers by shard. Shard 0 (the main database) is null.
+    private final BallotShardHelper[] shards;
+
+    /**
+     *
+     * @param db the writable main database
+     * @param shards the other shard databases, in shard order (see {@link BallotShardOpenHelper})
+     * @throws IllegalArgumentException if a database is read-only or the number of shards is wrong
+     */
+    public ShardedDatabaseHelper(SQLiteDatabase db, SQLiteDatabase[] shards) {
+        super(db);
+        if (shards.length != TrusteeContract.BALLOT_SHARD_COUNT - 1) {
+            throw new IllegalArgumentException("Expected "
+                    + (TrusteeContract.BALLOT_SHARD_COUNT - 1) + " shards, got " + shards.length);
+        }
+        this.shards = new BallotShardHelper[TrusteeContract.BALLOT_SHARD_COUNT];
+        for (int i = 1; i < this.shards.length; ++i) {
+            if (shards[i - 1].isReadOnly()) {
+                throw new IllegalArgumentException("Database is read-only");
+            }
+            this.shards[i] = new BallotShardHelper(shards[i - 1]);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!isClosed()) {
+            for (int i = 1; i < shards.length; ++i) {
+                shards[i].close();
+            }
+            super.close();
+        }
+    }
+
+    @Override
+    public String getBallotDecommitment(String electionId, String serialNumber, String voteCode)
+            throws StoreException {
+        final int shard = TrusteeContract.shardOf(serialNumber);
+        if (shard == 0) {
+            return super.getBallotDecommitment(electionId, serialNumber, voteCode);
+        }
+        checkNotClosed();
+        // Recorded along with the lookups of the main database, so that there is one histogram.
+        final LatencyHistogram lookupLatency = getLookupLatency();
+        final long start = LatencyHistogram.ENABLED ? System.nanoTime() : 0;
+        final String decommitment;
+        try {
+            decommitment = shards[shard].getBallotDecommitment(electionId, serialNumber, voteCode);
+        } finally {
+            if (LatencyHistogram.ENABLED) {
+                lookupLatency.record(System.nanoTime() - start);
+            }
+        }
+        // The ballots stored before the shards were added (version 4) are all in the main database.
+        // Only invalid ballots pay for this second lookup.
+        return decommitment != null
+                ? decommitment : super.getBallotDecommitment(electionId, serialNumber, voteCode);
+    }
+
+    /**
+     * Stores a new ballot in its shard. Unless the ballot belongs to the main database, it is
+     * committed immediately, regardless of any transaction in progress.
+     *
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    @Override
+    public void saveBallot(
+            String electionId, String serialNo, String partId, String voteCode, String decommitment)
+            throws StoreException {
+        final int shard = TrusteeContract.shardOf(serialNo);
+        if (shard == 0) {
+            super.saveBallot(electionId, serialNo, partId, voteCode, decommitment);
+        } else {
+            checkNotClosed();
+            shards[shard].saveBallot(electionId, serialNo, partId, voteCode, decommitment);
+        }
+    }
+
+    /**
+     *
+     * @param electionId
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    @Override
+    public void eraseBallots(String electionId) throws StoreException {
+        // Also called by eraseElection, before the election is deleted.
+        checkNotClosed();
+        for (int i = 1; i < shards.length; ++i) {
+            shards[i].eraseBallots(electionId);
+        }
+        super.eraseBallots(electionId);
+    }
+
+    /**
+     *
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    @Override
+    public void clear() throws StoreException {
+        checkNotClosed();
+        for (int i = 1; i < shards.length; ++i) {
+            shards[i].clear();
+        }
+        super.clear();
+    }
+
+}
@@ -51,6 +51,24 @@ public final class TrusteeContract {
     private TrusteeContract() { throw new AssertionError("Non-instantiable class"); }
 
 
+    /**
+     * The number of files that the ballots are spread across, so that they can be written in
+     * parallel. Shard 0 is the main database and the rest are separate ballot databases.
+     * Changing this moves ballots to other shards, so an upgrade would have to move them too.
+     */
+    public static final int BALLOT_SHARD_COUNT = 4;
+
+    /**
+     * Returns the shard that stores the ballot with the serial number specified.
+     * This depends only on the serial number (String#hashCode is specified), so it never changes.
+     *
+     * @param serialNo the serial number of the ballot
+     * @return the index of the shard, from 0 to {@link #BALLOT_SHARD_COUNT} (exclusive)
+     */
+    public static int shardOf(String serialNo) {
+        return (serialNo.hashCode() & Integer.MAX_VALUE) % BALLOT_SHARD_COUNT;
+    }
+
     /**
      *
      * @param db
@@ -60,35 +78,65 @@ public final class TrusteeContract {
         Option.create(db);
         BallotPart.create(db);
         ElectionDynamicData.create(db);
+        ElectionMetrics.create(db);
+        ServiceJob.create(db);
     }
 
     /**
+     * Upgrades the database one version at a time, so that no data is lost.
      *
      * @param db
+     * @param oldVersion the version of the database
      */
-    static void upgrade(SQLiteDatabase db) {
-        // The order is important to avoid foreign key constraints violations.
-        ElectionDynamicData.upgrade(db);
-        BallotPart.upgrade(db);
-        Option.upgrade(db);
-        Election.upgrade(db);
-        create(db);
+    static void upgrade(SQLiteDatabase db, int oldVersion) {
+        if (oldVersion < 2) {
+            ElectionMetrics.create(db);
+        }
+        if (oldVersion < 3) {
+            ServiceJob.create(db);
+        }
+        // Version 4 added the shards. The ballots stored before then stay in the main database,
+        // where ShardedDatabaseHelper looks for the ballots that are not in their shards.
+        if (oldVersion < 5) {
+            ElectionDynamicData.addTally(db);
+        }
     }
 
     /**
-     * Erases the entire content of all tables in the database.
+     * Erases the entire content of all election tables in the database.
+     * The job table is kept, since it describes the work of the service, including the job that
+     * is clearing the database.
      *
      * @param db
      */
     static void clear(SQLiteDatabase db) {
         // Since there is no TRUNCATE TABLE statement, employ the truncate optimization.
         // The order is important to avoid foreign key constraints violations.
+        ElectionMetrics.truncate(db);
         ElectionDynamicData.truncate(db);
         BallotPart.truncate(db);
         Option.truncate(db);
         Election.truncate(db);
     }
 
+    /**
+     * Creates the tables of a ballot shard database.
+     *
+     * @param db
+     */
+    static void createShard(SQLiteDatabase db) {
+        BallotPart.createShard(db);
+    }
+
+    /**
+     * Erases the entire content of a ballot shard database.
+     *
+     * @param db
+     */
+    static void clearShard(SQLiteDatabase db) {
+        BallotPart.truncate(db);
+    }
+
 
     public static final class Election {
         public static final String TABLE_NAME = "Election";
@@ -101,7 +149,7 @@ public final class TrusteeContract {
         public static final String COLUMN_NAME_DECOMMITMENT_KEY = "decommitmentKey";
         public static final String COLUMN_NAME_STATUS = "status";
 
-        private static final String ELECTION_TABLE_CREATE =
+        static final String ELECTION_TABLE_CREATE =
             "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
                 COLUMN_NAME_ELECTION_ID + " VARCHAR(36) PRIMARY KEY NOT NULL," +
                 COLUMN_NAME_QUESTION + " VARCHAR(200) NOT NULL," +
@@ -112,10 +160,6 @@ public final class TrusteeContract {
                 COLUMN_NAME_STATUS + " INTEGER NOT NULL" +
             ")";
 
-        private static void drop(SQLiteDatabase db) {
-            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
-        }
-
         private static void truncate(SQLiteDatabase db) {
             db.delete(TABLE_NAME, null, null);
         }
@@ -124,10 +168,6 @@ public final class TrusteeContract {
             db.execSQL(ELECTION_TABLE_CREATE);
         }
 
-        private static void upgrade(SQLiteDatabase db) {
-            drop(db);
-        }
-
         // Prevent instantiation.
         private Election() { throw new AssertionError("Non-instantiable class"); }
     }
@@ -150,10 +190,6 @@ public final class TrusteeContract {
                 "CONSTRAINT optionPK PRIMARY KEY (electionID, optionIndex)" +
             ")";
 
-        private static void drop(SQLiteDatabase db) {
-            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
-        }
-
         private static void truncate(SQLiteDatabase db) {
             db.delete(TABLE_NAME, null, null);
         }
@@ -162,10 +198,6 @@ public final class TrusteeContract {
             db.execSQL(OPTION_TABLE_CREATE);
         }
 
-        private static void upgrade(SQLiteDatabase db) {
-            drop(db);
-        }
-
         // Prevent instantiation.
         private Option() { throw new AssertionError("Non-instantiable class"); }
     }
@@ -179,13 +211,7 @@ public final class TrusteeContract {
         public static final String COLUMN_NAME_VOTE_CODE = "voteCode";
         public static final String COLUMN_NAME_DECOMMITMENT = "decommitment";
 
-        private static final String BALLOT_PART_TABLE_CREATE =
-            "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
-                COLUMN_NAME_BALLOT_PART_ID + " INTEGER PRIMARY KEY," +
-                COLUMN_NAME_ELECTION_ID + " VARCHAR(36) NOT NULL " +
-                    "CONSTRAINT ballot_part_election_id_fkey " +
-                    "REFERENCES " + Election.TABLE_NAME+"("+ Election.COLUMN_NAME_ELECTION_ID+") " +
-                    "ON DELETE CASCADE," +
+        private static final String BALLOT_PART_COLUMNS =
                 COLUMN_NAME_SERIAL_NO + " VARCHAR NOT NULL," +
                 COLUMN_NAME_PART + " TEXT CHECK(part IN ('A', 'B')) NOT NULL," +
                 COLUMN_NAME_VOTE_CODE + " VARCHAR NOT NULL," +
@@ -193,12 +219,25 @@ public final class TrusteeContract {
                 "CONSTRAINT ballot_part_ukey UNIQUE " + String.format(
                     "(%s,%s,%s,%s)",
                     COLUMN_NAME_ELECTION_ID, COLUMN_NAME_SERIAL_NO, COLUMN_NAME_PART,
-                    COLUMN_NAME_VOTE_CODE) +
+                    COLUMN_NAME_VOTE_CODE);
+
+        static final String BALLOT_PART_TABLE_CREATE =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                COLUMN_NAME_BALLOT_PART_ID + " INTEGER PRIMARY KEY," +
+                COLUMN_NAME_ELECTION_ID + " VARCHAR(36) NOT NULL " +
+                    "CONSTRAINT ballot_part_election_id_fkey " +
+                    "REFERENCES " + Election.TABLE_NAME+"("+ Election.COLUMN_NAME_ELECTION_ID+") " +
+                    "ON DELETE CASCADE," +
+                BALLOT_PART_COLUMNS +
             ")";
 
-        private static void drop(SQLiteDatabase db) {
-            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
-        }
+        // The elections are in the main database, so the shards cannot reference them.
+        static final String BALLOT_SHARD_TABLE_CREATE =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                COLUMN_NAME_BALLOT_PART_ID + " INTEGER PRIMARY KEY," +
+                COLUMN_NAME_ELECTION_ID + " VARCHAR(36) NOT NULL," +
+                BALLOT_PART_COLUMNS +
+            ")";
 
         private static void truncate(SQLiteDatabase db) {
             db.delete(TABLE_NAME, null, null);
@@ -208,8 +247,8 @@ public final class TrusteeContract {
             db.execSQL(BALLOT_PART_TABLE_CREATE);
         }
 
-        private static void upgrade(SQLiteDatabase db) {
-            drop(db);
+        private static void createShard(SQLiteDatabase db) {
+            db.execSQL(BALLOT_SHARD_TABLE_CREATE);
         }
 
         // Prevent instantiation.
@@ -221,6 +260,8 @@ public final class TrusteeContract {
         public static final String COLUMN_NAME_ELECTION_ID = "electionId";
         public static final String COLUMN_NAME_BALLOT_COUNT = "ballotCount";
         public static final String COLUMN_NAME_DECOMMITMENT_BUNDLE = "decommitmentBundle";
+        // The vote counts of the options, separated by commas. Null until the election is tallied.
+        public static final String COLUMN_NAME_TALLY = "tally";
 
         private static final String ELECTION_DYNAMIC_DATA_TABLE_CREATE =
             "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
@@ -228,13 +269,10 @@ public final class TrusteeContract {
                     "CONSTRAINT election_dynamic_data_election_id_fk " +
                     "REFERENCES " + Election.TABLE_NAME+"("+ Election.COLUMN_NAME_ELECTION_ID+") " +
                     "ON DELETE CASCADE," +
-                COLUMN_NAME_DECOMMITMENT_BUNDLE + " VARCHAR NOT NULL" +
+                COLUMN_NAME_DECOMMITMENT_BUNDLE + " VARCHAR NOT NULL," +
+                COLUMN_NAME_TALLY + " VARCHAR" +
             ")";
 
-        private static void drop(SQLiteDatabase db) {
-            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
-        }
-
         private static void truncate(SQLiteDatabase db) {
             db.delete(TABLE_NAME, null, null);
         }
@@ -243,12 +281,80 @@ public final class TrusteeContract {
             db.execSQL(ELECTION_DYNAMIC_DATA_TABLE_CREATE);
         }
 
-        private static void upgrade(SQLiteDatabase db) {
-            drop(db);
+        // Version 5.
+        private static void addTally(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_NAME_TALLY +
+                    " VARCHAR");
         }
 
         // Prevent instantiation.
         private ElectionDynamicData() { throw new AssertionError("Non-instantiable class"); }
     }
 
+    public static final class ElectionMetrics {
+        public static final String TABLE_NAME = "ElectionMetrics";
+        public static final String COLUMN_NAME_ELECTION_ID = "electionId";
+        public static final String COLUMN_NAME_TASK = "task";
+        public static final String COLUMN_NAME_METRICS = "metrics";
+
+        private static final String ELECTION_METRICS_TABLE_CREATE =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                COLUMN_NAME_ELECTION_ID + " VARCHAR(36) NOT NULL " +
+                    "CONSTRAINT election_metrics_election_id_fk " +
+                    "REFERENCES " + Election.TABLE_NAME+"("+ Election.COLUMN_NAME_ELECTION_ID+") " +
+                    "ON DELETE CASCADE," +
+                COLUMN_NAME_TASK + " VARCHAR NOT NULL," +
+                COLUMN_NAME_METRICS + " VARCHAR NOT NULL," +
+                "CONSTRAINT election_metrics_pkey PRIMARY KEY " + String.format(
+                    "(%s,%s)", COLUMN_NAME_ELECTION_ID, COLUMN_NAME_TASK) +
+            ")";
+
+        private static void truncate(SQLiteDatabase db) {
+            db.delete(TABLE_NAME, null, null);
+        }
+
+        private static void create(SQLiteDatabase db) {
+            db.execSQL(ELECTION_METRICS_TABLE_CREATE);
+        }
+
+        // Prevent instantiation.
+        private ElectionMetrics() { throw new AssertionError("Non-instantiable class"); }
+    }
+
+    public static final class ServiceJob {
+        public static final String TABLE_NAME = "ServiceJob";
+        // The job IDs also give the order of the jobs.
+        public static final String COLUMN_NAME_JOB_ID = BaseColumns._ID;
+        public static final String COLUMN_NAME_ACTION = "action";
+        // Null for jobs about all elections. Jobs outlive their elections, so no foreign key.
+        public static final String COLUMN_NAME_ELECTION_ID = "electionId";
+        public static final String COLUMN_NAME_DATA = "data";
+        public static final String COLUMN_NAME_STATE = "state";
+        public static final String COLUMN_NAME_ATTEMPTS = "attempts";
+        public static final String COLUMN_NAME_CHECKPOINT = "checkpoint";
+
+        // Job states.
+        public static final int STATE_PENDING = 0;
+        public static final int STATE_RUNNING = 1;
+        public static final int STATE_DONE = 2;
+
+        private static final String SERVICE_JOB_TABLE_CREATE =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                COLUMN_NAME_JOB_ID + " INTEGER PRIMARY KEY," +
+                COLUMN_NAME_ACTION + " VARCHAR NOT NULL," +
+                COLUMN_NAME_ELECTION_ID + " VARCHAR(36)," +
+                COLUMN_NAME_DATA + " VARCHAR," +
+                COLUMN_NAME_STATE + " INTEGER NOT NULL DEFAULT " + STATE_PENDING + "," +
+                COLUMN_NAME_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0," +
+                COLUMN_NAME_CHECKPOINT + " INTEGER NOT NULL DEFAULT 0" +
+            ")";
+
+        private static void create(SQLiteDatabase db) {
+            db.execSQL(SERVICE_JOB_TABLE_CREATE);
+        }
+
+        // Prevent instantiation.
+        private ServiceJob() { throw new AssertionError("Non-instantiable class"); }
+    }
+
 }
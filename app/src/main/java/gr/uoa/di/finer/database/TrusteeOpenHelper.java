@@ -140,12 +140,24 @@ public class TrusteeOpenHelper extends SQLiteOpenHelper {
     /*
      * Remember to increment the database version number if the database schema is changed.
      */
-    private static final int DATABASE_VERSION = 1;
+    // 2: ElectionMetrics, 3: ServiceJob, 4: shards, 5: tally
+    private static final int DATABASE_VERSION = 5;
 
-    private static final int BUSY_TIMEOUT_MILLIS = 1_000 * 60 * 2;              // 2 minutes
+    static final int BUSY_TIMEOUT_MILLIS = 1_000 * 60 * 2;              // 2 minutes
 
     public TrusteeOpenHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Used by subclasses for the other databases of the application, which share the version
+     * (and, thus, the upgrades) of the main database.
+     *
+     * @param context the context used to open or create the database
+     * @param name the name of the database file
+     */
+    protected TrusteeOpenHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
     }
 
 
@@ -227,12 +239,11 @@ public class TrusteeOpenHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        Log.w(TAG, "Upgrading database " + DATABASE_NAME + " from version " + oldVersion + " to " +
-                newVersion + ", which will destroy all old data");
-        TrusteeContract.upgrade(db);
+        Log.i(TAG, "Upgrading database " + DATABASE_NAME + " from version " + oldVersion + " to " +
+                newVersion);
+        TrusteeContract.upgrade(db, oldVersion);
         Log.i(TAG, "Upgraded database");
-        db.execSQL("VACUUM");
-        Log.d(TAG, "Vacuumed database");
+        // No VACUUM, since it cannot run in the transaction of the upgrade.
         db.execSQL("ANALYZE");
         Log.d(TAG, "Analyzed database");
     }
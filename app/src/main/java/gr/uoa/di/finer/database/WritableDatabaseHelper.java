@@ -1,6 +1,7 @@
 package gr.uoa.di.finer.database;
 
 import android.content.ContentValues;
+import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
@@ -10,9 +11,13 @@ import android.support.annotation.WorkerThread;
 import android.util.Log;
 
 import gr.uoa.di.finer.BuildConfig;
+import gr.uoa.di.finer.LatencyHistogram;
 import gr.uoa.di.finer.database.TrusteeContract.BallotPart;
 import gr.uoa.di.finer.database.TrusteeContract.Election;
 import gr.uoa.di.finer.database.TrusteeContract.ElectionDynamicData;
+import gr.uoa.di.finer.database.TrusteeContract.ElectionMetrics;
+import gr.uoa.di.finer.database.TrusteeContract.ServiceJob;
+import gr.uoa.di.finer.service.JobStore;
 import gr.uoa.di.finer.service.StoreException;
 import gr.uoa.di.finer.service.WritableDataStore;
 
@@ -47,7 +52,8 @@ import gr.uoa.di.finer.service.WritableDataStore;
  * @author Vasilis Poulimenos
  */
 @WorkerThread
-public class WritableDatabaseHelper extends ReadableDatabaseHelper implements WritableDataStore {
+public class WritableDatabaseHelper extends ReadableDatabaseHelper
+        implements WritableDataStore, JobStore, BallotSink {
 
     private static final String TAG = WritableDatabaseHelper.class.getName();
 
@@ -55,6 +61,18 @@ public class WritableDatabaseHelper extends ReadableDatabaseHelper implements Wr
     private static final String INSERT_BALLOT_ERROR_MSG = "Failed to insert ballot";
     private static final String INSERT_DECOMMITMENT_BUNDLE_ERROR_MSG =
             "Failed to insert decommitment bundle";
+    private static final String INSERT_METRICS_ERROR_MSG = "Failed to insert metrics";
+    private static final String INSERT_JOB_ERROR_MSG = "Failed to insert job";
+
+    static final String INSERT_BALLOT_STRING = String.format(
+        "INSERT INTO %s (%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?)",
+        BallotPart.TABLE_NAME,
+        BallotPart.COLUMN_NAME_ELECTION_ID,
+        BallotPart.COLUMN_NAME_SERIAL_NO,
+        BallotPart.COLUMN_NAME_PART,
+        BallotPart.COLUMN_NAME_VOTE_CODE,
+        BallotPart.COLUMN_NAME_DECOMMITMENT
+    );
 
 
     private final SQLiteStatement insertElectionStmt = db.compileStatement(
@@ -69,16 +87,13 @@ public class WritableDatabaseHelper extends ReadableDatabaseHelper implements Wr
             Election.COLUMN_NAME_STATUS)
     );
 
-    private final SQLiteStatement insertBallotStmt = db.compileStatement(
-        String.format(
-            "INSERT INTO %s (%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?)",
-            BallotPart.TABLE_NAME,
-            BallotPart.COLUMN_NAME_ELECTION_ID,
-            BallotPart.COLUMN_NAME_SERIAL_NO,
-            BallotPart.COLUMN_NAME_PART,
-            BallotPart.COLUMN_NAME_VOTE_CODE,
-            BallotPart.COLUMN_NAME_DECOMMITMENT)
-    );
+    private final SQLiteStatement insertBallotStmt = db.compileStatement(INSERT_BALLOT_STRING);
+
+    /*
+     * The latencies of the ballot inserts or null unless latency recording is enabled.
+     */
+    private final LatencyHistogram insertLatency =
+            LatencyHistogram.ENABLED ? new LatencyHistogram() : null;
 
     private final SQLiteStatement insertDecommitmentBundleStmt = db.compileStatement(
         String.format(
@@ -120,6 +135,16 @@ public class WritableDatabaseHelper extends ReadableDatabaseHelper implements Wr
     }
 
 
+    /**
+     * Returns the latencies of {@link #saveBallot} calls.
+     *
+     * @return the histogram or null if latency recording is disabled
+     */
+    public LatencyHistogram getInsertLatency() {
+        return insertLatency;
+    }
+
+
     @Override
     public void close() {
         if (!isClosed()) {
@@ -196,6 +221,38 @@ public class WritableDatabaseHelper extends ReadableDatabaseHelper implements Wr
         }
     }
 
+    /**
+     *
+     * @param electionId
+     * @param tally
+     * @throws SQLiteStoreException if the election has no decommitment bundle
+     * @throws SQLiteStoreFullException
+     */
+    @Override
+    public void saveTally(String electionId, String tally) throws StoreException {
+        final ContentValues values;
+        final int rows;
+
+        checkNotClosed();
+        values = new ContentValues();
+        values.put(ElectionDynamicData.COLUMN_NAME_TALLY, tally);
+
+        try {
+            rows = db.update(
+                    ElectionDynamicData.TABLE_NAME,
+                    values,
+                    ElectionDynamicData.COLUMN_NAME_ELECTION_ID + " = ?",
+                    new String[] { electionId });
+        } catch (SQLiteFullException e) {
+            throw new SQLiteStoreFullException(e);
+        } catch (SQLException e) {
+            throw new SQLiteStoreException("Saving tally failed", e);
+        }
+        if (rows == 0) {
+            throw new SQLiteStoreException("Saving tally failed: no decommitment bundle");
+        }
+    }
+
     /**
      *
      * @param electionId
@@ -245,6 +302,7 @@ public class WritableDatabaseHelper extends ReadableDatabaseHelper implements Wr
         insertBallotStmt.bindString(4, voteCode);
         insertBallotStmt.bindString(5, decommitment);
 
+        final long start = LatencyHistogram.ENABLED ? System.nanoTime() : 0;
         try {
             if (insertBallotStmt.executeInsert() == -1) {
                 throw new SQLiteStoreException(INSERT_BALLOT_ERROR_MSG);
@@ -253,6 +311,10 @@ public class WritableDatabaseHelper extends ReadableDatabaseHelper implements Wr
             throw new SQLiteStoreFullException(e);
         } catch (SQLException e) {
             throw new SQLiteStoreException(INSERT_BALLOT_ERROR_MSG, e);
+        } finally {
+            if (LatencyHistogram.ENABLED) {
+                insertLatency.record(System.nanoTime() - start);
+            }
         }
     }
 
@@ -281,6 +343,215 @@ public class WritableDatabaseHelper extends ReadableDatabaseHelper implements Wr
         }
     }
 
+    /**
+     *
+     * @param electionId
+     * @param task
+     * @param metrics
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    @Override
+    public void saveMetrics(String electionId, String task, String metrics) throws StoreException {
+        final ContentValues values;
+
+        checkNotClosed();
+        values = new ContentValues();
+        values.put(ElectionMetrics.COLUMN_NAME_ELECTION_ID, electionId);
+        values.put(ElectionMetrics.COLUMN_NAME_TASK, task);
+        values.put(ElectionMetrics.COLUMN_NAME_METRICS, metrics);
+
+        try {
+            // Keep only the most recent run of each task.
+            if (db.insertWithOnConflict(ElectionMetrics.TABLE_NAME, null, values,
+                                        SQLiteDatabase.CONFLICT_REPLACE) == -1) {
+                throw new SQLiteStoreException(INSERT_METRICS_ERROR_MSG);
+            }
+        } catch (SQLiteFullException e) {
+            throw new SQLiteStoreFullException(e);
+        } catch (SQLException e) {
+            throw new SQLiteStoreException(INSERT_METRICS_ERROR_MSG, e);
+        }
+    }
+
+    private static final String START_JOB_STRING = String.format(
+        "UPDATE %s SET %s = %d, %s = %s + 1 WHERE %s = ?",
+        ServiceJob.TABLE_NAME,
+        ServiceJob.COLUMN_NAME_STATE, ServiceJob.STATE_RUNNING,
+        ServiceJob.COLUMN_NAME_ATTEMPTS, ServiceJob.COLUMN_NAME_ATTEMPTS,
+        ServiceJob.COLUMN_NAME_JOB_ID
+    );
+
+    // Jobs about all elections have a NULL election ID, which cannot be bound.
+    private static String jobSelection(String electionId) {
+        return ServiceJob.COLUMN_NAME_ACTION + " = ? AND " + ServiceJob.COLUMN_NAME_ELECTION_ID
+                + (electionId == null ? " IS NULL" : " = ?");
+    }
+
+    private static String[] jobSelectionArgs(String action, String electionId) {
+        return electionId == null
+                ? new String[] { action }
+                : new String[] { action, electionId };
+    }
+
+    /**
+     *
+     * @param action
+     * @param electionId
+     * @param data
+     * @return
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    @Override
+    public long addJob(String action, String electionId, String data) throws StoreException {
+        final ContentValues values;
+
+        checkNotClosed();
+        values = new ContentValues();
+        values.put(ServiceJob.COLUMN_NAME_ACTION, action);
+        values.put(ServiceJob.COLUMN_NAME_ELECTION_ID, electionId);
+        values.put(ServiceJob.COLUMN_NAME_DATA, data);
+
+        beginTransaction();
+        try {
+            db.delete(ServiceJob.TABLE_NAME, jobSelection(electionId),
+                      jobSelectionArgs(action, electionId));
+            final long jobId = db.insert(ServiceJob.TABLE_NAME, null, values);
+            if (jobId == -1) {
+                throw new SQLiteStoreException(INSERT_JOB_ERROR_MSG);
+            }
+            setTransactionSuccessful();
+            return jobId;
+        } catch (SQLiteFullException e) {
+            throw new SQLiteStoreFullException(e);
+        } catch (SQLException e) {
+            throw new SQLiteStoreException(INSERT_JOB_ERROR_MSG, e);
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     *
+     * @param action
+     * @param electionId
+     * @return
+     * @throws SQLiteStoreException
+     */
+    @Override
+    public boolean hasJob(String action, String electionId) throws StoreException {
+        checkNotClosed();
+        try {
+            final Cursor cursor = db.query(
+                    ServiceJob.TABLE_NAME,
+                    new String[] { ServiceJob.COLUMN_NAME_JOB_ID },
+                    jobSelection(electionId),
+                    jobSelectionArgs(action, electionId),
+                    null, null, null);              // No GROUP BY, HAVING or ORDER BY clauses.
+            try {
+                return cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException e) {
+            throw new SQLiteStoreException("Failed to retrieve job", e);
+        }
+    }
+
+    /**
+     *
+     * @return
+     * @throws SQLiteStoreException
+     */
+    @Override
+    public Cursor getUnfinishedJobs() throws StoreException {
+        checkNotClosed();
+        try {
+            return db.query(
+                    ServiceJob.TABLE_NAME,
+                    new String[] {
+                            ServiceJob.COLUMN_NAME_JOB_ID,
+                            ServiceJob.COLUMN_NAME_ACTION,
+                            ServiceJob.COLUMN_NAME_ELECTION_ID,
+                            ServiceJob.COLUMN_NAME_DATA,
+                            ServiceJob.COLUMN_NAME_ATTEMPTS,
+                            ServiceJob.COLUMN_NAME_CHECKPOINT },
+                    ServiceJob.COLUMN_NAME_STATE + " != " + ServiceJob.STATE_DONE,
+                    null,
+                    null, null,                     // No GROUP BY or HAVING clauses.
+                    ServiceJob.COLUMN_NAME_JOB_ID);
+        } catch (SQLException e) {
+            throw new SQLiteStoreException("Failed to retrieve jobs", e);
+        }
+    }
+
+    /**
+     *
+     * @param jobId
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    @Override
+    public void startJob(long jobId) throws StoreException {
+        checkNotClosed();
+        try {
+            db.execSQL(START_JOB_STRING, new Object[] { jobId });
+        } catch (SQLiteFullException e) {
+            throw new SQLiteStoreFullException(e);
+        } catch (SQLException e) {
+            throw new SQLiteStoreException("Saving job state failed", e);
+        }
+    }
+
+    /**
+     *
+     * @param jobId
+     * @param checkpoint
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    @Override
+    public void saveJobCheckpoint(long jobId, long checkpoint) throws StoreException {
+        final ContentValues values;
+
+        checkNotClosed();
+        values = new ContentValues();
+        values.put(ServiceJob.COLUMN_NAME_CHECKPOINT, checkpoint);
+        updateJob(jobId, values, "Saving job checkpoint failed");
+    }
+
+    /**
+     *
+     * @param jobId
+     * @throws SQLiteStoreException
+     * @throws SQLiteStoreFullException
+     */
+    @Override
+    public void finishJob(long jobId) throws StoreException {
+        final ContentValues values;
+
+        checkNotClosed();
+        values = new ContentValues();
+        values.put(ServiceJob.COLUMN_NAME_STATE, ServiceJob.STATE_DONE);
+        updateJob(jobId, values, "Saving job state failed");
+    }
+
+    private void updateJob(long jobId, ContentValues values, String errorMsg)
+            throws StoreException {
+        try {
+            db.update(
+                    ServiceJob.TABLE_NAME,
+                    values,
+                    ServiceJob.COLUMN_NAME_JOB_ID + " = ?",
+                    new String[] { Long.toString(jobId) });
+        } catch (SQLiteFullException e) {
+            throw new SQLiteStoreFullException(e);
+        } catch (SQLException e) {
+            throw new SQLiteStoreException(errorMsg, e);
+        }
+    }
+
     /**
      *
      * @param electionId
@@ -305,11 +576,11 @@ public class WritableDatabaseHelper extends ReadableDatabaseHelper implements Wr
         }
     }
 
-    private static final int LIMIT = 10000;
+    static final int LIMIT = 10000;
 
     // SQLite in Android does not support the LIMIT clause in DELETE statements.
     // https://www.sqlite.org/lang_delete.html
-    private static final String DELETE_N_BALLOTS_WHERE_CLAUSE = String.format(
+    static final String DELETE_N_BALLOTS_WHERE_CLAUSE = String.format(
         "%2$s IN (" +
             "SELECT %2$s " +
             "FROM %1$s " +
@@ -6,9 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.io.Writer;
 import java.net.HttpURLConnection;
 
 import gr.uoa.di.finer.URLConnection;
@@ -47,30 +45,30 @@ public class HTTPConnection implements URLConnection {
      * @return
      * @throws IOException
      */
+    @Override
     public OutputStream getOutputStream() throws IOException {
         return con.getOutputStream();
     }
 
     /**
-     * The input stream returned is NOT buffered.
      *
      * @return
      * @throws IOException
      */
     @Override
-    public Reader getInputStreamReader() throws IOException {
-        return new InputStreamReader(getInputStream());
+    public int getResponseCode() throws IOException {
+        return con.getResponseCode();
     }
 
     /**
-     * The output stream returned is NOT buffered.
+     * The input stream returned is NOT buffered.
      *
      * @return
      * @throws IOException
      */
     @Override
-    public Writer getOutputStreamWriter() throws IOException {
-        return new OutputStreamWriter(getOutputStream());
+    public Reader getInputStreamReader() throws IOException {
+        return new InputStreamReader(getInputStream());
     }
 
     @Override
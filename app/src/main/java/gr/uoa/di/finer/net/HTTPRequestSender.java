@@ -4,6 +4,7 @@ import android.support.annotation.WorkerThread;
 import android.util.Log;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -26,12 +27,26 @@ public class HTTPRequestSender extends RequestSender {
 
     private static final int CONNECT_TIMEOUT_MILLIS = 1_000 * 30;           // 30 seconds
     private static final int READ_TIMEOUT_MILLIS = 1_000 * 60;              // 1 minute
+    private static final int CHUNK_LENGTH = 1024 * 8;                       // 8 KiB
 
     private final URL url;
+    private final RetryPolicy retryPolicy;
 
     public HTTPRequestSender(String urlString) throws MalformedURLException {
+        this(urlString, null);
+    }
+
+    /**
+     *
+     * @param urlString
+     * @param retryPolicy the policy used to retry failed connection attempts or null for none
+     * @throws MalformedURLException
+     */
+    public HTTPRequestSender(String urlString, RetryPolicy retryPolicy)
+            throws MalformedURLException {
         super(urlString);
         this.url = new URL(urlString);
+        this.retryPolicy = retryPolicy;
     }
 
     private HttpURLConnection openConnection() throws IOException {
@@ -48,6 +63,39 @@ public class HTTPRequestSender extends RequestSender {
     }
 
     /**
+     * Opens and connects a connection, retrying according to the retry policy (if any).
+     *
+     * @return a connected connection
+     * @throws IOException if the connection failed and should not be retried any more
+     * @throws InterruptedIOException if the current thread was interrupted while backing off
+     */
+    private HttpURLConnection connect() throws IOException {
+        for (;;) {
+            HttpURLConnection connection = openConnection();
+            try {
+                connection.connect();
+                // Callers reset the retry policy once they make progress. A connection is none.
+                return connection;
+            } catch (IOException e) {
+                connection.disconnect();
+                if (retryPolicy == null || !retryPolicy.shouldRetry(e)) {
+                    throw e;
+                }
+                Log.w(TAG, "Connection to " + urlString + " failed - " + e.toString());
+                try {
+                    retryPolicy.backoff();
+                } catch (InterruptedException ie) {
+                    // Restore the interrupted status for the callers up the stack.
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while retrying " + urlString);
+                }
+            }
+        }
+    }
+
+    /**
+     * If a retry policy was given upon construction, the connection is established eagerly
+     * and failed attempts are retried as the policy dictates.
      *
      * @return
      * @throws IOException
@@ -55,22 +103,36 @@ public class HTTPRequestSender extends RequestSender {
      */
     @Override
     public HTTPConnection sendGetRequest() throws IOException {
-        HttpURLConnection connection = openConnection();
+        HttpURLConnection connection = (retryPolicy != null) ? connect() : openConnection();
         if (BuildConfig.DEBUG) Log.d(TAG, "Sending GET request to " + urlString);
         return new HTTPConnection(connection);
     }
 
     /**
+     * Without a streaming mode, HttpURLConnection buffers the whole body in memory.
+     * A fixed-length mode is used when the length is known (and fits in an int, since the long
+     * overload requires API 19). Otherwise, the body is sent in chunks.
      *
+     * @param contentLength the exact length of the body in bytes or {@link #UNKNOWN_LENGTH}
      * @return
      * @throws IOException
      */
     @Override
-    public HTTPConnection sendPostRequest() throws IOException {
+    public HTTPConnection sendStreamingPostRequest(long contentLength) throws IOException {
         HttpURLConnection connection = openConnection();
         connection.setDoOutput(true);
-        //connection.setChunkedStreamingMode(256);
-        if (BuildConfig.DEBUG) Log.d(TAG, "Sending POST request to " + urlString);
+        if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+            connection.setFixedLengthStreamingMode((int) contentLength);
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, String.format("Set fixed length streaming mode (%,d bytes)", contentLength));
+            }
+        } else {
+            connection.setChunkedStreamingMode(CHUNK_LENGTH);
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, String.format("Set chunked streaming mode (%,d bytes)", CHUNK_LENGTH));
+            }
+        }
+        if (BuildConfig.DEBUG) Log.d(TAG, "Sending streaming POST request to " + urlString);
         return new HTTPConnection(connection);
     }
 
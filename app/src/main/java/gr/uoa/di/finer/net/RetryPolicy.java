@@ -0,0 +1,151 @@
+package gr.uoa.di.finer.net;
+
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownServiceException;
+import java.util.Random;
+
+import gr.uoa.di.finer.BuildConfig;
+
+/**
+ * A retry policy for network requests, based on exponential backoff with full jitter.
+ * <p>
+ * The delay before the n-th consecutive retry is a random value in the range
+ * [0, min(maxDelay, initialDelay * 2^(n-1))]. Jitter prevents many clients that failed at the
+ * same time (e.g. because the server went down) from retrying in lockstep.
+ * <p>
+ * Two limits apply:
+ * <ul>
+ * <li>The maximum number of consecutive retries. The count is reset with {@link #reset()},
+ *     which clients should call every time they make progress (e.g. after parsing some data).</li>
+ * <li>The retry budget, which is the total number of retries allowed over the whole lifetime of
+ *     the policy. This is never reset, so that a flaky server cannot keep us busy forever.</li>
+ * </ul>
+ * See <a href="https://www.awsarchitectureblog.com/2015/03/backoff.html">
+ *          Exponential Backoff And Jitter
+ *     </a>
+ * <p>
+ * Instances of this class are NOT thread-safe. Use a new policy for each task.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+public class RetryPolicy {
+
+    private static final String TAG = RetryPolicy.class.getName();
+
+    private static final int DEFAULT_MAX_RETRIES = 5;
+    private static final int DEFAULT_RETRY_BUDGET = 20;
+    private static final long DEFAULT_INITIAL_DELAY_MILLIS = 1_000;             // 1 second
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 1_000 * 60;            // 1 minute
+
+    private final int maxRetries;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+    private int retries;
+    private int budget;
+
+    /**
+     * Constructs a retry policy with the default limits.
+     */
+    public RetryPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_RETRY_BUDGET,
+             DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructs a retry policy.
+     *
+     * @param maxRetries the maximum number of consecutive retries
+     * @param retryBudget the maximum number of retries over the lifetime of this policy
+     * @param initialDelayMillis the upper bound of the delay before the first retry
+     * @param maxDelayMillis the upper bound of the delay before any retry
+     * @throws IllegalArgumentException if any of the arguments is negative
+     */
+    public RetryPolicy(int maxRetries, int retryBudget, long initialDelayMillis, long maxDelayMillis) {
+        if (maxRetries < 0 || retryBudget < 0 || initialDelayMillis < 0 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Negative retry policy limit");
+        }
+        this.maxRetries = maxRetries;
+        this.budget = retryBudget;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = new Random();
+        this.retries = 0;
+    }
+
+    /**
+     * Tells if a failed request should be retried.
+     * Only transient errors (i.e. not malformed URLs, protocol errors etc.) are retried.
+     *
+     * @param e the exception that caused the request to fail
+     * @return {@code true} if the request can be retried
+     */
+    public boolean shouldRetry(IOException e) {
+        if (e instanceof MalformedURLException || e instanceof ProtocolException ||
+                e instanceof UnknownServiceException) {
+            return false;
+        }
+        return shouldRetryRead(e);
+    }
+
+    /**
+     * Tells if a request whose response failed while it was being read should be retried.
+     * The request itself was accepted then, so every error is transient, protocol errors included:
+     * OkHttp, which backs HttpURLConnection on Android, reports a body that ends early as a
+     * {@link ProtocolException} ("unexpected end of stream").
+     *
+     * @param e the exception that caused the response to fail
+     * @return {@code true} if the request can be retried
+     */
+    public boolean shouldRetryRead(IOException e) {
+        // Thread interruption is reported as InterruptedIOException (but timeouts are fine).
+        if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+            return false;
+        }
+        return retries < maxRetries && budget > 0;
+    }
+
+    /**
+     * Waits for the appropriate amount of time before the next retry and records the retry.
+     * Call this only if {@link #shouldRetry} returned {@code true}.
+     *
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public void backoff() throws InterruptedException {
+        // Cap the shift to avoid overflow. The delay is capped to maxDelayMillis anyway.
+        final long ceiling = Math.min(maxDelayMillis, initialDelayMillis << Math.min(retries, 20));
+        final long delay = (long) (random.nextDouble() * ceiling);
+
+        ++retries;
+        --budget;
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, String.format("Retry %d (budget %d) in %,d ms", retries, budget, delay));
+        }
+        Thread.sleep(delay);
+    }
+
+    /**
+     * Resets the number of consecutive retries, but not the retry budget.
+     * Clients should call this when a retried request makes progress.
+     */
+    public void reset() {
+        retries = 0;
+    }
+
+    /**
+     * Returns the number of retries that remain in the budget.
+     * @return the remaining retry budget
+     */
+    public int getRemainingBudget() {
+        return budget;
+    }
+
+}
@@ -28,12 +28,13 @@ public class SimpleResponseParser implements ResponseParser {
     private static final int CAPACITY_ESTIMATE = 64;
     private static final int MAX_STRING_SIZE = 2048;
 
-    private final Reader reader;
+    private Reader reader;
     private final Cryptosystem cryptosystem;
     private final ReadableDataStore store;
     private final String electionId;
     private final StringBuilder builder;
     private long ballotCount;
+    private long lineCount;
     private int lookahead;
 
     /**
@@ -51,6 +52,7 @@ public class SimpleResponseParser implements ResponseParser {
         this.electionId = electionId;
         this.builder = new StringBuilder(CAPACITY_ESTIMATE);
         this.ballotCount = 0;
+        this.lineCount = 0;
     }
 
     private boolean isAsciiDigit(int ch) {
@@ -73,11 +75,16 @@ public class SimpleResponseParser implements ResponseParser {
         }
     }
 
+    // A line that is cut short is a failed read, which is resumed, rather than a malformed line.
+    private java.io.EOFException newTruncatedLineException() {
+        return new java.io.EOFException("Stream ended in the middle of line " + (lineCount + 1));
+    }
+
     private String parseSerialNo() throws IOException, ParseException {
         builder.setLength(0);
         while (lookahead != ' ') {
             if (lookahead == -1) {
-                throw new EOFException();
+                throw newTruncatedLineException();
             }
             checkSerialNoCh(lookahead);
             builder.append((char) lookahead);
@@ -96,7 +103,7 @@ public class SimpleResponseParser implements ResponseParser {
         builder.setLength(0);
         while (lookahead != '\n') {
             if (lookahead == -1) {
-                throw new EOFException();
+                throw newTruncatedLineException();
             }
             checkVoteCodeCh(lookahead);
             builder.append((char) lookahead);
@@ -114,8 +121,7 @@ public class SimpleResponseParser implements ResponseParser {
     /**
      *
      * @return
-     * @throws IOException
-     * @throws EOFException
+     * @throws IOException if the stream fails or ends in the middle of the line
      * @throws TooLongTokenException
      * @throws StoreException
      */
@@ -147,6 +153,7 @@ public class SimpleResponseParser implements ResponseParser {
                 return false;
             }
             decommitment = parseLine();
+            ++lineCount;
         } while (decommitment == null);
         cryptosystem.add(decommitment);
         ++ballotCount;
@@ -162,4 +169,25 @@ public class SimpleResponseParser implements ResponseParser {
         return ballotCount;
     }
 
+    /**
+     * Returns the number of lines (valid ballots or not) that have been fully parsed so far.
+     * @return the number of parsed lines
+     */
+    @Override
+    public long getParsedLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Continues parsing from another stream. The old stream is not closed.
+     * Since a line is only counted (and its ballot added to the cryptosystem) once it has been
+     * fully parsed, any partially parsed line is simply parsed again from the new stream.
+     *
+     * @param reader the stream that starts at line {@link #getParsedLineCount()}
+     */
+    @Override
+    public void resume(Reader reader) {
+        this.reader = reader;
+    }
+
 }
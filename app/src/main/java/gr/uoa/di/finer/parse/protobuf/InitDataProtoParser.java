@@ -2,6 +2,7 @@ package gr.uoa.di.finer.parse.protobuf;
 
 import android.util.Log;
 
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import java.io.IOException;
@@ -116,6 +117,49 @@ public class InitDataProtoParser implements InitDataParser {
         return true;
     }
 
+    /**
+     * Skips the next ballot. Only its length is decoded, so this is much faster than parsing.
+     *
+     * @return true if a ballot was skipped or false if the end of the stream was reached
+     * @throws IOException
+     * @throws ParseException if the Protobuf file format is incorrect
+     * @throws TruncatedFileException if the file is incomplete
+     */
+    @Override
+    public boolean skipBallot() throws IOException, ParseException {
+        final int firstByte = input.read();
+        // EOF
+        if (firstByte == -1) {
+            if (ballotCount == 0) {
+                throw new TruncatedFileException("No ballots in data file");
+            }
+            return false;
+        }
+        try {
+            long remaining = CodedInputStream.readRawVarint32(firstByte, input);
+            if (remaining < 0) {
+                throw new InvalidProtocolBufferException("Negative ballot length");
+            }
+            while (remaining > 0) {
+                final long skipped = input.skip(remaining);
+                if (skipped > 0) {
+                    remaining -= skipped;
+                } else if (input.read() != -1) {
+                    // Some streams only skip when data is buffered.
+                    --remaining;
+                } else {
+                    throw new TruncatedFileException("Truncated ballot in data file");
+                }
+            }
+        } catch (InvalidProtocolBufferException e) {
+            final String msg = "Protocol Buffer invalid ballot length";
+            Log.e(TAG, msg, e);
+            throw new ProtobufParseException(msg, e);
+        }
+        ++ballotCount;
+        return true;
+    }
+
     /**
      * Returns the number of ballots that have been parsed so far.
      * @return the number of parsed ballots
@@ -0,0 +1,296 @@
+package gr.uoa.di.finer.service;
+
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URLEncoder;
+
+import gr.uoa.di.finer.BuildConfig;
+import gr.uoa.di.finer.ReadableDataStore;
+import gr.uoa.di.finer.URLConnection;
+import gr.uoa.di.finer.net.HTTPRequestSender;
+import gr.uoa.di.finer.net.RetryPolicy;
+import gr.uoa.di.finer.parse.SimpleResponseParser;
+
+/**
+ * A client of the Audit Bulletin Board (ABB) of an election.
+ * This contains the network side of election verification, so that it can be exercised
+ * without the service (e.g. against a stand-in server on the JVM).
+ * <p>
+ * Instances of this class are NOT thread-safe. Use a new client for each task.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+class AbbClient {
+
+    private static final String TAG = AbbClient.class.getName();
+
+    // TODO: Decide on server API.
+    private static final String URL_ENCODING = "UTF-8";
+    private static final String TOTAL_BALLOTS_URL_SUFFIX = "gettotal/?%s";
+    private static final String RESPONSE_URL_SUFFIX = "?id=%s&start=%s&stop=%s";
+    private static final String RESULT_URL_SUFFIX = "post/?%s";
+
+    /**
+     * A listener for the progress of the response parsing.
+     */
+    interface ProgressListener {
+        /**
+         * Called after every batch of ballots parsed.
+         *
+         * @param count the number of valid ballots parsed so far
+         */
+        void onProgress(long count);
+    }
+
+    private final String baseAbbUrl;
+    private final String electionId;
+    private final RetryPolicy retryPolicy;
+    private final TaskMetrics metrics;
+
+    /**
+     *
+     * @param baseAbbUrl the base URL of the ABB
+     * @param electionId the ID of the election
+     * @param retryPolicy the policy used for all the requests of this client
+     */
+    AbbClient(String baseAbbUrl, String electionId, RetryPolicy retryPolicy) {
+        this(baseAbbUrl, electionId, retryPolicy, new TaskMetrics("abb"));
+    }
+
+    /**
+     *
+     * @param baseAbbUrl the base URL of the ABB
+     * @param electionId the ID of the election
+     * @param retryPolicy the policy used for all the requests of this client
+     * @param metrics the metrics that the connections and the response reads are recorded to
+     */
+    AbbClient(String baseAbbUrl, String electionId, RetryPolicy retryPolicy,
+              TaskMetrics metrics) {
+        this.baseAbbUrl = baseAbbUrl;
+        this.electionId = electionId;
+        this.retryPolicy = retryPolicy;
+        this.metrics = metrics;
+    }
+
+    private String makeTotalVotedBallotsUrl() throws UnsupportedEncodingException {
+        return baseAbbUrl + String.format(TOTAL_BALLOTS_URL_SUFFIX,
+                URLEncoder.encode(electionId, URL_ENCODING));
+    }
+
+    private String makeAbbResponseUrl(long start, long stop) throws UnsupportedEncodingException {
+        return baseAbbUrl + String.format(RESPONSE_URL_SUFFIX,
+                URLEncoder.encode(electionId, URL_ENCODING),
+                URLEncoder.encode(Long.toString(start), URL_ENCODING),
+                URLEncoder.encode(Long.toString(stop), URL_ENCODING));
+    }
+
+    private String makeTrusteeResultUrl() throws UnsupportedEncodingException {
+        return baseAbbUrl + String.format(RESULT_URL_SUFFIX,
+                URLEncoder.encode(electionId, URL_ENCODING));
+    }
+
+    private URLConnection connect(String url) throws IOException {
+        final TaskTracer tracer = metrics.getTracer();
+        final long start = tracer.begin(TaskTracer.SPAN_CONNECT);
+        try {
+            return new HTTPRequestSender(url, retryPolicy).sendGetRequest();
+        } finally {
+            metrics.addConnect(tracer.end(TaskTracer.SPAN_CONNECT, start));
+        }
+    }
+
+    // The time spent backing off is counted as connection time.
+    private URLConnection reconnect(String url) throws IOException, InterruptedException {
+        final TaskTracer tracer = metrics.getTracer();
+        final long start = tracer.begin(TaskTracer.SPAN_CONNECT);
+        try {
+            retryPolicy.backoff();
+            return new HTTPRequestSender(url, retryPolicy).sendGetRequest();
+        } finally {
+            metrics.addConnect(tracer.end(TaskTracer.SPAN_CONNECT, start));
+        }
+    }
+
+    // The measured reader goes below the buffer, so that only actual network reads are timed.
+    // Tests override this to inject read errors.
+    BufferedReader openReader(URLConnection connection) throws IOException {
+        return new BufferedReader(new MeasuredReader(connection.getInputStreamReader(), metrics));
+    }
+
+    private void closeResponse(URLConnection connection, Reader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing ballot connection input stream reader", e);
+            }
+        }
+        if (connection != null) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     *
+     * @return
+     * @throws MalformedURLException
+     * @throws IOException
+     */
+    long getTotalBallotCount() throws IOException {
+        URLConnection connection = null;
+        BufferedReader reader = null;
+        try {
+            connection = connect(makeTotalVotedBallotsUrl());
+            reader = openReader(connection);
+            return Long.parseLong(reader.readLine());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing ballot count connection input stream reader", e);
+                }
+            }
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Parses up to batchSize ballots in a single store transaction.
+     *
+     * @return the number of lines parsed (less than batchSize only at the end of the response)
+     */
+    private long parseBatch(ResponseParser parser, ReadableDataStore store, long batchSize)
+            throws IOException, ParseException, StoreException {
+        final TaskTracer tracer = metrics.getTracer();
+        final long transactionStart = tracer.begin(TaskTracer.SPAN_TRANSACTION);
+        try {
+            store.beginTransaction();
+            try {
+                long i;
+                final long decodeStart = tracer.begin(TaskTracer.SPAN_DECODE);
+                try {
+                    for (i = 0; i < batchSize && parser.parse(); ++i) {}
+                } finally {
+                    tracer.end(TaskTracer.SPAN_DECODE, decodeStart);
+                }
+                store.setTransactionSuccessful();
+                return i;
+            } finally {
+                store.endTransaction();
+            }
+        } finally {
+            tracer.end(TaskTracer.SPAN_TRANSACTION, transactionStart);
+        }
+    }
+
+    /**
+     * Reads the ballots in the range [0, totalCount) and adds them to the cryptosystem.
+     * Failed connections are retried and, if the ballot stream fails or ends before the last
+     * ballot, the request is sent again for the remaining ballots only, with exponential backoff
+     * in both cases. This fails only when the retry policy gives up.
+     *
+     * @param totalCount the total number of ballots
+     * @param cryptosystem the cryptosystem to add the ballot decommitments to
+     * @param store the data store used to look up the ballot decommitments
+     * @param batchSize the number of ballots parsed per store transaction
+     * @param listener the listener notified after every batch
+     * @return the number of valid ballots parsed
+     * @throws MalformedURLException
+     * @throws SocketTimeoutException
+     * @throws IOException
+     * @throws ParseException
+     * @throws StoreException
+     * @throws InterruptedException
+     */
+    long readResponses(long totalCount, Cryptosystem cryptosystem, ReadableDataStore store,
+                       long batchSize, ProgressListener listener)
+            throws IOException, ParseException, StoreException, InterruptedException {
+        URLConnection connection = null;
+        BufferedReader reader = null;
+        try {
+            final String url = makeAbbResponseUrl(0, totalCount);
+            final ResponseParser parser;
+
+            connection = connect(url);
+            reader = openReader(connection);
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Reading response from " + url);
+            }
+            parser = new SimpleResponseParser(reader, cryptosystem, store, electionId);
+
+            // Break parsing into small database transactions to increase performance.
+            // One large transaction is unlikely due to disk space needs and locking.
+            for (;;) {
+                long i;
+
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Election verification interrupted");
+                }
+                try {
+                    i = parseBatch(parser, store, batchSize);
+                    // A response that the server closed cleanly may still be short.
+                    if (i < batchSize && parser.getParsedLineCount() < totalCount) {
+                        throw new EOFException("Ballot stream ended at line "
+                                + parser.getParsedLineCount() + " of " + totalCount);
+                    }
+                } catch (IOException e) {
+                    // Any error while reading is transient, protocol errors included.
+                    if (!retryPolicy.shouldRetryRead(e)) {
+                        throw e;
+                    }
+                    // Ask only for the ballots that have not been parsed yet.
+                    final long start = parser.getParsedLineCount();
+                    final String resumeUrl = makeAbbResponseUrl(start, totalCount);
+
+                    Log.w(TAG, "Ballot stream failed at line " + start + " - " + e.toString());
+                    closeResponse(connection, reader);
+                    connection = null;
+                    reader = null;
+                    connection = reconnect(resumeUrl);
+                    reader = openReader(connection);
+                    if (BuildConfig.DEBUG) {
+                        Log.d(TAG, "Resuming response from " + resumeUrl);
+                    }
+                    parser.resume(reader);
+                    continue;
+                }
+                // Some progress was made, so the stream is healthy again.
+                retryPolicy.reset();
+                if (i < batchSize) break;
+                listener.onProgress(parser.getParsedBallotCount());
+            }
+
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Parsed ballots: " + Long.toString(parser.getParsedBallotCount()));
+            }
+            return parser.getParsedBallotCount();
+        } finally {
+            closeResponse(connection, reader);
+        }
+    }
+
+    /**
+     * The result is not retried, since posting it is not idempotent.
+     *
+     * @param decommitment the decommitment bundle
+     * @throws MalformedURLException
+     * @throws SocketTimeoutException
+     * @throws IOException
+     */
+    void postResult(String decommitment) throws IOException {
+        new HTTPRequestSender(makeTrusteeResultUrl()).postResult(decommitment);
+    }
+
+}
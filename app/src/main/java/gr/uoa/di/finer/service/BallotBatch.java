@@ -0,0 +1,107 @@
+package gr.uoa.di.finer.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ballot parts stored by one transaction of a task, to be written by a {@link BallotWriter}.
+ * A batch may also carry the checkpoint of the job of the task, which is written in the same
+ * transaction as the ballots.
+ * <p>
+ * Instances of this class are NOT thread-safe. A batch must not be modified after it has been
+ * submitted.
+ *
+ * @author Vasilis Poulimenos
+ */
+public final class BallotBatch {
+
+    /**
+     * The job ID of batches without a checkpoint.
+     */
+    public static final long NO_JOB = -1;
+
+    // The values of every ballot part, in the order of WritableDataStore#saveBallot.
+    private static final int FIELDS = 4;
+
+    private final String electionId;
+    private final List<String> values;
+    private long jobId = NO_JOB;
+    private long checkpoint;
+
+    /**
+     *
+     * @param electionId the ID of the election of the ballots
+     * @param capacity the expected number of ballot parts
+     */
+    public BallotBatch(String electionId, int capacity) {
+        this.electionId = electionId;
+        this.values = new ArrayList<>(capacity * FIELDS);
+    }
+
+    /**
+     * Adds a ballot part to this batch.
+     *
+     * @param serialNo the serial number of the ballot
+     * @param partId the part ID of the ballot
+     * @param voteCode the vote code
+     * @param decommitment the decommitment value of the ballot
+     */
+    public void add(String serialNo, String partId, String voteCode, String decommitment) {
+        values.add(serialNo);
+        values.add(partId);
+        values.add(voteCode);
+        values.add(decommitment);
+    }
+
+    /**
+     * Sets the checkpoint of a job, to be saved together with the ballots of this batch.
+     *
+     * @param jobId the ID of the job
+     * @param checkpoint the checkpoint of the job after this batch
+     */
+    public void setCheckpoint(long jobId, long checkpoint) {
+        this.jobId = jobId;
+        this.checkpoint = checkpoint;
+    }
+
+    public String getElectionId() {
+        return electionId;
+    }
+
+    /**
+     * Returns the number of ballot parts in this batch.
+     * @return the number of ballot parts
+     */
+    public int size() {
+        return values.size() / FIELDS;
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty() && jobId == NO_JOB;
+    }
+
+    public String getSerialNo(int index) {
+        return values.get(index * FIELDS);
+    }
+
+    public String getPartId(int index) {
+        return values.get(index * FIELDS + 1);
+    }
+
+    public String getVoteCode(int index) {
+        return values.get(index * FIELDS + 2);
+    }
+
+    public String getDecommitment(int index) {
+        return values.get(index * FIELDS + 3);
+    }
+
+    public long getJobId() {
+        return jobId;
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+}
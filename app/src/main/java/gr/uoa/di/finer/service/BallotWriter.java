@@ -0,0 +1,25 @@
+package gr.uoa.di.finer.service;
+
+import java.util.concurrent.Future;
+
+/**
+ * Writes ballot batches asynchronously, possibly together with the batches of other tasks.
+ * <p>
+ * Implementations must be thread-safe and must write the batches in submission order.
+ *
+ * @author Vasilis Poulimenos
+ */
+public interface BallotWriter {
+
+    /**
+     * Queues a batch to be written.
+     *
+     * @param batch the batch to write, which must not be modified afterwards
+     * @param after the future of the batch that this batch follows (from the same task) or null.
+     *      If that batch fails, this batch is not written, so that the data never has gaps.
+     * @return a future that completes when the batch is committed or fails with the
+     *      {@link StoreException} that prevented it
+     */
+    Future<Void> submit(BallotBatch batch, Future<Void> after);
+
+}
@@ -0,0 +1,254 @@
+package gr.uoa.di.finer.service;
+
+import android.database.Cursor;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A data store that hands the ballots of every transaction to a {@link BallotWriter}, instead of
+ * writing them itself. All the other calls are simply forwarded to another store.
+ * <p>
+ * A transaction only collects the ballots of one election. When it ends, its batch is submitted
+ * and the store waits for the previous batch to be written, so the caller can parse the next
+ * batch while the current one is being committed, but never runs more than one batch ahead.
+ * A failure is reported by the transaction after the failed one or by {@link #flush()}.
+ * Ballots saved outside a transaction are written directly.
+ * <p>
+ * Closing this store does NOT close the underlying store, but waits for the batches in flight.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+final class BatchingDataStore implements WritableDataStore {
+
+    private static final String TAG = BatchingDataStore.class.getName();
+
+    private final WritableDataStore store;
+    private final BallotWriter writer;
+    private final String electionId;
+    // The batch of the current transaction or null outside a transaction.
+    private BallotBatch batch;
+    private int lastBatchSize;
+    private boolean successful;
+    // The last batch submitted or null if it has been waited for.
+    private Future<Void> pending;
+
+    /**
+     *
+     * @param store the store used for everything but the ballots of transactions
+     * @param writer the writer of the ballots
+     * @param electionId the ID of the election of the ballots
+     */
+    BatchingDataStore(WritableDataStore store, BallotWriter writer, String electionId) {
+        this.store = store;
+        this.writer = writer;
+        this.electionId = electionId;
+    }
+
+    /**
+     * Saves the checkpoint of a job together with the ballots of the current transaction.
+     *
+     * @param jobId the ID of the job
+     * @param checkpoint the checkpoint of the job after this transaction
+     * @throws IllegalStateException if there is no transaction in progress
+     */
+    void setCheckpoint(long jobId, long checkpoint) {
+        if (batch == null) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        batch.setCheckpoint(jobId, checkpoint);
+    }
+
+    /**
+     * Waits until all the batches submitted have been written.
+     *
+     * @throws StoreException if a batch could not be written
+     */
+    void flush() throws StoreException {
+        final Future<Void> last = pending;
+        pending = null;
+        if (last != null) {
+            await(last);
+        }
+    }
+
+    /*
+     * Waits for a batch, even if the thread is interrupted, since the transactions that follow
+     * depend on it. The interrupt is kept for the caller to handle.
+     */
+    private static void await(Future<Void> future) throws StoreException {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof StoreException) {
+                throw (StoreException) cause;
+            }
+            throw new StoreException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void beginTransaction() throws StoreException {
+        if (batch != null) {
+            throw new IllegalStateException("Nested transactions are not supported");
+        }
+        batch = new BallotBatch(electionId, lastBatchSize);
+        successful = false;
+    }
+
+    @Override
+    public void setTransactionSuccessful() throws StoreException {
+        successful = true;
+    }
+
+    @Override
+    public void endTransaction() throws StoreException {
+        final BallotBatch finished = batch;
+        batch = null;
+        // A transaction that is not successful is rolled back, i.e. its batch is dropped.
+        if (!successful || finished.isEmpty()) {
+            return;
+        }
+        lastBatchSize = finished.size();
+        final Future<Void> previous = pending;
+        pending = writer.submit(finished, previous);
+        if (previous != null) {
+            await(previous);
+        }
+    }
+
+    @Override
+    public boolean hasElection(String electionId) throws StoreException {
+        return store.hasElection(electionId);
+    }
+
+    @Override
+    public Cursor getElection(String electionId, String[] columns) throws StoreException {
+        return store.getElection(electionId, columns);
+    }
+
+    @Override
+    public Cursor getAllElections(String[] columns) throws StoreException {
+        return store.getAllElections(columns);
+    }
+
+    @Override
+    public int getElectionStatus(String electionId) throws StoreException {
+        return store.getElectionStatus(electionId);
+    }
+
+    @Override
+    public String getElectionAbb(String electionId) throws StoreException {
+        return store.getElectionAbb(electionId);
+    }
+
+    @Override
+    public String getElectionDecommitmentKey(String electionId) throws StoreException {
+        return store.getElectionDecommitmentKey(electionId);
+    }
+
+    @Override
+    public String getElectionDecommitmentBundle(String electionId) throws StoreException {
+        return store.getElectionDecommitmentBundle(electionId);
+    }
+
+    @Override
+    public String getBallotDecommitment(String electionId, String serialNumber, String voteCode)
+            throws StoreException {
+        return store.getBallotDecommitment(electionId, serialNumber, voteCode);
+    }
+
+    @Override
+    public Cursor getElectionMetrics(String electionId) throws StoreException {
+        return store.getElectionMetrics(electionId);
+    }
+
+    @Override
+    public void createElection(
+            String electionId, String question, long startTime, long endTime, String url, int status)
+            throws StoreException {
+        store.createElection(electionId, question, startTime, endTime, url, status);
+    }
+
+    @Override
+    public void setElectionStatus(String electionId, int status) throws StoreException {
+        store.setElectionStatus(electionId, status);
+    }
+
+    @Override
+    public void saveKey(String electionId, String decommitmentKey) throws StoreException {
+        store.saveKey(electionId, decommitmentKey);
+    }
+
+    @Override
+    public void saveBallot(
+            String electionId, String serialNo, String partId, String voteCode, String decommitment)
+            throws StoreException {
+        if (batch == null) {
+            store.saveBallot(electionId, serialNo, partId, voteCode, decommitment);
+            return;
+        }
+        if (!this.electionId.equals(electionId)) {
+            throw new IllegalArgumentException("Ballot of another election: " + electionId);
+        }
+        batch.add(serialNo, partId, voteCode, decommitment);
+    }
+
+    @Override
+    public void saveDecommitmentBundle(String electionId, String decommitmentBundle)
+            throws StoreException {
+        store.saveDecommitmentBundle(electionId, decommitmentBundle);
+    }
+
+    @Override
+    public void saveTally(String electionId, String tally) throws StoreException {
+        store.saveTally(electionId, tally);
+    }
+
+    @Override
+    public void saveMetrics(String electionId, String task, String metrics) throws StoreException {
+        store.saveMetrics(electionId, task, metrics);
+    }
+
+    @Override
+    public void eraseElection(String electionId) throws StoreException {
+        store.eraseElection(electionId);
+    }
+
+    @Override
+    public void eraseBallots(String electionId) throws StoreException {
+        store.eraseBallots(electionId);
+    }
+
+    @Override
+    public void clear() throws StoreException {
+        store.clear();
+    }
+
+    @Override
+    public void close() {
+        // The underlying store is owned by the task. Do not leave writes behind, though.
+        try {
+            flush();
+        } catch (StoreException e) {
+            Log.w(TAG, "Ballot batch failed", e);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package gr.uoa.di.finer.service;
+
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.IOException;
+
+import gr.uoa.di.finer.ElectionStatus;
+import gr.uoa.di.finer.ReadableDataStore;
+import gr.uoa.di.finer.crypto.JNICryptosystem;
+import gr.uoa.di.finer.crypto.JavaCryptosystem;
+
+/**
+ * The results of a verified election: the decommitment bundle, which is posted to the ABB, and
+ * the tally that is computed from it.
+ * <p>
+ * An election is verified as soon as its bundle is saved, before the bundle is posted. So, an
+ * election whose post failed can still be tallied, and verifying it again only retries the post.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+final class ElectionResults {
+
+    private static final String TAG = ElectionResults.class.getName();
+
+    // Prevent instantiation.
+    private ElectionResults() { throw new AssertionError("Non-instantiable class"); }
+
+    /**
+     * Returns whether an election in the status specified has its decommitment bundle saved.
+     *
+     * @param status the status of the election
+     * @return {@code true} if the election is verified
+     */
+    static boolean isVerified(ElectionStatus status) {
+        return status == ElectionStatus.VERIFIED || status == ElectionStatus.PUBLISHING
+                || status == ElectionStatus.COMPLETED;
+    }
+
+    /**
+     * Saves the decommitment bundle of an election and marks the election as verified.
+     *
+     * @param store the data store of the election
+     * @param electionId the ID of the election
+     * @param decommitmentBundle the decommitment bundle of the election
+     * @throws StoreException if the bundle or the status could not be saved (neither is saved)
+     */
+    static void save(WritableDataStore store, String electionId, String decommitmentBundle)
+            throws StoreException {
+        store.beginTransaction();
+        try {
+            store.saveDecommitmentBundle(electionId, decommitmentBundle);
+            store.setElectionStatus(electionId, ElectionStatus.VERIFIED.getValue());
+            store.setTransactionSuccessful();
+        } finally {
+            store.endTransaction();
+        }
+    }
+
+    /**
+     * Posts the decommitment bundle of a verified election to the ABB and marks the election
+     * as completed. The election stays verified if the post fails.
+     *
+     * @param store the data store of the election
+     * @param client the client of the ABB of the election
+     * @param electionId the ID of the election
+     * @param decommitmentBundle the decommitment bundle of the election
+     * @throws IOException if the post failed
+     * @throws StoreException if the status could not be saved
+     */
+    static void publish(WritableDataStore store, AbbClient client, String electionId,
+                        String decommitmentBundle) throws IOException, StoreException {
+        client.postResult(decommitmentBundle);
+        store.setElectionStatus(electionId, ElectionStatus.COMPLETED.getValue());
+    }
+
+    /**
+     * Tallies a verified election from its decommitment bundle. The tally is not saved.
+     * The native cryptosystem is used if available.
+     *
+     * @param store the data store of the election
+     * @param electionId the ID of the election
+     * @param voterCount the number of voters of the election
+     * @param optionCount the number of options of the election
+     * @return the vote counts of the options, separated by commas, or null if the election is
+     *      not verified
+     * @throws StoreException if the election could not be read
+     * @throws IllegalArgumentException if a count is out of range, the bundle is not valid or
+     *      it does not match the counts
+     */
+    static String tally(ReadableDataStore store, String electionId, int voterCount,
+                        int optionCount) throws StoreException {
+        final ElectionStatus status = ElectionStatus.valueOf(store.getElectionStatus(electionId));
+        if (!isVerified(status)) {
+            Log.e(TAG, "Election " + electionId + " is in " + status + " state");
+            return null;
+        }
+        final String decommitmentBundle = store.getElectionDecommitmentBundle(electionId);
+        if (decommitmentBundle == null) {
+            Log.e(TAG, "Election " + electionId + " has no decommitment bundle");
+            return null;
+        }
+        try {
+            return JNICryptosystem.computeTally(decommitmentBundle, voterCount, optionCount);
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            // No native library for this ABI (NoClassDefFoundError after the first one).
+            Log.w(TAG, "Native cryptosystem unavailable, tallying in Java", e);
+            return JavaCryptosystem.computeTally(decommitmentBundle, voterCount, optionCount);
+        }
+    }
+
+}
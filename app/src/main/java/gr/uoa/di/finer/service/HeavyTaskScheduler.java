@@ -0,0 +1,418 @@
+package gr.uoa.di.finer.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the heavy tasks of {@link TrusteeService} on a thread pool, so that the tasks of
+ * different elections run concurrently, while:
+ * <ul>
+ * <li>the tasks of the same election run strictly one after the other, in submission order.</li>
+ * <li>at most one task that writes heavily to the database (erasure) runs at a time. SQLite has
+ *     a single writer, so concurrent writers would only take turns. Initializations leave their
+ *     writes to the {@code DatabaseWriter} instead.</li>
+ * <li>at most one task uses the native cryptosystem (verification) at a time, since the C++
+ *     backend is a singleton.</li>
+ * <li>exclusive tasks (erasing all elections) run alone, after the tasks submitted before them
+ *     and before the tasks submitted after them.</li>
+ * <li>no more tasks run than the pool has threads.</li>
+ * </ul>
+ * Among the tasks that can run, the one with the highest priority runs first (verification, then
+ * initialization, then erasure), and among tasks of equal priority the one submitted first.
+ * A waiting task gains one priority level for every aging interval it waits, so a steady stream
+ * of verifications cannot starve the other tasks.
+ * <p>
+ * A long task can also give its place to a more urgent one: if it calls
+ * {@link #yieldIfPreempted} at safe points (e.g. between database transactions), it pauses there
+ * while a waiting task of higher priority that only lacks a free slot runs. Preemption compares
+ * the base priorities, so aging only orders the waiting tasks, and tasks of equal priority never
+ * preempt each other. The paused task keeps its election and resources and resumes as soon as it
+ * has the highest priority again. At most one task is paused at a time, so the pool needs one
+ * thread more than the running tasks.
+ * <p>
+ * A task that cannot run yet waits here, not in the pool, so it does not hold a thread.
+ * A waiting task that is cancelled is passed to the pool right away, where it completes without
+ * running, so the pool still sees every task exactly once.
+ * <p>
+ * Instances of this class are thread-safe.
+ *
+ * @author Vasilis Poulimenos
+ */
+final class HeavyTaskScheduler {
+
+    // Task requirements (bit flags).
+    static final int NEEDS_WRITER = 1;
+    static final int NEEDS_CRYPTO = 1 << 1;
+    static final int EXCLUSIVE = 1 << 2;
+
+    // Task priorities. Higher values run first.
+    static final int PRIORITY_ERASE = 0;
+    static final int PRIORITY_INITIALIZE = 1;
+    static final int PRIORITY_VERIFY = 2;
+
+    // The time that a waiting task needs to gain one priority level.
+    static final long AGING_INTERVAL_MILLIS = 30000;
+
+    private final class Job implements Runnable {
+        final FutureTask<Void> future;
+        final String electionId;
+        final int flags;
+        final int priority;
+        final long sequence;
+        // When the job started waiting (at submission or when it paused).
+        long waitingSince;
+        // Whether the job holds its requirements (false for cancelled jobs).
+        boolean started;
+        // Whether the job was interrupted while paused. It then resumes before any waiting job.
+        boolean interrupted;
+
+        Job(Runnable task, String electionId, int flags, int priority, long sequence) {
+            this.future = new FutureTask<>(task, null);
+            this.electionId = electionId;
+            this.flags = flags;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.waitingSince = System.nanoTime();
+        }
+
+        boolean needs(int flag) {
+            return (flags & flag) != 0;
+        }
+
+        // The priority of the job, raised by one for every aging interval it has been waiting.
+        long effectivePriority(long now) {
+            return priority + (now - waitingSince) / agingNanos;
+        }
+
+        @Override
+        public void run() {
+            current.set(this);
+            try {
+                future.run();
+            } finally {
+                current.remove();
+                onFinished(this);
+            }
+        }
+    }
+
+    private final Executor executor;
+    private final int maxRunning;
+    private final long agingNanos;
+    // The job that the current thread runs.
+    private final ThreadLocal<Job> current = new ThreadLocal<>();
+
+    // All the fields below are guarded by this.
+    // The waiting jobs, in submission order.
+    private final List<Job> waiting = new ArrayList<>();
+    private final Set<String> busyElections = new HashSet<>();
+    // The running job that yielded its slot, if any. It is not counted in running.
+    private Job paused;
+    private long submitted;
+    private int running;
+    private boolean writerBusy;
+    private boolean cryptoBusy;
+    private boolean exclusiveBusy;
+    private boolean shutdown;
+
+    /**
+     *
+     * @param executor the pool that runs the tasks (with at least maxRunning + 1 threads)
+     * @param maxRunning the maximum number of tasks running at the same time
+     */
+    HeavyTaskScheduler(Executor executor, int maxRunning) {
+        this(executor, maxRunning, AGING_INTERVAL_MILLIS);
+    }
+
+    /**
+     *
+     * @param executor the pool that runs the tasks (with at least maxRunning + 1 threads)
+     * @param maxRunning the maximum number of tasks running at the same time
+     * @param agingIntervalMillis the time that a waiting task needs to gain one priority level
+     */
+    HeavyTaskScheduler(Executor executor, int maxRunning, long agingIntervalMillis) {
+        if (maxRunning < 1) {
+            throw new IllegalArgumentException("maxRunning < 1");
+        }
+        if (agingIntervalMillis < 1) {
+            throw new IllegalArgumentException("agingIntervalMillis < 1");
+        }
+        this.executor = executor;
+        this.maxRunning = maxRunning;
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingIntervalMillis);
+    }
+
+    /**
+     * Submits a task to be run as soon as its requirements and priority allow.
+     *
+     * @param task the task to run
+     * @param electionId the election that the task is about or null for exclusive tasks
+     * @param flags the requirements of the task (a combination of the flags of this class)
+     * @param priority the priority of the task (one of the PRIORITY constants)
+     * @return a future that can be used to cancel the task
+     */
+    Future<?> submit(Runnable task, String electionId, int flags, int priority) {
+        final List<Job> ready;
+        final Job job;
+        synchronized (this) {
+            job = new Job(task, electionId, flags, priority, submitted++);
+            waiting.add(job);
+            ready = dispatch();
+        }
+        execute(ready);
+        return job.future;
+    }
+
+    /**
+     * Pauses the calling task while a waiting task of higher priority needs its slot.
+     * Tasks should call this at points where they hold no locks (e.g. between transactions).
+     * Calls from threads that do not run a task of this scheduler return immediately.
+     *
+     * @return true if the task paused
+     * @throws InterruptedException if the task is interrupted while paused
+     */
+    boolean yieldIfPreempted() throws InterruptedException {
+        final Job job = current.get();
+        if (job == null) {
+            return false;
+        }
+        final List<Job> ready;
+        synchronized (this) {
+            if (paused != null || !isPreempted(job)) {
+                return false;
+            }
+            paused = job;
+            job.waitingSince = System.nanoTime();
+            --running;
+            ready = dispatch();
+        }
+        execute(ready);
+
+        synchronized (this) {
+            try {
+                // dispatch() resumes the job when its turn comes.
+                while (paused == job) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                // The task is about to end, but it still needs a slot to do so, or more tasks
+                // than maxRunning would run. Wait for the first free one.
+                job.interrupted = true;
+                resumeInterrupted();
+                while (paused == job) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ignored) {
+                        // The task is interrupted already.
+                    }
+                }
+                throw e;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes the waiting tasks that have been cancelled to the pool.
+     * Call this after cancelling a task, so that it completes without waiting for its turn.
+     */
+    void purge() {
+        final List<Job> ready;
+        synchronized (this) {
+            ready = dispatch();
+        }
+        execute(ready);
+    }
+
+    /**
+     * Stops dispatching tasks. The tasks still waiting are dropped.
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        waiting.clear();
+    }
+
+    /**
+     * Returns whether a task is paused in {@link #yieldIfPreempted}.
+     * @return true if a task is paused
+     */
+    synchronized boolean hasPausedTask() {
+        return paused != null;
+    }
+
+    /**
+     * Returns the number of tasks waiting to run.
+     * @return the number of waiting tasks
+     */
+    synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * Returns the number of tasks running.
+     * @return the number of running tasks
+     */
+    synchronized int getRunningCount() {
+        return running;
+    }
+
+    private void onFinished(Job job) {
+        final List<Job> ready;
+        synchronized (this) {
+            if (job.started) {
+                --running;
+                if (job.electionId != null) {
+                    busyElections.remove(job.electionId);
+                }
+                writerBusy &= !job.needs(NEEDS_WRITER);
+                cryptoBusy &= !job.needs(NEEDS_CRYPTO);
+                exclusiveBusy &= !job.needs(EXCLUSIVE);
+            }
+            ready = dispatch();
+        }
+        execute(ready);
+    }
+
+    // Called without holding the lock, since the executor may run the jobs in the caller.
+    private void execute(List<Job> jobs) {
+        for (Job job : jobs) {
+            executor.execute(job);
+        }
+    }
+
+    private boolean canStart(Job job, boolean earlierWaiting) {
+        if (exclusiveBusy || running >= maxRunning) {
+            return false;
+        }
+        if (job == paused) {
+            // It already holds everything else.
+            return true;
+        }
+        if (job.needs(EXCLUSIVE)) {
+            return running == 0 && paused == null && !earlierWaiting;
+        }
+        if (job.electionId != null && busyElections.contains(job.electionId)) {
+            return false;
+        }
+        return !(job.needs(NEEDS_WRITER) && writerBusy) && !(job.needs(NEEDS_CRYPTO) && cryptoBusy);
+    }
+
+    // Resumes the paused job if it was interrupted and a slot is free.
+    private void resumeInterrupted() {
+        if (paused != null && paused.interrupted && running < maxRunning && !exclusiveBusy) {
+            paused = null;
+            ++running;
+            notifyAll();
+        }
+    }
+
+    /*
+     * Whether a waiting job that ranks above a running one would start if it had its slot.
+     * The base priorities are compared: the running job does not age, so comparing its base
+     * priority with the aged priority of a waiting job would let jobs of equal priority preempt
+     * each other in turn.
+     */
+    private boolean isPreempted(Job job) {
+        if (running < maxRunning) {
+            // Anything that could start has already started.
+            return false;
+        }
+        --running;
+        try {
+            for (Job other : eligibleJobs()) {
+                if (other.priority > job.priority
+                        && canStart(other, other != waiting.get(0))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            ++running;
+        }
+    }
+
+    /*
+     * Returns the waiting jobs that may start as far as submission order is concerned: the first
+     * waiting job of every election, unless submitted after a waiting exclusive job.
+     */
+    private List<Job> eligibleJobs() {
+        final List<Job> eligible = new ArrayList<>();
+        final Set<String> seenElections = new HashSet<>();
+        for (Job job : waiting) {
+            if (job.electionId == null || seenElections.add(job.electionId)) {
+                eligible.add(job);
+            }
+            // Nothing submitted after a waiting exclusive task may start before it.
+            if (job.needs(EXCLUSIVE)) {
+                break;
+            }
+        }
+        return eligible;
+    }
+
+    // Removes the waiting tasks that can run, by priority, and marks them as started.
+    private List<Job> dispatch() {
+        final List<Job> ready = new ArrayList<>();
+        if (shutdown) {
+            return ready;
+        }
+        for (Iterator<Job> it = waiting.iterator(); it.hasNext();) {
+            final Job job = it.next();
+            if (job.future.isCancelled()) {
+                it.remove();
+                ready.add(job);
+            }
+        }
+
+        resumeInterrupted();
+        final List<Job> candidates = eligibleJobs();
+        final Job first = waiting.isEmpty() ? null : waiting.get(0);
+        if (paused != null) {
+            candidates.add(paused);
+        }
+        final long now = System.nanoTime();
+        Collections.sort(candidates, new Comparator<Job>() {
+            @Override
+            public int compare(Job lhs, Job rhs) {
+                final long lhsPriority = lhs.effectivePriority(now);
+                final long rhsPriority = rhs.effectivePriority(now);
+                if (lhsPriority != rhsPriority) {
+                    return lhsPriority > rhsPriority ? -1 : 1;
+                }
+                return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+            }
+        });
+
+        for (Job job : candidates) {
+            if (!canStart(job, job != first)) {
+                continue;
+            }
+            ++running;
+            if (job == paused) {
+                paused = null;
+                notifyAll();
+                continue;
+            }
+            waiting.remove(job);
+            job.started = true;
+            if (job.electionId != null) {
+                busyElections.add(job.electionId);
+            }
+            writerBusy |= job.needs(NEEDS_WRITER);
+            cryptoBusy |= job.needs(NEEDS_CRYPTO);
+            exclusiveBusy |= job.needs(EXCLUSIVE);
+            ready.add(job);
+        }
+        return ready;
+    }
+
+}
@@ -28,6 +28,16 @@ public interface InitDataParser {
      */
     boolean parseBallot() throws IOException, ParseException, StoreException;
 
+    /**
+     * Skips the next ballot without storing it, e.g. because it was stored by an earlier run.
+     * Skipped ballots are counted as parsed.
+     *
+     * @return true if a ballot was skipped or false if the end of the stream was reached
+     * @throws IOException
+     * @throws ParseException
+     */
+    boolean skipBallot() throws IOException, ParseException;
+
     /**
      * Returns the number of ballots that have been parsed so far.
      * @return the number of parsed ballots
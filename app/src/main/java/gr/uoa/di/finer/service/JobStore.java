@@ -0,0 +1,75 @@
+package gr.uoa.di.finer.service;
+
+import android.database.Cursor;
+import android.support.annotation.WorkerThread;
+
+/**
+ * A durable queue of the heavy requests of the {@link TrusteeService}.
+ * <p>
+ * Every heavy request is recorded as a job before it is processed and marked as done when it
+ * finishes, so that the unfinished jobs can be resumed, in order, if the process dies.
+ * The jobs that are done are kept until the same request is made again, so that redelivered
+ * requests can be recognized.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+public interface JobStore {
+
+    /**
+     * Records a new pending job, replacing any previous job of the same action and election.
+     *
+     * @param action the action of the request
+     * @param electionId the ID of the election or null for requests about all elections
+     * @param data the data URI of the request (as a string) or null if there is none
+     * @return the ID of the new job, which also gives its position in the queue
+     * @throws StoreException if the job could not be saved to the data store
+     */
+    long addJob(String action, String electionId, String data) throws StoreException;
+
+    /**
+     * Checks if there is a job (unfinished or done) of the action and election specified.
+     *
+     * @param action the action of the request
+     * @param electionId the ID of the election or null for requests about all elections
+     * @return true if such a job exists
+     * @throws StoreException if there was a problem retrieving the info from the data store
+     */
+    boolean hasJob(String action, String electionId) throws StoreException;
+
+    /**
+     * Retrieves the jobs that are not done, in the order they were added.
+     *
+     * @return a cursor with the ID, action, election ID, data, attempts and checkpoint of every
+     *      unfinished job
+     * @throws StoreException if there was a problem retrieving the jobs from the data store
+     */
+    Cursor getUnfinishedJobs() throws StoreException;
+
+    /**
+     * Marks a job as running and counts an attempt to run it.
+     *
+     * @param jobId the ID of the job
+     * @throws StoreException if the job could not be saved to the data store
+     */
+    void startJob(long jobId) throws StoreException;
+
+    /**
+     * Saves how far a job has got. Call this in the same transaction as the work it describes,
+     * so that the checkpoint never runs ahead of the data.
+     *
+     * @param jobId the ID of the job
+     * @param checkpoint the amount of work done (e.g. the number of ballots stored)
+     * @throws StoreException if the checkpoint could not be saved to the data store
+     */
+    void saveJobCheckpoint(long jobId, long checkpoint) throws StoreException;
+
+    /**
+     * Marks a job as done, whether it succeeded, failed or was cancelled.
+     *
+     * @param jobId the ID of the job
+     * @throws StoreException if the job could not be saved to the data store
+     */
+    void finishJob(long jobId) throws StoreException;
+
+}
@@ -0,0 +1,44 @@
+package gr.uoa.di.finer.service;
+
+import android.support.annotation.WorkerThread;
+
+/**
+ * A cryptosystem that records the time of the additions to another cryptosystem to
+ * {@link TaskMetrics}.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+final class MeasuredCryptosystem implements Cryptosystem {
+
+    private final Cryptosystem cryptosystem;
+    private final TaskMetrics metrics;
+    private final TaskTracer tracer;
+
+    MeasuredCryptosystem(Cryptosystem cryptosystem, TaskMetrics metrics) {
+        this.cryptosystem = cryptosystem;
+        this.metrics = metrics;
+        this.tracer = metrics.getTracer();
+    }
+
+    @Override
+    public void add(String decommitment) {
+        final long start = tracer.begin(TaskTracer.SPAN_CRYPTO_ADD);
+        try {
+            cryptosystem.add(decommitment);
+        } finally {
+            metrics.addCryptoCall(tracer.end(TaskTracer.SPAN_CRYPTO_ADD, start));
+        }
+    }
+
+    @Override
+    public String computeBundle() {
+        final long start = tracer.begin(TaskTracer.SPAN_CRYPTO_BUNDLE);
+        try {
+            return cryptosystem.computeBundle();
+        } finally {
+            tracer.end(TaskTracer.SPAN_CRYPTO_BUNDLE, start);
+        }
+    }
+
+}
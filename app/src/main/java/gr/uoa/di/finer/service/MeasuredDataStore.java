@@ -0,0 +1,170 @@
+package gr.uoa.di.finer.service;
+
+import android.database.Cursor;
+import android.support.annotation.WorkerThread;
+
+/**
+ * A data store that records the time of the ballot inserts, the ballot lookups and the commits
+ * of another store to {@link TaskMetrics}. All the other calls are simply forwarded.
+ * <p>
+ * Closing this store does NOT close the underlying store.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+final class MeasuredDataStore implements WritableDataStore {
+
+    private final WritableDataStore store;
+    private final TaskMetrics metrics;
+    private final TaskTracer tracer;
+    private boolean successful;
+
+    MeasuredDataStore(WritableDataStore store, TaskMetrics metrics) {
+        this.store = store;
+        this.metrics = metrics;
+        this.tracer = metrics.getTracer();
+    }
+
+    @Override
+    public void beginTransaction() throws StoreException {
+        successful = false;
+        store.beginTransaction();
+    }
+
+    @Override
+    public void setTransactionSuccessful() throws StoreException {
+        store.setTransactionSuccessful();
+        successful = true;
+    }
+
+    @Override
+    public void endTransaction() throws StoreException {
+        final long start = tracer.begin(TaskTracer.SPAN_COMMIT);
+        try {
+            store.endTransaction();
+        } finally {
+            final long nanos = tracer.end(TaskTracer.SPAN_COMMIT, start);
+            // Only successful transactions are committed.
+            if (successful) {
+                metrics.addCommit(nanos);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasElection(String electionId) throws StoreException {
+        return store.hasElection(electionId);
+    }
+
+    @Override
+    public Cursor getElection(String electionId, String[] columns) throws StoreException {
+        return store.getElection(electionId, columns);
+    }
+
+    @Override
+    public Cursor getAllElections(String[] columns) throws StoreException {
+        return store.getAllElections(columns);
+    }
+
+    @Override
+    public int getElectionStatus(String electionId) throws StoreException {
+        return store.getElectionStatus(electionId);
+    }
+
+    @Override
+    public String getElectionAbb(String electionId) throws StoreException {
+        return store.getElectionAbb(electionId);
+    }
+
+    @Override
+    public String getElectionDecommitmentKey(String electionId) throws StoreException {
+        return store.getElectionDecommitmentKey(electionId);
+    }
+
+    @Override
+    public String getElectionDecommitmentBundle(String electionId) throws StoreException {
+        return store.getElectionDecommitmentBundle(electionId);
+    }
+
+    @Override
+    public String getBallotDecommitment(String electionId, String serialNumber, String voteCode)
+            throws StoreException {
+        final long start = TaskMetrics.now();
+        try {
+            return store.getBallotDecommitment(electionId, serialNumber, voteCode);
+        } finally {
+            metrics.addStoreCall(TaskMetrics.now() - start);
+        }
+    }
+
+    @Override
+    public Cursor getElectionMetrics(String electionId) throws StoreException {
+        return store.getElectionMetrics(electionId);
+    }
+
+    @Override
+    public void createElection(
+            String electionId, String question, long startTime, long endTime, String url, int status)
+            throws StoreException {
+        store.createElection(electionId, question, startTime, endTime, url, status);
+    }
+
+    @Override
+    public void setElectionStatus(String electionId, int status) throws StoreException {
+        store.setElectionStatus(electionId, status);
+    }
+
+    @Override
+    public void saveKey(String electionId, String decommitmentKey) throws StoreException {
+        store.saveKey(electionId, decommitmentKey);
+    }
+
+    @Override
+    public void saveBallot(
+            String electionId, String serialNo, String partId, String voteCode, String decommitment)
+            throws StoreException {
+        final long start = TaskMetrics.now();
+        try {
+            store.saveBallot(electionId, serialNo, partId, voteCode, decommitment);
+        } finally {
+            metrics.addStoreCall(TaskMetrics.now() - start);
+        }
+    }
+
+    @Override
+    public void saveDecommitmentBundle(String electionId, String decommitmentBundle)
+            throws StoreException {
+        store.saveDecommitmentBundle(electionId, decommitmentBundle);
+    }
+
+    @Override
+    public void saveTally(String electionId, String tally) throws StoreException {
+        store.saveTally(electionId, tally);
+    }
+
+    @Override
+    public void saveMetrics(String electionId, String task, String metrics) throws StoreException {
+        store.saveMetrics(electionId, task, metrics);
+    }
+
+    @Override
+    public void eraseElection(String electionId) throws StoreException {
+        store.eraseElection(electionId);
+    }
+
+    @Override
+    public void eraseBallots(String electionId) throws StoreException {
+        store.eraseBallots(electionId);
+    }
+
+    @Override
+    public void clear() throws StoreException {
+        store.clear();
+    }
+
+    @Override
+    public void close() {
+        // The underlying store is owned by the task.
+    }
+
+}
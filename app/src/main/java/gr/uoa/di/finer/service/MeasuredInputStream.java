@@ -0,0 +1,69 @@
+package gr.uoa.di.finer.service;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that records the bytes read from another stream, and the time blocked
+ * reading them, to {@link TaskMetrics}.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+final class MeasuredInputStream extends FilterInputStream {
+
+    private final TaskMetrics metrics;
+    private final TaskTracer tracer;
+
+    MeasuredInputStream(InputStream in, TaskMetrics metrics) {
+        super(in);
+        this.metrics = metrics;
+        this.tracer = metrics.getTracer();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final long start = tracer.begin(TaskTracer.SPAN_READ);
+        int b = -1;
+        try {
+            b = in.read();
+            return b;
+        } finally {
+            metrics.addRead((b == -1) ? 0 : 1, tracer.end(TaskTracer.SPAN_READ, start));
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        final long start = tracer.begin(TaskTracer.SPAN_READ);
+        int n = -1;
+        try {
+            n = in.read(buffer, offset, count);
+            return n;
+        } finally {
+            metrics.addRead(Math.max(n, 0), tracer.end(TaskTracer.SPAN_READ, start));
+        }
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        final long start = tracer.begin(TaskTracer.SPAN_READ);
+        long n = 0;
+        try {
+            n = in.skip(count);
+            return n;
+        } finally {
+            metrics.addRead(n, tracer.end(TaskTracer.SPAN_READ, start));
+        }
+    }
+
+    // Marks would make the byte count wrong.
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+}
@@ -0,0 +1,70 @@
+package gr.uoa.di.finer.service;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A reader that records the characters read from another reader, and the time blocked reading
+ * them, to {@link TaskMetrics}. It should be placed below any buffering, so that only actual
+ * reads from the source are measured.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+final class MeasuredReader extends FilterReader {
+
+    private final TaskMetrics metrics;
+    private final TaskTracer tracer;
+
+    MeasuredReader(Reader in, TaskMetrics metrics) {
+        super(in);
+        this.metrics = metrics;
+        this.tracer = metrics.getTracer();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final long start = tracer.begin(TaskTracer.SPAN_READ);
+        int ch = -1;
+        try {
+            ch = in.read();
+            return ch;
+        } finally {
+            metrics.addRead((ch == -1) ? 0 : 1, tracer.end(TaskTracer.SPAN_READ, start));
+        }
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int count) throws IOException {
+        final long start = tracer.begin(TaskTracer.SPAN_READ);
+        int n = -1;
+        try {
+            n = in.read(buffer, offset, count);
+            return n;
+        } finally {
+            metrics.addRead(Math.max(n, 0), tracer.end(TaskTracer.SPAN_READ, start));
+        }
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        final long start = tracer.begin(TaskTracer.SPAN_READ);
+        long n = 0;
+        try {
+            n = in.skip(count);
+            return n;
+        } finally {
+            metrics.addRead(n, tracer.end(TaskTracer.SPAN_READ, start));
+        }
+    }
+
+    // Marks would make the character count wrong.
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+}
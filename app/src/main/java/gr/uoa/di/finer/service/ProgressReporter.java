@@ -0,0 +1,121 @@
+package gr.uoa.di.finer.service;
+
+import android.support.annotation.WorkerThread;
+
+import java.util.concurrent.TimeUnit;
+
+import gr.uoa.di.finer.Utils;
+
+/**
+ * A progress reporter that coalesces updates.
+ * <p>
+ * Publishing progress is not free: every update means a local broadcast and a notification
+ * update, which is an IPC call. For fast tasks, this can become a significant fraction of the
+ * task time. This class limits the rate of updates as follows:
+ * <ul>
+ * <li>The first update is always published.</li>
+ * <li>At most {@code maxUpdatesPerSecond} updates are published per second.
+ *     Updates that arrive too early are dropped, since a newer update will follow.</li>
+ * <li>When the total is known, updates that do not change the percentage are dropped.
+ *     Otherwise, updates that do not change the count are dropped.</li>
+ * <li>The last update, signaled with {@link #finish}, is always published
+ *     (unless it is identical to the last published one).</li>
+ * </ul>
+ * Subclasses provide the actual publishing logic, which runs only when an update passes
+ * the checks above, so that notifications are built only when needed.
+ * <p>
+ * Instances of this class are NOT thread-safe.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+abstract class ProgressReporter {
+
+    /**
+     * The value used for an unknown total.
+     */
+    static final long UNKNOWN_TOTAL = -1;
+
+    private final long minIntervalNanos;
+    private boolean published;
+    private long lastPublishTime;
+    private long lastCount;
+    private int lastPercentage;
+
+    /**
+     * Constructs a new progress reporter.
+     *
+     * @param maxUpdatesPerSecond the maximum number of updates published per second
+     * @throws IllegalArgumentException if {@code maxUpdatesPerSecond} is not positive
+     */
+    ProgressReporter(int maxUpdatesPerSecond) {
+        if (maxUpdatesPerSecond <= 0) {
+            throw new IllegalArgumentException("Non-positive update rate: " + maxUpdatesPerSecond);
+        }
+        this.minIntervalNanos = TimeUnit.SECONDS.toNanos(1) / maxUpdatesPerSecond;
+        this.published = false;
+    }
+
+    /**
+     * Publishes the progress.
+     * This is called only for updates that are not coalesced.
+     *
+     * @param count the number of items processed so far
+     * @param total the total number of items or {@link #UNKNOWN_TOTAL}
+     */
+    protected abstract void publish(long count, long total);
+
+    /**
+     * Returns the current time in nanoseconds. Tests override this to control the clock.
+     *
+     * @return the current value of {@link System#nanoTime()}
+     */
+    long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Reports the progress. The update may be dropped.
+     *
+     * @param count the number of items processed so far
+     * @param total the total number of items or {@link #UNKNOWN_TOTAL}
+     */
+    final void update(long count, long total) {
+        final long now = now();
+        if (published) {
+            if (now - lastPublishTime < minIntervalNanos || !hasChanged(count, total)) {
+                return;
+            }
+        }
+        publish(count, total, now);
+    }
+
+    /**
+     * Reports the final progress. The update is dropped only if nothing changed since the
+     * last published update.
+     *
+     * @param count the number of items processed
+     * @param total the total number of items or {@link #UNKNOWN_TOTAL}
+     */
+    final void finish(long count, long total) {
+        if (!published || count != lastCount) {
+            publish(count, total, now());
+        }
+    }
+
+    private boolean hasChanged(long count, long total) {
+        if (total > 0) {
+            return Utils.toPercentage(count, total) != lastPercentage;
+        }
+        return count != lastCount;
+    }
+
+    private void publish(long count, long total, long now) {
+        published = true;
+        lastPublishTime = now;
+        lastCount = count;
+        lastPercentage = (total > 0) ? Utils.toPercentage(count, total) : 0;
+        publish(count, total);
+    }
+
+}
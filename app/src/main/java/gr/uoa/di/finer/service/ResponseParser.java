@@ -3,6 +3,7 @@ package gr.uoa.di.finer.service;
 import android.support.annotation.WorkerThread;
 
 import java.io.IOException;
+import java.io.Reader;
 
 /**
  *
@@ -27,4 +28,20 @@ public interface ResponseParser {
      */
     long getParsedBallotCount();
 
+    /**
+     * Returns the number of lines (valid ballots or not) that have been fully parsed so far.
+     * This is the index of the first line that has not been parsed yet.
+     * @return the number of parsed lines
+     */
+    long getParsedLineCount();
+
+    /**
+     * Continues parsing from another stream, discarding any partially parsed line.
+     * The new stream must start at the line with index {@link #getParsedLineCount()}.
+     * Used to recover from a stream that failed mid-way.
+     *
+     * @param reader the stream to continue parsing from
+     */
+    void resume(Reader reader);
+
 }
@@ -0,0 +1,201 @@
+package gr.uoa.di.finer.service;
+
+import android.support.annotation.WorkerThread;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import gr.uoa.di.finer.LatencyHistogram;
+
+/**
+ * Per-stage counters and timers of a heavy election task, so that a slow run can be told apart
+ * as network-bound, disk-bound or CPU-bound:
+ * <ul>
+ * <li>read: the bytes read from the input (the initialization data or the ABB response, which
+ *     is ASCII) and the time blocked reading them.</li>
+ * <li>connect: the ABB requests (including retries) and the time spent connecting and backing
+ *     off.</li>
+ * <li>store: the ballot inserts (initialization) or lookups (verification) and their time.</li>
+ * <li>crypto: the decommitments added to the native bundle and the time spent in it.</li>
+ * <li>commit: the committed transactions, their total and maximum latency.</li>
+ * <li>progress: the progress reports actually published (not coalesced) and their cost.</li>
+ * <li>latency: the latency percentiles of individual operations, when latency recording is
+ *     enabled (see {@link LatencyHistogram}).</li>
+ * </ul>
+ * All times are measured with {@link System#nanoTime()}.
+ * Instances of this class are NOT thread-safe. They are only updated by the task thread.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+final class TaskMetrics {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final String task;
+    private final TaskTracer tracer;
+    private final long startNanos;
+    private long elapsedNanos = -1;
+    private long ballots;
+
+    private long readBytes;
+    private long readNanos;
+    private long connects;
+    private long connectNanos;
+    private long storeCalls;
+    private long storeNanos;
+    private long cryptoCalls;
+    private long cryptoNanos;
+    private long commits;
+    private long commitNanos;
+    private long maxCommitNanos;
+    private long progressReports;
+    private long progressNanos;
+    private final Map<String, LatencyHistogram> latencies =
+            new LinkedHashMap<String, LatencyHistogram>();
+
+    /**
+     * Starts measuring a task.
+     *
+     * @param task the name of the task, e.g. "verify"
+     */
+    TaskMetrics(String task) {
+        this.task = task;
+        this.tracer = new TaskTracer(task);
+        this.startNanos = now();
+    }
+
+    static long now() {
+        return System.nanoTime();
+    }
+
+    String getTask() {
+        return task;
+    }
+
+    /**
+     * Returns the tracer that records the spans of the task.
+     * @return the tracer of the task
+     */
+    TaskTracer getTracer() {
+        return tracer;
+    }
+
+    void setBallotCount(long ballots) {
+        this.ballots = ballots;
+    }
+
+    void addRead(long bytes, long nanos) {
+        readBytes += bytes;
+        readNanos += nanos;
+    }
+
+    void addConnect(long nanos) {
+        ++connects;
+        connectNanos += nanos;
+    }
+
+    void addStoreCall(long nanos) {
+        ++storeCalls;
+        storeNanos += nanos;
+    }
+
+    void addCryptoCall(long nanos) {
+        ++cryptoCalls;
+        cryptoNanos += nanos;
+    }
+
+    void addCommit(long nanos) {
+        ++commits;
+        commitNanos += nanos;
+        maxCommitNanos = Math.max(maxCommitNanos, nanos);
+    }
+
+    void addProgressReport(long nanos) {
+        ++progressReports;
+        progressNanos += nanos;
+    }
+
+    /**
+     * Adds the latencies of an operation to the metrics. The histogram is read only when the
+     * metrics are exported, so it may still be recording.
+     *
+     * @param operation the name of the operation, e.g. "lookup"
+     * @param histogram the latencies of the operation or null if latencies are not recorded
+     */
+    void addLatency(String operation, LatencyHistogram histogram) {
+        if (histogram != null) {
+            latencies.put(operation, histogram);
+        }
+    }
+
+    /**
+     * Stops measuring the task. Only the first call has an effect.
+     */
+    void finish() {
+        if (elapsedNanos == -1) {
+            elapsedNanos = now() - startNanos;
+        }
+    }
+
+    private long getElapsedNanos() {
+        return (elapsedNanos == -1) ? now() - startNanos : elapsedNanos;
+    }
+
+    /**
+     * Returns the number of ballots processed per second so far.
+     * @return the ballot throughput
+     */
+    double getBallotsPerSecond() {
+        final long nanos = getElapsedNanos();
+        return (nanos == 0) ? 0 : ballots * NANOS_PER_SECOND / nanos;
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Returns the metrics as a JSON object. The times are in milliseconds.
+     * @return the JSON representation of the metrics
+     */
+    String toJson() {
+        final StringBuilder json = new StringBuilder(1024)
+                .append("{\"task\":\"").append(task)
+                .append("\",\"elapsedMs\":").append(millis(getElapsedNanos()))
+                .append(",\"ballots\":").append(ballots)
+                .append(",\"ballotsPerSecond\":")
+                    .append(String.format(Locale.US, "%.1f", getBallotsPerSecond()))
+                .append(",\"read\":{\"bytes\":").append(readBytes)
+                    .append(",\"waitMs\":").append(millis(readNanos))
+                .append("},\"connect\":{\"count\":").append(connects)
+                    .append(",\"ms\":").append(millis(connectNanos))
+                .append("},\"store\":{\"calls\":").append(storeCalls)
+                    .append(",\"ms\":").append(millis(storeNanos))
+                .append("},\"crypto\":{\"calls\":").append(cryptoCalls)
+                    .append(",\"ms\":").append(millis(cryptoNanos))
+                .append("},\"commit\":{\"count\":").append(commits)
+                    .append(",\"ms\":").append(millis(commitNanos))
+                    .append(",\"maxMs\":").append(millis(maxCommitNanos))
+                .append("},\"progress\":{\"reports\":").append(progressReports)
+                    .append(",\"ms\":").append(millis(progressNanos))
+                .append('}');
+        // Operations that this task never performed are left out.
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            if (entry.getValue().getCount() == 0) {
+                continue;
+            }
+            json.append(first ? ",\"latency\":{\"" : ",\"").append(entry.getKey())
+                    .append("\":").append(entry.getValue().toJson());
+            first = false;
+        }
+        if (!first) {
+            json.append('}');
+        }
+        return json.append('}').toString();
+    }
+
+}
@@ -0,0 +1,181 @@
+package gr.uoa.di.finer.service;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+import android.support.annotation.WorkerThread;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+import gr.uoa.di.finer.BuildConfig;
+
+/**
+ * Records the spans (begin/end sections) of a heavy election task, so that a run can be opened
+ * in a trace viewer (chrome://tracing or Perfetto) and the stalls of the pipeline can be seen.
+ * <p>
+ * The spans are kept in a fixed ring buffer, so recording does not allocate and, for long runs,
+ * only the most recent spans are kept. When the task finishes, they are written as a Chrome
+ * {@code trace_event} JSON file with {@link #writeTo}. The spans are also mirrored to
+ * {@link Trace} when available (API 18+), so they show up in systrace next to the system ones.
+ * <p>
+ * Recording is only enabled in builds with {@link BuildConfig#TASK_TRACES} set. Otherwise,
+ * {@link #begin} and {@link #end} only read the clock, which the callers need anyway.
+ * <p>
+ * Spans must be ended in the reverse order they were begun, on the thread that began them.
+ * Instances of this class are NOT thread-safe.
+ *
+ * @author Vasilis Poulimenos
+ */
+@WorkerThread
+final class TaskTracer {
+
+    static final boolean ENABLED = BuildConfig.TASK_TRACES;
+
+    // Span names. These are constants, so that recording a span does not allocate.
+    static final String SPAN_TRANSACTION = "transaction";
+    static final String SPAN_DECODE = "decode";
+    static final String SPAN_COMMIT = "commit";
+    static final String SPAN_READ = "read";
+    static final String SPAN_CONNECT = "connect";
+    static final String SPAN_CRYPTO_ADD = "crypto add";
+    static final String SPAN_CRYPTO_BUNDLE = "crypto bundle";
+    static final String SPAN_PROGRESS = "progress";
+
+    // About 800KB. Enough for the last few hundred batches, with a crypto add per ballot.
+    private static final int CAPACITY = 1 << 15;
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    private static final boolean HAS_SYSTEM_TRACE =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    private final String task;
+    private final String[] names;
+    private final long[] starts;
+    private final long[] durations;
+    // The total number of spans recorded. The most recent CAPACITY ones are kept.
+    private long count;
+
+    /**
+     *
+     * @param task the name of the task, used as the thread name in the trace
+     */
+    TaskTracer(String task) {
+        this.task = task;
+        this.names = ENABLED ? new String[CAPACITY] : null;
+        this.starts = ENABLED ? new long[CAPACITY] : null;
+        this.durations = ENABLED ? new long[CAPACITY] : null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginSystemSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endSystemSection() {
+        Trace.endSection();
+    }
+
+    /**
+     * Begins a span.
+     *
+     * @param name the name of the span (one of the SPAN constants)
+     * @return the start time of the span in nanoseconds, for {@link #end}
+     */
+    long begin(String name) {
+        if (ENABLED && HAS_SYSTEM_TRACE) {
+            beginSystemSection(name);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends the span most recently begun.
+     *
+     * @param name the name of the span, as passed to {@link #begin}
+     * @param start the start time of the span, as returned by {@link #begin}
+     * @return the duration of the span in nanoseconds
+     */
+    long end(String name, long start) {
+        final long duration = System.nanoTime() - start;
+        if (ENABLED) {
+            if (HAS_SYSTEM_TRACE) {
+                endSystemSection();
+            }
+            final int i = (int) (count++ & (CAPACITY - 1));
+            names[i] = name;
+            starts[i] = start;
+            durations[i] = duration;
+        }
+        return duration;
+    }
+
+    /**
+     * Returns the number of spans recorded, including the ones no longer kept.
+     * @return the span count
+     */
+    long getSpanCount() {
+        return count;
+    }
+
+    /**
+     * Writes the spans kept as a Chrome trace_event JSON file.
+     * Nothing is written if recording is disabled.
+     *
+     * @param file the file to write to (overwritten if it exists)
+     * @return true if the file was written
+     * @throws IOException if writing fails
+     */
+    boolean writeTo(File file) throws IOException {
+        if (!ENABLED) {
+            return false;
+        }
+        final Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            write(writer);
+        } finally {
+            writer.close();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the spans kept as a Chrome trace_event JSON object.
+     *
+     * @param writer the writer to write to (not closed)
+     * @throws IOException if writing fails
+     */
+    void write(Writer writer) throws IOException {
+        final long kept = Math.min(count, CAPACITY);
+        final long first = count - kept;
+        // Timestamps are relative to the earliest span kept, in microseconds.
+        // Spans are stored when they end, so enclosing spans come after the spans they contain.
+        long origin = Long.MAX_VALUE;
+        for (long n = first; n < count; ++n) {
+            origin = Math.min(origin, starts[(int) (n & (CAPACITY - 1))]);
+        }
+
+        writer.write("{\"displayTimeUnit\":\"ms\",\"otherData\":{\"task\":\"");
+        writer.write(task);
+        writer.write("\",\"spans\":" + count + ",\"dropped\":" + first + "},\"traceEvents\":[");
+        writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":1,"
+                + "\"args\":{\"name\":\"" + task + "\"}}");
+        for (long n = first; n < count; ++n) {
+            final int i = (int) (n & (CAPACITY - 1));
+            writer.write(String.format(Locale.US,
+                    ",\n{\"name\":\"%s\",\"cat\":\"%s\",\"ph\":\"X\",\"ts\":%.3f,\"dur\":%.3f,"
+                            + "\"pid\":1,\"tid\":1}",
+                    names[i], task,
+                    (starts[i] - origin) / NANOS_PER_MICRO, durations[i] / NANOS_PER_MICRO));
+        }
+        writer.write("]}\n");
+    }
+
+}
@@ -6,8 +6,10 @@ import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -25,16 +27,16 @@ import android.util.Log;
 
 import junit.framework.Assert;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
-import java.net.URLEncoder;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Queue;
 import java.util.WeakHashMap;
@@ -49,13 +51,17 @@ import gr.uoa.di.finer.BuildConfig;
 import gr.uoa.di.finer.ContextUtils;
 import gr.uoa.di.finer.ElectionStatus;
 import gr.uoa.di.finer.R;
-import gr.uoa.di.finer.URLConnection;
 import gr.uoa.di.finer.Utils;
 import gr.uoa.di.finer.crypto.JNICryptosystem;
+import gr.uoa.di.finer.crypto.JavaCryptosystem;
+import gr.uoa.di.finer.database.BallotShardOpenHelper;
+import gr.uoa.di.finer.database.ShardedBallotWriter;
+import gr.uoa.di.finer.database.ShardedDatabaseHelper;
+import gr.uoa.di.finer.database.TrusteeContract.ServiceJob;
 import gr.uoa.di.finer.database.TrusteeOpenHelper;
 import gr.uoa.di.finer.database.WritableDatabaseHelper;
-import gr.uoa.di.finer.net.HTTPRequestSender;
-import gr.uoa.di.finer.parse.SimpleResponseParser;
+import gr.uoa.di.finer.net.RetryPolicy;
+import gr.uoa.di.finer.parse.TruncatedFileException;
 import gr.uoa.di.finer.parse.protobuf.InitDataProtoParser;
 
 import static gr.uoa.di.finer.service.TrusteeServiceHelper.EXTRA_RESULT_RECEIVER;
@@ -94,6 +100,12 @@ import static gr.uoa.di.finer.service.TrusteeServiceHelper.EXTRA_RESULT_RECEIVER
  * This service also provides the ability to cancel intents (either the ones that have not yet
  * been processed or the ones that are currently being processed).
  * <p>
+ * Heavy requests are recorded as jobs in the database (see {@link JobStore}) before they are
+ * processed. If the process dies, the unfinished jobs are resumed in order the next time the
+ * service is created, and the redelivered intents of recorded jobs are dropped, so that no work
+ * is lost or done twice. An initialization also saves a checkpoint with every transaction, so a
+ * resumed one skips the ballots that it has already stored.
+ * <p>
  * See <a href="http://developer.android.com/guide/components/services.html#ExtendingService">
  *          Extending the Service class
  *     </a>
@@ -112,6 +124,8 @@ public class TrusteeService extends Service {
     static final String ACTION_CREATE_ELECTION = "gr.uoa.di.finer.action.CREATE_ELECTION";
     static final String ACTION_INITIALIZE_ELECTION = "gr.uoa.di.finer.action.INITIALIZE_ELECTION";
     static final String ACTION_VERIFY_ELECTION = "gr.uoa.di.finer.action.VERIFY_ELECTION";
+    static final String ACTION_VERIFY_BUNDLES = "gr.uoa.di.finer.action.VERIFY_BUNDLES";
+    static final String ACTION_TALLY_ELECTION = "gr.uoa.di.finer.action.TALLY_ELECTION";
     static final String ACTION_ERASE_ELECTION = "gr.uoa.di.finer.action.ERASE_ELECTION";
     static final String ACTION_ERASE_ALL_ELECTIONS = "gr.uoa.di.finer.action.ERASE_ALL_ELECTIONS";
     static final String ACTION_CANCEL_OPERATION = "gr.uoa.di.finer.action.CANCEL_OPERATION";
@@ -122,6 +136,20 @@ public class TrusteeService extends Service {
     static final String EXTRA_END_TIME = "gr.uoa.di.finer.extra.END_TIME";
     static final String EXTRA_ABB_URL = "gr.uoa.di.finer.extra.ABB_URL";
     static final String EXTRA_CANCELLED_TASK = "gr.uoa.di.finer.extra.CANCELLED_TASK";
+    static final String EXTRA_COMMITMENT_BUNDLES = "gr.uoa.di.finer.extra.COMMITMENT_BUNDLES";
+    static final String EXTRA_DECOMMITMENT_BUNDLES = "gr.uoa.di.finer.extra.DECOMMITMENT_BUNDLES";
+    static final String EXTRA_VOTER_COUNT = "gr.uoa.di.finer.extra.VOTER_COUNT";
+    static final String EXTRA_OPTION_COUNT = "gr.uoa.di.finer.extra.OPTION_COUNT";
+
+    // Internal extended data for heavy requests, set when they are recorded as jobs.
+    private static final String EXTRA_JOB_ID = "gr.uoa.di.finer.extra.JOB_ID";
+    private static final String EXTRA_JOB_CHECKPOINT = "gr.uoa.di.finer.extra.JOB_CHECKPOINT";
+    private static final long NO_JOB = -1;
+    /*
+     * A job that has been started this many times without finishing (e.g. because it keeps
+     * crashing the process) is not resumed again.
+     */
+    private static final int MAX_JOB_ATTEMPTS = 3;
 
 
     // Broadcast actions.
@@ -132,6 +160,8 @@ public class TrusteeService extends Service {
     public static final String EXTRA_ELECTION_ID = "gr.uoa.di.finer.extra.ELECTION_ID";
     public static final String EXTRA_REQUEST_STATUS = "gr.uoa.di.finer.extra.REQUEST_STATUS";
     public static final String EXTRA_BALLOT_PROGRESS = "gr.uoa.di.finer.extra.BALLOT_PROGRESS";
+    public static final String EXTRA_BUNDLE_INDEX = "gr.uoa.di.finer.extra.BUNDLE_INDEX";
+    public static final String EXTRA_TALLY = "gr.uoa.di.finer.extra.TALLY";
 
     // Broadcast status codes.
     public static final int STATUS_CREATED_ELECTION = 0;
@@ -156,6 +186,16 @@ public class TrusteeService extends Service {
     public static final int STATUS_INVALID_URL = 180;
     public static final int STATUS_SOCKET_TIMEOUT = 190;
 
+    // The results of bundle verification. A mismatch comes with the index of the first wrong pair.
+    public static final int STATUS_BUNDLES_MATCHED = 200;
+    public static final int STATUS_BUNDLE_MISMATCH = 210;
+    // The result of tallying, which comes with the vote counts.
+    public static final int STATUS_TALLIED_ELECTION = 220;
+    // The errors of the cryptographic tasks: the election lacks the data that the task needs, or
+    // the native cryptosystem cannot be loaded on this device.
+    public static final int STATUS_INVALID_ELECTION_STATE = 230;
+    public static final int STATUS_CRYPTOSYSTEM_UNAVAILABLE = 240;
+
 
     /**
      * Boolean indicating whether the service should display notifications to the user.
@@ -181,10 +221,14 @@ public class TrusteeService extends Service {
 
     /*
      * Implementation notes:
-     *  - There are currently three worker threads active or waiting at any given point in time:
+     *  - The worker threads active or waiting at any given point in time are:
      *      - The main thread sends messages to a HandlerThread that is started in service creation.
      *      - The HandlerThread (there is only one) handles request dispatch to the thread pools.
-     *      - There are two independent thread pools with only one thread each (currently).
+     *      - There are two independent thread pools. The light task pool has one thread. The heavy
+     *        task pool runs up to HEAVY_POOL_SIZE tasks, fed by a HeavyTaskScheduler, so that
+     *        the heavy tasks of different elections can run concurrently. The scheduler favors
+     *        verification over initialization over erasure, and an initialization pauses between
+     *        its transactions while a verification waits for its slot.
      *  - After handling a request, a thread pool checks if there are any more requests awaiting
      *    processing and if not, it tries to stop the service. If the service will actually be
      *    stopped or not depends on whether a new request has arrived in the meantime.
@@ -221,20 +265,20 @@ public class TrusteeService extends Service {
         stopSelf(startIds.remove());
     }
 
+    private static final int LIGHT_POOL_SIZE = 1;
     /*
      * *CRITICAL NOTE*
      * JNICryptosystem is currently implemented as a singleton (because the C++ object is also a
-     * singleton), so the system works because there is only one thread in a pool (thus, one task).
-     * DO NOT INCREASE the pool size before fixing JNICryptosystem.
+     * singleton), so only one verification may run at any time. The HeavyTaskScheduler enforces
+     * this (NEEDS_CRYPTO), as well as a single erasure (NEEDS_WRITER). Initializations hand their
+     * ballots to the writers of the ballot shards, so they only need a thread each, but the CPU
+     * is still the limit when they run alongside a verification.
      */
-    private static final int CORE_POOL_SIZE = 1;
-    private static final int MAX_POOL_SIZE = CORE_POOL_SIZE;
-    static {
-        // Make it foolproof.
-        if (MAX_POOL_SIZE > 1) {
-            throw new AssertionError("MAX_POOL_SIZE > 1 with singleton JNICryptosystem");
-        }
-    }
+    private static final int MAX_HEAVY_POOL_SIZE = 2;
+    private static final int HEAVY_POOL_SIZE =
+            Math.min(Runtime.getRuntime().availableProcessors(), MAX_HEAVY_POOL_SIZE);
+    // One more thread for the task that the paused task yields to.
+    private static final int HEAVY_POOL_THREADS = HEAVY_POOL_SIZE + 1;
 
     /**
      * A factory that creates threads with background priority.
@@ -267,12 +311,12 @@ public class TrusteeService extends Service {
 
     /**
      * A thread pool executor specialized for the needs of this service.
-     * This pool currently contains exactly one thread at all times.
+     * This pool contains a fixed number of threads.
      */
     @WorkerThread
     private final class ServiceThreadPoolExecutor extends ThreadPoolExecutor {
-        ServiceThreadPoolExecutor() {
-            super(CORE_POOL_SIZE, MAX_POOL_SIZE, 0L, TimeUnit.MILLISECONDS,
+        ServiceThreadPoolExecutor(int poolSize) {
+            super(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
                   new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
         }
 
@@ -296,7 +340,7 @@ public class TrusteeService extends Service {
 
         @Override
         public void handleMessage(Message msg) {
-            handleIntent(msg.arg1, (Intent) msg.obj);
+            handleIntent(msg.arg1, msg.arg2, (Intent) msg.obj);
         }
 
         private void broadcastStatus(Intent request, int statusCode) {
@@ -314,14 +358,63 @@ public class TrusteeService extends Service {
             }
         }
 
+        /**
+         * Records a heavy request as a job, unless it is a redelivery of a recorded one.
+         * If recording fails, the request is still processed, but it will not be resumed.
+         *
+         * @return false if the request should be dropped, because it was redelivered and its job
+         *      has either been resumed from the database or finished
+         */
+        private boolean recordJob(Intent intent, int flags, SQLiteDatabase db) {
+            final boolean redelivered = (flags & START_FLAG_REDELIVERY) != 0;
+            if (intent.hasExtra(EXTRA_JOB_ID)) {
+                // A job resumed from the database. If unfinished, it has been resumed again.
+                return !redelivered;
+            }
+
+            final String electionId = intent.getStringExtra(EXTRA_ELECTION_ID);
+            final Uri data = intent.getData();
+            final WritableDatabaseHelper jobs = new WritableDatabaseHelper(db);
+            try {
+                if (redelivered && jobs.hasJob(intent.getAction(), electionId)) {
+                    return false;
+                }
+                intent.putExtra(EXTRA_JOB_ID, jobs.addJob(
+                        intent.getAction(), electionId, data == null ? null : data.toString()));
+            } catch (StoreException e) {
+                Log.e(TAG, "Failed to record job", e);
+            } finally {
+                jobs.close();
+            }
+            return true;
+        }
+
+        private void finishJob(Intent intent, SQLiteDatabase db) {
+            final long jobId = intent.getLongExtra(EXTRA_JOB_ID, NO_JOB);
+            if (jobId == NO_JOB) {
+                return;
+            }
+            final WritableDatabaseHelper jobs = new WritableDatabaseHelper(db);
+            try {
+                jobs.finishJob(jobId);
+            } catch (StoreException e) {
+                Log.e(TAG, "Failed to finish job", e);
+            } finally {
+                jobs.close();
+            }
+        }
+
         @WorkerThread
-        private void handleIntent(int startId, Intent intent) {
+        private void handleIntent(int startId, int flags, Intent intent) {
             final SQLiteDatabase db;
             final Future<?> result;
 
             try {
                 // Lazy-load the database. Loading it here allows for graceful exception handling.
                 db = dbHelper.getWritableDatabase();
+                for (int i = 0; i < ballotShards.length; ++i) {
+                    ballotShards[i] = ballotShardHelpers[i].getWritableDatabase();
+                }
             } catch (SQLiteException e) {
                 Log.e(TAG, "Failed to open writable database", e);
                 broadcastStatus(intent, STATUS_STORAGE_ERROR);
@@ -330,6 +423,10 @@ public class TrusteeService extends Service {
                 return;
             }
 
+            if (ballotWriter == null) {
+                ballotWriter = new ShardedBallotWriter(new WritableDatabaseHelper(db), ballotShards);
+            }
+
             if (BuildConfig.DEBUG) Log.d(TAG, "Handling intent...");
             startIds.add(startId);
             switch (intent.getAction()) {
@@ -338,21 +435,65 @@ public class TrusteeService extends Service {
                     requestResults.put(intent, result);
                     break;
                 case ACTION_INITIALIZE_ELECTION:
-                    result = heavyTaskThreadPool.submit(new InitializeElectionTask(intent, db));
+                    if (!recordJob(intent, flags, db)) {
+                        tryStopSelf();
+                        break;
+                    }
+                    // The ballots are written by the database writer, in groups.
+                    result = heavyTaskScheduler.submit(new InitializeElectionTask(intent, db),
+                            intent.getStringExtra(EXTRA_ELECTION_ID), 0,
+                            HeavyTaskScheduler.PRIORITY_INITIALIZE);
                     requests.put(intent.getStringExtra(EXTRA_ELECTION_ID), intent);
                     requestResults.put(intent, result);
                     break;
                 case ACTION_VERIFY_ELECTION:
-                    result = heavyTaskThreadPool.submit(new VerifyElectionTask(intent, db));
+                    if (!recordJob(intent, flags, db)) {
+                        tryStopSelf();
+                        break;
+                    }
+                    // Verification mostly reads, so it can run alongside a writer.
+                    result = heavyTaskScheduler.submit(new VerifyElectionTask(intent, db),
+                            intent.getStringExtra(EXTRA_ELECTION_ID),
+                            HeavyTaskScheduler.NEEDS_CRYPTO,
+                            HeavyTaskScheduler.PRIORITY_VERIFY);
                     requests.put(intent.getStringExtra(EXTRA_ELECTION_ID), intent);
                     requestResults.put(intent, result);
                     break;
+                case ACTION_VERIFY_BUNDLES:
+                    // Not recorded as a job, since the bundles are only in the request.
+                    result = heavyTaskScheduler.submit(new VerifyBundlesTask(intent, db),
+                            intent.getStringExtra(EXTRA_ELECTION_ID),
+                            HeavyTaskScheduler.NEEDS_CRYPTO,
+                            HeavyTaskScheduler.PRIORITY_VERIFY);
+                    requestResults.put(intent, result);
+                    break;
+                case ACTION_TALLY_ELECTION:
+                    // Short and repeatable, so it is not recorded as a job either.
+                    result = heavyTaskScheduler.submit(new TallyElectionTask(intent, db),
+                            intent.getStringExtra(EXTRA_ELECTION_ID),
+                            HeavyTaskScheduler.NEEDS_CRYPTO,
+                            HeavyTaskScheduler.PRIORITY_VERIFY);
+                    requestResults.put(intent, result);
+                    break;
                 case ACTION_ERASE_ELECTION:
-                    result = heavyTaskThreadPool.submit(new EraseElectionTask(intent, db));
+                    if (!recordJob(intent, flags, db)) {
+                        tryStopSelf();
+                        break;
+                    }
+                    result = heavyTaskScheduler.submit(new EraseElectionTask(intent, db),
+                            intent.getStringExtra(EXTRA_ELECTION_ID),
+                            HeavyTaskScheduler.NEEDS_WRITER,
+                            HeavyTaskScheduler.PRIORITY_ERASE);
                     requestResults.put(intent, result);
                     break;
                 case ACTION_ERASE_ALL_ELECTIONS:
-                    result = heavyTaskThreadPool.submit(new EraseAllElectionsTask(intent, db));
+                    if (!recordJob(intent, flags, db)) {
+                        tryStopSelf();
+                        break;
+                    }
+                    result = heavyTaskScheduler.submit(new EraseAllElectionsTask(intent, db),
+                            null, HeavyTaskScheduler.EXCLUSIVE,
+                            HeavyTaskScheduler.PRIORITY_ERASE);
                     requestResults.put(intent, result);
                     break;
                 case ACTION_CANCEL_OPERATION:
@@ -361,6 +502,10 @@ public class TrusteeService extends Service {
                     if (oldRequest != null) {
                         if (BuildConfig.DEBUG) Log.d(TAG, "Cancelling " + oldRequest);
                         requestResults.remove(oldRequest).cancel(true);
+                        // Complete the task now if it was still waiting for its turn.
+                        heavyTaskScheduler.purge();
+                        // A cancelled job must not be resumed.
+                        finishJob(oldRequest, db);
                         // Even though the actual cancellation may not have been performed yet if
                         // the task was currently running, tell the UI that it has. We will handle
                         // it in the background.
@@ -381,6 +526,12 @@ public class TrusteeService extends Service {
     private Handler serviceHandler;
 
     private TrusteeOpenHelper dbHelper;
+    private BallotShardOpenHelper[] ballotShardHelpers;
+    /*
+     * The shard databases, opened along with the main database by the service handler,
+     * which also creates the tasks that use them.
+     */
+    private SQLiteDatabase[] ballotShards;
 
     private NotificationFactory notificationFactory;
     private NotificationManager notificationManager;
@@ -388,6 +539,19 @@ public class TrusteeService extends Service {
 
     private ServiceThreadPoolExecutor lightTaskThreadPool;
     private ServiceThreadPoolExecutor heavyTaskThreadPool;
+    private HeavyTaskScheduler heavyTaskScheduler;
+    /*
+     * The writer of the ballots, created along with the databases.
+     * Written only by the service handler, before the tasks that use it are submitted.
+     */
+    private volatile ShardedBallotWriter ballotWriter;
+
+    /*
+     * The ongoing notifications of the heavy tasks running in the foreground, by ID.
+     * The service stays in the foreground while any of them runs. Guarded by itself.
+     */
+    private final Map<Integer, Notification> foregroundNotifications = new LinkedHashMap<>();
+    private int foregroundNotificationId;
 
     /**
      * Constructs a TrusteeService.
@@ -409,13 +573,24 @@ public class TrusteeService extends Service {
         serviceHandler = new ServiceHandler(serviceLooper);
 
         dbHelper = new TrusteeOpenHelper(this);
+        ballotShardHelpers = BallotShardOpenHelper.newShards(this);
+        ballotShards = new SQLiteDatabase[ballotShardHelpers.length];
 
         notificationFactory = new NotificationFactory(this);
         notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         localBroadcastManager = LocalBroadcastManager.getInstance(this);
 
-        lightTaskThreadPool = new ServiceThreadPoolExecutor();
-        heavyTaskThreadPool = new ServiceThreadPoolExecutor();
+        lightTaskThreadPool = new ServiceThreadPoolExecutor(LIGHT_POOL_SIZE);
+        heavyTaskThreadPool = new ServiceThreadPoolExecutor(HEAVY_POOL_THREADS);
+        heavyTaskScheduler = new HeavyTaskScheduler(heavyTaskThreadPool, HEAVY_POOL_SIZE);
+
+        // This runs before any intent is handled, including the redelivered ones.
+        serviceHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                resumeJobs();
+            }
+        });
 
         if (BuildConfig.DEBUG) {
             Log.d(TAG, TrusteeService.class.getSimpleName() + " created");
@@ -429,6 +604,7 @@ public class TrusteeService extends Service {
 
         Message msg = serviceHandler.obtainMessage();
         msg.arg1 = startId;
+        msg.arg2 = flags;
         msg.obj = intent;
         serviceHandler.sendMessage(msg);
 
@@ -440,8 +616,15 @@ public class TrusteeService extends Service {
     @CallSuper
     public void onDestroy() {
         serviceLooper.quit();
+        heavyTaskScheduler.shutdown();
         lightTaskThreadPool.shutdownNow();
         heavyTaskThreadPool.shutdownNow();
+        if (ballotWriter != null) {
+            ballotWriter.shutdown();
+        }
+        for (BallotShardOpenHelper shardHelper : ballotShardHelpers) {
+            shardHelper.close();
+        }
         dbHelper.close();
         if (BuildConfig.DEBUG) {
             Assert.assertTrue("Thread pool is not empty", lightTaskThreadPool.getQueue().isEmpty());
@@ -450,6 +633,105 @@ public class TrusteeService extends Service {
         }
     }
 
+    /**
+     * Resumes the jobs left unfinished by a previous process, in the order they were recorded,
+     * by sending their requests to this service again.
+     */
+    @WorkerThread
+    private void resumeJobs() {
+        final WritableDatabaseHelper jobs;
+        try {
+            jobs = new WritableDatabaseHelper(dbHelper.getWritableDatabase());
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to open writable database", e);
+            return;
+        }
+        try {
+            final Cursor cursor = jobs.getUnfinishedJobs();
+            try {
+                while (cursor.moveToNext()) {
+                    final long jobId = cursor.getLong(
+                            cursor.getColumnIndexOrThrow(ServiceJob.COLUMN_NAME_JOB_ID));
+                    final String action = cursor.getString(
+                            cursor.getColumnIndexOrThrow(ServiceJob.COLUMN_NAME_ACTION));
+                    final String electionId = cursor.getString(
+                            cursor.getColumnIndexOrThrow(ServiceJob.COLUMN_NAME_ELECTION_ID));
+                    final String data = cursor.getString(
+                            cursor.getColumnIndexOrThrow(ServiceJob.COLUMN_NAME_DATA));
+                    final int attempts = cursor.getInt(
+                            cursor.getColumnIndexOrThrow(ServiceJob.COLUMN_NAME_ATTEMPTS));
+                    final long checkpoint = cursor.getLong(
+                            cursor.getColumnIndexOrThrow(ServiceJob.COLUMN_NAME_CHECKPOINT));
+
+                    if (attempts >= MAX_JOB_ATTEMPTS) {
+                        Log.e(TAG, "Giving up " + action + " of " + electionId
+                                + " after " + attempts + " attempts");
+                        jobs.finishJob(jobId);
+                        continue;
+                    }
+                    final Intent intent = new Intent(this, TrusteeService.class)
+                            .setAction(action)
+                            .putExtra(EXTRA_JOB_ID, jobId)
+                            .putExtra(EXTRA_JOB_CHECKPOINT, checkpoint);
+                    if (data != null) {
+                        intent.setData(Uri.parse(data));
+                    }
+                    if (electionId != null) {
+                        intent.putExtra(EXTRA_ELECTION_ID, electionId);
+                        TrusteeServiceHelper.getInstance().restoreRequest(electionId, intent);
+                    }
+                    Log.i(TAG, "Resuming " + action + " of " + electionId);
+                    startService(intent);
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (StoreException e) {
+            Log.e(TAG, "Failed to resume jobs", e);
+        } finally {
+            jobs.close();
+        }
+    }
+
+    /**
+     * Makes this a foreground service while a heavy task runs.
+     * Tasks may overlap, so the service leaves the foreground only after the last one ends.
+     *
+     * @param id the ID of the ongoing notification of the task
+     * @param notification the ongoing notification of the task
+     */
+    private void enterForeground(int id, Notification notification) {
+        synchronized (foregroundNotifications) {
+            foregroundNotifications.put(id, notification);
+            foregroundNotificationId = id;
+            startForeground(id, notification);
+        }
+    }
+
+    /**
+     * Removes the ongoing notification of a heavy task and, if it was the last one running,
+     * takes this service out of the foreground.
+     *
+     * @param id the ID of the ongoing notification of the task
+     */
+    private void leaveForeground(int id) {
+        synchronized (foregroundNotifications) {
+            foregroundNotifications.remove(id);
+            if (foregroundNotifications.isEmpty()) {
+                stopForeground(true);
+                return;
+            }
+            if (id == foregroundNotificationId) {
+                // Hand the foreground over to a task still running.
+                final Map.Entry<Integer, Notification> next =
+                        foregroundNotifications.entrySet().iterator().next();
+                foregroundNotificationId = next.getKey();
+                startForeground(next.getKey(), next.getValue());
+            }
+            notificationManager.cancel(id);
+        }
+    }
+
     /**
      * We don't provide binding, so this method simply returns null.
      * @see android.app.Service#onBind
@@ -487,10 +769,24 @@ public class TrusteeService extends Service {
          * The ID used for displaying notifications.
          */
         protected final int notificationId;
+        /**
+         * The job of the request or {@link #NO_JOB} for requests that are not recorded.
+         */
+        protected final long jobId;
+        /**
+         * The job queue, on the same database as the data store.
+         */
+        protected final JobStore jobs;
 
         protected Task(Intent request, SQLiteDatabase db) {
+            this(request, new ShardedDatabaseHelper(db, ballotShards));
+        }
+
+        protected Task(Intent request, WritableDatabaseHelper store) {
             this.request = request;
-            this.store = new WritableDatabaseHelper(db);
+            this.store = store;
+            this.jobs = store;
+            this.jobId = request.getLongExtra(EXTRA_JOB_ID, NO_JOB);
             this.notificationId = NotificationFactory.getNotificationId();
             this.localIntent = new Intent(ACTION_BROADCAST_STATUS)
                     .putExtra(EXTRA_REQUEST, request);
@@ -514,11 +810,23 @@ public class TrusteeService extends Service {
 
         /**
          * Executes the task that this class defines and performs cleanup.
+         * The job of the task is marked as done, unless the task was interrupted, in which case
+         * it is either cancelled (and marked as done by the canceller) or the service is going
+         * down (and it will be resumed).
          */
         @Override
         public final void run() {
             try {
+                if (jobId != NO_JOB) {
+                    jobs.startJob(jobId);
+                }
                 performTask();      // The actual work is done here.
+                if (jobId != NO_JOB && !Thread.currentThread().isInterrupted()) {
+                    jobs.finishJob(jobId);
+                }
+            } catch (StoreException e) {
+                // The task itself is not affected. At worst, it will run again.
+                Log.e(TAG, "Failed to save job state", e);
             } finally {
                 store.close();
             }
@@ -530,7 +838,11 @@ public class TrusteeService extends Service {
         protected final String electionId;
 
         ElectionTask(Intent request, SQLiteDatabase db) {
-            super(request, db);
+            this(request, new ShardedDatabaseHelper(db, ballotShards));
+        }
+
+        ElectionTask(Intent request, WritableDatabaseHelper store) {
+            super(request, store);
             this.electionId = request.getStringExtra(EXTRA_ELECTION_ID);
             this.localIntent.putExtra(EXTRA_ELECTION_ID, this.electionId);
             if (BuildConfig.DEBUG) {
@@ -555,6 +867,8 @@ public class TrusteeService extends Service {
     @WorkerThread
     private abstract class HeavyElectionTask extends ElectionTask {
         protected static final long COUNT_INTERVAL = 100;
+        private static final String TRACE_DIRECTORY = "traces";
+        private static final int MAX_PROGRESS_UPDATES_PER_SECOND = 4;
 
         /**
          * The intent that will be used to broadcast progress.
@@ -566,10 +880,45 @@ public class TrusteeService extends Service {
          * It is important that this is different from the ID for normal notifications.
          */
         protected final int ongoingNotificationId;
+        /**
+         * The per-stage metrics of this task. They are saved when the task finishes.
+         */
+        protected final TaskMetrics metrics;
+        /**
+         * A view of the data store that records the ballot store calls and the commits.
+         * Subclasses should use this for the ballot loops.
+         */
+        protected final WritableDataStore measuredStore;
+        /**
+         * Coalesces progress updates, so that frequent reports are cheap.
+         */
+        private final ProgressReporter progressReporter;
 
-        protected HeavyElectionTask(Intent request, SQLiteDatabase db) {
-            super(request, db);
+        protected HeavyElectionTask(Intent request, SQLiteDatabase db, String taskName) {
+            this(request, new ShardedDatabaseHelper(db, ballotShards), taskName);
+        }
+
+        private HeavyElectionTask(Intent request, WritableDatabaseHelper store, String taskName) {
+            super(request, store);
             this.ongoingNotificationId = NotificationFactory.getNotificationId();
+            this.metrics = new TaskMetrics(taskName);
+            // Only the operations that the task performs will be exported.
+            this.metrics.addLatency("insert", store.getInsertLatency());
+            this.metrics.addLatency("lookup", store.getLookupLatency());
+            this.metrics.addLatency("commit", store.getCommitLatency());
+            this.measuredStore = new MeasuredDataStore(store, metrics);
+            this.progressReporter = new ProgressReporter(MAX_PROGRESS_UPDATES_PER_SECOND) {
+                @Override
+                protected void publish(long count, long total) {
+                    final TaskTracer tracer = metrics.getTracer();
+                    final long start = tracer.begin(TaskTracer.SPAN_PROGRESS);
+                    try {
+                        publishProgress(count, total);
+                    } finally {
+                        metrics.addProgressReport(tracer.end(TaskTracer.SPAN_PROGRESS, start));
+                    }
+                }
+            };
             this.progressIntent = new Intent(ACTION_BROADCAST_STATUS)
                     .putExtra(EXTRA_ELECTION_ID, this.electionId);
             if (BuildConfig.DEBUG) {
@@ -589,20 +938,95 @@ public class TrusteeService extends Service {
             notificationManager.notify(ongoingNotificationId, notification);
         }
 
+        /**
+         * Reports the number of ballots processed so far.
+         * This can be called often, since most updates are dropped.
+         *
+         * @param count the number of ballots processed so far
+         * @param total the total number of ballots or {@link ProgressReporter#UNKNOWN_TOTAL}
+         */
+        protected void reportCount(long count, long total) {
+            metrics.setBallotCount(count);
+            progressReporter.update(count, total);
+        }
+
+        /**
+         * Reports the final number of ballots processed.
+         *
+         * @param count the number of ballots processed
+         * @param total the total number of ballots or {@link ProgressReporter#UNKNOWN_TOTAL}
+         */
+        protected void reportFinalCount(long count, long total) {
+            metrics.setBallotCount(count);
+            progressReporter.finish(count, total);
+        }
+
+        /**
+         * Subclasses must override this method to actually publish the progress,
+         * usually with {@link #reportProgress}. This is called only for updates that are
+         * not coalesced, so it is fine to build a new notification here.
+         *
+         * @param count the number of ballots processed so far
+         * @param total the total number of ballots or {@link ProgressReporter#UNKNOWN_TOTAL}
+         */
+        protected abstract void publishProgress(long count, long total);
+
         protected abstract void performHeavyTask() throws InterruptedException;
 
+        /**
+         * Saves the metrics of this task, even if it failed, so that they can be exported later.
+         */
+        private void saveMetrics() {
+            metrics.finish();
+            final String json = metrics.toJson();
+            Log.i(TAG, "Task metrics: " + json);
+            try {
+                store.saveMetrics(electionId, metrics.getTask(), json);
+            } catch (StoreException e) {
+                Log.e(TAG, "Error saving task metrics", e);
+            }
+        }
+
+        /**
+         * Writes the spans of this task as a Chrome trace, if tracing is enabled.
+         * The trace is written to the app-specific external storage, when available,
+         * so that it can be pulled without root.
+         */
+        private void saveTrace() {
+            if (!TaskTracer.ENABLED) {
+                return;
+            }
+            File dir = getExternalFilesDir(TRACE_DIRECTORY);
+            if (dir == null) {
+                dir = new File(getFilesDir(), TRACE_DIRECTORY);
+            }
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                Log.e(TAG, "Error creating trace directory " + dir);
+                return;
+            }
+            final String name = (electionId + '-' + metrics.getTask() + ".json")
+                    .replaceAll("[^A-Za-z0-9._-]", "_");
+            final File file = new File(dir, name);
+            try {
+                metrics.getTracer().writeTo(file);
+                Log.i(TAG, "Task trace written to " + file);
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing task trace", e);
+            }
+        }
+
         @Override
         protected final void performTask() {
             try {
-                long t1 = System.currentTimeMillis();
                 performHeavyTask();
-                long t2 = System.currentTimeMillis();
-                Log.i(TAG, "asdfasdfasdfasdfdsfadsfadsfasdfdf time: " + (t2 - t1));
             } catch (InterruptedException ignored) {
-                // Nothing to report.
+                // Nothing to report. Keep the status, so that the job is not marked as done.
+                Thread.currentThread().interrupt();
             } finally {
                 // The task has finished, so cancellation does not make sense any more.
                 requests.remove(electionId);
+                saveMetrics();
+                saveTrace();
             }
         }
     }
@@ -652,12 +1076,27 @@ public class TrusteeService extends Service {
         private static final String TAG = "InitializeElectionTask";
         private static final String LOG_ERROR_MSG = "Election initialization failed";
 
+        /**
+         * The number of ballots stored by a previous run of the job.
+         */
+        private final long checkpoint;
+        /**
+         * Sends the ballots of every transaction to the database writer.
+         */
+        private final BatchingDataStore batchingStore;
+        private final WritableDataStore ballotStore;
+
         InitializeElectionTask(Intent request, SQLiteDatabase db) {
-            super(request, db);
+            super(request, db, "initialize");
             this.progressIntent.putExtra(EXTRA_REQUEST_STATUS, STATUS_INITIALIZING_ELECTION_PROGRESS);
+            this.checkpoint = request.getLongExtra(EXTRA_JOB_CHECKPOINT, 0);
+            this.batchingStore = new BatchingDataStore(store, ballotWriter, electionId);
+            this.ballotStore = new MeasuredDataStore(batchingStore, metrics);
+            this.metrics.addLatency("write", ballotWriter.getWriteLatency());
         }
 
-        private void reportCount(long count) {
+        @Override
+        protected void publishProgress(long count, long total) {
             reportProgress(count, notificationFactory.newOngoingInitNotification(electionId, count));
         }
 
@@ -674,11 +1113,16 @@ public class TrusteeService extends Service {
          */
         private void parseData(InputStream dataStream)
                 throws StoreException, ParseException, IOException, InterruptedException {
-            final InitDataParser parser = new InitDataProtoParser(dataStream, store, electionId);
+            final InitDataParser parser = new InitDataProtoParser(
+                    new MeasuredInputStream(dataStream, metrics), ballotStore, electionId);
             final ElectionStatus status = ElectionStatus.valueOf(store.getElectionStatus(electionId));
 
             // In case of a previous failed attempt
-            if (status == ElectionStatus.INITIALIZING) {
+            final boolean resuming = status == ElectionStatus.INITIALIZING && checkpoint > 0;
+            if (resuming) {
+                // The checkpoint was saved with the ballots, so exactly these are stored.
+                Log.i(TAG, "Resuming initialization after " + checkpoint + " ballots...");
+            } else if (status == ElectionStatus.INITIALIZING) {
                 Log.i(TAG, "Recovering from initialization error...");
                 // Discard the ballots that were already inserted.
                 store.eraseBallots(electionId);
@@ -692,32 +1136,68 @@ public class TrusteeService extends Service {
             broadcastStatus(STATUS_INITIALIZING_ELECTION);
 
             parser.parseKey();
+            if (resuming) {
+                while (parser.getParsedBallotCount() < checkpoint) {
+                    if (!parser.skipBallot()) {
+                        throw new TruncatedFileException("Data file shorter than checkpoint");
+                    }
+                }
+            }
 
             // Break parsing into small database transactions to increase performance.
             // One large transaction is unlikely due to disk space needs and locking.
             for (;;) {
-                int i;
-
                 if (Thread.interrupted()) {
                     throw new InterruptedException("Election initialization interrupted");
                 }
-                store.beginTransaction();
-                try {
-                    for (i = 0; i < COUNT_INTERVAL && parser.parseBallot(); ++i) {}
-                    store.setTransactionSuccessful();
-                } finally {
-                    store.endTransaction();
-                }
-                if (i < COUNT_INTERVAL) break;
-                // Send an update for every COUNT_INTERVAL ballots parsed.
-                reportCount(parser.getParsedBallotCount());
+                if (parseBatch(parser) < COUNT_INTERVAL) break;
+                // Report after every COUNT_INTERVAL ballots parsed (most reports are coalesced).
+                reportCount(parser.getParsedBallotCount(), ProgressReporter.UNKNOWN_TOTAL);
+                // Let a waiting verification run first. No transaction is open here.
+                heavyTaskScheduler.yieldIfPreempted();
             }
+            // All the ballots must be stored before the election is marked as initialized.
+            batchingStore.flush();
+            reportFinalCount(parser.getParsedBallotCount(), ProgressReporter.UNKNOWN_TOTAL);
 
             store.setElectionStatus(electionId, ElectionStatus.INITIALIZED.getValue());
             displayNotification(notificationFactory.newInitNotification(
                     electionId, parser.getParsedBallotCount()));
         }
 
+        /**
+         * Parses up to COUNT_INTERVAL ballots in a single transaction, which is committed by the
+         * database writer while the next one is parsed.
+         *
+         * @return the number of ballots parsed (less than COUNT_INTERVAL only at the end)
+         */
+        private int parseBatch(InitDataParser parser)
+                throws StoreException, ParseException, IOException {
+            final TaskTracer tracer = metrics.getTracer();
+            final long transactionStart = tracer.begin(TaskTracer.SPAN_TRANSACTION);
+            try {
+                ballotStore.beginTransaction();
+                try {
+                    int i;
+                    final long decodeStart = tracer.begin(TaskTracer.SPAN_DECODE);
+                    try {
+                        for (i = 0; i < COUNT_INTERVAL && parser.parseBallot(); ++i) {}
+                    } finally {
+                        tracer.end(TaskTracer.SPAN_DECODE, decodeStart);
+                    }
+                    if (jobId != NO_JOB) {
+                        batchingStore.setCheckpoint(jobId, parser.getParsedBallotCount());
+                    }
+                    ballotStore.setTransactionSuccessful();
+                    return i;
+                } finally {
+                    ballotStore.endTransaction();
+                }
+            } finally {
+                tracer.end(TaskTracer.SPAN_TRANSACTION, transactionStart);
+            }
+        }
+
         private void reportError(String electionId, int errorCode, @StringRes int errorMsg) {
             broadcastStatus(errorCode);
             displayNotification(notificationFactory.newErrorNotification(
@@ -728,7 +1208,7 @@ public class TrusteeService extends Service {
         protected void performHeavyTask() throws InterruptedException {
             // The election initialization is a potentially time-consuming operation that the user
             // is aware of. So, make this a foreground service to prevent Android from killing it.
-            startForeground(ongoingNotificationId, notificationFactory.newOngoingInitNotification(electionId));
+            enterForeground(ongoingNotificationId, notificationFactory.newOngoingInitNotification(electionId));
 
             InputStream stream = null;
             boolean successful = false;
@@ -752,12 +1232,14 @@ public class TrusteeService extends Service {
                 Log.e(TAG, LOG_ERROR_MSG, e);
                 reportError(electionId, STATUS_IO_ERROR, R.string.notification_io_error);
             } finally {
+                // Wait for the batches in flight, so that no write outlives the task.
+                batchingStore.close();
                 notifyServiceHelper();
                 // Notify observers last to prevent race conditions.
                 if (successful) {
                     broadcastStatus(STATUS_INITIALIZED_ELECTION);
                 }
-                stopForeground(true);
+                leaveForeground(ongoingNotificationId);
                 if (stream != null) {
                     try {
                         stream.close();
@@ -774,85 +1256,19 @@ public class TrusteeService extends Service {
         private static final String TAG = "VerifyElectionTask";
         private static final String LOG_ERROR_MSG = "Election verification failed";
 
-        // TODO: Decide on server API.
-        private static final String URL_ENCODING = "UTF-8";
-        private static final String TOTAL_BALLOTS_URL_SUFFIX = "gettotal/?%s";
-        private static final String RESPONSE_URL_SUFFIX = "?id=%s&start=%s&stop=%s";
-        private static final String RESULT_URL_SUFFIX = "post/?%s";
-
         VerifyElectionTask(Intent request, SQLiteDatabase db) {
-            super(request, db);
+            super(request, db, "verify");
             this.progressIntent.putExtra(EXTRA_REQUEST_STATUS, STATUS_VERIFYING_ELECTION_PROGRESS);
         }
 
 
-        private String makeTotalVotedBallotsUrl(String baseAbbUrl)
-                throws UnsupportedEncodingException {
-            return baseAbbUrl + String.format(TOTAL_BALLOTS_URL_SUFFIX,
-                    URLEncoder.encode(electionId, URL_ENCODING));
-        }
-
-        private String makeAbbResponseUrl(String baseAbbUrl, long start, long stop)
-                throws UnsupportedEncodingException {
-            return baseAbbUrl + String.format(RESPONSE_URL_SUFFIX,
-                    URLEncoder.encode(electionId, URL_ENCODING),
-                    URLEncoder.encode(Long.toString(start), URL_ENCODING),
-                    URLEncoder.encode(Long.toString(stop), URL_ENCODING));
-        }
-
-        private String makeTrusteeResultUrl(String baseAbbUrl)
-                throws UnsupportedEncodingException {
-            return baseAbbUrl + String.format(RESULT_URL_SUFFIX,
-                    URLEncoder.encode(electionId, URL_ENCODING));
-        }
-
-
-        private void reportCount(long count, long total) {
+        @Override
+        protected void publishProgress(long count, long total) {
             reportProgress(
                     Utils.toPercentage(count, total),
                     notificationFactory.newOngoingVerNotification(electionId, count, total));
         }
 
-        /**
-         *
-         * @return
-         * @throws MalformedURLException
-         * @throws IOException
-         */
-        private long getTotalBallotCount(String baseAbbUrl) throws IOException {
-            URLConnection connection = null;
-            BufferedReader reader = null;
-            try {
-                connection = new HTTPRequestSender(makeTotalVotedBallotsUrl(baseAbbUrl)).sendGetRequest();
-                reader = new BufferedReader(connection.getInputStreamReader());
-                return Long.parseLong(reader.readLine());
-            } finally {
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
-                        Log.e(TAG, "Error closing ballot count connection input stream reader", e);
-                    }
-                }
-                if (connection != null) {
-                    connection.disconnect();
-                }
-            }
-        }
-
-        /**
-         *
-         * @param decommitment the decommitment bundle
-         * @throws MalformedURLException
-         * @throws SocketTimeoutException
-         * @throws IOException
-         * @throws StoreException
-         */
-        private void postResult(String baseAbbUrl, String decommitment)
-                throws IOException, StoreException {
-            new HTTPRequestSender(makeTrusteeResultUrl(baseAbbUrl)).postResult(decommitment);
-        }
-
         /**
          *
          * @throws MalformedURLException
@@ -865,84 +1281,65 @@ public class TrusteeService extends Service {
         @WorkerThread
         private void parseResponse()
                 throws IOException, ParseException, StoreException, InterruptedException {
-            URLConnection connection = null;
-            BufferedReader reader = null;
-            try {
-                final ElectionStatus status = ElectionStatus.valueOf(store.getElectionStatus(electionId));
-
-                // In case of a previous failed attempt
-                if (status == ElectionStatus.VERIFYING) {
-                    Log.i(TAG, "Recovering from verification error...");
-                    // There is nothing to fix here.
-                    Log.i(TAG, "Restarting verification...");
-                } else if (status != ElectionStatus.INITIALIZED) {
-                    String msg = "Election is not in " + ElectionStatus.INITIALIZED + " state";
-                    Log.e(TAG, msg);
-                    throw new IllegalStateException(msg);
-                }
-                store.setElectionStatus(electionId, ElectionStatus.VERIFYING.getValue());
-                broadcastStatus(STATUS_VERIFYING_ELECTION);
-
-                final String baseAbbUrl = store.getElectionAbb(electionId);
-                final long totalCount = getTotalBallotCount(baseAbbUrl);
-                final Cryptosystem cryptosystem = new JNICryptosystem(
-                        store.getElectionDecommitmentKey(electionId));
-                final String url = makeAbbResponseUrl(baseAbbUrl, 0, totalCount);
-                final ResponseParser parser;
-
-                connection = new HTTPRequestSender(url).sendGetRequest();
-                reader = new BufferedReader(connection.getInputStreamReader());
-                if (BuildConfig.DEBUG) {
-                    Log.d(TAG, "Reading response from " + url);
-                }
-                parser = new SimpleResponseParser(reader, cryptosystem, store, electionId);
-
-                // Break parsing into small database transactions to increase performance.
-                // One large transaction is unlikely due to disk space needs and locking.
-                for (;;) {
-                    int i;
-
-                    if (Thread.interrupted()) {
-                        throw new InterruptedException("Election verification interrupted");
-                    }
-                    store.beginTransaction();
-                    try {
-                        for (i = 0; i < COUNT_INTERVAL && parser.parse(); ++i) {}
-                        store.setTransactionSuccessful();
-                    } finally {
-                        store.endTransaction();
-                    }
-                    if (i < COUNT_INTERVAL) break;
-                    // Send an update for every COUNT_INTERVAL ballots parsed.
-                    reportCount(parser.getParsedBallotCount(), totalCount);
-                }
-
-                if (BuildConfig.DEBUG) {
-                    Log.d(TAG, "Parsed ballots: " + Long.toString(parser.getParsedBallotCount()));
-                }
+            final ElectionStatus status = ElectionStatus.valueOf(store.getElectionStatus(electionId));
 
-                final String decommitmentBundle = cryptosystem.computeBundle();
-                store.saveDecommitmentBundle(electionId, decommitmentBundle);
-                //store.setElectionStatus(electionId, ElectionStatus.VERIFIED.getValue());
+            // In case of a previous failed attempt
+            if (status == ElectionStatus.VERIFIED) {
+                // Only the post failed. The bundle is saved and must not be computed again.
+                Log.i(TAG, "Posting the saved decommitment bundle again...");
+                final AbbClient client = new AbbClient(
+                        store.getElectionAbb(electionId), electionId, new RetryPolicy(), metrics);
+                ElectionResults.publish(store, client, electionId,
+                        store.getElectionDecommitmentBundle(electionId));
+                return;
+            } else if (status == ElectionStatus.VERIFYING) {
+                Log.i(TAG, "Recovering from verification error...");
+                // There is nothing to fix here.
+                Log.i(TAG, "Restarting verification...");
+            } else if (status != ElectionStatus.INITIALIZED) {
+                String msg = "Election is not in " + ElectionStatus.INITIALIZED + " state";
+                Log.e(TAG, msg);
+                throw new IllegalStateException(msg);
+            }
+            store.setElectionStatus(electionId, ElectionStatus.VERIFYING.getValue());
+            broadcastStatus(STATUS_VERIFYING_ELECTION);
+
+            final AbbClient client = new AbbClient(
+                    store.getElectionAbb(electionId), electionId, new RetryPolicy(), metrics);
+            final long totalCount = client.getTotalBallotCount();
+            final String decommitmentKey = store.getElectionDecommitmentKey(electionId);
+            Cryptosystem bundle;
+            try {
+                final JNICryptosystem jniCryptosystem = new JNICryptosystem(decommitmentKey);
+                metrics.addLatency("add", jniCryptosystem.getAddLatency());
+                bundle = jniCryptosystem;
+            } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+                // No native library for this ABI (NoClassDefFoundError after the first attempt).
+                Log.w(TAG, "Native cryptosystem unavailable, computing the bundle in Java", e);
+                bundle = new JavaCryptosystem(decommitmentKey);
+            }
+            final Cryptosystem cryptosystem = new MeasuredCryptosystem(bundle, metrics);
+
+            final long parsedCount = client.readResponses(totalCount, cryptosystem, measuredStore,
+                    COUNT_INTERVAL, new AbbClient.ProgressListener() {
+                        @Override
+                        public void onProgress(long count) {
+                            // Most reports are coalesced.
+                            reportCount(count, totalCount);
+                        }
+                    });
+            reportFinalCount(parsedCount, totalCount);
+
+            final String decommitmentBundle = cryptosystem.computeBundle();
+            if (BuildConfig.DEBUG && bundle instanceof JNICryptosystem) {
+                Log.d(TAG, "Native allocations: " + JNICryptosystem.getNativeAllocations());
+            }
+            ElectionResults.save(store, electionId, decommitmentBundle);
 
-                broadcastStatus(STATUS_VERIFIED_ELECTION);
-                displayNotification(notificationFactory.newVerNotification(
-                        electionId, parser.getParsedBallotCount()));
+            broadcastStatus(STATUS_VERIFIED_ELECTION);
+            displayNotification(notificationFactory.newVerNotification(electionId, parsedCount));
 
-                postResult(baseAbbUrl, decommitmentBundle);
-                store.setElectionStatus(electionId, ElectionStatus.COMPLETED.getValue());
-            } finally {
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
-                        Log.e(TAG, "Error closing ballot connection input stream reader", e);
-                    }
-                }
-                if (connection != null) {
-                    connection.disconnect();
-                }
-            }
+            ElectionResults.publish(store, client, electionId, decommitmentBundle);
         }
 
         private void reportError(String electionId, int errorCode, @StringRes int errorMsg) {
@@ -955,7 +1352,7 @@ public class TrusteeService extends Service {
         protected void performHeavyTask() throws InterruptedException {
             // Verification happens after the election is ended and is probably a time-sensitive
             // operation. So, make this a foreground service to prevent Android from killing it.
-            startForeground(ongoingNotificationId, notificationFactory.newOngoingVerNotification(electionId));
+            enterForeground(ongoingNotificationId, notificationFactory.newOngoingVerNotification(electionId));
 
             boolean successful = false;
             try {
@@ -974,9 +1371,12 @@ public class TrusteeService extends Service {
                 Log.e(TAG, LOG_ERROR_MSG, e);
                 reportError(electionId, STATUS_INVALID_URL, R.string.notification_invalid_url);
             } catch (SocketTimeoutException e) {
+                // The retry policy has already given up at this point.
                 Log.e(TAG, "Election verification - " + e.toString());
                 reportError(electionId, STATUS_SOCKET_TIMEOUT, R.string.notification_timeout);
-                // TODO: Restart with exponential backoff?
+            } catch (InterruptedIOException e) {
+                // The task was cancelled while backing off.
+                throw new InterruptedException("Election verification interrupted");
             } catch (IOException e) {
                 Log.e(TAG, LOG_ERROR_MSG, e);
                 reportError(electionId, STATUS_IO_ERROR, R.string.notification_io_error);
@@ -986,7 +1386,134 @@ public class TrusteeService extends Service {
                 if (successful) {
                     broadcastStatus(STATUS_COMPLETED_ELECTION);
                 }
-                stopForeground(true);
+                leaveForeground(ongoingNotificationId);
+            }
+        }
+    }
+
+    /**
+     * Checks a set of commitment bundles against their decommitment bundles, all at once,
+     * with the key of the election.
+     */
+    @WorkerThread
+    private final class VerifyBundlesTask extends ElectionTask {
+        private static final String TAG = "VerifyBundlesTask";
+        private static final String LOG_ERROR_MSG = "Bundle verification failed";
+
+        VerifyBundlesTask(Intent request, SQLiteDatabase db) {
+            super(request, db);
+        }
+
+        private void reportError(int errorCode, @StringRes int errorMsg) {
+            broadcastStatus(errorCode);
+            displayNotification(notificationFactory.newErrorNotification(
+                    R.string.notification_verify_error, errorMsg, electionId));
+        }
+
+        @Override
+        protected void performTask() {
+            final String[] commitmentBundles =
+                    request.getStringArrayExtra(EXTRA_COMMITMENT_BUNDLES);
+            final String[] decommitmentBundles =
+                    request.getStringArrayExtra(EXTRA_DECOMMITMENT_BUNDLES);
+
+            if (BuildConfig.DEBUG) {
+                // Extended data are always set by the helper.
+                Assert.assertNotNull(commitmentBundles);
+                Assert.assertNotNull(decommitmentBundles);
+            }
+
+            try {
+                final String key = store.getElectionDecommitmentKey(electionId);
+                if (key == null) {
+                    Log.e(TAG, "Election " + electionId + " has no key");
+                    reportError(STATUS_INVALID_ELECTION_STATE,
+                            R.string.notification_election_state_error);
+                    return;
+                }
+                final long start = System.nanoTime();
+                final int index =
+                        JNICryptosystem.verifyBundles(commitmentBundles, decommitmentBundles, key);
+                Log.i(TAG, String.format("Verified %d bundles in %d ms", commitmentBundles.length,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                if (index == -1) {
+                    broadcastStatus(STATUS_BUNDLES_MATCHED);
+                } else {
+                    Log.w(TAG, "Bundle " + index + " does not match");
+                    localIntent.putExtra(EXTRA_BUNDLE_INDEX, index);
+                    broadcastStatus(STATUS_BUNDLE_MISMATCH);
+                }
+            } catch (StoreException e) {
+                Log.e(TAG, LOG_ERROR_MSG, e);
+                reportError(STATUS_STORAGE_ERROR, R.string.notification_storage_error);
+            } catch (IllegalArgumentException e) {
+                // A null bundle, which the helper does not let through.
+                Log.e(TAG, LOG_ERROR_MSG, e);
+                reportError(STATUS_PARSE_ERROR, R.string.notification_parse_error);
+            } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+                // There is no Java fallback for the elliptic curve operations.
+                Log.e(TAG, LOG_ERROR_MSG, e);
+                reportError(STATUS_CRYPTOSYSTEM_UNAVAILABLE,
+                        R.string.notification_cryptosystem_unavailable);
+            }
+            // Not a pending request of the helper, so it is not notified.
+        }
+    }
+
+    /**
+     * Tallies a verified election from its decommitment bundle and stores the vote counts.
+     */
+    @WorkerThread
+    private final class TallyElectionTask extends ElectionTask {
+        private static final String TAG = "TallyElectionTask";
+        private static final String LOG_ERROR_MSG = "Tallying failed";
+
+        TallyElectionTask(Intent request, SQLiteDatabase db) {
+            super(request, db);
+        }
+
+        private void reportError(int errorCode, @StringRes int errorMsg) {
+            broadcastStatus(errorCode);
+            displayNotification(notificationFactory.newErrorNotification(
+                    R.string.notification_tally_error, errorMsg, electionId));
+        }
+
+        @Override
+        protected void performTask() {
+            // Always set by the helper, which checks them, but the request may come from elsewhere.
+            final int voterCount = request.getIntExtra(EXTRA_VOTER_COUNT, -1);
+            final int optionCount = request.getIntExtra(EXTRA_OPTION_COUNT, -1);
+
+            try {
+                if (voterCount < 0 || voterCount == Integer.MAX_VALUE || optionCount <= 0) {
+                    throw new IllegalArgumentException("Invalid counts: " + voterCount
+                            + " voters, " + optionCount + " options");
+                }
+                final long start = System.nanoTime();
+                final String tally =
+                        ElectionResults.tally(store, electionId, voterCount, optionCount);
+                if (tally == null) {
+                    reportError(STATUS_INVALID_ELECTION_STATE,
+                            R.string.notification_election_state_error);
+                    return;
+                }
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, String.format("Tallied %d options in %d us", optionCount,
+                            TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)));
+                }
+                store.saveTally(electionId, tally);
+                localIntent.putExtra(EXTRA_TALLY, tally);
+                broadcastStatus(STATUS_TALLIED_ELECTION);
+            } catch (StoreFullException e) {
+                Log.e(TAG, LOG_ERROR_MSG, e);
+                reportError(STATUS_STORAGE_FULL_ERROR, R.string.notification_storage_full_error);
+            } catch (StoreException e) {
+                Log.e(TAG, LOG_ERROR_MSG, e);
+                reportError(STATUS_STORAGE_ERROR, R.string.notification_storage_error);
+            } catch (IllegalArgumentException e) {
+                // Invalid counts or a malformed decommitment bundle.
+                Log.e(TAG, LOG_ERROR_MSG, e);
+                reportError(STATUS_PARSE_ERROR, R.string.notification_parse_error);
             }
         }
     }
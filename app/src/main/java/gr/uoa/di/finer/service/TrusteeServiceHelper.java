@@ -15,13 +15,19 @@ import static gr.uoa.di.finer.service.TrusteeService.ACTION_CREATE_ELECTION;
 import static gr.uoa.di.finer.service.TrusteeService.ACTION_ERASE_ALL_ELECTIONS;
 import static gr.uoa.di.finer.service.TrusteeService.ACTION_ERASE_ELECTION;
 import static gr.uoa.di.finer.service.TrusteeService.ACTION_INITIALIZE_ELECTION;
+import static gr.uoa.di.finer.service.TrusteeService.ACTION_TALLY_ELECTION;
+import static gr.uoa.di.finer.service.TrusteeService.ACTION_VERIFY_BUNDLES;
 import static gr.uoa.di.finer.service.TrusteeService.ACTION_VERIFY_ELECTION;
 import static gr.uoa.di.finer.service.TrusteeService.EXTRA_ABB_URL;
 import static gr.uoa.di.finer.service.TrusteeService.EXTRA_CANCELLED_TASK;
+import static gr.uoa.di.finer.service.TrusteeService.EXTRA_COMMITMENT_BUNDLES;
+import static gr.uoa.di.finer.service.TrusteeService.EXTRA_DECOMMITMENT_BUNDLES;
 import static gr.uoa.di.finer.service.TrusteeService.EXTRA_ELECTION_ID;
 import static gr.uoa.di.finer.service.TrusteeService.EXTRA_END_TIME;
+import static gr.uoa.di.finer.service.TrusteeService.EXTRA_OPTION_COUNT;
 import static gr.uoa.di.finer.service.TrusteeService.EXTRA_QUESTION;
 import static gr.uoa.di.finer.service.TrusteeService.EXTRA_START_TIME;
+import static gr.uoa.di.finer.service.TrusteeService.EXTRA_VOTER_COUNT;
 
 /**
  * A singleton which exposes a simple asynchronous API to clients
@@ -90,6 +96,18 @@ public final class TrusteeServiceHelper {
         return requests.containsKey(electionId);
     }
 
+    /**
+     * Restores a request that the service resumed after the process was restarted, so that the
+     * election is reported as pending again and the request can be cancelled.
+     *
+     * @param electionId the ID of the election of the request
+     * @param intent the intent of the resumed request
+     */
+    void restoreRequest(String electionId, Intent intent) {
+        intent.putExtra(EXTRA_RESULT_RECEIVER, resultReceiver);
+        requests.put(electionId, intent);
+    }
+
     /**
      * Starts the Trustee service to create a new election.
      * The election will not be initialized. To initialize it, use {@link #initializeElection}.
@@ -157,6 +175,67 @@ public final class TrusteeServiceHelper {
         }
     }
 
+    /**
+     * Starts the Trustee service to check a set of commitment bundles of the election specified
+     * against their decommitment bundles. The result is broadcast as either
+     * {@link TrusteeService#STATUS_BUNDLES_MATCHED} or
+     * {@link TrusteeService#STATUS_BUNDLE_MISMATCH}.
+     *
+     * If the service is already performing a similar task, this action will be queued.
+     * This task is short and cannot be cancelled. It does not make the election pending.
+     *
+     * @param context the context associated with this request
+     * @param electionId the ID of the election whose key is used
+     * @param commitmentBundles the commitment bundles
+     * @param decommitmentBundles the decommitment bundles, in the same order
+     * @throws IllegalArgumentException if the arrays differ in length or contain null
+     */
+    public void verifyBundles(Context context, String electionId, String[] commitmentBundles,
+                              String[] decommitmentBundles) {
+        if (commitmentBundles.length != decommitmentBundles.length) {
+            throw new IllegalArgumentException("Bundle arrays differ in length");
+        }
+        for (int i = 0; i < commitmentBundles.length; ++i) {
+            if (commitmentBundles[i] == null || decommitmentBundles[i] == null) {
+                throw new IllegalArgumentException("Null bundle at index " + i);
+            }
+        }
+        Intent intent = new Intent(context, TrusteeService.class)
+                .setAction(ACTION_VERIFY_BUNDLES)
+                .putExtra(EXTRA_ELECTION_ID, electionId)
+                .putExtra(EXTRA_COMMITMENT_BUNDLES, commitmentBundles)
+                .putExtra(EXTRA_DECOMMITMENT_BUNDLES, decommitmentBundles);
+        context.startService(intent);
+    }
+
+    /**
+     * Starts the Trustee service to tally the election specified, which must have been verified.
+     * The vote counts are stored with the decommitment bundle and broadcast as
+     * {@link TrusteeService#STATUS_TALLIED_ELECTION}, in {@link TrusteeService#EXTRA_TALLY}.
+     *
+     * If the service is already performing a similar task, this action will be queued.
+     * This task is short and cannot be cancelled. It does not make the election pending.
+     *
+     * @param context the context associated with this request
+     * @param electionId the ID of the election to tally
+     * @param voterCount the number of voters of the election
+     * @param optionCount the number of options of the election
+     * @throws IllegalArgumentException if a count is out of range
+     */
+    public void tallyElection(Context context, String electionId, int voterCount,
+                              int optionCount) {
+        if (voterCount < 0 || voterCount == Integer.MAX_VALUE || optionCount <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid counts: " + voterCount + " voters, " + optionCount + " options");
+        }
+        Intent intent = new Intent(context, TrusteeService.class)
+                .setAction(ACTION_TALLY_ELECTION)
+                .putExtra(EXTRA_ELECTION_ID, electionId)
+                .putExtra(EXTRA_VOTER_COUNT, voterCount)
+                .putExtra(EXTRA_OPTION_COUNT, optionCount);
+        context.startService(intent);
+    }
+
     /**
      * Starts the Trustee service to erase the election specified.
      *
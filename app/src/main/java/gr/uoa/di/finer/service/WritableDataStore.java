@@ -67,6 +67,26 @@ public interface WritableDataStore extends ReadableDataStore {
      */
     void saveDecommitmentBundle(String electionId, String decommitmentBundle) throws StoreException;
 
+    /**
+     * Stores the tally of the election specified, which must have a decommitment bundle.
+     *
+     * @param electionId the ID of the election
+     * @param tally the vote counts of the options, separated by commas
+     * @throws StoreException if the tally could not be saved to the data store
+     */
+    void saveTally(String electionId, String tally) throws StoreException;
+
+    /**
+     * Stores the metrics of a heavy task of the election specified,
+     * replacing the metrics of any previous run of the same task.
+     *
+     * @param electionId the ID of the election
+     * @param task the name of the task
+     * @param metrics the metrics, as a JSON object
+     * @throws StoreException if the metrics could not be saved to the data store
+     */
+    void saveMetrics(String electionId, String task, String metrics) throws StoreException;
+
     /**
      * Erases the election with the specified ID.
      *
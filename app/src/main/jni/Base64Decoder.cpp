@@ -0,0 +1,96 @@
+/*
+ * Base64Decoder.cpp
+ *
+ * Decoding of the base-64 numbers of MIRACL (IOBASE 64) into limbs.
+ */
+
+#include <string.h>
+#include "Base64Decoder.h"
+#include "ModularAccumulator.h"
+
+//The value of every character as a base-64 digit (A-Z a-z 0-9 + /), or -1
+static const signed char digitValues[256] = {
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 62, -1, -1, -1, 63,
+	52, 53, 54, 55, 56, 57, 58, 59, 60, 61, -1, -1, -1, -1, -1, -1,
+	-1,  0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14,
+	15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, -1, -1, -1, -1, -1,
+	-1, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40,
+	41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, -1, -1, -1, -1, -1,
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+	-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1
+};
+
+//MIRACL writes a number as digits, most significant first, padded with leading zeros to a multiple
+//of 4 digits. So, a token is decoded in groups of 4 digits (24 bits), from the last one, with one
+//lookup per digit and no multiplications. The groups are collected in a bit buffer, from which
+//whole limbs are taken.
+int decodeBase64( const char* digits , uint32_t* limbs , int maxLimbs )
+{
+	int end = strlen( digits );
+	int count = 0;
+	uint64_t buffer = 0;
+	int bufferBits = 0;
+	while( end > 0 )
+	{
+		int group;
+		int groupDigits;
+		if( end >= 4 )
+		{
+			const unsigned char* d = (const unsigned char*)digits + end - 4;
+			int d0 = digitValues[d[0]] , d1 = digitValues[d[1]] , d2 = digitValues[d[2]] , d3 = digitValues[d[3]];
+			if( ( d0 | d1 | d2 | d3 ) < 0 )
+				return -1;
+			group = ( d0 << 18 ) | ( d1 << 12 ) | ( d2 << 6 ) | d3;
+			groupDigits = 4;
+		}
+		else
+		{
+			//The leading digits of an unpadded number
+			group = 0;
+			for( int i = 0 ; i < end ; ++i )
+			{
+				int digit = digitValues[(unsigned char)digits[i]];
+				if( digit < 0 )
+					return -1;
+				group = ( group << 6 ) | digit;
+			}
+			groupDigits = end;
+		}
+		buffer |= (uint64_t)group << bufferBits;
+		bufferBits += 6 * groupDigits;
+		end -= groupDigits;
+		//The last limb may be partial
+		while( bufferBits >= 32 || ( end == 0 && bufferBits > 0 ) )
+		{
+			if( count < maxLimbs )
+				limbs[count++] = (uint32_t)buffer;
+			//Leading zero digits past the last limb are fine
+			else if( (uint32_t)buffer != 0 )
+				return -1;
+			buffer >>= 32;
+			bufferBits -= 32;
+		}
+	}
+	//Without leading zero limbs, like a Big
+	while( count > 0 && limbs[count - 1] == 0 )
+		--count;
+	return count;
+}
+
+void decodeBase64( const char* digits , Big& value )
+{
+	uint32_t limbs[ACCUMULATOR_LIMBS];
+	int count = decodeBase64( digits , limbs , ACCUMULATOR_LIMBS );
+	if( count >= 0 )
+		value = ModularAccumulator::toBig( limbs , count );
+	else
+		value = (char *)digits;
+}
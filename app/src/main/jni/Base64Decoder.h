@@ -0,0 +1,22 @@
+/*
+ * Base64Decoder.h
+ *
+ * Decoding of the base-64 numbers of MIRACL (IOBASE 64) into limbs.
+ */
+
+#ifndef SRC_BASE64DECODER_H_
+#define SRC_BASE64DECODER_H_
+
+#include <stdint.h>
+#include "big.h"
+
+//Decodes digits (a NUL-terminated base-64 number) into 32-bit limbs, least significant first,
+//and returns the number of limbs, or -1 if the number has more than maxLimbs limbs or anything
+//other than base-64 digits (such as whitespace, which MIRACL skips).
+int decodeBase64( const char* digits , uint32_t* limbs , int maxLimbs );
+
+//Decodes digits into value, like value = digits with IOBASE 64. Numbers that the fast decoder
+//rejects are handed to MIRACL, so IOBASE must be 64.
+void decodeBase64( const char* digits , Big& value );
+
+#endif /* SRC_BASE64DECODER_H_ */
@@ -66,16 +66,292 @@ Cryptosystem::Cryptosystem()
 	mip = &precision;
 	keyTokenizer = new EfficientTokenizer( (char *)";-" );
 	decommitmentTokenizer = new EfficientTokenizer( ',' );
-	isFirstDecommitment = true;
+	for( int i = 0 ; i < NUM_CURVES ; ++i )
+	{
+		curves[i].isParsed = false;
+		curves[i].hasGenerator = false;
+		curves[i].hasTable = false;
+	}
+	activeCurve = -1;
+	for( int i = 0 ; i < NUM_KEY_TABLES ; ++i )
+		keys[i].isUsed = false;
+	nextKey = 0;
+	commitmentCurve = 0;
 }
 
 Cryptosystem::~Cryptosystem()
 {
+	for( int i = 0 ; i < NUM_CURVES ; ++i )
+		if( curves[i].hasTable )
+			ebrick_end( &curves[i].gTable );
+	for( int i = 0 ; i < NUM_KEY_TABLES ; ++i )
+		if( keys[i].isUsed )
+			ebrick_end( &keys[i].hTable );
 	delete keyTokenizer;
 	delete decommitmentTokenizer;
 	mip = NULL;
 }
 
+//Returns the parameters of a curve, parsing them on first use
+CurveContext& Cryptosystem::getCurve( int curve )
+{
+	CurveContext& context = curves[curve];
+	if( !context.isParsed )
+	{
+		int ioBase = mip->IOBASE;
+		mip->IOBASE = 16;
+		context.b = (char *)(ecb[curve]);
+		context.p = (char *)(ecp[curve]);
+		context.q = (char *)(ecq[curve]);
+		context.gx = (char *)(ecx[curve]);
+		context.gy = (char *)(ecy[curve]);
+		mip->IOBASE = ioBase;
+		context.sqrtExponent = ( context.p % 4 == 3 ) ? ( context.p + 1 ) / 4 : Big( 0 );
+		context.isParsed = true;
+	}
+	return context;
+}
+
+//Makes a curve the active one, if it is not already, and returns its parameters with the generator
+CurveContext& Cryptosystem::useCurve( int curve )
+{
+	CurveContext& context = getCurve( curve );
+	Big a = -3;
+	if( activeCurve != curve )
+	{
+		ecurve( a , context.b , context.p , MR_BEST );  // means use PROJECTIVE if possible, else AFFINE coordinates
+		activeCurve = curve;
+	}
+	if( !context.hasGenerator )
+	{
+		context.g = ECn( context.gx , context.gy );
+		context.hasGenerator = true;
+		//The multipliers are reduced mod q, so the table covers bits(q) bits
+		context.hasTable = ebrick_init( &context.gTable , context.gx.getbig() , context.gy.getbig() ,
+				a.getbig() , context.b.getbig() , context.p.getbig() , COMB_WINDOW , bits( context.q ) ) == TRUE;
+	}
+	return context;
+}
+
+//Returns the comb table of an election key on the active curve, building it on first use.
+//The least recently built table is replaced when the cache is full. Returns NULL on failure.
+ebrick* Cryptosystem::getKeyTable( const char* key , int keyLength , int curve , const ECn& h )
+{
+	for( int i = 0 ; i < NUM_KEY_TABLES ; ++i )
+	{
+		if( keys[i].isUsed && keys[i].key.compare( 0 , string::npos , key , keyLength ) == 0 )
+			return &keys[i].hTable;
+	}
+	if( h.iszero() )
+		return NULL;
+	KeyContext& context = keys[nextKey];
+	nextKey = ( nextKey + 1 ) % NUM_KEY_TABLES;
+	if( context.isUsed )
+	{
+		ebrick_end( &context.hTable );
+		context.isUsed = false;
+	}
+	CurveContext& curveContext = getCurve( curve );
+	Big a = -3;
+	Big hx,hy;
+	h.get( hx , hy );
+	if( !ebrick_init( &context.hTable , hx.getbig() , hy.getbig() , a.getbig() , curveContext.b.getbig() ,
+			curveContext.p.getbig() , COMB_WINDOW , bits( curveContext.q ) ) )
+		return NULL;
+	context.key.assign( key , keyLength );
+	context.isUsed = true;
+	return &context.hTable;
+}
+
+//Computes e * base with the comb table of the base (on the active curve).
+//Falls back to generic multiplication if there is no table or the multiplier does not fit it.
+ECn Cryptosystem::mulFixed( ebrick* table , const Big& e , const ECn& base )
+{
+	if( table == NULL || e.iszero() || bits( e ) > table->max )
+		return e * base;
+	Big px,py;
+	mul_brick( table , e.getbig() , px.getbig() , py.getbig() );
+	return ECn( px , py );
+}
+
+//Computes e1 * base1 + e2 * base2 with the comb tables of the two bases (on the active curve).
+//The two combs share their doublings, which are half the work of a comb.
+ECn Cryptosystem::mul2Fixed( ebrick* table1 , const Big& e1 , const ECn& base1 ,
+		ebrick* table2 , const Big& e2 , const ECn& base2 )
+{
+	if( table1 == NULL || table2 == NULL || e1.iszero() || e2.iszero() ||
+			table1->window != table2->window || table1->max != table2->max ||
+			bits( e1 ) > table1->max || bits( e2 ) > table2->max )
+	{
+		ECn sum = mulFixed( table1 , e1 , base1 );
+		sum += mulFixed( table2 , e2 , base2 );
+		return sum;
+	}
+	int t = MR_ROUNDUP( table1->max , table1->window );
+	int len = table1->n->len;
+	int maxsize = 2 * ( 1 << table1->window ) * len;
+	int j,promptr;
+	ECn sum,z;
+	for( int i = t - 1 ; i >= 0 ; --i )
+	{
+		ecurve_double( sum.get_point() );
+		j = recode( e1 , t , table1->window , i );
+		if( j > 0 )
+		{
+			promptr = 2 * j * len;
+			init_point_from_rom( z.get_point() , len , table1->table , maxsize , &promptr );
+			sum += z;
+		}
+		j = recode( e2 , t , table2->window , i );
+		if( j > 0 )
+		{
+			promptr = 2 * j * len;
+			init_point_from_rom( z.get_point() , len , table2->table , maxsize , &promptr );
+			sum += z;
+		}
+	}
+	return sum;
+}
+
+//Normalizes points to affine coordinates, sharing the field inversions,
+//so that adding them to other points is cheaper
+static void normalizePoints( int n , ECn* points )
+{
+	Big work[MR_MAX_M_T_S];
+	big w[MR_MAX_M_T_S];
+	epoint* p[MR_MAX_M_T_S];
+	for( int i = 0 ; i < MR_MAX_M_T_S ; ++i )
+		w[i] = work[i].getbig();
+	for( int i = 0 ; i < n ; i += MR_MAX_M_T_S )
+	{
+		int m = min( n - i , MR_MAX_M_T_S );
+		for( int j = 0 ; j < m ; ++j )
+			p[j] = points[i + j].get_point();
+		epoint_multi_norm( m , w , p );
+	}
+}
+
+//Computes the width-w NAF of a non-negative scalar, least significant digit first.
+//The non-zero digits are odd, less than 2^(w-1) in absolute value, and at least w digits apart.
+static void computeWnaf( const Big& e , int w , vector<signed char>& naf )
+{
+	Big k = e;
+	naf.clear();
+	while( !k.iszero() )
+	{
+		int d = 0;
+		if( k % 2 == 1 )
+		{
+			d = k % ( 1 << w );
+			if( d >= ( 1 << ( w - 1 ) ) )
+				d -= 1 << w;
+			if( d > 0 )
+				k -= d;
+			else
+				k += -d;
+		}
+		naf.push_back( (signed char)d );
+		k >>= 1;
+	}
+}
+
+//Straus: the wNAFs of all the scalars are processed together, so the points share the doublings.
+//Each point needs a table of its odd multiples P, 3P, ..., (2^(w-1) - 1)P.
+static ECn strausMultiExp( int n , const ECn* points , const Big* scalars )
+{
+	const int tableSize = 1 << ( STRAUS_WINDOW - 2 );
+	vector<ECn> table( n * tableSize );
+	vector< vector<signed char> > nafs( n );
+	size_t length = 0;
+	for( int i = 0 ; i < n ; ++i )
+	{
+		ECn twice = points[i];
+		ecurve_double( twice.get_point() );
+		table[i * tableSize] = points[i];
+		for( int k = 1 ; k < tableSize ; ++k )
+		{
+			table[i * tableSize + k] = table[i * tableSize + k - 1];
+			table[i * tableSize + k] += twice;
+		}
+		computeWnaf( scalars[i] , STRAUS_WINDOW , nafs[i] );
+		length = max( length , nafs[i].size() );
+	}
+	normalizePoints( n * tableSize , &table[0] );
+	ECn sum;
+	for( int b = (int)length - 1 ; b >= 0 ; --b )
+	{
+		ecurve_double( sum.get_point() );
+		for( int i = 0 ; i < n ; ++i )
+		{
+			if( b >= (int)nafs[i].size() )
+				continue;
+			int d = nafs[i][b];
+			if( d > 0 )
+				sum += table[i * tableSize + ( d - 1 ) / 2];
+			else if( d < 0 )
+				sum -= table[i * tableSize + ( -d - 1 ) / 2];
+		}
+	}
+	return sum;
+}
+
+//Pippenger: each c-bit window of the scalars is handled by adding every point to the bucket of its
+//digit, and then summing the buckets weighted by their digits with two running sums.
+static ECn pippengerMultiExp( int n , const ECn* points , const Big* scalars )
+{
+	//c ~ log2(n) - 2 balances the point additions against the bucket sums
+	int c = 2;
+	while( ( 4 << c ) <= n )
+		++c;
+	vector<ECn> affine( points , points + n );
+	normalizePoints( n , &affine[0] );
+	vector<int> scalarBits( n );
+	int maxBits = 0;
+	for( int i = 0 ; i < n ; ++i )
+	{
+		scalarBits[i] = bits( scalars[i] );
+		maxBits = max( maxBits , scalarBits[i] );
+	}
+	vector<ECn> buckets( ( 1 << c ) - 1 );
+	ECn sum,running,windowSum;
+	for( int j = ( maxBits + c - 1 ) / c - 1 ; j >= 0 ; --j )
+	{
+		for( int k = 0 ; k < c ; ++k )
+			ecurve_double( sum.get_point() );
+		for( size_t b = 0 ; b < buckets.size() ; ++b )
+			buckets[b].clear();
+		for( int i = 0 ; i < n ; ++i )
+		{
+			int digit = 0;
+			for( int k = c - 1 ; k >= 0 ; --k )
+			{
+				int index = j * c + k;
+				digit = ( digit << 1 ) | ( index < scalarBits[i] ? bit( scalars[i] , index ) : 0 );
+			}
+			if( digit != 0 )
+				buckets[digit - 1] += affine[i];
+		}
+		running.clear();
+		windowSum.clear();
+		for( int b = (int)buckets.size() - 1 ; b >= 0 ; --b )
+		{
+			running += buckets[b];
+			windowSum += running;
+		}
+		sum += windowSum;
+	}
+	return sum;
+}
+
+ECn Cryptosystem::multiExp( int n , const ECn* points , const Big* scalars )
+{
+	if( n <= 0 )
+		return ECn();
+	if( n >= PIPPENGER_MIN_POINTS )
+		return pippengerMultiExp( n , points , scalars );
+	return strausMultiExp( n , points , scalars );
+}
+
 void Cryptosystem::initializeCommitmentBundle( char* key , int keyLength )
 {
 	int curve;
@@ -85,72 +361,62 @@ void Cryptosystem::initializeCommitmentBundle( char* key , int keyLength )
 	curve = atoi( keyTokenizer->getNthTokenPtr( 1 ) );
 	keyTokenizer->revertEndPtrVal();
 	keyTokenizer->resetBuffer();
-	mip->IOBASE = 16;
-	//read curve param
-	a = -3;
-	b = (char *)(ecb[curve]);
-	p = (char *)(ecp[curve]);
-	ecurve( a , b , p , MR_BEST );  // means use PROJECTIVE if possible, else AFFINE coordinates
+	useCurve( curve );
+	commitmentCurve = curve;
 	mip->IOBASE = 64;
 }
 
 void Cryptosystem::addToCommitmentBundle( char* commitment , int commitmentLength )
 {
-	int iy;
 	ECn c1,c2;
-	keyTokenizer->setBuffer( commitment , commitmentLength );
-	x = keyTokenizer->getNthTokenPtr( 1 );
-	keyTokenizer->revertEndPtrVal();
-	iy = atoi( keyTokenizer->getNthTokenPtr( 2 ) );
-	keyTokenizer->revertEndPtrVal();
-	c1 = ECn( x , iy );
-	x = keyTokenizer->getNthTokenPtr( 3 );
-	keyTokenizer->revertEndPtrVal();
-	iy = atoi( keyTokenizer->getNthTokenPtr( 4 ) );
-	keyTokenizer->revertEndPtrVal();
-	c2 = ECn( x , iy );
-	if( s1.iszero() && s2.iszero() )
-	{
-		s1 = c1;
-		s2 = c2;
-	}
-	else
+	useCurve( commitmentCurve );
+	mip->IOBASE = 64;
+	parseCommitmentBundle( commitment , commitmentLength , c1 , c2 );
+	s1 += c1;
+	s2 += c2;
+}
+
+//Adds many commitments with one call. The commitments are decompressed to affine points, which
+//are added to the projective sums with mixed additions; the sums are only normalized once, when
+//the bundle is finalized.
+void Cryptosystem::addToCommitmentBundle( vector<string>& commitments )
+{
+	ECn c1,c2;
+	useCurve( commitmentCurve );
+	mip->IOBASE = 64;
+	for( size_t i = 0 ; i < commitments.size() ; ++i )
 	{
+		parseCommitmentBundle( &commitments[i][0] , commitments[i].size() , c1 , c2 );
 		s1 += c1;
 		s2 += c2;
 	}
-	keyTokenizer->resetBuffer();
 }
 
-char* Cryptosystem::finalizeCommitmentBundle( void )
+void Cryptosystem::finalizeCommitmentBundle( string& bundle )
 {
 	int sy;
-	char c[100];
-	int sumSize = 206;
-	char* sum;
-	sum = new char[sumSize * sizeof( char )];
-	memset( sum , '\0' , sumSize );
+	bundle.clear();
+	useCurve( commitmentCurve );
+	mip->IOBASE = 64;
 	//write com
 	sy = ( s1.get(x) == 1 ? 1 : 0 );
-	memset( c , '\0' , 100 );
-	c << x;
-	sprintf( sum , "%s-%d",c,sy);
+	appendNumber( bundle , x );
+	bundle += sy ? "-1;" : "-0;";
 	sy = ( s2.get(x) == 1 ? 1 : 0 );
-	c << x;
-	sprintf( sum + strlen( sum ), ";%s-%d",c,sy);
-	return sum;
+	appendNumber( bundle , x );
+	bundle += sy ? "-1" : "-0";
 }
 
 void Cryptosystem::initializeDecommitmentBundle( char* key , int keyLength )
 {
-	isFirstDecommitment = true;
 	//parse key string
 	//only need q
 	keyTokenizer->setBuffer( key , keyLength );
 	int curve = atoi( keyTokenizer->getNthTokenPtr( 1 ) );
 	keyTokenizer->revertEndPtrVal();
-	mip->IOBASE=16;
-	q=(char *)(ecq[curve]);
+	const Big& q = getCurve( curve ).q;
+	decommitmentSum1.setModulus( q );
+	decommitmentSum2.setModulus( q );
 	mip->IOBASE=64;
 	keyTokenizer->resetBuffer();
 }
@@ -158,61 +424,57 @@ void Cryptosystem::initializeDecommitmentBundle( char* key , int keyLength )
 void Cryptosystem::addToDecommitmentBundle( char* decommitment , int decommitmentLength )
 {
 	decommitmentTokenizer->setBuffer( decommitment , decommitmentLength );
-	x = decommitmentTokenizer->getNthTokenPtr( 1 );
+	addDecommitmentValue( decommitmentSum1 , decommitmentTokenizer->getNthTokenPtr( 1 ) );
 	decommitmentTokenizer->revertEndPtrVal();
-	Big y = decommitmentTokenizer->getNthTokenPtr( 2 );
-	if( isFirstDecommitment )
+	addDecommitmentValue( decommitmentSum2 , decommitmentTokenizer->getNthTokenPtr( 2 ) );
+	decommitmentTokenizer->resetBuffer();
+}
+
+//Adds a base-64 value to sum, decoded straight into limbs
+void Cryptosystem::addDecommitmentValue( ModularAccumulator& sum , const char* digits )
+{
+	uint32_t limbs[ACCUMULATOR_LIMBS];
+	int count = decodeBase64( digits , limbs , ACCUMULATOR_LIMBS );
+	if( count >= 0 )
 	{
-		isFirstDecommitment = false;
-		bs1 = x;
-		bs2 = y;
+		sum.add( limbs , count );
 	}
 	else
 	{
-		bs1 += x;
-		bs2 += y;
+		mip->IOBASE = 64;
+		x = (char *)digits;
+		sum.add( x );
 	}
-	decommitmentTokenizer->resetBuffer();
 }
 
-char* Cryptosystem::finalizeDecommitmentBundle( void )
+//The sums are not reset, so the bundle so far can be saved as a checkpoint. Since a bundle has the
+//format of a decommitment, adding a saved bundle to another one merges the two.
+void Cryptosystem::finalizeDecommitmentBundle( string& bundle )
 {
-	int sumSize = 202;
-	char* sum;
-	char c[100];
-	sum = new char[sumSize * sizeof( char )];
-	memset( sum , '\0' , sumSize );
-	x = 1;
-	bs1 = modmult( bs1 , x , q );
-	bs2 = modmult( bs2 , x , q );
+	decommitmentSum1.getValue( bs1 );
+	decommitmentSum2.getValue( bs2 );
 	mip->IOBASE = 64;
-	c << bs1;
-	sprintf( sum ,"%s,",c);
-	c << bs2;
-	strcat( sum , c );
-	return sum;
+	bundle.clear();
+	appendNumber( bundle , bs1 );
+	bundle += ',';
+	appendNumber( bundle , bs2 );
+}
 
+//Appends a number in the current IOBASE
+void Cryptosystem::appendNumber( string& s , const Big& number )
+{
+	char c[NUMBER_BUFFER_SIZE];
+	c << number;
+	s += c;
 }
 
-bool Cryptosystem::verifyCommitments( char* commitmentBundle , int commitmentBundleLength ,
-		char* decommitmentBundle , int decommitmentBundleLength ,
-		char* key , int keyLength )
+//Parses a public key, makes its curve the active one and returns the curve
+int Cryptosystem::parseKey( char* key , int keyLength , ECn& h )
 {
-	Big d1,d2,y;
-	ECn c1,c2,g,h,tempE;
-	//parse key string
 	keyTokenizer->setBuffer( key , keyLength );
 	int curve = atoi( keyTokenizer->getNthTokenPtr( 1 ) );
 	keyTokenizer->revertEndPtrVal();
-	//Read g
-	a = -3;
-	mip->IOBASE=16;
-	b = (char *)(ecb[curve]);
-	p = (char *)(ecp[curve]);
-	ecurve( a , b , p , MR_BEST );  // means use PROJECTIVE if possible, else AFFINE coordinates
-	x = (char *)(ecx[curve]);
-	y = (char *)(ecy[curve]);
-	g = ECn( x , y );
+	useCurve( curve );
 	//Read PK
 	mip->IOBASE=64;
 	x = keyTokenizer->getNthTokenPtr( 2 );
@@ -221,64 +483,184 @@ bool Cryptosystem::verifyCommitments( char* commitmentBundle , int commitmentBun
 	keyTokenizer->revertEndPtrVal();
 	h = ECn( x , iy );
 	keyTokenizer->resetBuffer();
-	//parse commitment
+	return curve;
+}
+
+//Decompresses a point of the active curve. An invalid point becomes the point at infinity.
+void Cryptosystem::decompress( const Big& px , int iy , ECn& point )
+{
+	const CurveContext& context = curves[activeCurve];
+	if( context.sqrtExponent.iszero() )
+	{
+		point = ECn( px , iy );
+		return;
+	}
+	//y = rhs^((p+1)/4) is a square root of rhs = x^3 - 3x + b, if rhs has one. Setting the point
+	//checks y^2 = rhs, which replaces the quadratic residue test of the generic decompression.
+	Big rhs = ( ( px * px + context.p - 3 ) % context.p * px + context.b ) % context.p;
+	Big y = pow( rhs , context.sqrtExponent , context.p );
+	if( y % 2 != iy && !y.iszero() )
+		y = context.p - y;
+	if( !point.set( px , y ) )
+		point.clear();
+}
+
+void Cryptosystem::parseCommitmentBundle( char* commitmentBundle , int commitmentBundleLength , ECn& c1 , ECn& c2 )
+{
+	int iy;
 	keyTokenizer->setBuffer( commitmentBundle , commitmentBundleLength );
-	x = keyTokenizer->getNthTokenPtr( 1 );
+	decodeBase64( keyTokenizer->getNthTokenPtr( 1 ) , x );
 	keyTokenizer->revertEndPtrVal();
 	iy = atoi( keyTokenizer->getNthTokenPtr( 2 ) );
 	keyTokenizer->revertEndPtrVal();
-	c1 = ECn( x , iy );
-	x = keyTokenizer->getNthTokenPtr( 3 );
+	decompress( x , iy , c1 );
+	decodeBase64( keyTokenizer->getNthTokenPtr( 3 ) , x );
 	keyTokenizer->revertEndPtrVal();
 	iy = atoi( keyTokenizer->getNthTokenPtr( 4 ) );
 	keyTokenizer->revertEndPtrVal();
-	c2 = ECn( x , iy );
+	decompress( x , iy , c2 );
 	keyTokenizer->resetBuffer();
-	//parse decommitments only need first half
+}
+
+void Cryptosystem::parseDecommitmentBundle( char* decommitmentBundle , int decommitmentBundleLength , Big& d1 , Big& d2 )
+{
+	//only need first half
 	decommitmentTokenizer->setBuffer( decommitmentBundle , decommitmentBundleLength );
-	d1 = decommitmentTokenizer->getNthTokenPtr( 1 );
+	decodeBase64( decommitmentTokenizer->getNthTokenPtr( 1 ) , d1 );
 	decommitmentTokenizer->revertEndPtrVal();
-	d2 = decommitmentTokenizer->getNthTokenPtr( 2 );
+	decodeBase64( decommitmentTokenizer->getNthTokenPtr( 2 ) , d2 );
 	decommitmentTokenizer->revertEndPtrVal();
 	decommitmentTokenizer->resetBuffer();
-	//verify
-	s1 = d2 * g;
-	s2 = d1 * g;
-	tempE = d2 * h;
-	s2 += tempE;
+}
+
+bool Cryptosystem::verifyCommitments( char* commitmentBundle , int commitmentBundleLength ,
+		char* decommitmentBundle , int decommitmentBundleLength ,
+		char* key , int keyLength )
+{
+	Big d1,d2;
+	ECn c1,c2,h;
+	//parse key string
+	int curve = parseKey( key , keyLength , h );
+	CurveContext& context = useCurve( curve );
+	const ECn& g = context.g;
+	ebrick* hTable = getKeyTable( key , keyLength , curve , h );
+	//parse commitment and decommitments
+	parseCommitmentBundle( commitmentBundle , commitmentBundleLength , c1 , c2 );
+	parseDecommitmentBundle( decommitmentBundle , decommitmentBundleLength , d1 , d2 );
+	//verify, with the precomputed tables of g and h
+	s1 = mulFixed( context.hasTable ? &context.gTable : NULL , d2 , g );
+	s2 = mul2Fixed( context.hasTable ? &context.gTable : NULL , d1 , g , hTable , d2 , h );
 	if( c1 == s1 && c2 == s2 )
 		return true;
 	return false;
 }
 
-char* Cryptosystem::tally( char* decommitmentBundle , int decommitmentBundleLength , int N , int m )
+//Batch verification with random linear combinations: for random weights r_i and t_i,
+//	sum( r_i * c1_i + t_i * c2_i ) == sum( r_i * d2_i + t_i * d1_i ) * g + sum( t_i * d2_i ) * h
+//holds for all pairs if every pair matches, and with negligible probability otherwise.
+//The weights are derived from a hash of the whole input, so they cannot be predicted by whoever
+//made the bundles.
+int Cryptosystem::verifyCommitmentBatch( vector<string>& commitmentBundles , vector<string>& decommitmentBundles ,
+		char* key , int keyLength )
 {
-	int tallySize = ( m * 100 ) + 2;
-	Big y,tempB,Num;
-	Num = N + 1;
-	char c[100];
-	char* tally;
-	tally = new char[tallySize * sizeof(char)];
-	memset( tally , '\0' , tallySize * sizeof( char ) );
+	int count = commitmentBundles.size();
+	if( count == 0 )
+		return -1;
+	Big d1,d2,u,v;
+	ECn c1,c2,h,sum;
+	//the weighted commitments are summed in chunks, to bound the memory
+	vector<ECn> points( min( 2 * count , BATCH_CHUNK_POINTS ) );
+	vector<Big> weights( points.size() );
+	int n = 0;
+	//parse key string
+	int curve = parseKey( key , keyLength , h );
+	CurveContext& context = useCurve( curve );
+	ebrick* hTable = getKeyTable( key , keyLength , curve , h );
+	//hash the input
+	char seed[32];
+	char weightHash[32];
+	sha256 sh;
+	shs256_init( &sh );
+	for( int i = 0 ; i < keyLength ; ++i )
+		shs256_process( &sh , key[i] );
+	for( int i = 0 ; i < count ; ++i )
+	{
+		shs256_process( &sh , ';' );
+		for( size_t j = 0 ; j < commitmentBundles[i].size() ; ++j )
+			shs256_process( &sh , commitmentBundles[i][j] );
+		shs256_process( &sh , ';' );
+		for( size_t j = 0 ; j < decommitmentBundles[i].size() ; ++j )
+			shs256_process( &sh , decommitmentBundles[i][j] );
+	}
+	shs256_hash( &sh , seed );
+	//combine the pairs
+	u = 0;
+	v = 0;
+	for( int i = 0 ; i < count ; ++i )
+	{
+		parseCommitmentBundle( &commitmentBundles[i][0] , commitmentBundles[i].size() , c1 , c2 );
+		parseDecommitmentBundle( &decommitmentBundles[i][0] , decommitmentBundles[i].size() , d1 , d2 );
+		//weights of pair i: hash( seed , i )
+		shs256_init( &sh );
+		for( int j = 0 ; j < 32 ; ++j )
+			shs256_process( &sh , seed[j] );
+		for( int j = 0 ; j < 4 ; ++j )
+			shs256_process( &sh , ( i >> ( 8 * j ) ) & 0xFF );
+		shs256_hash( &sh , weightHash );
+		points[n] = c1;
+		weights[n] = from_binary( BATCH_WEIGHT_BYTES , weightHash );
+		points[n + 1] = c2;
+		weights[n + 1] = from_binary( BATCH_WEIGHT_BYTES , weightHash + BATCH_WEIGHT_BYTES );
+		u += modmult( weights[n] , d2 , context.q ) + modmult( weights[n + 1] , d1 , context.q );
+		v += modmult( weights[n + 1] , d2 , context.q );
+		u %= context.q;
+		v %= context.q;
+		n += 2;
+		if( n == (int)points.size() || i == count - 1 )
+		{
+			sum += multiExp( n , &points[0] , &weights[0] );
+			n = 0;
+		}
+	}
+	s1 = mul2Fixed( context.hasTable ? &context.gTable : NULL , u , context.g , hTable , v , h );
+	if( sum == s1 )
+		return -1;
+	//locate the first pair that does not match
+	for( int i = 0 ; i < count ; ++i )
+	{
+		if( !verifyCommitments( &commitmentBundles[i][0] , commitmentBundles[i].size() ,
+				&decommitmentBundles[i][0] , decommitmentBundles[i].size() , key , keyLength ) )
+			return i;
+	}
+	return -1;
+}
+
+//The first value of the bundle is the sum of count_i * (N + 1)^i over the m options, so the counts
+//are its digits in radix N + 1, least significant first. Every digit is the remainder of a division
+//by a single word, and the digits that are left once the sum is zero are zero.
+bool Cryptosystem::tally( char* decommitmentBundle , int decommitmentBundleLength , int N , int m , string& result )
+{
+	char digit[16];
+	Big votes;
+	result.clear();
+	mip->IOBASE = 64;
 	decommitmentTokenizer->setBuffer( decommitmentBundle , decommitmentBundleLength );
-	x = decommitmentTokenizer->getNthTokenPtr( 1 );
+	decodeBase64( decommitmentTokenizer->getNthTokenPtr( 1 ) , votes );
 	decommitmentTokenizer->revertEndPtrVal();
 	decommitmentTokenizer->resetBuffer();
-	mip->IOBASE = 10;
-	for( int i = m - 1 ; i >= 0 ; --i )
+	for( int i = 0 ; i < m ; ++i )
 	{
-		y = x/Num;
-		tempB = y*Num;
-		tempB = x - tempB;
-		c << tempB;
-		if( i == m - 1 )
-			strcpy( tally , c );
-		else
-			sprintf( tally + strlen( tally ) ,",%s",c);
-		x = y;
-
+		int count = votes.iszero() ? 0 : subdiv( votes.getbig() , N + 1 , votes.getbig() );
+		sprintf( digit , ( i == 0 ) ? "%d" : ",%d" , count );
+		result += digit;
+	}
+	//The votes left over belong to no option
+	if( !votes.iszero() )
+	{
+		result.clear();
+		return false;
 	}
-	return tally;
+	return true;
 }
 
 
@@ -13,14 +13,61 @@
 #include <iostream>
 #include <fstream>
 #include <sstream>
+#include <vector>
 #include <math.h>       /* log2 */
 #include "ecn.h"
 #include "big.h"
 #include "miracl.h" //sha-2
 #include "Tokenizer.h"
+#include "ModularAccumulator.h"
+#include "Base64Decoder.h"
 
 using namespace std;
 
+//The number of supported curves (P-192, P-224, P-256, P-384 and P-521)
+#define NUM_CURVES 5
+//The window size in bits of the fixed-base comb tables (2^8 precomputed points each)
+#define COMB_WINDOW 8
+//The number of election keys whose comb tables are kept
+#define NUM_KEY_TABLES 4
+//The window size in bits of the wNAF of interleaved (Straus) multi-scalar multiplication
+#define STRAUS_WINDOW 5
+//The number of points from which multi-scalar multiplication uses buckets (Pippenger) instead
+#define PIPPENGER_MIN_POINTS 512
+//The number of commitment points per multi-scalar multiplication in batch verification
+#define BATCH_CHUNK_POINTS 1024
+//The size in bytes of the random weights of batch verification (128 bits)
+#define BATCH_WEIGHT_BYTES 16
+//The size of the buffer of a number written by MIRACL (a 521-bit number is 157 decimal digits)
+#define NUMBER_BUFFER_SIZE 200
+
+//The parameters of a curve, parsed once and then shared read-only.
+//The generator is in the internal form of the curve, so it is only valid while the curve is active.
+struct CurveContext
+{
+	bool isParsed;
+	bool hasGenerator;
+	Big b;
+	Big p;
+	Big q;
+	Big gx;
+	Big gy;
+	//(p + 1) / 4, the exponent of square roots, or 0 if p is not 3 mod 4
+	Big sqrtExponent;
+	ECn g;
+	//The comb table of the generator, built along with it
+	bool hasTable;
+	ebrick gTable;
+};
+
+//The comb table of an election public key h, identified by the key string it was parsed from.
+struct KeyContext
+{
+	bool isUsed;
+	string key;
+	ebrick hTable;
+};
+
 class Cryptosystem
 {
 public:
@@ -36,37 +83,61 @@ public:
 	//Commitment functions
 	void initializeCommitmentBundle( char* key , int keyLength );
 	void addToCommitmentBundle( char* commitment , int commitmentLength );
-	char* finalizeCommitmentBundle( void );
+	void addToCommitmentBundle( vector<string>& commitments );
+	void finalizeCommitmentBundle( string& bundle );
 	//Decommitment functions
 	void initializeDecommitmentBundle( char* key , int keyLength );
 	void addToDecommitmentBundle( char* decommitment , int decommitmentBundleLength );
-	char* finalizeDecommitmentBundle( void );
+	void finalizeDecommitmentBundle( string& bundle );
 	//Verify that the commitment bundle matches the decommitment bundle given the right key
 	bool verifyCommitments( char* commitmentBundle , int commitmentBundleLength ,
 			char* decommitmentBundle , int decommitmentBundleLength ,
 			char* key , int keyLength );
-	//Tally the decommitment bundle
-	char* tally( char* decommitmentBundle , int decommitmentBundleLength , int N , int m );
+	//Verify many commitment bundles against their decommitment bundles with the same key at once.
+	//Returns the index of the first pair that does not match or -1 if all of them match.
+	int verifyCommitmentBatch( vector<string>& commitmentBundles , vector<string>& decommitmentBundles ,
+			char* key , int keyLength );
+	//Compute scalars[0] * points[0] + ... + scalars[n - 1] * points[n - 1] on the active curve
+	ECn multiExp( int n , const ECn* points , const Big* scalars );
+	//Tally the decommitment bundle of N voters and m options: the vote counts, separated by commas.
+	//Returns false (with no result) if the votes do not fit in m counts.
+	bool tally( char* decommitmentBundle , int decommitmentBundleLength , int N , int m , string& result );
 	//
 	void hex2string(const string& input, string& output);
 private:
 	Cryptosystem();
+	//Curve cache
+	CurveContext& getCurve( int curve );
+	CurveContext& useCurve( int curve );
+	ebrick* getKeyTable( const char* key , int keyLength , int curve , const ECn& h );
+	ECn mulFixed( ebrick* table , const Big& e , const ECn& base );
+	ECn mul2Fixed( ebrick* table1 , const Big& e1 , const ECn& base1 ,
+			ebrick* table2 , const Big& e2 , const ECn& base2 );
+	//Parsing
+	int parseKey( char* key , int keyLength , ECn& h );
+	void decompress( const Big& px , int iy , ECn& point );
+	void addDecommitmentValue( ModularAccumulator& sum , const char* digits );
+	void appendNumber( string& s , const Big& number );
+	void parseCommitmentBundle( char* commitmentBundle , int commitmentBundleLength , ECn& c1 , ECn& c2 );
+	void parseDecommitmentBundle( char* decommitmentBundle , int decommitmentBundleLength , Big& d1 , Big& d2 );
 	static Cryptosystem* instance;
 	//Common state
 	miracl *mip;
 	Big x;
 	EfficientTokenizer* keyTokenizer;
+	CurveContext curves[NUM_CURVES];
+	int activeCurve;
+	KeyContext keys[NUM_KEY_TABLES];
+	int nextKey;
 	//Commitment bundle state
-	Big a;
-	Big b;
-	Big p;
+	int commitmentCurve;
 	ECn s1;
 	ECn s2;
 	//Decommitment bundle state
-	Big q;
+	ModularAccumulator decommitmentSum1;
+	ModularAccumulator decommitmentSum2;
 	Big bs1;
 	Big bs2;
-	bool isFirstDecommitment;
 	EfficientTokenizer* decommitmentTokenizer;
 };
 
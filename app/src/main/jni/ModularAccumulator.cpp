@@ -0,0 +1,162 @@
+/*
+ * ModularAccumulator.cpp
+ *
+ * A sum modulo q kept in fixed-width limbs.
+ */
+
+#include <string.h>
+#include "ModularAccumulator.h"
+
+ModularAccumulator::ModularAccumulator()
+{
+	limbs = 0;
+	shift = 0;
+	clear();
+}
+
+void ModularAccumulator::setModulus( const Big& q )
+{
+	modulus = q;
+	limbs = ( bits( q ) + 31 ) / 32;
+	shift = 32 * limbs - bits( q );
+	fromBig( q , limbs , this->q );
+	fromBig( pow( (Big)2 , 32 * limbs ) % q , limbs , radixResidue );
+	clear();
+}
+
+void ModularAccumulator::clear( void )
+{
+	memset( sum , 0 , sizeof( sum ) );
+	overflow = 0;
+	pending = 0;
+}
+
+void ModularAccumulator::add( const Big& value )
+{
+	//Only malformed values are wider than q
+	if( bits( value ) > 32 * limbs )
+	{
+		add( value % modulus );
+		return;
+	}
+	//The words of value are added in place, without conversion to limbs
+	big b = value.getbig();
+	int valueLimbs = (int)( b->len & MR_OBITS ) * ( MIRACL / 32 );
+	uint64_t carry = 0;
+	for( int i = 0 ; i < limbs ; ++i )
+	{
+		carry += sum[i];
+		if( i < valueLimbs )
+			carry += (uint32_t)( b->w[i / ( MIRACL / 32 )] >> ( 32 * ( i % ( MIRACL / 32 ) ) ) );
+		sum[i] = (uint32_t)carry;
+		carry >>= 32;
+	}
+	overflow += (uint32_t)carry;
+	if( ++pending == ACCUMULATOR_REDUCTION_INTERVAL )
+		fold();
+}
+
+void ModularAccumulator::add( const uint32_t* value , int valueLimbs )
+{
+	if( valueLimbs > limbs )
+	{
+		add( toBig( value , valueLimbs ) );
+		return;
+	}
+	uint64_t carry = 0;
+	for( int i = 0 ; i < limbs ; ++i )
+	{
+		carry += sum[i];
+		if( i < valueLimbs )
+			carry += value[i];
+		sum[i] = (uint32_t)carry;
+		carry >>= 32;
+	}
+	overflow += (uint32_t)carry;
+	if( ++pending == ACCUMULATOR_REDUCTION_INTERVAL )
+		fold();
+}
+
+//Replaces the overflow with overflow * 2^(32*limbs) mod q, added to the limbs. The carry out of a
+//pass is smaller than the overflow it replaces and almost always zero, so this rarely loops.
+void ModularAccumulator::fold( void )
+{
+	while( overflow != 0 )
+	{
+		uint64_t factor = overflow;
+		uint64_t carry = 0;
+		for( int i = 0 ; i < limbs ; ++i )
+		{
+			carry += factor * radixResidue[i] + sum[i];
+			sum[i] = (uint32_t)carry;
+			carry >>= 32;
+		}
+		overflow = (uint32_t)carry;
+	}
+	pending = 0;
+}
+
+void ModularAccumulator::getValue( Big& value )
+{
+	uint32_t result[ACCUMULATOR_LIMBS];
+	uint32_t shifted[ACCUMULATOR_LIMBS];
+	uint32_t difference[ACCUMULATOR_LIMBS];
+	fold();
+	memcpy( result , sum , sizeof( result ) );
+	//result < 2^(32*limbs) < 2 * (q << shift), so subtracting q << s whenever it fits, for every s
+	//from shift down to 0, leaves result < q. Every subtraction is computed and then kept or
+	//discarded with a mask, so the time only depends on q.
+	for( int s = shift ; s >= 0 ; --s )
+	{
+		for( int i = limbs - 1 ; i > 0 ; --i )
+			shifted[i] = s == 0 ? q[i] : ( q[i] << s ) | ( q[i - 1] >> ( 32 - s ) );
+		shifted[0] = q[0] << s;
+		uint64_t borrow = 0;
+		for( int i = 0 ; i < limbs ; ++i )
+		{
+			uint64_t d = (uint64_t)result[i] - shifted[i] - borrow;
+			difference[i] = (uint32_t)d;
+			borrow = ( d >> 32 ) & 1;
+		}
+		//All ones if result < q << s
+		uint32_t keep = (uint32_t)( 0 - borrow );
+		for( int i = 0 ; i < limbs ; ++i )
+			result[i] = ( result[i] & keep ) | ( difference[i] & ~keep );
+	}
+	value = toBig( result , limbs );
+}
+
+//The words of a Big are full-width (MIRACL bits each) and least significant first, like the limbs
+void ModularAccumulator::fromBig( const Big& value , int limbs , uint32_t* result )
+{
+	big b = value.getbig();
+	int words = (int)( b->len & MR_OBITS );
+	memset( result , 0 , limbs * sizeof( uint32_t ) );
+	for( int j = 0 ; j < words ; ++j )
+		for( int k = 0 ; k < MIRACL / 32 ; ++k )
+		{
+			int i = j * ( MIRACL / 32 ) + k;
+			if( i < limbs )
+				result[i] = (uint32_t)( b->w[j] >> ( 32 * k ) );
+		}
+}
+
+Big ModularAccumulator::toBig( const uint32_t* value , int limbs )
+{
+	Big result;
+	big b = result.getbig();
+	int words = ( 32 * limbs + MIRACL - 1 ) / MIRACL;
+	for( int j = 0 ; j < words ; ++j )
+	{
+		b->w[j] = 0;
+		for( int k = 0 ; k < MIRACL / 32 ; ++k )
+		{
+			int i = j * ( MIRACL / 32 ) + k;
+			if( i < limbs )
+				b->w[j] |= (mr_small)value[i] << ( 32 * k );
+		}
+	}
+	b->len = words;
+	mr_lzero( b );
+	return result;
+}
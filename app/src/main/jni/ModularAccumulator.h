@@ -0,0 +1,52 @@
+/*
+ * ModularAccumulator.h
+ *
+ * A sum modulo q kept in fixed-width limbs.
+ */
+
+#ifndef SRC_MODULARACCUMULATOR_H_
+#define SRC_MODULARACCUMULATOR_H_
+
+#include <stdint.h>
+#include "big.h"
+
+//The limbs of the largest modulus (the 521-bit order of P-521)
+#define ACCUMULATOR_LIMBS 17
+//The number of additions between two reductions of the overflow
+#define ACCUMULATOR_REDUCTION_INTERVAL 4096
+
+//The sum is kept in as many 32-bit limbs as the modulus needs, least significant first, plus an
+//overflow word that counts the carries out of the top limb. Every addition is a fixed-width
+//addition with carry; the overflow is only folded back into the limbs (as overflow * 2^(32*limbs)
+//mod q) every ACCUMULATOR_REDUCTION_INTERVAL additions, so the cost of an addition does not
+//depend on the number of values added before it. The final reduction to [0, q) is a fixed sequence
+//of masked subtractions, which takes the same time for every sum of the same modulus.
+class ModularAccumulator
+{
+	public:
+		ModularAccumulator();
+		void setModulus( const Big& q );
+		void clear( void );
+		void add( const Big& value );
+		//Adds a value given as limbs, least significant first
+		void add( const uint32_t* value , int valueLimbs );
+		//Writes the sum mod q to value. The accumulator is not reset, so this can be called again
+		//as more values are added.
+		void getValue( Big& value );
+		static Big toBig( const uint32_t* value , int limbs );
+	private:
+		void fold( void );
+		static void fromBig( const Big& value , int limbs , uint32_t* result );
+		Big modulus;
+		int limbs;
+		//bits(q) rounded up to whole limbs minus bits(q)
+		int shift;
+		uint32_t q[ACCUMULATOR_LIMBS];
+		//2^(32*limbs) mod q
+		uint32_t radixResidue[ACCUMULATOR_LIMBS];
+		uint32_t sum[ACCUMULATOR_LIMBS];
+		uint32_t overflow;
+		int pending;
+};
+
+#endif /* SRC_MODULARACCUMULATOR_H_ */
@@ -8,6 +8,92 @@
 #include "Cryptosystem.h"
 #include "gr_uoa_di_finer_crypto_JNICryptosystem.h"
 
+//Counters of the native buffers that hold data exchanged with Java (the characters of Java strings
+//and the results of the cryptosystem), read by JNICryptosystem.getNativeAllocations(). Every buffer
+//is owned by one of the classes below, so the live counters return to zero after every call.
+static volatile jlong liveBuffers = 0;
+static volatile jlong liveBytes = 0;
+static volatile jlong totalBuffers = 0;
+static volatile jlong totalBytes = 0;
+
+static void countAllocation( jlong bytes )
+{
+	__sync_fetch_and_add( &liveBuffers , 1 );
+	__sync_fetch_and_add( &liveBytes , bytes );
+	__sync_fetch_and_add( &totalBuffers , 1 );
+	__sync_fetch_and_add( &totalBytes , bytes );
+}
+
+static void countRelease( jlong bytes )
+{
+	__sync_fetch_and_sub( &liveBuffers , 1 );
+	__sync_fetch_and_sub( &liveBytes , bytes );
+}
+
+//The modified UTF-8 characters of a Java string, released when this goes out of scope.
+//They must be released even if the VM did not copy them.
+class JNIStringChars
+{
+	public:
+		JNIStringChars( JNIEnv *env , jstring JNIstring ) : env( env ) , JNIstring( JNIstring )
+		{
+			chars = env->GetStringUTFChars( JNIstring , NULL );
+			length = ( chars != NULL ) ? env->GetStringUTFLength( JNIstring ) : 0;
+			if( chars != NULL )
+				countAllocation( length );
+		}
+		~JNIStringChars()
+		{
+			if( chars != NULL )
+			{
+				env->ReleaseStringUTFChars( JNIstring , chars );
+				countRelease( length );
+			}
+		}
+		//The cryptosystem tokenizes in place, restoring every character it changes
+		char* get( void ) const { return (char *)chars; }
+		int size( void ) const { return length; }
+	private:
+		JNIStringChars( const JNIStringChars& );
+		JNIStringChars& operator=( const JNIStringChars& );
+		JNIEnv *env;
+		jstring JNIstring;
+		const char* chars;
+		int length;
+};
+
+//A result of the cryptosystem, freed when this goes out of scope
+class NativeResult
+{
+	public:
+		NativeResult() : counted( 0 ) {}
+		~NativeResult()
+		{
+			if( counted != 0 )
+				countRelease( counted );
+		}
+		string& get( void ) { return value; }
+		jstring toJava( JNIEnv *env )
+		{
+			counted = value.capacity() + 1;
+			countAllocation( counted );
+			return env->NewStringUTF( value.c_str() );
+		}
+	private:
+		NativeResult( const NativeResult& );
+		NativeResult& operator=( const NativeResult& );
+		string value;
+		jlong counted;
+};
+
+//Decodes a key given in hex by Java
+static void decodeKey( JNIEnv *env , jstring JNIkey , string& decodedKey )
+{
+	JNIStringChars key( env , JNIkey );
+	string encodedKey( key.get() , key.size() );
+	Cryptosystem::getInstance()->hex2string( encodedKey , decodedKey );
+}
+
 /*
  * Class:     gr_uoa_di_finer_crypto_JNICryptosystem
  * Method:    initializeCommitmentBundle
@@ -16,15 +102,9 @@
 JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_initializeCommitmentBundle
   (JNIEnv *env, jobject thisObject, jstring JNIkey)
 {
-	jboolean isCopy;
-	const char* key = env->GetStringUTFChars( JNIkey , &isCopy );
-	int keyLength = env->GetStringUTFLength( JNIkey );
-	string encodedKey( key , keyLength );
 	string decodedKey;
-	Cryptosystem::getInstance()->hex2string( encodedKey , decodedKey );
+	decodeKey( env , JNIkey , decodedKey );
 	Cryptosystem::getInstance()->initializeCommitmentBundle( (char *)decodedKey.c_str() , decodedKey.size() );
-	if( isCopy )
-		env->ReleaseStringUTFChars( JNIkey , key );
 }
 
 /*
@@ -35,12 +115,8 @@ JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_initializeCom
 JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_addToCommitmentBundle
   (JNIEnv *env, jobject thisObject, jstring JNIcommitment)
 {
-	jboolean isCopy;
-	const char* commitment = env->GetStringUTFChars( JNIcommitment , &isCopy );
-	int commitmentLength = env->GetStringUTFLength( JNIcommitment );
-	Cryptosystem::getInstance()->addToCommitmentBundle( (char *)commitment , commitmentLength );
-	if( isCopy )
-		env->ReleaseStringUTFChars( JNIcommitment , commitment );
+	JNIStringChars commitment( env , JNIcommitment );
+	Cryptosystem::getInstance()->addToCommitmentBundle( commitment.get() , commitment.size() );
 }
 
 /*
@@ -51,10 +127,9 @@ JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_addToCommitme
 JNIEXPORT jstring JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_finalizeCommitmentBundle
   (JNIEnv *env, jobject thisObject)
 {
-	char* commitmentBundle = Cryptosystem::getInstance()->finalizeCommitmentBundle();
-	jstring JNIcommitmentBundle = env->NewStringUTF( commitmentBundle );
-	delete [] commitmentBundle;
-	return JNIcommitmentBundle;
+	NativeResult commitmentBundle;
+	Cryptosystem::getInstance()->finalizeCommitmentBundle( commitmentBundle.get() );
+	return commitmentBundle.toJava( env );
 }
 
 /*
@@ -65,15 +140,9 @@ JNIEXPORT jstring JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_finalizeCo
 JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_initializeDecommitmentBundle
   (JNIEnv *env, jobject thisObject, jstring JNIkey)
 {
-	jboolean isCopy;
-	const char* key = env->GetStringUTFChars( JNIkey , &isCopy );
-	int keyLength = env->GetStringUTFLength( JNIkey );
-	string encodedKey( key , keyLength );
 	string decodedKey;
-	Cryptosystem::getInstance()->hex2string( encodedKey , decodedKey );
+	decodeKey( env , JNIkey , decodedKey );
 	Cryptosystem::getInstance()->initializeDecommitmentBundle( (char *)decodedKey.c_str() , decodedKey.size() );
-	if( isCopy )
-		env->ReleaseStringUTFChars( JNIkey , key );
 }
 
 /*
@@ -84,12 +153,8 @@ JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_initializeDec
 JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_addToDecommitmentBundle
   (JNIEnv *env, jobject thisObject, jstring JNIdecommitment)
 {
-	jboolean isCopy;
-	const char* decommitment = env->GetStringUTFChars( JNIdecommitment , &isCopy );
-	int decommitmentLength = env->GetStringUTFLength( JNIdecommitment );
-	Cryptosystem::getInstance()->addToDecommitmentBundle( (char *)decommitment , decommitmentLength );
-	if( isCopy )
-		env->ReleaseStringUTFChars( JNIdecommitment , (char *)decommitment );
+	JNIStringChars decommitment( env , JNIdecommitment );
+	Cryptosystem::getInstance()->addToDecommitmentBundle( decommitment.get() , decommitment.size() );
 }
 
 /*
@@ -100,10 +165,9 @@ JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_addToDecommit
 JNIEXPORT jstring JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_finalizeDecommitmentBundle
   (JNIEnv *env, jobject thisObject)
 {
-	char* decommitmentBundle = Cryptosystem::getInstance()->finalizeDecommitmentBundle();
-	jstring JNIdecommitmentBundle = env->NewStringUTF( decommitmentBundle );
-	delete [] decommitmentBundle;
-	return JNIdecommitmentBundle;
+	NativeResult decommitmentBundle;
+	Cryptosystem::getInstance()->finalizeDecommitmentBundle( decommitmentBundle.get() );
+	return decommitmentBundle.toJava( env );
 }
 
 /*
@@ -114,26 +178,61 @@ JNIEXPORT jstring JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_finalizeDe
 JNIEXPORT jboolean JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_verifyCommitments
   (JNIEnv *env, jobject thisObject, jstring JNIcommitmentBundle, jstring JNIdecommitmentBundle, jstring JNIkey)
 {
-	jboolean isCommitmentBundleCopy,isDecommitmentBundleCopy,isKeyCopy;
-	const char* commitmentBundle = env->GetStringUTFChars( JNIcommitmentBundle , &isCommitmentBundleCopy );
-	int commitmentBundleLength = env->GetStringUTFLength( JNIcommitmentBundle );
-	const char* decommitmentBundle = env->GetStringUTFChars( JNIdecommitmentBundle , &isDecommitmentBundleCopy );
-	int decommitmentBundleLength = env->GetStringUTFLength( JNIdecommitmentBundle );
-	const char* key = env->GetStringUTFChars( JNIkey , &isKeyCopy );
-	int keyLength = env->GetStringUTFLength( JNIkey );
-	string encodedKey( key , keyLength );
+	JNIStringChars commitmentBundle( env , JNIcommitmentBundle );
+	JNIStringChars decommitmentBundle( env , JNIdecommitmentBundle );
 	string decodedKey;
-	Cryptosystem::getInstance()->hex2string( encodedKey , decodedKey );
-	jboolean match = Cryptosystem::getInstance()->verifyCommitments( (char *)commitmentBundle , commitmentBundleLength ,
-			(char *)decommitmentBundle , decommitmentBundleLength ,
+	decodeKey( env , JNIkey , decodedKey );
+	return Cryptosystem::getInstance()->verifyCommitments( commitmentBundle.get() , commitmentBundle.size() ,
+			decommitmentBundle.get() , decommitmentBundle.size() ,
+			(char *)decodedKey.c_str() , decodedKey.length() );
+}
+
+//Copies the strings of a Java array, releasing every element as soon as it is copied
+//so that large arrays do not run out of local references
+static void copyStringArray( JNIEnv *env, jobjectArray JNIarray , vector<string>& strings )
+{
+	jsize length = env->GetArrayLength( JNIarray );
+	strings.resize( length );
+	for( jsize i = 0 ; i < length ; ++i )
+	{
+		jstring JNIstring = (jstring) env->GetObjectArrayElement( JNIarray , i );
+		{
+			JNIStringChars chars( env , JNIstring );
+			strings[i].assign( chars.get() , chars.size() );
+		}
+		env->DeleteLocalRef( JNIstring );
+	}
+}
+
+/*
+ * Class:     gr_uoa_di_finer_crypto_JNICryptosystem
+ * Method:    verifyCommitmentBatch
+ * Signature: ([Ljava/lang/String;[Ljava/lang/String;Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_verifyCommitmentBatch
+  (JNIEnv *env, jclass thisClass, jobjectArray JNIcommitmentBundles, jobjectArray JNIdecommitmentBundles, jstring JNIkey)
+{
+	vector<string> commitmentBundles;
+	vector<string> decommitmentBundles;
+	copyStringArray( env , JNIcommitmentBundles , commitmentBundles );
+	copyStringArray( env , JNIdecommitmentBundles , decommitmentBundles );
+	string decodedKey;
+	decodeKey( env , JNIkey , decodedKey );
+	return Cryptosystem::getInstance()->verifyCommitmentBatch( commitmentBundles , decommitmentBundles ,
 			(char *)decodedKey.c_str() , decodedKey.length() );
-	if( isCommitmentBundleCopy )
-		env->ReleaseStringUTFChars( JNIcommitmentBundle , commitmentBundle );
-	if( isDecommitmentBundleCopy )
-		env->ReleaseStringUTFChars( JNIdecommitmentBundle , decommitmentBundle );
-	if( isKeyCopy )
-		env->ReleaseStringUTFChars( JNIkey , key );
-	return match;
+}
+
+/*
+ * Class:     gr_uoa_di_finer_crypto_JNICryptosystem
+ * Method:    addAllToCommitmentBundle
+ * Signature: ([Ljava/lang/String;)V
+ */
+JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_addAllToCommitmentBundle
+  (JNIEnv *env, jobject thisObject, jobjectArray JNIcommitments)
+{
+	vector<string> commitments;
+	copyStringArray( env , JNIcommitments , commitments );
+	Cryptosystem::getInstance()->addToCommitmentBundle( commitments );
 }
 
 /*
@@ -142,14 +241,29 @@ JNIEXPORT jboolean JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_verifyCom
  * Signature: (Ljava/lang/String;II)Ljava/lang/String;
  */
 JNIEXPORT jstring JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_tally
-  (JNIEnv *env, jobject thisObject, jstring JNIdecommitmentBundle , jint N, jint m)
-{
-	jboolean isCopy;
-	const char* decommitmentBundle = env->GetStringUTFChars( JNIdecommitmentBundle , &isCopy );
-	int decommitmentBundleLength = env->GetStringUTFLength( JNIdecommitmentBundle );
-	char* tallyResult = Cryptosystem::getInstance()->tally( (char *)decommitmentBundle , decommitmentBundleLength , N , m );
-	if( isCopy )
-		env->ReleaseStringUTFChars( JNIdecommitmentBundle , decommitmentBundle );
-	jstring JNItallyResult = env->NewStringUTF( tallyResult );
-	return JNItallyResult;
+  (JNIEnv *env, jclass thisClass, jstring JNIdecommitmentBundle , jint N, jint m)
+{
+	NativeResult tallyResult;
+	bool valid;
+	{
+		JNIStringChars decommitmentBundle( env , JNIdecommitmentBundle );
+		valid = Cryptosystem::getInstance()->tally( decommitmentBundle.get() , decommitmentBundle.size() , N , m , tallyResult.get() );
+	}
+	return valid ? tallyResult.toJava( env ) : NULL;
+}
+
+/*
+ * Class:     gr_uoa_di_finer_crypto_JNICryptosystem
+ * Method:    readNativeAllocations
+ * Signature: ([J)V
+ */
+JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_readNativeAllocations
+  (JNIEnv *env, jclass thisClass, jlongArray JNIcounters)
+{
+	jlong counters[4];
+	counters[0] = __sync_fetch_and_add( &liveBuffers , 0 );
+	counters[1] = __sync_fetch_and_add( &liveBytes , 0 );
+	counters[2] = __sync_fetch_and_add( &totalBuffers , 0 );
+	counters[3] = __sync_fetch_and_add( &totalBytes , 0 );
+	env->SetLongArrayRegion( JNIcounters , 0 , 4 , counters );
 }
@@ -63,13 +63,37 @@ JNIEXPORT jstring JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_finalizeDe
 JNIEXPORT jboolean JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_verifyCommitments
   (JNIEnv *, jobject, jstring, jstring, jstring);
 
+/*
+ * Class:     gr_uoa_di_finer_crypto_JNICryptosystem
+ * Method:    verifyCommitmentBatch
+ * Signature: ([Ljava/lang/String;[Ljava/lang/String;Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_verifyCommitmentBatch
+  (JNIEnv *, jclass, jobjectArray, jobjectArray, jstring);
+
+/*
+ * Class:     gr_uoa_di_finer_crypto_JNICryptosystem
+ * Method:    addAllToCommitmentBundle
+ * Signature: ([Ljava/lang/String;)V
+ */
+JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_addAllToCommitmentBundle
+  (JNIEnv *, jobject, jobjectArray);
+
 /*
  * Class:     gr_uoa_di_finer_crypto_JNICryptosystem
  * Method:    tally
  * Signature: (Ljava/lang/String;II)Ljava/lang/String;
  */
 JNIEXPORT jstring JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_tally
-  (JNIEnv *, jobject, jstring, jint, jint);
+  (JNIEnv *, jclass, jstring, jint, jint);
+
+/*
+ * Class:     gr_uoa_di_finer_crypto_JNICryptosystem
+ * Method:    readNativeAllocations
+ * Signature: ([J)V
+ */
+JNIEXPORT void JNICALL Java_gr_uoa_di_finer_crypto_JNICryptosystem_readNativeAllocations
+  (JNIEnv *, jclass, jlongArray);
 
 #ifdef __cplusplus
 }
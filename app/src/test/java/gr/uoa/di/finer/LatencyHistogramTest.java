@@ -0,0 +1,86 @@
+package gr.uoa.di.finer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the bucketing and the percentiles of {@link LatencyHistogram}.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getValueAtQuantile(0.5));
+        assertEquals("{\"count\":0,\"p50Us\":0.0,\"p99Us\":0.0,\"p999Us\":0.0,\"maxUs\":0.0}",
+                histogram.toJson());
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 0; i < 16; ++i) {
+            histogram.record(i);
+        }
+
+        assertEquals(7, histogram.getValueAtQuantile(0.5));
+        assertEquals(15, histogram.getValueAtQuantile(1));
+        assertEquals(15, histogram.getMax());
+    }
+
+    @Test
+    public void percentilesAreWithinBucketError() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        // 1..100000 microseconds.
+        for (long i = 1; i <= 100_000; ++i) {
+            histogram.record(i * 1000);
+        }
+
+        assertWithinError(50_000_000, histogram.getValueAtQuantile(0.5));
+        assertWithinError(99_000_000, histogram.getValueAtQuantile(0.99));
+        assertWithinError(99_900_000, histogram.getValueAtQuantile(0.999));
+        assertEquals(100_000_000, histogram.getValueAtQuantile(1));
+    }
+
+    @Test
+    public void tailIsVisible() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 9_990; ++i) {
+            histogram.record(10_000);
+        }
+        // A few slow outliers (e.g. checkpoints).
+        for (int i = 0; i < 10; ++i) {
+            histogram.record(50_000_000);
+        }
+
+        assertWithinError(10_000, histogram.getValueAtQuantile(0.99));
+        assertWithinError(10_000, histogram.getValueAtQuantile(0.999));
+        assertEquals(50_000_000, histogram.getValueAtQuantile(0.9999));
+    }
+
+    @Test
+    public void extremesDoNotOverflow() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getValueAtQuantile(0.5));
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtQuantile(1));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    // The reported value is the upper bound of its bucket, at most 12.5% above the actual value.
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue(actual + " < " + expected, actual >= expected);
+        assertTrue(actual + " > " + expected + " + 12.5%", actual <= expected + expected / 8);
+    }
+
+}
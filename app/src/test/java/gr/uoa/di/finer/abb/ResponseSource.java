@@ -0,0 +1,36 @@
+package gr.uoa.di.finer.abb;
+
+/**
+ * The data served by a {@link StubAbbServer}.
+ * Implementations must be thread-safe, since the server handles requests concurrently.
+ *
+ * @author Vasilis Poulimenos
+ */
+public interface ResponseSource {
+
+    /**
+     * Returns the total number of voted ballots.
+     * @return the number of response lines
+     */
+    long getTotalCount();
+
+    /**
+     * Returns the response line with the index specified, in the format the ABB uses:
+     * {@code <serial no><space><vote code>\n}
+     *
+     * @param index the index of the line in the range [0, {@link #getTotalCount()})
+     * @return the response line, including the terminating newline
+     */
+    String getLine(long index);
+
+    /**
+     * Returns the decommitment of the ballot part with the vote code specified.
+     * This plays the role of the trustee's data store.
+     *
+     * @param serialNo the serial number of the ballot
+     * @param voteCode the vote code
+     * @return the decommitment or null if the vote code is not valid
+     */
+    String getDecommitment(String serialNo, String voteCode);
+
+}
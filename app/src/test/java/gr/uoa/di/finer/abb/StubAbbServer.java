@@ -0,0 +1,411 @@
+package gr.uoa.di.finer.abb;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An embedded stand-in of the Audit Bulletin Board (ABB) API, for tests and benchmarks on the JVM.
+ * <p>
+ * The server implements the requests the trustee service sends:
+ * <ul>
+ * <li>{@code gettotal/?<id>}: the total number of voted ballots</li>
+ * <li>{@code ?id=<id>&start=<start>&stop=<stop>}: the response lines in [start, stop)</li>
+ * <li>{@code post/?<id>}: the trustee result</li>
+ * </ul>
+ * The election ID is ignored, since all the data come from a single {@link ResponseSource}.
+ * <p>
+ * The following faults can be configured (before or while the server is running):
+ * <ul>
+ * <li>Latency before every response.</li>
+ * <li>A bandwidth cap on every response body.</li>
+ * <li>Mid-stream disconnects: ballot responses are aborted after a number of bytes,
+ *     a limited number of times.</li>
+ * <li>Truncation: ballot responses end properly, but after a number of lines (and optionally
+ *     part of the next one), a limited number of times.</li>
+ * <li>Garbage injection: response lines are replaced with garbage with some probability.</li>
+ * <li>Rejected posts: trustee results are answered with an error status.</li>
+ * </ul>
+ *
+ * @author Vasilis Poulimenos
+ */
+public class StubAbbServer {
+
+    private static final String CONTEXT_PATH = "/abb/";
+    private static final String TOTAL_PATH = CONTEXT_PATH + "gettotal/";
+    private static final String POST_PATH = CONTEXT_PATH + "post/";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int CHUNK_SIZE = 1024 * 8;
+    private static final String GARBAGE_LINE = "garbage-@#$%^&*\n";
+
+    /**
+     * Thrown from a handler to make the server drop the connection without ending the response.
+     */
+    private static final class AbortException extends RuntimeException {
+        AbortException(String message) {
+            super(message);
+        }
+    }
+
+    private final ResponseSource source;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<String> postedResults;
+    private final AtomicInteger responseRequestCount;
+    private final AtomicInteger chunkedPostCount;
+    private final AtomicInteger remainingDisconnects;
+    private final AtomicInteger remainingTruncations;
+
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+    private volatile long disconnectAfterBytes;
+    private volatile long truncateAfterLines;
+    private volatile boolean truncateMidLine;
+    private volatile double garbageProbability;
+    private volatile long garbageSeed;
+    private volatile int postStatus = 200;
+
+    /**
+     * Creates a server on an ephemeral port of the loopback interface.
+     * The server is not started.
+     *
+     * @param source the data to serve
+     * @throws IOException if the server socket could not be bound
+     */
+    public StubAbbServer(ResponseSource source) throws IOException {
+        this.source = source;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        this.postedResults = Collections.synchronizedList(new ArrayList<String>());
+        this.responseRequestCount = new AtomicInteger();
+        this.chunkedPostCount = new AtomicInteger();
+        this.remainingDisconnects = new AtomicInteger();
+        this.remainingTruncations = new AtomicInteger();
+        this.server.createContext(CONTEXT_PATH, new AbbHandler());
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the base URL of the ABB, as it is stored for an election.
+     * @return the base URL of this server
+     */
+    public String getBaseUrl() {
+        final InetSocketAddress address = server.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ':' + address.getPort() + CONTEXT_PATH;
+    }
+
+    /**
+     * Sets the delay before every response.
+     * @param latencyMillis the delay in milliseconds or 0 for none
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Caps the bandwidth of every response body.
+     * @param bytesPerSecond the maximum rate in bytes per second or 0 for no limit
+     */
+    public void setBandwidthLimit(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Makes ballot responses fail after the number of body bytes specified.
+     *
+     * @param afterBytes the number of bytes sent before a response is aborted
+     * @param count the number of responses to abort
+     */
+    public void setDisconnects(long afterBytes, int count) {
+        this.disconnectAfterBytes = afterBytes;
+        this.remainingDisconnects.set(count);
+    }
+
+    /**
+     * Makes ballot responses end (properly) after the number of lines specified.
+     *
+     * @param afterLines the number of lines sent before a response ends
+     * @param count the number of responses to truncate
+     */
+    public void setTruncations(long afterLines, int count) {
+        setTruncations(afterLines, count, false);
+    }
+
+    /**
+     * Makes ballot responses end (properly) after the number of lines specified
+     * and, optionally, the first half of the next line.
+     *
+     * @param afterLines the number of whole lines sent before a response ends
+     * @param count the number of responses to truncate
+     * @param midLine whether to send half of the next line too
+     */
+    public void setTruncations(long afterLines, int count, boolean midLine) {
+        this.truncateAfterLines = afterLines;
+        this.truncateMidLine = midLine;
+        this.remainingTruncations.set(count);
+    }
+
+    /**
+     * Makes response lines get replaced with garbage.
+     *
+     * @param probability the probability for each line to be replaced
+     * @param seed the seed of the random generator that selects the lines
+     */
+    public void setGarbage(double probability, long seed) {
+        this.garbageProbability = probability;
+        this.garbageSeed = seed;
+    }
+
+    /**
+     * Sets the status code of the replies to posted trustee results.
+     * Results are only recorded if the status code is 2xx.
+     *
+     * @param status the HTTP status code of the replies
+     */
+    public void setPostStatus(int status) {
+        this.postStatus = status;
+    }
+
+    /**
+     * Returns the number of ballot (range) requests received so far.
+     * @return the number of ballot requests
+     */
+    public int getResponseRequestCount() {
+        return responseRequestCount.get();
+    }
+
+    /**
+     * Returns the number of trustee results received in chunks so far, accepted or not.
+     * @return the number of chunked posts
+     */
+    public int getChunkedPostCount() {
+        return chunkedPostCount.get();
+    }
+
+    /**
+     * Returns the trustee results posted so far.
+     * @return a copy of the results posted
+     */
+    public List<String> getPostedResults() {
+        synchronized (postedResults) {
+            return new ArrayList<>(postedResults);
+        }
+    }
+
+
+    /**
+     * An output stream that never exceeds the bandwidth limit of the server
+     * and aborts the response after a number of bytes.
+     */
+    private final class FaultyOutputStream extends FilterOutputStream {
+        private final long rate;
+        private final long abortAfter;
+        private final long startNanos;
+        private long written;
+
+        FaultyOutputStream(OutputStream out, long rate, long abortAfter) {
+            super(out);
+            this.rate = rate;
+            this.abortAfter = abortAfter;
+            this.startNanos = System.nanoTime();
+        }
+
+        private void throttle() throws IOException {
+            if (rate <= 0) return;
+            final long dueNanos = startNanos + TimeUnit.SECONDS.toNanos(written) / rate;
+            final long aheadNanos = dueNanos - System.nanoTime();
+            if (aheadNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while throttling", e);
+                }
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, CHUNK_SIZE);
+                if (rate > 0) {
+                    // Keep slices small enough for a smooth rate.
+                    n = (int) Math.max(1, Math.min(n, rate / 10));
+                }
+                if (abortAfter >= 0 && written + n >= abortAfter) {
+                    out.write(b, off, (int) (abortAfter - written));
+                    out.flush();
+                    throw new AbortException("Disconnecting after " + abortAfter + " bytes");
+                }
+                out.write(b, off, n);
+                written += n;
+                off += n;
+                len -= n;
+                throttle();
+            }
+        }
+    }
+
+    private static boolean take(AtomicInteger counter) {
+        for (;;) {
+            final int remaining = counter.get();
+            if (remaining <= 0) {
+                return false;
+            }
+            if (counter.compareAndSet(remaining, remaining - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private final class AbbHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            boolean aborted = false;
+            try {
+                final long latency = latencyMillis;
+                if (latency > 0) {
+                    Thread.sleep(latency);
+                }
+                final String path = exchange.getRequestURI().getPath();
+                final String query = exchange.getRequestURI().getRawQuery();
+                if (path.equals(TOTAL_PATH)) {
+                    sendText(exchange, Long.toString(source.getTotalCount()) + '\n');
+                } else if (path.equals(POST_PATH)) {
+                    if ("chunked".equalsIgnoreCase(
+                            exchange.getRequestHeaders().getFirst("Transfer-Encoding"))) {
+                        chunkedPostCount.incrementAndGet();
+                    }
+                    final String result = readBody(exchange);
+                    final int status = postStatus;
+                    if (status / 100 == 2) {
+                        postedResults.add(result);
+                    }
+                    exchange.sendResponseHeaders(status, -1);
+                } else if (path.equals(CONTEXT_PATH) && query != null) {
+                    sendLines(exchange, parseQuery(query));
+                } else {
+                    exchange.sendResponseHeaders(404, -1);
+                }
+            } catch (AbortException e) {
+                // Closing the exchange would end the response properly.
+                aborted = true;
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (!aborted) {
+                    exchange.close();
+                }
+            }
+        }
+
+        private Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+            final Map<String, String> params = new HashMap<>();
+            for (String param : query.split("&")) {
+                final int eq = param.indexOf('=');
+                if (eq != -1) {
+                    params.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+                               URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+                }
+            }
+            return params;
+        }
+
+        private String readBody(HttpExchange exchange) throws IOException {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            final InputStream in = exchange.getRequestBody();
+            final byte[] buffer = new byte[CHUNK_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                body.write(buffer, 0, n);
+            }
+            return new String(body.toByteArray(), UTF_8);
+        }
+
+        private void sendText(HttpExchange exchange, String text) throws IOException {
+            final byte[] bytes = text.getBytes(UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length != 0) {
+                final OutputStream out = new FaultyOutputStream(
+                        exchange.getResponseBody(), bytesPerSecond, -1);
+                out.write(bytes);
+                out.close();
+            }
+        }
+
+        private void sendLines(HttpExchange exchange, Map<String, String> params) throws IOException {
+            final long start;
+            final long stop;
+            try {
+                start = Long.parseLong(params.get("start"));
+                stop = Math.min(Long.parseLong(params.get("stop")), source.getTotalCount());
+            } catch (NumberFormatException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            responseRequestCount.incrementAndGet();
+
+            final long abortAfter = take(remainingDisconnects) ? disconnectAfterBytes : -1;
+            final boolean truncated = take(remainingTruncations);
+            final long end = truncated ? Math.min(stop, start + truncateAfterLines) : stop;
+            final double garbage = garbageProbability;
+            final Random random = new Random(garbageSeed ^ start);
+
+            // Chunked encoding: an aborted response is then detected as such by the client.
+            exchange.sendResponseHeaders(200, 0);
+            final OutputStream out = new FaultyOutputStream(
+                    exchange.getResponseBody(), bytesPerSecond, abortAfter);
+            final StringBuilder chunk = new StringBuilder(CHUNK_SIZE);
+            for (long i = start; i < end; ++i) {
+                chunk.append((garbage > 0 && random.nextDouble() < garbage) ? GARBAGE_LINE : source.getLine(i));
+                if (chunk.length() >= CHUNK_SIZE) {
+                    out.write(chunk.toString().getBytes(UTF_8));
+                    chunk.setLength(0);
+                }
+            }
+            if (truncated && truncateMidLine && end < stop) {
+                final String line = source.getLine(end);
+                chunk.append(line, 0, line.length() / 2);
+            }
+            out.write(chunk.toString().getBytes(UTF_8));
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package gr.uoa.di.finer.abb;
+
+import java.util.Locale;
+
+/**
+ * A response source that computes every line on the fly, so that it can serve any number of
+ * ballots in constant memory. Line {@code i} is the ballot with serial number {@code i + 1}.
+ * <p>
+ * Vote codes and decommitments are pseudo-random but fully determined by the seed and the
+ * serial number. The decommitments are NOT valid for the native cryptosystem; use them with
+ * a cryptosystem that does not interpret them.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class SyntheticResponseSource implements ResponseSource {
+
+    private final long totalCount;
+    private final long seed;
+
+    /**
+     *
+     * @param totalCount the number of ballots
+     * @param seed the seed that determines the vote codes and decommitments
+     */
+    public SyntheticResponseSource(long totalCount, long seed) {
+        if (totalCount < 0) {
+            throw new IllegalArgumentException("Negative ballot count: " + totalCount);
+        }
+        this.totalCount = totalCount;
+        this.seed = seed;
+    }
+
+    /**
+     * A 64-bit mixing function (SplitMix64 finalizer).
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private String voteCode(long index) {
+        return String.format(Locale.US, "%016X", mix(seed ^ mix(index)));
+    }
+
+    /**
+     * Returns the decommitment of the ballot with the index specified.
+     *
+     * @param index the index of the ballot
+     * @return the decommitment of the ballot
+     */
+    public String getDecommitment(long index) {
+        final long value = mix(~seed ^ mix(index));
+        return Long.toHexString(value >>> 32) + "," + Long.toHexString(value & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    @Override
+    public String getLine(long index) {
+        if (index < 0 || index >= totalCount) {
+            throw new IndexOutOfBoundsException("Line " + index + " of " + totalCount);
+        }
+        return Long.toString(index + 1) + ' ' + voteCode(index) + '\n';
+    }
+
+    @Override
+    public String getDecommitment(String serialNo, String voteCode) {
+        final long index;
+        try {
+            index = Long.parseLong(serialNo) - 1;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (index < 0 || index >= totalCount || !voteCode(index).equals(voteCode)) {
+            return null;
+        }
+        return getDecommitment(index);
+    }
+
+}
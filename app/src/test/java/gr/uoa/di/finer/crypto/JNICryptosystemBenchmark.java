@@ -0,0 +1,97 @@
+package gr.uoa.di.finer.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import gr.uoa.di.finer.gen.Curve;
+import gr.uoa.di.finer.gen.GeneratedElection;
+import gr.uoa.di.finer.service.Cryptosystem;
+
+/**
+ * Measures the throughput of the native decommitment bundle, and of the Java one
+ * ({@link JavaCryptosystem}) for comparison, on every curve:
+ * <ul>
+ * <li>{@code add}: a single decommitment added to a running bundle.</li>
+ * <li>{@code computeBundle}: a whole bundle of {@link #BALLOTS} decommitments, i.e. the native
+ *     state initialization, the additions and the finalization.</li>
+ * </ul>
+ * The results are in decommitments per second.
+ * <p>
+ * The native implementation needs the host build of the native library (see the
+ * hostNativeLibrary task).
+ *
+ * @author Vasilis Poulimenos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JNICryptosystemBenchmark {
+
+    private static final int BALLOTS = 1000;
+
+    @Param({"P192", "P256", "P521"})
+    public Curve curve;
+
+    @Param({"native", "java"})
+    public String implementation;
+
+    private String hexKey;
+    private String[] decommitments;
+    private Cryptosystem cryptosystem;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final GeneratedElection election = new GeneratedElection(BALLOTS, 4, curve, 1);
+        hexKey = election.getHexKey();
+        decommitments = new String[BALLOTS];
+        for (int i = 0; i < BALLOTS; ++i) {
+            decommitments[i] = election.getDecommitment(i, i & 1, i % election.getTupleCount());
+        }
+    }
+
+    private Cryptosystem newCryptosystem() {
+        return "java".equals(implementation)
+                ? new JavaCryptosystem(hexKey) : new JNICryptosystem(hexKey);
+    }
+
+    @Setup(Level.Iteration)
+    public void newBundle() {
+        cryptosystem = newCryptosystem();
+    }
+
+    @Benchmark
+    public void add() {
+        cryptosystem.add(decommitments[next]);
+        if (++next == BALLOTS) {
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BALLOTS)
+    public String computeBundle() {
+        final Cryptosystem bundle = newCryptosystem();
+        for (String decommitment : decommitments) {
+            bundle.add(decommitment);
+        }
+        return bundle.computeBundle();
+    }
+
+}
@@ -0,0 +1,229 @@
+package gr.uoa.di.finer.crypto;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import gr.uoa.di.finer.gen.Curve;
+import gr.uoa.di.finer.gen.GeneratedElection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Checks the native decommitment bundle against the bundle computed in Java,
+ * and the native commitment verification against commitments computed in Java.
+ * These tests need the host build of the native library (gradlew hostNativeLibrary) and are
+ * skipped when it is not available.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class JNICryptosystemTest {
+
+    private static final int BALLOTS = 200;
+    private static final int PAIRS = 10;
+
+    @BeforeClass
+    public static void loadLibrary() {
+        try {
+            Class.forName(JNICryptosystem.class.getName());
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError(e);
+        } catch (UnsatisfiedLinkError e) {
+            assumeNoException(e);
+        }
+    }
+
+    private static void checkBundle(Curve curve) {
+        final GeneratedElection election = new GeneratedElection(BALLOTS, 4, curve, 7);
+        final JNICryptosystem cryptosystem = new JNICryptosystem(election.getHexKey());
+        BigInteger sum1 = BigInteger.ZERO;
+        BigInteger sum2 = BigInteger.ZERO;
+        for (int i = 0; i < BALLOTS; ++i) {
+            final String decommitment = election.getDecommitment(i, i & 1, i % 4);
+            final String[] values = decommitment.split(",");
+            sum1 = sum1.add(MiraclBase64.decode(values[0]));
+            sum2 = sum2.add(MiraclBase64.decode(values[1]));
+            cryptosystem.add(decommitment);
+        }
+        final String[] bundle = cryptosystem.computeBundle().split(",");
+        assertEquals(curve.name(), sum1.mod(curve.q), MiraclBase64.decode(bundle[0]));
+        assertEquals(curve.name(), sum2.mod(curve.q), MiraclBase64.decode(bundle[1]));
+    }
+
+    @Test
+    public void bundleMatchesOnEveryCurve() {
+        for (Curve curve : Curve.values()) {
+            checkBundle(curve);
+        }
+    }
+
+    @Test
+    public void bundleReducesLongSums() {
+        // Enough additions of the largest values to fold the overflow of the sums several times.
+        final int count = 10000;
+        for (Curve curve : Curve.values()) {
+            final BigInteger max = curve.q.subtract(BigInteger.ONE);
+            final String decommitment = MiraclBase64.encode(max) + ',' + MiraclBase64.encode(max);
+            final String key = curve.getIndex() + ";" + curve.g.toCompressedString();
+            final JNICryptosystem cryptosystem =
+                    new JNICryptosystem(JNICryptosystem.toHex(key).toUpperCase());
+            for (int i = 0; i < count; ++i) {
+                cryptosystem.add(decommitment);
+            }
+            final String expected =
+                    MiraclBase64.encode(max.multiply(BigInteger.valueOf(count)).mod(curve.q));
+            assertEquals(curve.name(), expected + ',' + expected, cryptosystem.computeBundle());
+        }
+    }
+
+    @Test
+    public void bundleAcceptsUnusualDigits() {
+        // Unpadded values and whitespace, which the fast decoder leaves to MIRACL.
+        final Curve curve = Curve.P256;
+        final String key = curve.getIndex() + ";" + curve.g.toCompressedString();
+        final JNICryptosystem cryptosystem =
+                new JNICryptosystem(JNICryptosystem.toHex(key).toUpperCase());
+        cryptosystem.add("B,AAAC");
+        cryptosystem.add(" AAAD,E");
+        cryptosystem.add("AAAAAAAF,AA A/");
+        assertEquals("AAAJ,AABF", cryptosystem.computeBundle());
+    }
+
+    @Test
+    public void bundleCanBeCheckpointedAndMerged() {
+        final Curve curve = Curve.P384;
+        final GeneratedElection election = new GeneratedElection(BALLOTS, 4, curve, 5);
+        JNICryptosystem cryptosystem = new JNICryptosystem(election.getHexKey());
+        String checkpoint = null;
+        for (int i = 0; i < BALLOTS; ++i) {
+            if (i == BALLOTS / 2) {
+                checkpoint = cryptosystem.computeBundle();
+            }
+            cryptosystem.add(election.getDecommitment(i, i & 1, i % 4));
+        }
+        final String bundle = cryptosystem.computeBundle();
+
+        // The second half, merged with the checkpoint of the first one.
+        cryptosystem = new JNICryptosystem(election.getHexKey());
+        for (int i = BALLOTS / 2; i < BALLOTS; ++i) {
+            cryptosystem.add(election.getDecommitment(i, i & 1, i % 4));
+        }
+        cryptosystem.add(checkpoint);
+        assertEquals(bundle, cryptosystem.computeBundle());
+    }
+
+    private static void checkCommitmentBundle(Curve curve) {
+        final Random random = new Random(13);
+        final String key = curve.getIndex() + ";" + curve.g.toCompressedString();
+        final String hexKey = JNICryptosystem.toHex(key).toUpperCase();
+        final String[] commitments = new String[BALLOTS];
+        Curve.Point sum1 = null;
+        Curve.Point sum2 = null;
+        for (int i = 0; i < BALLOTS; ++i) {
+            final Curve.Point c1 = curve.multiply(new BigInteger(64, random), curve.g);
+            final Curve.Point c2 = curve.multiply(new BigInteger(64, random), curve.g);
+            sum1 = sum1 == null ? c1 : curve.add(sum1, c1);
+            sum2 = sum2 == null ? c2 : curve.add(sum2, c2);
+            commitments[i] = c1.toCompressedString() + ';' + c2.toCompressedString();
+        }
+        final JNICryptosystem cryptosystem = new JNICryptosystem(hexKey);
+        assertEquals(curve.name(), sum1.toCompressedString() + ';' + sum2.toCompressedString(),
+                cryptosystem.computeCommitmentBundle(hexKey, commitments));
+    }
+
+    @Test
+    public void commitmentBundleMatchesOnEveryCurve() {
+        // P224 is the only curve whose square roots are not computed with a single power.
+        for (Curve curve : Curve.values()) {
+            checkCommitmentBundle(curve);
+        }
+    }
+
+    @Test
+    public void nativeBuffersAreReleased() {
+        final JNICryptosystem.NativeAllocations before = JNICryptosystem.getNativeAllocations();
+        checkBundle(Curve.P224);
+        checkBatch(Curve.P224);
+        final JNICryptosystem.NativeAllocations after = JNICryptosystem.getNativeAllocations();
+        assertEquals(0, after.liveBuffers);
+        assertEquals(0, after.liveBytes);
+        // The decommitments, the key and the bundle at least.
+        assertTrue(after.totalBuffers - before.totalBuffers > BALLOTS + 2);
+        assertTrue(after.totalBytes > before.totalBytes);
+    }
+
+    private static void checkTally(int voterCount, int optionCount, int encodedOptions) {
+        final Random random = new Random(voterCount);
+        final BigInteger radix = BigInteger.valueOf(voterCount + 1);
+        final StringBuilder expected = new StringBuilder();
+        BigInteger votes = BigInteger.ZERO;
+        for (int i = 0; i < optionCount; ++i) {
+            // The options past the encoded ones have no votes.
+            final int count = (i < encodedOptions) ? random.nextInt(voterCount + 1) : 0;
+            votes = votes.add(radix.pow(i).multiply(BigInteger.valueOf(count)));
+            expected.append(i == 0 ? "" : ",").append(count);
+        }
+        final String bundle = MiraclBase64.encode(votes) + ",AAAB";
+        assertEquals(expected.toString(),
+                JNICryptosystem.computeTally(bundle, voterCount, optionCount));
+    }
+
+    @Test
+    public void tallyExtractsEveryCount() {
+        checkTally(10, 6, 6);
+        checkTally(1000, 50, 50);
+        // Many options, most of them without votes.
+        checkTally(3, 1000, 200);
+        checkTally(Integer.MAX_VALUE - 1, 4, 4);
+    }
+
+    @Test
+    public void tallyOfBundleWithoutVotesIsZero() {
+        // MIRACL writes zero without any digits.
+        assertEquals("0,0,0", JNICryptosystem.computeTally(",AAAB", 10, 3));
+        assertEquals("0,0,0", JNICryptosystem.computeTally(",", 10, 3));
+    }
+
+    // A commitment bundle to (d1, d2): <d2 * g>;<d1 * g + d2 * h>
+    private static String commit(Curve curve, Curve.Point h, BigInteger d1, BigInteger d2) {
+        final Curve.Point c2 = curve.add(curve.multiply(d1, curve.g), curve.multiply(d2, h));
+        return curve.multiply(d2, curve.g).toCompressedString() + ';' + c2.toCompressedString();
+    }
+
+    private static void checkBatch(Curve curve) {
+        final Random random = new Random(11);
+        final Curve.Point h = curve.multiply(new BigInteger(64, random), curve.g);
+        final String key = curve.getIndex() + ";" + h.toCompressedString();
+        final String hexKey = JNICryptosystem.toHex(key).toUpperCase();
+        final String[] commitmentBundles = new String[PAIRS];
+        final String[] decommitmentBundles = new String[PAIRS];
+        for (int i = 0; i < PAIRS; ++i) {
+            final BigInteger d1 = new BigInteger(curve.q.bitLength() - 1, random);
+            final BigInteger d2 = new BigInteger(curve.q.bitLength() - 1, random);
+            commitmentBundles[i] = commit(curve, h, d1, d2);
+            decommitmentBundles[i] = MiraclBase64.encode(d1) + ',' + MiraclBase64.encode(d2);
+        }
+        assertEquals(curve.name(), -1,
+                JNICryptosystem.verifyBundles(commitmentBundles, decommitmentBundles, hexKey));
+
+        // Two wrong pairs: the first one is reported.
+        final String[] values = decommitmentBundles[3].split(",");
+        decommitmentBundles[3] = values[1] + ',' + values[0];
+        decommitmentBundles[7] = decommitmentBundles[6];
+        assertEquals(curve.name(), 3,
+                JNICryptosystem.verifyBundles(commitmentBundles, decommitmentBundles, hexKey));
+    }
+
+    @Test
+    public void batchVerificationFindsFirstMismatch() {
+        checkBatch(Curve.P192);
+        checkBatch(Curve.P256);
+        // Back to a curve whose tables are already built.
+        checkBatch(Curve.P192);
+    }
+
+}
@@ -0,0 +1,197 @@
+package gr.uoa.di.finer.crypto;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import gr.uoa.di.finer.gen.Curve;
+import gr.uoa.di.finer.gen.GeneratedElection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Checks the Java decommitment bundle against sums computed with BigInteger, and against the
+ * native bundle when the host build of the native library is available.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class JavaCryptosystemTest {
+
+    private static final int BALLOTS = 200;
+    private static final int THREADS = 4;
+
+    private static String keyOf(Curve curve) {
+        final String key = curve.getIndex() + ";" + curve.g.toCompressedString();
+        return JNICryptosystem.toHex(key).toUpperCase();
+    }
+
+    @Test
+    public void bundleMatchesOnEveryCurve() {
+        for (Curve curve : Curve.values()) {
+            final GeneratedElection election = new GeneratedElection(BALLOTS, 4, curve, 7);
+            final JavaCryptosystem cryptosystem = new JavaCryptosystem(election.getHexKey());
+            BigInteger sum1 = BigInteger.ZERO;
+            BigInteger sum2 = BigInteger.ZERO;
+            for (int i = 0; i < BALLOTS; ++i) {
+                final String decommitment = election.getDecommitment(i, i & 1, i % 4);
+                final String[] values = decommitment.split(",");
+                sum1 = sum1.add(MiraclBase64.decode(values[0]));
+                sum2 = sum2.add(MiraclBase64.decode(values[1]));
+                cryptosystem.add(decommitment);
+            }
+            final String[] bundle = cryptosystem.computeBundle().split(",");
+            assertEquals(curve.name(), sum1.mod(curve.q), MiraclBase64.decode(bundle[0]));
+            assertEquals(curve.name(), sum2.mod(curve.q), MiraclBase64.decode(bundle[1]));
+        }
+    }
+
+    @Test
+    public void bundleMatchesNativeBundle() {
+        try {
+            Class.forName(JNICryptosystem.class.getName());
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError(e);
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            assumeNoException(e);
+        }
+        for (Curve curve : Curve.values()) {
+            final BigInteger max = curve.q.subtract(BigInteger.ONE);
+            final String[] decommitments = {
+                    MiraclBase64.encode(max) + ',' + MiraclBase64.encode(max),
+                    // Unpadded values, whitespace and values wider than q.
+                    "B,AAAC",
+                    " AAAD,E",
+                    "AAAAAAAF,AA A/",
+                    MiraclBase64.encode(max.shiftLeft(70)) + ",AAAA",
+            };
+            final JavaCryptosystem javaCryptosystem = new JavaCryptosystem(keyOf(curve));
+            final JNICryptosystem jniCryptosystem = new JNICryptosystem(keyOf(curve));
+            // An empty bundle too.
+            assertEquals(curve.name(), jniCryptosystem.computeBundle(),
+                    javaCryptosystem.computeBundle());
+            for (String decommitment : decommitments) {
+                javaCryptosystem.add(decommitment);
+                jniCryptosystem.add(decommitment);
+                assertEquals(curve.name(), jniCryptosystem.computeBundle(),
+                        javaCryptosystem.computeBundle());
+            }
+        }
+    }
+
+    @Test
+    public void bundlesCanBeSharedAndMerged() throws Exception {
+        final Curve curve = Curve.P384;
+        final GeneratedElection election = new GeneratedElection(BALLOTS, 4, curve, 5);
+        final JavaCryptosystem expected = new JavaCryptosystem(election.getHexKey());
+        for (int i = 0; i < BALLOTS; ++i) {
+            expected.add(election.getDecommitment(i, i & 1, i % 4));
+        }
+
+        // A bundle per thread, plus one shared by all of them.
+        final JavaCryptosystem shared = new JavaCryptosystem(election.getHexKey());
+        final List<Future<JavaCryptosystem>> futures = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int t = 0; t < THREADS; ++t) {
+                final int first = t;
+                futures.add(executor.submit(new Callable<JavaCryptosystem>() {
+                    @Override
+                    public JavaCryptosystem call() {
+                        final JavaCryptosystem own = new JavaCryptosystem(election.getHexKey());
+                        for (int i = first; i < BALLOTS; i += THREADS) {
+                            final String decommitment =
+                                    election.getDecommitment(i, i & 1, i % 4);
+                            own.add(decommitment);
+                            shared.add(decommitment);
+                        }
+                        return own;
+                    }
+                }));
+            }
+            final JavaCryptosystem merged = new JavaCryptosystem(election.getHexKey());
+            for (Future<JavaCryptosystem> future : futures) {
+                merged.merge(future.get());
+            }
+            assertEquals(expected.computeBundle(), merged.computeBundle());
+            assertEquals(expected.computeBundle(), shared.computeBundle());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void tallyMatchesNativeTally() {
+        try {
+            Class.forName(JNICryptosystem.class.getName());
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError(e);
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            assumeNoException(e);
+        }
+        final Random random = new Random(3);
+        final int[][] counts = {{10, 6}, {1000, 50}, {3, 1000}, {Integer.MAX_VALUE - 1, 4}};
+        for (int[] count : counts) {
+            // No wider than the group order of the largest curve and no more counts than options.
+            final BigInteger votes = new BigInteger(Math.min(count[1] * 8, 512), random)
+                    .mod(BigInteger.valueOf(count[0] + 1L).pow(count[1]));
+            final String bundle = MiraclBase64.encode(votes) + ",AAAB";
+            assertEquals(JNICryptosystem.computeTally(bundle, count[0], count[1]),
+                    JavaCryptosystem.computeTally(bundle, count[0], count[1]));
+        }
+        // MIRACL writes zero without any digits.
+        assertEquals(JNICryptosystem.computeTally(",AAAB", 10, 3),
+                JavaCryptosystem.computeTally(",AAAB", 10, 3));
+    }
+
+    @Test
+    public void tallyExtractsEveryCount() {
+        final int voterCount = 1000;
+        final BigInteger radix = BigInteger.valueOf(voterCount + 1);
+        // 7 votes for option 0, none for option 1 and 1000 for option 2.
+        final BigInteger votes = radix.pow(2).multiply(BigInteger.valueOf(voterCount))
+                .add(BigInteger.valueOf(7));
+        assertEquals("7,0,1000,0",
+                JavaCryptosystem.computeTally(MiraclBase64.encode(votes) + ",AAAB", voterCount, 4));
+    }
+
+    @Test
+    public void tallyRejectsExtraCounts() {
+        // One vote for a fifth option.
+        final String bundle = MiraclBase64.encode(BigInteger.valueOf(11).pow(4)) + ",AAAB";
+        try {
+            JavaCryptosystem.computeTally(bundle, 10, 4);
+            fail("Java tally accepted " + bundle);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            Class.forName(JNICryptosystem.class.getName());
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError(e);
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            assumeNoException(e);
+        }
+        try {
+            JNICryptosystem.computeTally(bundle, 10, 4);
+            fail("Native tally accepted " + bundle);
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals("0,0,0,0,1", JNICryptosystem.computeTally(bundle, 10, 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownCurveIsRejected() {
+        new JavaCryptosystem(JNICryptosystem.toHex("9;AAAA-0").toUpperCase());
+    }
+
+}
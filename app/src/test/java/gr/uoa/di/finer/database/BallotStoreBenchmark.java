@@ -0,0 +1,184 @@
+package gr.uoa.di.finer.database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import gr.uoa.di.finer.database.TrusteeContract.BallotPart;
+import gr.uoa.di.finer.database.TrusteeContract.Election;
+
+/**
+ * Measures the cost of the ballot table statements of {@link WritableDatabaseHelper} and
+ * {@link ReadableDatabaseHelper} on the host SQLite (through the xerial JDBC driver), with the
+ * schema, statements and connection settings of {@link TrusteeOpenHelper}:
+ * <ul>
+ * <li>{@code insertPerRow}: every insert in its own transaction.</li>
+ * <li>{@code insertBatched}: the inserts of {@link #BATCH_BALLOTS} ballots in one transaction,
+ *     like election initialization.</li>
+ * <li>{@code lookup}: a decommitment lookup, like verification, in a table of
+ *     {@link #LOOKUP_BALLOTS} ballots.</li>
+ * </ul>
+ * The results are per row (or lookup). The absolute numbers are only comparable on the same
+ * machine, since the host file system and SQLite version differ from the ones of a device.
+ *
+ * @author Vasilis Poulimenos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BallotStoreBenchmark {
+
+    /** The number of ballots per initialization transaction (see TrusteeService). */
+    private static final int BATCH_BALLOTS = 100;
+    private static final int TUPLES = 4;
+    /** The number of rows inserted per batch: two sides of {@link #TUPLES} tuples per ballot. */
+    private static final int BATCH_ROWS = BATCH_BALLOTS * 2 * TUPLES;
+    private static final int LOOKUP_BALLOTS = 100_000;
+    private static final String ELECTION_ID = "benchmark";
+    // A typical P256 decommitment.
+    private static final String DECOMMITMENT =
+            "AAAB,SviHq3vl5pSwOfioVODie5yp1ipf5sHdSviHq3vl5pSwOfioVODie5yp1ipf5sHd";
+
+    private File file;
+    private Connection connection;
+    private PreparedStatement insert;
+    private PreparedStatement query;
+    private long serialNo;
+    private long lookupIndex;
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        final Statement statement = connection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static String voteCode(long serialNo, int part, int tuple) {
+        return String.format("%012X%02X%02X", serialNo, part, tuple);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        file = File.createTempFile("trustee", ".db");
+        connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+        // The same as TrusteeOpenHelper (and SQLiteDatabase.enableWriteAheadLogging).
+        execute(connection, "PRAGMA auto_vacuum = FULL");
+        execute(connection, "PRAGMA foreign_keys = ON");
+        execute(connection, "PRAGMA journal_mode = WAL");
+        execute(connection, "PRAGMA busy_timeout = " + TrusteeOpenHelper.BUSY_TIMEOUT_MILLIS);
+        execute(connection, "PRAGMA synchronous = NORMAL");
+        execute(connection, Election.ELECTION_TABLE_CREATE);
+        execute(connection, BallotPart.BALLOT_PART_TABLE_CREATE);
+        execute(connection, String.format(
+                "INSERT INTO %s (%s, %s, %s, %s, %s, %s) VALUES ('%s', '', 0, 0, '', 0)",
+                Election.TABLE_NAME,
+                Election.COLUMN_NAME_ELECTION_ID,
+                Election.COLUMN_NAME_QUESTION,
+                Election.COLUMN_NAME_START_TIME,
+                Election.COLUMN_NAME_END_TIME,
+                Election.COLUMN_NAME_ABB_URL,
+                Election.COLUMN_NAME_STATUS,
+                ELECTION_ID));
+
+        insert = connection.prepareStatement(WritableDatabaseHelper.INSERT_BALLOT_STRING);
+        query = connection.prepareStatement(ReadableDatabaseHelper.BALLOT_DECOMMITMENT_QUERY_STRING);
+
+        connection.setAutoCommit(false);
+        for (serialNo = 0; serialNo < LOOKUP_BALLOTS; ++serialNo) {
+            insertBallot();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        execute(connection, "ANALYZE");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        insert.close();
+        query.close();
+        connection.close();
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+    }
+
+    private void insertRow(int part, int tuple) throws SQLException {
+        insert.setString(1, ELECTION_ID);
+        insert.setString(2, Long.toString(serialNo));
+        insert.setString(3, (part == 0) ? "A" : "B");
+        insert.setString(4, voteCode(serialNo, part, tuple));
+        insert.setString(5, DECOMMITMENT);
+        insert.executeUpdate();
+    }
+
+    private void insertBallot() throws SQLException {
+        for (int part = 0; part < 2; ++part) {
+            for (int tuple = 0; tuple < TUPLES; ++tuple) {
+                insertRow(part, tuple);
+            }
+        }
+    }
+
+    @Benchmark
+    public void insertPerRow() throws SQLException {
+        insertRow(0, 0);
+        ++serialNo;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_ROWS)
+    public void insertBatched() throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            for (int i = 0; i < BATCH_BALLOTS; ++i, ++serialNo) {
+                insertBallot();
+            }
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Benchmark
+    public String lookup() throws SQLException {
+        // Walk the table with a large odd stride, so that consecutive lookups hit different pages.
+        lookupIndex = (lookupIndex + 7919) % LOOKUP_BALLOTS;
+        query.setString(1, ELECTION_ID);
+        query.setString(2, Long.toString(lookupIndex));
+        query.setString(3, voteCode(lookupIndex, 1, TUPLES - 1));
+        final ResultSet result = query.executeQuery();
+        try {
+            return result.next() ? result.getString(1) : null;
+        } finally {
+            result.close();
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package gr.uoa.di.finer.gen;
+
+import java.math.BigInteger;
+
+import gr.uoa.di.finer.crypto.MiraclBase64;
+
+/**
+ * The NIST prime curves that the native cryptosystem supports, with just enough (slow, affine)
+ * point arithmetic to generate keys and commitments for test data.
+ * The curve index is the one used in keys (e.g. {@code 0} in {@code "0;<x>-<parity>"}).
+ * <p>
+ * The parameters are the same as the ones in {@code Cryptosystem.cpp}.
+ *
+ * @author Vasilis Poulimenos
+ */
+public enum Curve {
+
+    P192("fffffffffffffffffffffffffffffffeffffffffffffffff",
+         "ffffffffffffffffffffffff99def836146bc9b1b4d22831",
+         "64210519e59c80e70fa7e9ab72243049feb8deecc146b9b1",
+         "188da80eb03090f67cbf20eb43a18800f4ff0afd82ff1012",
+         "07192b95ffc8da78631011ed6b24cdd573f977a11e794811"),
+    P224("ffffffffffffffffffffffffffffffff000000000000000000000001",
+         "ffffffffffffffffffffffffffff16a2e0b8f03e13dd29455c5c2a3d",
+         "b4050a850c04b3abf54132565044b0b7d7bfd8ba270b39432355ffb4",
+         "b70e0cbd6bb4bf7f321390b94a03c1d356c21122343280d6115c1d21",
+         "bd376388b5f723fb4c22dfe6cd4375a05a07476444d5819985007e34"),
+    P256("ffffffff00000001000000000000000000000000ffffffffffffffffffffffff",
+         "ffffffff00000000ffffffffffffffffbce6faada7179e84f3b9cac2fc632551",
+         "5ac635d8aa3a93e7b3ebbd55769886bc651d06b0cc53b0f63bce3c3e27d2604b",
+         "6b17d1f2e12c4247f8bce6e563a440f277037d812deb33a0f4a13945d898c296",
+         "4fe342e2fe1a7f9b8ee7eb4a7c0f9e162bce33576b315ececbb6406837bf51f5"),
+    P384("fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffe"
+                 + "ffffffff0000000000000000ffffffff",
+         "ffffffffffffffffffffffffffffffffffffffffffffffffc7634d81f4372ddf"
+                 + "581a0db248b0a77aecec196accc52973",
+         "b3312fa7e23ee7e4988e056be3f82d19181d9c6efe8141120314088f5013875a"
+                 + "c656398d8a2ed19d2a85c8edd3ec2aef",
+         "aa87ca22be8b05378eb1c71ef320ad746e1d3b628ba79b9859f741e082542a38"
+                 + "5502f25dbf55296c3a545e3872760ab7",
+         "3617de4a96262c6f5d9e98bf9292dc29f8f41dbd289a147ce9da3113b5f0b8c0"
+                 + "0a60b1ce1d7e819d7a431d7c90ea0e5f"),
+    P521("000001ffffffffffffffffffffffffffffffffffffffffffffffffffffffffff"
+                 + "ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+         "000001ffffffffffffffffffffffffffffffffffffffffffffffffffffffffff"
+                 + "fffffffa51868783bf2f966b7fcc0148f709a5d03bb5c9b8899c47aebb6fb71e91386409",
+         "00000051953eb9618e1c9a1f929a21a0b68540eea2da725b99b315f3b8b48991"
+                 + "8ef109e156193951ec7e937b1652c0bd3bb1bf073573df883d2c34f1ef451fd46b503f00",
+         "000000c6858e06b70404e9cd9e3ecb662395b4429c648139053fb521f828af60"
+                 + "6b4d3dbaa14b5e77efe75928fe1dc127a2ffa8de3348b3c1856a429bf97e7e31c2e5bd66",
+         "0000011839296a789a3bc0045c8a5fb42c7d1bd998f54449579b446817afbd17"
+                 + "273e662c97ee72995ef42640c550b9013fad0761353c7086a272c24088be94769fd16650");
+
+    /**
+     * An affine point. The point at infinity is represented by {@code null}.
+     */
+    public static final class Point {
+        public final BigInteger x;
+        public final BigInteger y;
+
+        Point(BigInteger x, BigInteger y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        /**
+         * Returns the point in the compressed format of the cryptosystem: {@code <x>-<parity>}
+         * @return the compressed point
+         */
+        public String toCompressedString() {
+            return MiraclBase64.encode(x) + '-' + (y.testBit(0) ? 1 : 0);
+        }
+    }
+
+    private static final BigInteger THREE = BigInteger.valueOf(3);
+
+    /** The field prime. */
+    public final BigInteger p;
+    /** The group order. */
+    public final BigInteger q;
+    /** The curve parameter b (a is always -3). */
+    public final BigInteger b;
+    /** The generator. */
+    public final Point g;
+
+    Curve(String p, String q, String b, String gx, String gy) {
+        this.p = new BigInteger(p, 16);
+        this.q = new BigInteger(q, 16);
+        this.b = new BigInteger(b, 16);
+        this.g = new Point(new BigInteger(gx, 16), new BigInteger(gy, 16));
+    }
+
+    /**
+     * Returns the index of this curve in keys.
+     * @return the curve index
+     */
+    public int getIndex() {
+        return ordinal();
+    }
+
+    public Point add(Point a, Point b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        final BigInteger lambda;
+        if (a.x.equals(b.x)) {
+            if (!a.y.equals(b.y) || a.y.signum() == 0) {
+                return null;
+            }
+            // Doubling, with a = -3.
+            lambda = a.x.pow(2).multiply(THREE).subtract(THREE)
+                    .multiply(a.y.shiftLeft(1).modInverse(p)).mod(p);
+        } else {
+            lambda = b.y.subtract(a.y).multiply(b.x.subtract(a.x).modInverse(p)).mod(p);
+        }
+        final BigInteger x = lambda.pow(2).subtract(a.x).subtract(b.x).mod(p);
+        final BigInteger y = lambda.multiply(a.x.subtract(x)).subtract(a.y).mod(p);
+        return new Point(x, y);
+    }
+
+    public Point multiply(BigInteger k, Point point) {
+        Point result = null;
+        for (int i = k.bitLength() - 1; i >= 0; --i) {
+            result = add(result, result);
+            if (k.testBit(i)) {
+                result = add(result, point);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,135 @@
+package gr.uoa.di.finer.gen;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import gr.uoa.di.finer.crypto.MiraclBase64;
+
+/**
+ * Writes the files of a {@link GeneratedElection}, for benchmarks of the init and verify paths:
+ * <ul>
+ * <li>{@code election.init}: the initialization data, i.e. a length-delimited {@code Key}
+ *     followed by length-delimited {@code Ballot} messages (see {@code ea_messages.proto}).</li>
+ * <li>{@code election.response}: the ABB response, i.e. {@code <serial no> <vote code>} lines.</li>
+ * <li>{@code election.expected}: the expected results, one per line: the hex-encoded
+ *     decommitment key, the decommitment bundle and the tally.</li>
+ * </ul>
+ * Everything is streamed, so any number of ballots can be written in constant memory.
+ * <p>
+ * Usage: {@code ElectionGenerator <output dir> <ballots> <tuples> [seed] [curve]}
+ * or {@code ./gradlew generateElection -Pargs="..."}
+ *
+ * @author Vasilis Poulimenos
+ */
+public class ElectionGenerator {
+
+    public static final String INIT_FILE = "election.init";
+    public static final String RESPONSE_FILE = "election.response";
+    public static final String EXPECTED_FILE = "election.expected";
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final int BUFFER_SIZE = 1024 * 64;
+    private static final long REPORT_INTERVAL = 1_000_000;
+
+    private final GeneratedElection election;
+
+    public ElectionGenerator(GeneratedElection election) {
+        this.election = election;
+    }
+
+    /**
+     * Computes the expected tally, in the format of the native cryptosystem:
+     * the vote count of every option, separated with commas.
+     */
+    private static String toTally(long[] counts) {
+        final StringBuilder tally = new StringBuilder();
+        for (int i = 0; i < counts.length; ++i) {
+            if (i != 0) tally.append(',');
+            tally.append(counts[i]);
+        }
+        return tally.toString();
+    }
+
+    /**
+     * Writes all the files of the election to the directory specified.
+     *
+     * @param dir the output directory, which is created if needed
+     * @throws IOException
+     */
+    public void writeTo(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        final Curve curve = election.getCurve();
+        final long ballotCount = election.getBallotCount();
+        final long[] counts = new long[election.getTupleCount()];
+        BigInteger sum1 = BigInteger.ZERO;
+        BigInteger sum2 = BigInteger.ZERO;
+
+        final OutputStream init = new BufferedOutputStream(
+                new FileOutputStream(new File(dir, INIT_FILE)), BUFFER_SIZE);
+        try {
+            final Writer response = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(new File(dir, RESPONSE_FILE)), US_ASCII), BUFFER_SIZE);
+            try {
+                election.getKeyMessage().writeDelimitedTo(init);
+                for (long i = 0; i < ballotCount; ++i) {
+                    final int side = election.getVotedSide(i);
+                    final int option = election.getVotedOption(i);
+
+                    election.getBallot(i).writeDelimitedTo(init);
+                    response.write(election.getLine(i));
+                    // Like the native bundle, reduce only once at the end.
+                    sum1 = sum1.add(election.getVote(option));
+                    sum2 = sum2.add(election.getRandomness(i, side, option));
+                    ++counts[option];
+                    if ((i + 1) % REPORT_INTERVAL == 0) {
+                        System.out.println(String.format(Locale.US, "%,d ballots", i + 1));
+                    }
+                }
+            } finally {
+                response.close();
+            }
+        } finally {
+            init.close();
+        }
+
+        final Writer expected = new OutputStreamWriter(
+                new FileOutputStream(new File(dir, EXPECTED_FILE)), US_ASCII);
+        try {
+            expected.write(election.getHexKey() + '\n');
+            expected.write(MiraclBase64.encode(sum1.mod(curve.q)) + ','
+                    + MiraclBase64.encode(sum2.mod(curve.q)) + '\n');
+            expected.write(toTally(counts) + '\n');
+        } finally {
+            expected.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: ElectionGenerator <output dir> <ballots> <tuples> [seed] [curve]");
+            System.exit(2);
+        }
+        final File dir = new File(args[0]);
+        final long ballots = Long.parseLong(args[1]);
+        final int tuples = Integer.parseInt(args[2]);
+        final long seed = (args.length > 3) ? Long.parseLong(args[3]) : 1;
+        final Curve curve = (args.length > 4) ? Curve.valueOf(args[4]) : Curve.P256;
+
+        final long startNanos = System.nanoTime();
+        new ElectionGenerator(new GeneratedElection(ballots, tuples, curve, seed)).writeTo(dir);
+        System.out.println(String.format(Locale.US, "Wrote %,d ballots to %s in %,d ms",
+                ballots, dir, (System.nanoTime() - startNanos) / 1_000_000));
+    }
+
+}
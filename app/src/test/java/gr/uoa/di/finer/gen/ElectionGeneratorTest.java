@@ -0,0 +1,123 @@
+package gr.uoa.di.finer.gen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+
+import gr.uoa.di.finer.crypto.MiraclBase64;
+import gr.uoa.di.finer.parse.protobuf.EAMessages.Ballot;
+import gr.uoa.di.finer.parse.protobuf.EAMessages.Key;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that the generated files are consistent with each other.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class ElectionGeneratorTest {
+
+    private static final long BALLOTS = 500;
+    private static final int TUPLES = 4;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void base64MatchesMiracl() {
+        // Values from JNICryptosystem.test().
+        assertEquals(BigInteger.valueOf(3 * 64 * 64 + 36 * 64 + 49), MiraclBase64.decode("ADkx"));
+        assertEquals("ADkx", MiraclBase64.encode(MiraclBase64.decode("ADkx")));
+        assertEquals("SviHq3vl5pSwOfioVODie5yp1ipf5sHd",
+                MiraclBase64.encode(MiraclBase64.decode("SviHq3vl5pSwOfioVODie5yp1ipf5sHd")));
+        assertEquals("AAAB", MiraclBase64.encode(BigInteger.ONE));
+        assertEquals(BigInteger.ONE, MiraclBase64.decode(" AA\nAB "));
+    }
+
+    @Test
+    public void filesAreConsistent() throws IOException {
+        final GeneratedElection election = new GeneratedElection(BALLOTS, TUPLES, Curve.P192, 3);
+        final File dir = folder.newFolder();
+        new ElectionGenerator(election).writeTo(dir);
+
+        final BufferedReader expected = new BufferedReader(
+                new FileReader(new File(dir, ElectionGenerator.EXPECTED_FILE)));
+        final String hexKey = expected.readLine();
+        final String bundle = expected.readLine();
+        final String tally = expected.readLine();
+        expected.close();
+
+        // The initialization data contain the key and all the ballots.
+        final InputStream init = new BufferedInputStream(
+                new FileInputStream(new File(dir, ElectionGenerator.INIT_FILE)));
+        assertEquals(hexKey, Key.parseDelimitedFrom(init).getDecommitmentKey());
+        long ballots = 0;
+        Ballot ballot;
+        while ((ballot = Ballot.parseDelimitedFrom(init)) != null) {
+            assertEquals(Long.toString(++ballots), ballot.getSerialNumber());
+            assertEquals(TUPLES, ballot.getPartA().getVoteCodeTuplesCount());
+            assertEquals(TUPLES, ballot.getPartB().getVoteCodeTuplesCount());
+        }
+        init.close();
+        assertEquals(BALLOTS, ballots);
+
+        // The response lines lead to decommitments that add up to the bundle and the tally.
+        final BufferedReader response = new BufferedReader(
+                new FileReader(new File(dir, ElectionGenerator.RESPONSE_FILE)));
+        final BigInteger base = BigInteger.valueOf(BALLOTS + 1);
+        final long[] counts = new long[TUPLES];
+        BigInteger sum1 = BigInteger.ZERO;
+        BigInteger sum2 = BigInteger.ZERO;
+        String line;
+        while ((line = response.readLine()) != null) {
+            final String[] tokens = line.split(" ");
+            final String decommitment = election.getDecommitment(tokens[0], tokens[1]);
+            assertNotNull(decommitment);
+            final String[] values = decommitment.split(",");
+            final BigInteger vote = MiraclBase64.decode(values[0]);
+            sum1 = sum1.add(vote);
+            sum2 = sum2.add(MiraclBase64.decode(values[1]));
+            ++counts[log(vote, base)];
+        }
+        response.close();
+
+        final BigInteger q = Curve.P192.q;
+        assertEquals(MiraclBase64.encode(sum1.mod(q)) + ',' + MiraclBase64.encode(sum2.mod(q)), bundle);
+        final StringBuilder expectedTally = new StringBuilder();
+        for (int i = 0; i < TUPLES; ++i) {
+            if (i != 0) expectedTally.append(',');
+            expectedTally.append(counts[i]);
+        }
+        assertEquals(expectedTally.toString(), tally);
+        assertNull(election.getDecommitment("1", "NOTAVOTECODE"));
+    }
+
+    /**
+     * Returns the option of a vote, i.e. the exponent e of vote = base^e.
+     */
+    private static int log(BigInteger value, BigInteger base) {
+        int exponent = 0;
+        while (value.compareTo(BigInteger.ONE) > 0) {
+            value = value.divide(base);
+            ++exponent;
+        }
+        return exponent;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOverflowingTally() {
+        new GeneratedElection(1_000_000, 10, Curve.P192, 1);
+    }
+
+}
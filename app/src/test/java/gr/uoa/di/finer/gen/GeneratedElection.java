@@ -0,0 +1,252 @@
+package gr.uoa.di.finer.gen;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import gr.uoa.di.finer.abb.ResponseSource;
+import gr.uoa.di.finer.crypto.MiraclBase64;
+import gr.uoa.di.finer.parse.protobuf.EAMessages.Ballot;
+import gr.uoa.di.finer.parse.protobuf.EAMessages.Key;
+
+/**
+ * A synthetic election with valid decommitments for the native cryptosystem.
+ * <p>
+ * Every ballot has two sides ('A' and 'B') of {@code tuples} vote code tuples. Tuple {@code t}
+ * of each side votes for option {@code t}: its decommitment is {@code <m>,<r>}, where
+ * {@code m = (N + 1)^t} (N is the number of ballots, so that the bundle can be tallied) and
+ * {@code r} is random modulo the group order. Every ballot is voted once, with a random side and
+ * option.
+ * <p>
+ * All the values of a ballot are derived from the seed and the ballot index alone, so any ballot
+ * (or response line) can be generated in constant time and memory, in any order. The same seed
+ * always produces the same election.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class GeneratedElection implements ResponseSource {
+
+    private static final String[] SIDES = { "A", "B" };
+    private static final int VOTE_CODE_LENGTH = 16;
+    private static final char[] VOTE_CODE_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private final long ballotCount;
+    private final int tupleCount;
+    private final Curve curve;
+    private final long seed;
+    private final String key;
+    /**
+     * The vote value of every option: (N + 1)^t
+     */
+    private final BigInteger[] votes;
+    private final String[] encodedVotes;
+
+    /**
+     *
+     * @param ballotCount the number of ballots (N)
+     * @param tupleCount the number of vote code tuples per side, i.e. the number of options
+     * @param curve the curve of the election
+     * @param seed the seed that determines all the values of the election
+     * @throws IllegalArgumentException if the votes do not fit in the group of the curve
+     */
+    public GeneratedElection(long ballotCount, int tupleCount, Curve curve, long seed) {
+        if (ballotCount <= 0 || tupleCount <= 0) {
+            throw new IllegalArgumentException("Non-positive ballot or tuple count");
+        }
+        this.ballotCount = ballotCount;
+        this.tupleCount = tupleCount;
+        this.curve = curve;
+        this.seed = seed;
+
+        final BigInteger base = BigInteger.valueOf(ballotCount + 1);
+        this.votes = new BigInteger[tupleCount];
+        this.encodedVotes = new String[tupleCount];
+        for (int t = 0; t < tupleCount; ++t) {
+            votes[t] = base.pow(t);
+            encodedVotes[t] = MiraclBase64.encode(votes[t]);
+        }
+        // The tally must not overflow: N votes for the last option must be less than q.
+        if (base.pow(tupleCount).compareTo(curve.q) >= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "%d ballots with %d options do not fit in %s, use a larger curve",
+                    ballotCount, tupleCount, curve));
+        }
+
+        final BigInteger privateKey = randomModQ(new Random(mix(seed, -1, 0, 0)));
+        this.key = curve.getIndex() + ";" + curve.multiply(privateKey, curve.g).toCompressedString();
+    }
+
+    /**
+     * A 64-bit mixing function (SplitMix64 finalizer).
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long mix(long seed, long index, int side, int tuple) {
+        return mix(mix(mix(seed ^ mix(index)) + side) + tuple);
+    }
+
+    private BigInteger randomModQ(Random random) {
+        // The extra bits make the bias of the reduction negligible.
+        return new BigInteger(curve.q.bitLength() + 64, random).mod(curve.q);
+    }
+
+    private String voteCode(Random random) {
+        final char[] code = new char[VOTE_CODE_LENGTH];
+        for (int i = 0; i < code.length; ++i) {
+            code[i] = VOTE_CODE_CHARS[random.nextInt(VOTE_CODE_CHARS.length)];
+        }
+        return new String(code);
+    }
+
+    private Random tupleRandom(long index, int side, int tuple) {
+        return new Random(mix(seed, index, side + 1, tuple + 1));
+    }
+
+    private String voteCode(long index, int side, int tuple) {
+        return voteCode(tupleRandom(index, side, tuple));
+    }
+
+    /**
+     * Returns the decommitment of a vote code tuple.
+     *
+     * @param index the index of the ballot
+     * @param side the side of the ballot (0 for 'A', 1 for 'B')
+     * @param tuple the index of the tuple in the side, which is also the option it votes for
+     * @return the decommitment
+     */
+    public String getDecommitment(long index, int side, int tuple) {
+        return encodedVotes[tuple] + ',' + MiraclBase64.encode(getRandomness(index, side, tuple));
+    }
+
+    /**
+     * Returns the commitment randomness (r) of a vote code tuple.
+     */
+    BigInteger getRandomness(long index, int side, int tuple) {
+        final Random random = tupleRandom(index, side, tuple);
+        voteCode(random);       // Skip the vote code.
+        return randomModQ(random);
+    }
+
+    /**
+     * Returns the vote value (m) of the option specified.
+     */
+    BigInteger getVote(int option) {
+        return votes[option];
+    }
+
+    /**
+     * Returns the side that the voter used for the ballot specified.
+     */
+    int getVotedSide(long index) {
+        return new Random(mix(seed, index, 0, 0)).nextInt(SIDES.length);
+    }
+
+    /**
+     * Returns the option that the voter chose for the ballot specified.
+     */
+    int getVotedOption(long index) {
+        final Random random = new Random(mix(seed, index, 0, 0));
+        random.nextInt(SIDES.length);       // Skip the side.
+        return random.nextInt(tupleCount);
+    }
+
+    public long getBallotCount() {
+        return ballotCount;
+    }
+
+    public int getTupleCount() {
+        return tupleCount;
+    }
+
+    public Curve getCurve() {
+        return curve;
+    }
+
+    /**
+     * Returns the decommitment key: {@code <curve>;<x>-<parity>}
+     * @return the decommitment key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the decommitment key in the format of the initialization data (uppercase hex).
+     * @return the hex-encoded decommitment key
+     */
+    public String getHexKey() {
+        // Same as JNICryptosystem.toHex, which cannot be used without the native library.
+        final StringBuilder hex = new StringBuilder(key.length() * 2);
+        for (int i = 0; i < key.length(); ++i) {
+            hex.append(String.format("%02X", (int) key.charAt(i)));
+        }
+        return hex.toString();
+    }
+
+    public Key getKeyMessage() {
+        return Key.newBuilder().setDecommitmentKey(getHexKey()).build();
+    }
+
+    /**
+     * Returns the ballot with the index specified, as it appears in the initialization data.
+     *
+     * @param index the index of the ballot in the range [0, N)
+     * @return the ballot
+     */
+    public Ballot getBallot(long index) {
+        final Ballot.Builder ballot = Ballot.newBuilder().setSerialNumber(Long.toString(index + 1));
+        for (int side = 0; side < SIDES.length; ++side) {
+            final Ballot.Side.Builder part = Ballot.Side.newBuilder().setID(SIDES[side]);
+            for (int t = 0; t < tupleCount; ++t) {
+                part.addVoteCodeTuples(Ballot.Side.VoteCodeTuple.newBuilder()
+                        .setVoteCode(voteCode(index, side, t))
+                        .setDecommitment(getDecommitment(index, side, t)));
+            }
+            if (side == 0) {
+                ballot.setPartA(part);
+            } else {
+                ballot.setPartB(part);
+            }
+        }
+        return ballot.build();
+    }
+
+    @Override
+    public long getTotalCount() {
+        return ballotCount;
+    }
+
+    @Override
+    public String getLine(long index) {
+        if (index < 0 || index >= ballotCount) {
+            throw new IndexOutOfBoundsException("Line " + index + " of " + ballotCount);
+        }
+        return Long.toString(index + 1) + ' '
+                + voteCode(index, getVotedSide(index), getVotedOption(index)) + '\n';
+    }
+
+    @Override
+    public String getDecommitment(String serialNo, String voteCode) {
+        final long index;
+        try {
+            index = Long.parseLong(serialNo) - 1;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (index < 0 || index >= ballotCount) {
+            return null;
+        }
+        for (int side = 0; side < SIDES.length; ++side) {
+            for (int t = 0; t < tupleCount; ++t) {
+                if (voteCode(index, side, t).equals(voteCode)) {
+                    return getDecommitment(index, side, t);
+                }
+            }
+        }
+        return null;
+    }
+
+}
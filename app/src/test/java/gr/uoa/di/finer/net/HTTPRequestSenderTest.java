@@ -0,0 +1,98 @@
+package gr.uoa.di.finer.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+
+import gr.uoa.di.finer.RequestSender;
+import gr.uoa.di.finer.abb.StubAbbServer;
+import gr.uoa.di.finer.abb.SyntheticResponseSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the streamed POST requests against a {@link StubAbbServer}.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class HTTPRequestSenderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Many times the chunk and buffer sizes, with a partial chunk at the end.
+    private static final int LINE_COUNT = 50_000;
+
+    private StubAbbServer server;
+    private HTTPRequestSender sender;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubAbbServer(new SyntheticResponseSource(10, 42));
+        server.start();
+        sender = new HTTPRequestSender(server.getBaseUrl() + "post/?election");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * A body written in small pieces, as a streamed result would be.
+     */
+    private static final class LinesWriter implements RequestSender.BodyWriter {
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            for (int i = 0; i < LINE_COUNT; ++i) {
+                out.write(line(i).getBytes(UTF_8));
+            }
+        }
+    }
+
+    private static String line(int i) {
+        return i + " " + Integer.toHexString(i * 31) + '\n';
+    }
+
+    private static String expectedBody() {
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < LINE_COUNT; ++i) {
+            body.append(line(i));
+        }
+        return body.toString();
+    }
+
+    @Test
+    public void postsBodyOfUnknownLength() throws Exception {
+        sender.postBody(new LinesWriter());
+
+        assertEquals(Collections.singletonList(expectedBody()), server.getPostedResults());
+        assertEquals(1, server.getChunkedPostCount());
+    }
+
+    @Test
+    public void postsBodyOfKnownLength() throws Exception {
+        final String body = expectedBody();
+        sender.postBody(new LinesWriter(), body.getBytes(UTF_8).length);
+
+        assertEquals(Collections.singletonList(body), server.getPostedResults());
+        assertEquals(0, server.getChunkedPostCount());
+    }
+
+    @Test
+    public void rejectedBodyOfUnknownLengthIsReported() throws Exception {
+        server.setPostStatus(500);
+        try {
+            sender.postBody(new LinesWriter());
+            fail("The rejected body was not reported");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(Collections.<String>emptyList(), server.getPostedResults());
+    }
+
+}
@@ -0,0 +1,171 @@
+package gr.uoa.di.finer.parse;
+
+import android.database.Cursor;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import gr.uoa.di.finer.ReadableDataStore;
+import gr.uoa.di.finer.gen.Curve;
+import gr.uoa.di.finer.gen.GeneratedElection;
+import gr.uoa.di.finer.service.Cryptosystem;
+import gr.uoa.di.finer.service.ParseException;
+import gr.uoa.di.finer.service.StoreException;
+
+/**
+ * Measures the throughput of {@link SimpleResponseParser} alone: the store returns a constant
+ * decommitment and the cryptosystem only counts them. The primary result is in lines per second,
+ * while the {@code chars} counter gives the characters per second.
+ * <p>
+ * The response is read through a {@link BufferedReader}, like the ABB response.
+ *
+ * @author Vasilis Poulimenos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleResponseParserBenchmark {
+
+    private static final int LINES = 10_000;
+    private static final String ELECTION_ID = "benchmark";
+
+    /**
+     * Counts the characters parsed, which JMH reports as a rate next to the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class CharCounter {
+        public long chars;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            chars = 0;
+        }
+    }
+
+    private static final class ConstantDataStore implements ReadableDataStore {
+        private final String decommitment;
+
+        ConstantDataStore(String decommitment) {
+            this.decommitment = decommitment;
+        }
+
+        @Override
+        public void beginTransaction() {}
+
+        @Override
+        public void setTransactionSuccessful() {}
+
+        @Override
+        public void endTransaction() {}
+
+        @Override
+        public boolean hasElection(String electionId) {
+            return true;
+        }
+
+        @Override
+        public Cursor getElection(String electionId, String[] columns) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Cursor getAllElections(String[] columns) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getElectionStatus(String electionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getElectionAbb(String electionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getElectionDecommitmentKey(String electionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getElectionDecommitmentBundle(String electionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getBallotDecommitment(String electionId, String serialNumber, String voteCode) {
+            return decommitment;
+        }
+
+        @Override
+        public Cursor getElectionMetrics(String electionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    private static final class CountingCryptosystem implements Cryptosystem {
+        long count;
+
+        @Override
+        public void add(String decommitment) {
+            ++count;
+        }
+
+        @Override
+        public String computeBundle() {
+            return Long.toString(count);
+        }
+    }
+
+    private String response;
+    private ReadableDataStore store;
+
+    @Setup
+    public void setUp() {
+        final GeneratedElection election = new GeneratedElection(LINES, 4, Curve.P256, 1);
+        final StringBuilder builder = new StringBuilder();
+        for (long i = 0; i < LINES; ++i) {
+            builder.append(election.getLine(i));
+        }
+        response = builder.toString();
+        store = new ConstantDataStore(election.getDecommitment(0, 0, 0));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void parse(CharCounter counter, Blackhole blackhole)
+            throws IOException, ParseException, StoreException {
+        final CountingCryptosystem cryptosystem = new CountingCryptosystem();
+        final SimpleResponseParser parser = new SimpleResponseParser(
+                new BufferedReader(new StringReader(response)), cryptosystem, store, ELECTION_ID);
+        while (parser.parse()) {}
+        counter.chars += response.length();
+        blackhole.consume(cryptosystem.count);
+    }
+
+}
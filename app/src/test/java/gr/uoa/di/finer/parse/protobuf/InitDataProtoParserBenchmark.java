@@ -0,0 +1,192 @@
+package gr.uoa.di.finer.parse.protobuf;
+
+import android.database.Cursor;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import gr.uoa.di.finer.gen.Curve;
+import gr.uoa.di.finer.gen.GeneratedElection;
+import gr.uoa.di.finer.service.ParseException;
+import gr.uoa.di.finer.service.StoreException;
+import gr.uoa.di.finer.service.WritableDataStore;
+
+/**
+ * Measures the decoding throughput of {@link InitDataProtoParser} alone: the store only counts
+ * the ballot parts it is given. The primary result is in ballots per second, while the
+ * {@code bytes} counter gives the bytes per second.
+ * <p>
+ * Every ballot has two sides of {@code tuples} vote code tuples, so the cost of a ballot depends
+ * on the number of options.
+ *
+ * @author Vasilis Poulimenos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InitDataProtoParserBenchmark {
+
+    private static final int BALLOTS = 1000;
+    private static final String ELECTION_ID = "benchmark";
+
+    /**
+     * Counts the bytes decoded, which JMH reports as a rate next to the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ByteCounter {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    private static final class CountingDataStore implements WritableDataStore {
+        long count;
+
+        @Override
+        public void beginTransaction() {}
+
+        @Override
+        public void setTransactionSuccessful() {}
+
+        @Override
+        public void endTransaction() {}
+
+        @Override
+        public boolean hasElection(String electionId) {
+            return true;
+        }
+
+        @Override
+        public Cursor getElection(String electionId, String[] columns) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Cursor getAllElections(String[] columns) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getElectionStatus(String electionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getElectionAbb(String electionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getElectionDecommitmentKey(String electionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getElectionDecommitmentBundle(String electionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getBallotDecommitment(String electionId, String serialNumber, String voteCode) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Cursor getElectionMetrics(String electionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void createElection(String electionId, String question, long startTime,
+                                   long endTime, String url, int status) {}
+
+        @Override
+        public void setElectionStatus(String electionId, int status) {}
+
+        @Override
+        public void saveKey(String electionId, String decommitmentKey) {}
+
+        @Override
+        public void saveBallot(String electionId, String serialNo, String partId,
+                               String voteCode, String decommitment) {
+            ++count;
+        }
+
+        @Override
+        public void saveDecommitmentBundle(String electionId, String decommitmentBundle) {}
+
+        @Override
+        public void saveTally(String electionId, String tally) {}
+
+        @Override
+        public void saveMetrics(String electionId, String task, String metrics) {}
+
+        @Override
+        public void eraseElection(String electionId) {}
+
+        @Override
+        public void eraseBallots(String electionId) {}
+
+        @Override
+        public void clear() {}
+
+        @Override
+        public void close() {}
+    }
+
+    @Param({"2", "10"})
+    public int tuples;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws IOException {
+        final GeneratedElection election = new GeneratedElection(BALLOTS, tuples, Curve.P256, 1);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        election.getKeyMessage().writeDelimitedTo(out);
+        for (long i = 0; i < BALLOTS; ++i) {
+            election.getBallot(i).writeDelimitedTo(out);
+        }
+        data = out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BALLOTS)
+    public void parse(ByteCounter counter, Blackhole blackhole)
+            throws IOException, ParseException, StoreException {
+        final CountingDataStore store = new CountingDataStore();
+        final InitDataProtoParser parser = new InitDataProtoParser(
+                new BufferedInputStream(new ByteArrayInputStream(data)), store, ELECTION_ID);
+        parser.parseKey();
+        while (parser.parseBallot()) {}
+        counter.bytes += data.length;
+        blackhole.consume(store.count);
+    }
+
+}
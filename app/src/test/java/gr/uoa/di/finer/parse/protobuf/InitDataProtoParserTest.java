@@ -0,0 +1,105 @@
+package gr.uoa.di.finer.parse.protobuf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gr.uoa.di.finer.gen.Curve;
+import gr.uoa.di.finer.gen.GeneratedElection;
+import gr.uoa.di.finer.parse.TruncatedFileException;
+import gr.uoa.di.finer.service.WritableDataStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link InitDataProtoParser} can skip the ballots stored by an earlier run and
+ * continue with the rest of the data.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class InitDataProtoParserTest {
+
+    private static final int BALLOTS = 10;
+    private static final int TUPLES = 2;
+    private static final String ELECTION_ID = "test";
+
+    private byte[] data;
+    // The serial numbers of the ballot parts stored, in order.
+    private List<String> stored;
+    private WritableDataStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        final GeneratedElection election = new GeneratedElection(BALLOTS, TUPLES, Curve.P256, 3);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        election.getKeyMessage().writeDelimitedTo(out);
+        for (long i = 0; i < BALLOTS; ++i) {
+            election.getBallot(i).writeDelimitedTo(out);
+        }
+        data = out.toByteArray();
+
+        stored = new ArrayList<>();
+        store = (WritableDataStore) Proxy.newProxyInstance(
+                WritableDataStore.class.getClassLoader(),
+                new Class<?>[] { WritableDataStore.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("saveBallot")) {
+                            stored.add((String) args[1]);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private InitDataProtoParser newParser(byte[] bytes) {
+        return new InitDataProtoParser(new ByteArrayInputStream(bytes), store, ELECTION_ID);
+    }
+
+    @Test
+    public void skippedBallotsAreCountedButNotStored() throws Exception {
+        final InitDataProtoParser parser = newParser(data);
+        parser.parseKey();
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(parser.skipBallot());
+        }
+        while (parser.parseBallot()) {}
+
+        assertEquals(BALLOTS, parser.getParsedBallotCount());
+        // Two sides of TUPLES tuples for each ballot after the skipped ones.
+        assertEquals((BALLOTS - 4) * 2 * TUPLES, stored.size());
+        assertEquals("5", stored.get(0));
+        assertEquals(Integer.toString(BALLOTS), stored.get(stored.size() - 1));
+    }
+
+    @Test
+    public void skipStopsAtEnd() throws Exception {
+        final InitDataProtoParser parser = newParser(data);
+        parser.parseKey();
+        while (parser.skipBallot()) {}
+
+        assertEquals(BALLOTS, parser.getParsedBallotCount());
+        assertFalse(parser.parseBallot());
+        assertTrue(stored.isEmpty());
+    }
+
+    @Test(expected = TruncatedFileException.class)
+    public void truncatedBallotIsDetected() throws Exception {
+        final InitDataProtoParser parser = newParser(Arrays.copyOf(data, data.length - 1));
+        parser.parseKey();
+        while (parser.skipBallot()) {}
+    }
+
+}
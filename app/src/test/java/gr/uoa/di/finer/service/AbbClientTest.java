@@ -0,0 +1,213 @@
+package gr.uoa.di.finer.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.ProtocolException;
+import java.util.Collections;
+
+import gr.uoa.di.finer.abb.StubAbbServer;
+import gr.uoa.di.finer.URLConnection;
+import gr.uoa.di.finer.abb.SyntheticResponseSource;
+import gr.uoa.di.finer.net.RetryPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the network side of election verification against a {@link StubAbbServer}.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class AbbClientTest {
+
+    private static final long BALLOTS = 10_000;
+
+    private SyntheticResponseSource source;
+    private StubAbbServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        source = new SyntheticResponseSource(BALLOTS, 42);
+        server = new StubAbbServer(source);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private static RetryPolicy newFastRetryPolicy() {
+        return new RetryPolicy(3, 10, 10, 100);
+    }
+
+    /**
+     * A reader that fails like OkHttp, which backs HttpURLConnection on Android, when a response
+     * body ends early: with a ProtocolException rather than a plain IOException.
+     */
+    private static final class EarlyEndReader extends FilterReader {
+        private long remaining;
+
+        EarlyEndReader(Reader in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final char[] buffer = new char[1];
+            return (read(buffer, 0, 1) == -1) ? -1 : buffer[0];
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int count) throws IOException {
+            if (remaining == 0) {
+                throw new ProtocolException("unexpected end of stream");
+            }
+            final int n = in.read(buffer, offset, (int) Math.min(count, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * A client whose ballot responses end early a number of times.
+     */
+    private final class EarlyEndClient extends AbbClient {
+        private int remainingFaults;
+        private boolean countRead;
+
+        EarlyEndClient(int faults, TaskMetrics metrics) {
+            super(server.getBaseUrl(), VerifyHarness.ELECTION_ID, newFastRetryPolicy(), metrics);
+            this.remainingFaults = faults;
+        }
+
+        @Override
+        BufferedReader openReader(URLConnection connection) throws IOException {
+            final BufferedReader reader = super.openReader(connection);
+            // The first response is the total count.
+            if (!countRead) {
+                countRead = true;
+                return reader;
+            }
+            if (remainingFaults == 0) {
+                return reader;
+            }
+            --remainingFaults;
+            return new BufferedReader(new EarlyEndReader(reader, 50_001));
+        }
+    }
+
+    @Test
+    public void verifiesAllBallots() throws Exception {
+        final VerifyHarness.Result result = VerifyHarness.run(server, source, newFastRetryPolicy());
+
+        assertEquals(BALLOTS, result.ballotCount);
+        assertEquals(VerifyHarness.expectedBundle(source), result.bundle);
+        assertEquals(1, server.getResponseRequestCount());
+        assertEquals(Collections.singletonList(result.bundle), server.getPostedResults());
+    }
+
+    @Test
+    public void resumesAfterDisconnects() throws Exception {
+        // Disconnect in the middle of a line, so that a partial line must be discarded.
+        server.setDisconnects(50_001, 3);
+        final VerifyHarness.Result result = VerifyHarness.run(server, source, newFastRetryPolicy());
+
+        assertEquals(BALLOTS, result.ballotCount);
+        assertEquals(VerifyHarness.expectedBundle(source), result.bundle);
+        assertEquals(4, server.getResponseRequestCount());
+    }
+
+    @Test
+    public void resumesAfterProtocolErrors() throws Exception {
+        final TaskMetrics metrics = new TaskMetrics("verify");
+        final VerifyHarness.Result result =
+                VerifyHarness.run(new EarlyEndClient(3, metrics), source, metrics);
+
+        assertEquals(BALLOTS, result.ballotCount);
+        assertEquals(VerifyHarness.expectedBundle(source), result.bundle);
+        assertEquals(4, server.getResponseRequestCount());
+    }
+
+    @Test
+    public void resumesAfterTruncatedResponses() throws Exception {
+        // Responses that end properly, at a line boundary, but too early.
+        server.setTruncations(1_000, 3);
+        final VerifyHarness.Result result = VerifyHarness.run(server, source, newFastRetryPolicy());
+
+        assertEquals(BALLOTS, result.ballotCount);
+        assertEquals(VerifyHarness.expectedBundle(source), result.bundle);
+        assertEquals(4, server.getResponseRequestCount());
+    }
+
+    @Test
+    public void resumesAfterResponsesTruncatedMidLine() throws Exception {
+        // Responses that end properly, but in the middle of a line, which must be parsed again.
+        server.setTruncations(1_000, 3, true);
+        final VerifyHarness.Result result = VerifyHarness.run(server, source, newFastRetryPolicy());
+
+        assertEquals(BALLOTS, result.ballotCount);
+        assertEquals(VerifyHarness.expectedBundle(source), result.bundle);
+        assertEquals(4, server.getResponseRequestCount());
+    }
+
+    @Test
+    public void rejectsResponsesThatStayTruncated() throws Exception {
+        server.setTruncations(0, Integer.MAX_VALUE);
+        try {
+            VerifyHarness.run(server, source, newFastRetryPolicy());
+            fail("A truncated response was accepted");
+        } catch (IOException expected) {
+            // No progress is made, so the consecutive retries (3) end this, although every
+            // reconnection succeeds.
+            assertEquals(4, server.getResponseRequestCount());
+        }
+        assertEquals(Collections.<String>emptyList(), server.getPostedResults());
+    }
+
+    @Test
+    public void recordsMetrics() throws Exception {
+        server.setDisconnects(50_001, 1);
+        final VerifyHarness.Result result = VerifyHarness.run(server, source, newFastRetryPolicy());
+        final String json = result.metrics.toJson();
+
+        // One total count request and two ballot requests.
+        assertTrue(json, json.contains("\"connect\":{\"count\":3,"));
+        assertTrue(json, json.contains("\"crypto\":{\"calls\":" + BALLOTS + ","));
+        assertTrue(json, json.contains("\"ballots\":" + BALLOTS + ","));
+        assertTrue(result.metrics.getBallotsPerSecond() > 0);
+    }
+
+    @Test
+    public void survivesLatencyAndBandwidthLimit() throws Exception {
+        server.setLatencyMillis(50);
+        server.setBandwidthLimit(1024 * 1024);
+        final VerifyHarness.Result result = VerifyHarness.run(server, source, newFastRetryPolicy());
+
+        assertEquals(VerifyHarness.expectedBundle(source), result.bundle);
+    }
+
+    @Test
+    public void rejectsGarbage() throws Exception {
+        server.setGarbage(0.01, 7);
+        try {
+            VerifyHarness.run(server, source, newFastRetryPolicy());
+            fail("Garbage was accepted");
+        } catch (ParseException expected) {
+            // Garbage must never be retried.
+            assertEquals(1, server.getResponseRequestCount());
+        }
+        assertEquals(Collections.<String>emptyList(), server.getPostedResults());
+    }
+
+}
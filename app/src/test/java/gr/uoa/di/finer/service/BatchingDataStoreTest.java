@@ -0,0 +1,209 @@
+package gr.uoa.di.finer.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that {@link BatchingDataStore} hands whole transactions to the writer, runs at most one
+ * batch ahead and reports the failures of the writer.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class BatchingDataStoreTest {
+
+    private static final String ELECTION_ID = "test";
+    private static final long TIMEOUT_SECONDS = 5;
+
+    /**
+     * A writer that writes the batches in order on another thread.
+     */
+    private static final class FakeWriter implements BallotWriter {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final List<BallotBatch> written = Collections.synchronizedList(new ArrayList<BallotBatch>());
+        // Holds the writes back until it is released.
+        final CountDownLatch released = new CountDownLatch(1);
+        // The index of the batch to fail or -1.
+        volatile int failing = -1;
+        int submitted;
+
+        @Override
+        public Future<Void> submit(final BallotBatch batch, final Future<Void> after) {
+            final int index = submitted++;
+            return executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    released.await();
+                    if (after != null) {
+                        try {
+                            after.get();
+                        } catch (ExecutionException e) {
+                            throw new StoreException("Previous batch failed");
+                        }
+                    }
+                    if (index == failing) {
+                        throw new StoreException("Write failed");
+                    }
+                    written.add(batch);
+                    return null;
+                }
+            });
+        }
+    }
+
+    private FakeWriter writer;
+    private List<String> direct;
+    private BatchingDataStore store;
+
+    @Before
+    public void setUp() {
+        writer = new FakeWriter();
+        direct = new ArrayList<>();
+        final WritableDataStore underlying = (WritableDataStore) Proxy.newProxyInstance(
+                WritableDataStore.class.getClassLoader(),
+                new Class<?>[] { WritableDataStore.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("saveBallot")) {
+                            direct.add((String) args[1]);
+                        }
+                        return null;
+                    }
+                });
+        store = new BatchingDataStore(underlying, writer, ELECTION_ID);
+    }
+
+    @After
+    public void tearDown() {
+        writer.released.countDown();
+        writer.executor.shutdownNow();
+    }
+
+    private void saveTransaction(int ballots, boolean successful) throws StoreException {
+        store.beginTransaction();
+        try {
+            for (int i = 0; i < ballots; ++i) {
+                store.saveBallot(ELECTION_ID, Integer.toString(i), "A", "code", "decommitment");
+            }
+            store.setCheckpoint(1, ballots);
+            if (successful) {
+                store.setTransactionSuccessful();
+            }
+        } finally {
+            store.endTransaction();
+        }
+    }
+
+    @Test
+    public void transactionIsWrittenAsOneBatch() throws Exception {
+        writer.released.countDown();
+        saveTransaction(3, true);
+        store.flush();
+
+        assertEquals(1, writer.written.size());
+        final BallotBatch batch = writer.written.get(0);
+        assertEquals(ELECTION_ID, batch.getElectionId());
+        assertEquals(3, batch.size());
+        assertEquals("2", batch.getSerialNo(2));
+        assertEquals(1, batch.getJobId());
+        assertEquals(3, batch.getCheckpoint());
+        assertTrue(direct.isEmpty());
+    }
+
+    @Test
+    public void rolledBackTransactionIsNotWritten() throws Exception {
+        writer.released.countDown();
+        saveTransaction(3, false);
+        store.flush();
+
+        assertTrue(writer.written.isEmpty());
+    }
+
+    @Test
+    public void ballotsOutsideTransactionsAreWrittenDirectly() throws Exception {
+        store.saveBallot(ELECTION_ID, "1", "A", "code", "decommitment");
+
+        assertEquals(1, direct.size());
+        assertEquals(0, writer.submitted);
+    }
+
+    @Test
+    public void storeRunsOneBatchAhead() throws Exception {
+        // The writer is held back, yet the first transaction does not wait for it.
+        saveTransaction(1, true);
+        assertEquals(1, writer.submitted);
+
+        final Thread second = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    saveTransaction(1, true);
+                } catch (StoreException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        second.start();
+        second.join(TimeUnit.SECONDS.toMillis(1));
+        assertTrue("Second transaction did not wait", second.isAlive());
+
+        writer.released.countDown();
+        second.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertFalse(second.isAlive());
+        store.flush();
+        assertEquals(2, writer.written.size());
+    }
+
+    @Test
+    public void failureIsReportedByNextTransaction() throws Exception {
+        writer.failing = 0;
+        writer.released.countDown();
+        saveTransaction(1, true);
+        try {
+            saveTransaction(1, true);
+            fail("Failure not reported");
+        } catch (StoreException expected) {
+            // The batch that follows the failed one is not written either.
+        }
+        try {
+            store.flush();
+            fail("Failure not reported");
+        } catch (StoreException expected) {
+        }
+        assertTrue(writer.written.isEmpty());
+    }
+
+    @Test
+    public void waitingKeepsInterrupt() throws Exception {
+        writer.released.countDown();
+        saveTransaction(1, true);
+        Thread.currentThread().interrupt();
+        try {
+            store.flush();
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(1, writer.written.size());
+    }
+
+}
@@ -0,0 +1,30 @@
+package gr.uoa.di.finer.service;
+
+/**
+ * A cryptosystem that does not interpret decommitments, but only counts them and sums their
+ * hash codes. The sum does not depend on the order of the decommitments, so, like the real
+ * bundle, it shows if any ballot was added twice or missed.
+ *
+ * @author Vasilis Poulimenos
+ */
+class ChecksumCryptosystem implements Cryptosystem {
+
+    private long count;
+    private long checksum;
+
+    static String toBundle(long count, long checksum) {
+        return count + ";" + Long.toHexString(checksum);
+    }
+
+    @Override
+    public void add(String decommitment) {
+        ++count;
+        checksum += decommitment.hashCode();
+    }
+
+    @Override
+    public String computeBundle() {
+        return toBundle(count, checksum);
+    }
+
+}
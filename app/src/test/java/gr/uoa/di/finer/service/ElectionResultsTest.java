@@ -0,0 +1,101 @@
+package gr.uoa.di.finer.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Collections;
+
+import gr.uoa.di.finer.ElectionStatus;
+import gr.uoa.di.finer.abb.StubAbbServer;
+import gr.uoa.di.finer.abb.SyntheticResponseSource;
+import gr.uoa.di.finer.crypto.MiraclBase64;
+import gr.uoa.di.finer.net.RetryPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that a verified election can be tallied and published, in any order.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class ElectionResultsTest {
+
+    private static final String ELECTION_ID = "election";
+    private static final int VOTER_COUNT = 1000;
+    private static final int OPTION_COUNT = 4;
+
+    private StubAbbServer server;
+    private MemoryElectionStore store;
+    private AbbClient client;
+    private String decommitmentBundle;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubAbbServer(new SyntheticResponseSource(10, 42));
+        server.start();
+        store = new MemoryElectionStore(ELECTION_ID, ElectionStatus.VERIFYING);
+        client = new AbbClient(server.getBaseUrl(), ELECTION_ID, new RetryPolicy(3, 10, 10, 100));
+
+        final BigInteger radix = BigInteger.valueOf(VOTER_COUNT + 1);
+        // 7 votes for option 0, none for option 1 and 1000 for option 2.
+        final BigInteger votes = radix.pow(2).multiply(BigInteger.valueOf(VOTER_COUNT))
+                .add(BigInteger.valueOf(7));
+        decommitmentBundle = MiraclBase64.encode(votes) + ",AAAB";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void tallyRequiresVerifiedElection() throws Exception {
+        assertNull(ElectionResults.tally(store, ELECTION_ID, VOTER_COUNT, OPTION_COUNT));
+    }
+
+    @Test
+    public void tallyAfterFailedPost() throws Exception {
+        server.setPostStatus(500);
+        ElectionResults.save(store, ELECTION_ID, decommitmentBundle);
+        try {
+            ElectionResults.publish(store, client, ELECTION_ID, decommitmentBundle);
+            fail("The rejected post was not reported");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertEquals(ElectionStatus.VERIFIED.getValue(), store.getElectionStatus(ELECTION_ID));
+        assertTrue(server.getPostedResults().isEmpty());
+        assertEquals("7,0,1000,0",
+                ElectionResults.tally(store, ELECTION_ID, VOTER_COUNT, OPTION_COUNT));
+    }
+
+    @Test
+    public void postRetryCompletesElection() throws Exception {
+        server.setPostStatus(503);
+        ElectionResults.save(store, ELECTION_ID, decommitmentBundle);
+        try {
+            ElectionResults.publish(store, client, ELECTION_ID, decommitmentBundle);
+            fail("The rejected post was not reported");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // As the verification task does when the election is already verified.
+        server.setPostStatus(200);
+        ElectionResults.publish(store, client, ELECTION_ID,
+                store.getElectionDecommitmentBundle(ELECTION_ID));
+
+        assertEquals(ElectionStatus.COMPLETED.getValue(), store.getElectionStatus(ELECTION_ID));
+        assertEquals(Collections.singletonList(decommitmentBundle), server.getPostedResults());
+        assertEquals("7,0,1000,0",
+                ElectionResults.tally(store, ELECTION_ID, VOTER_COUNT, OPTION_COUNT));
+    }
+
+}
@@ -0,0 +1,380 @@
+package gr.uoa.di.finer.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the ordering and concurrency rules of {@link HeavyTaskScheduler}.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class HeavyTaskSchedulerTest {
+
+    private static final int POOL_SIZE = 4;
+    private static final long TIMEOUT_SECONDS = 5;
+    // Long enough for a task that could start to actually start.
+    private static final long SETTLE_MILLIS = 100;
+
+    /**
+     * A task that runs until it is released.
+     */
+    private static final class BlockingTask implements Runnable {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void awaitStarted() throws InterruptedException {
+            assertTrue("Task did not start", started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        void assertNotStarted() throws InterruptedException {
+            assertFalse("Task started", started.await(SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+
+    private ExecutorService pool;
+    private HeavyTaskScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(POOL_SIZE);
+        scheduler = new HeavyTaskScheduler(pool, POOL_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void differentElectionsRunConcurrently() throws Exception {
+        final BlockingTask init = new BlockingTask();
+        final BlockingTask verify = new BlockingTask();
+
+        scheduler.submit(init, "A", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        scheduler.submit(verify, "B", HeavyTaskScheduler.NEEDS_CRYPTO,
+                HeavyTaskScheduler.PRIORITY_VERIFY);
+        init.awaitStarted();
+        verify.awaitStarted();
+        assertEquals(2, scheduler.getRunningCount());
+
+        init.release();
+        verify.release();
+    }
+
+    @Test
+    public void sameElectionIsSerialized() throws Exception {
+        final BlockingTask init = new BlockingTask();
+        final BlockingTask verify = new BlockingTask();
+        final BlockingTask other = new BlockingTask();
+
+        scheduler.submit(init, "A", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        scheduler.submit(verify, "A", HeavyTaskScheduler.NEEDS_CRYPTO,
+                HeavyTaskScheduler.PRIORITY_VERIFY);
+        scheduler.submit(other, "B", HeavyTaskScheduler.NEEDS_CRYPTO,
+                HeavyTaskScheduler.PRIORITY_VERIFY);
+        init.awaitStarted();
+        // B is not held back by the waiting task of A.
+        other.awaitStarted();
+        verify.assertNotStarted();
+
+        other.release();
+        init.release();
+        verify.awaitStarted();
+        verify.release();
+    }
+
+    @Test
+    public void writersTakeTurns() throws Exception {
+        final BlockingTask first = new BlockingTask();
+        final BlockingTask second = new BlockingTask();
+
+        scheduler.submit(first, "A", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        scheduler.submit(second, "B", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        first.awaitStarted();
+        second.assertNotStarted();
+
+        first.release();
+        second.awaitStarted();
+        second.release();
+    }
+
+    @Test
+    public void exclusiveTaskRunsAlone() throws Exception {
+        final BlockingTask before = new BlockingTask();
+        final BlockingTask exclusive = new BlockingTask();
+        final BlockingTask after = new BlockingTask();
+
+        scheduler.submit(before, "A", HeavyTaskScheduler.NEEDS_CRYPTO,
+                HeavyTaskScheduler.PRIORITY_VERIFY);
+        scheduler.submit(exclusive, null, HeavyTaskScheduler.EXCLUSIVE,
+                HeavyTaskScheduler.PRIORITY_ERASE);
+        scheduler.submit(after, "B", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        before.awaitStarted();
+        exclusive.assertNotStarted();
+        after.assertNotStarted();
+
+        before.release();
+        exclusive.awaitStarted();
+        after.assertNotStarted();
+
+        exclusive.release();
+        after.awaitStarted();
+        after.release();
+    }
+
+    @Test
+    public void concurrencyIsBounded() throws Exception {
+        final HeavyTaskScheduler single = new HeavyTaskScheduler(pool, 1);
+        final BlockingTask first = new BlockingTask();
+        final BlockingTask second = new BlockingTask();
+
+        single.submit(first, "A", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        single.submit(second, "B", HeavyTaskScheduler.NEEDS_CRYPTO,
+                HeavyTaskScheduler.PRIORITY_VERIFY);
+        first.awaitStarted();
+        second.assertNotStarted();
+
+        first.release();
+        second.awaitStarted();
+        second.release();
+    }
+
+    @Test
+    public void cancelledWaitingTaskCompletesWithoutRunning() throws Exception {
+        final BlockingTask first = new BlockingTask();
+        final BlockingTask second = new BlockingTask();
+
+        scheduler.submit(first, "A", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        final Future<?> result = scheduler.submit(second, "B", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        first.awaitStarted();
+
+        result.cancel(true);
+        scheduler.purge();
+        assertEquals(0, scheduler.getWaitingCount());
+        assertTrue(result.isDone());
+        second.assertNotStarted();
+
+        first.release();
+    }
+
+    @Test
+    public void higherPriorityRunsFirst() throws Exception {
+        final HeavyTaskScheduler single = new HeavyTaskScheduler(pool, 1);
+        final BlockingTask first = new BlockingTask();
+        final BlockingTask erase = new BlockingTask();
+        final BlockingTask init = new BlockingTask();
+        final BlockingTask verify = new BlockingTask();
+
+        single.submit(first, "A", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        single.submit(erase, "B", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_ERASE);
+        single.submit(init, "C", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        single.submit(verify, "D", HeavyTaskScheduler.NEEDS_CRYPTO,
+                HeavyTaskScheduler.PRIORITY_VERIFY);
+        first.awaitStarted();
+
+        first.release();
+        verify.awaitStarted();
+        init.assertNotStarted();
+        verify.release();
+        init.awaitStarted();
+        erase.assertNotStarted();
+        init.release();
+        erase.awaitStarted();
+        erase.release();
+    }
+
+    @Test
+    public void waitingTasksAge() throws Exception {
+        final HeavyTaskScheduler single = new HeavyTaskScheduler(pool, 1, SETTLE_MILLIS);
+        final BlockingTask first = new BlockingTask();
+        final BlockingTask erase = new BlockingTask();
+        final BlockingTask verify = new BlockingTask();
+
+        single.submit(first, "A", HeavyTaskScheduler.NEEDS_CRYPTO,
+                HeavyTaskScheduler.PRIORITY_VERIFY);
+        single.submit(erase, "B", HeavyTaskScheduler.NEEDS_WRITER,
+                HeavyTaskScheduler.PRIORITY_ERASE);
+        first.awaitStarted();
+        // Long enough for the erasure to gain more than two levels.
+        Thread.sleep(4 * SETTLE_MILLIS);
+        single.submit(verify, "C", HeavyTaskScheduler.NEEDS_CRYPTO,
+                HeavyTaskScheduler.PRIORITY_VERIFY);
+
+        first.release();
+        erase.awaitStarted();
+        verify.assertNotStarted();
+        erase.release();
+        verify.awaitStarted();
+        verify.release();
+    }
+
+    @Test
+    public void runningTaskYieldsToMoreUrgentTask() throws Exception {
+        final HeavyTaskScheduler single = new HeavyTaskScheduler(pool, 1);
+        final CountDownLatch initStarted = new CountDownLatch(1);
+        final CountDownLatch verifySubmitted = new CountDownLatch(1);
+        final CountDownLatch initYielded = new CountDownLatch(1);
+        final BlockingTask verify = new BlockingTask();
+
+        final Future<?> init = single.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    initStarted.countDown();
+                    verifySubmitted.await();
+                    // A transaction boundary.
+                    if (single.yieldIfPreempted()) {
+                        initYielded.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "A", HeavyTaskScheduler.NEEDS_WRITER, HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        assertTrue(initStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse("Yielded without a reason", single.yieldIfPreempted());
+
+        single.submit(verify, "B", HeavyTaskScheduler.NEEDS_CRYPTO,
+                HeavyTaskScheduler.PRIORITY_VERIFY);
+        verifySubmitted.countDown();
+        verify.awaitStarted();
+        assertTrue(single.hasPausedTask());
+        assertEquals(1, single.getRunningCount());
+        assertFalse(init.isDone());
+
+        verify.release();
+        assertTrue(initYielded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        init.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertFalse(single.hasPausedTask());
+    }
+
+    @Test
+    public void runningTaskDoesNotYieldToLessUrgentTask() throws Exception {
+        final HeavyTaskScheduler single = new HeavyTaskScheduler(pool, 1);
+        final CountDownLatch eraseSubmitted = new CountDownLatch(1);
+        final BlockingTask erase = new BlockingTask();
+        final boolean[] yielded = new boolean[1];
+
+        final Future<?> init = single.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    eraseSubmitted.await();
+                    yielded[0] = single.yieldIfPreempted();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "A", HeavyTaskScheduler.NEEDS_WRITER, HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        // Needs nothing that the running task holds.
+        single.submit(erase, "B", 0, HeavyTaskScheduler.PRIORITY_ERASE);
+        eraseSubmitted.countDown();
+
+        init.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertFalse(yielded[0]);
+        erase.awaitStarted();
+        erase.release();
+    }
+
+    @Test
+    public void agedTaskDoesNotPreemptTaskOfEqualPriority() throws Exception {
+        final HeavyTaskScheduler single = new HeavyTaskScheduler(pool, 1, 1);
+        final CountDownLatch secondSubmitted = new CountDownLatch(1);
+        final BlockingTask second = new BlockingTask();
+        final boolean[] yielded = new boolean[1];
+
+        final Future<?> first = single.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    secondSubmitted.await();
+                    // Long enough for the waiting task to age many levels.
+                    Thread.sleep(SETTLE_MILLIS);
+                    yielded[0] = single.yieldIfPreempted();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "A", HeavyTaskScheduler.NEEDS_WRITER, HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        // Needs nothing that the running task holds.
+        single.submit(second, "B", 0, HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        secondSubmitted.countDown();
+
+        first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertFalse(yielded[0]);
+        second.awaitStarted();
+        second.release();
+    }
+
+    @Test
+    public void interruptedPausedTaskWaitsForFreeSlot() throws Exception {
+        final HeavyTaskScheduler single = new HeavyTaskScheduler(pool, 1);
+        final CountDownLatch verifySubmitted = new CountDownLatch(1);
+        final CountDownLatch initInterrupted = new CountDownLatch(1);
+        final BlockingTask verify = new BlockingTask();
+
+        final Future<?> init = single.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    verifySubmitted.await();
+                    single.yieldIfPreempted();
+                } catch (InterruptedException e) {
+                    initInterrupted.countDown();
+                }
+            }
+        }, "A", HeavyTaskScheduler.NEEDS_WRITER, HeavyTaskScheduler.PRIORITY_INITIALIZE);
+        single.submit(verify, "B", HeavyTaskScheduler.NEEDS_CRYPTO,
+                HeavyTaskScheduler.PRIORITY_VERIFY);
+        verifySubmitted.countDown();
+        verify.awaitStarted();
+        assertTrue(single.hasPausedTask());
+
+        // The only slot is taken, so the interrupted task may not go on yet.
+        init.cancel(true);
+        assertFalse(initInterrupted.await(SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, single.getRunningCount());
+
+        verify.release();
+        assertTrue(initInterrupted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(single.hasPausedTask());
+    }
+
+}
@@ -0,0 +1,100 @@
+package gr.uoa.di.finer.service;
+
+import android.database.Cursor;
+
+import gr.uoa.di.finer.ReadableDataStore;
+import gr.uoa.di.finer.abb.ResponseSource;
+
+/**
+ * A read-only data store for a single election, backed by a {@link ResponseSource}.
+ * Only the methods used during verification are supported.
+ *
+ * @author Vasilis Poulimenos
+ */
+class MemoryDataStore implements ReadableDataStore {
+
+    private final String electionId;
+    private final String abbUrl;
+    private final ResponseSource source;
+    private boolean inTransaction;
+
+    MemoryDataStore(String electionId, String abbUrl, ResponseSource source) {
+        this.electionId = electionId;
+        this.abbUrl = abbUrl;
+        this.source = source;
+    }
+
+    private void checkElection(String electionId) throws StoreException {
+        if (!this.electionId.equals(electionId)) {
+            throw new StoreException("Unknown election: " + electionId);
+        }
+    }
+
+    @Override
+    public void beginTransaction() throws StoreException {
+        if (inTransaction) {
+            throw new StoreException("Nested transaction");
+        }
+        inTransaction = true;
+    }
+
+    @Override
+    public void setTransactionSuccessful() throws StoreException {}
+
+    @Override
+    public void endTransaction() throws StoreException {
+        inTransaction = false;
+    }
+
+    @Override
+    public boolean hasElection(String electionId) throws StoreException {
+        return this.electionId.equals(electionId);
+    }
+
+    @Override
+    public Cursor getElection(String electionId, String[] columns) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Cursor getAllElections(String[] columns) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getElectionStatus(String electionId) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getElectionAbb(String electionId) throws StoreException {
+        checkElection(electionId);
+        return abbUrl;
+    }
+
+    @Override
+    public String getElectionDecommitmentKey(String electionId) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getElectionDecommitmentBundle(String electionId) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getBallotDecommitment(String electionId, String serialNumber, String voteCode)
+            throws StoreException {
+        checkElection(electionId);
+        return source.getDecommitment(serialNumber, voteCode);
+    }
+
+    @Override
+    public Cursor getElectionMetrics(String electionId) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {}
+
+}
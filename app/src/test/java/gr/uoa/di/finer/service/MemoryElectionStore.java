@@ -0,0 +1,170 @@
+package gr.uoa.di.finer.service;
+
+import android.database.Cursor;
+
+import gr.uoa.di.finer.ElectionStatus;
+
+/**
+ * A writable data store for the results of a single election. Only the status and the
+ * decommitment bundle of the election are kept, and they are rolled back by failed transactions.
+ *
+ * @author Vasilis Poulimenos
+ */
+class MemoryElectionStore implements WritableDataStore {
+
+    private final String electionId;
+    private int status;
+    private String decommitmentBundle;
+
+    private boolean inTransaction;
+    private boolean successful;
+    private int savedStatus;
+    private String savedDecommitmentBundle;
+
+    MemoryElectionStore(String electionId, ElectionStatus status) {
+        this.electionId = electionId;
+        this.status = status.getValue();
+    }
+
+    private void checkElection(String electionId) throws StoreException {
+        if (!this.electionId.equals(electionId)) {
+            throw new StoreException("Unknown election: " + electionId);
+        }
+    }
+
+    @Override
+    public void beginTransaction() throws StoreException {
+        if (inTransaction) {
+            throw new StoreException("Nested transaction");
+        }
+        inTransaction = true;
+        successful = false;
+        savedStatus = status;
+        savedDecommitmentBundle = decommitmentBundle;
+    }
+
+    @Override
+    public void setTransactionSuccessful() throws StoreException {
+        successful = true;
+    }
+
+    @Override
+    public void endTransaction() throws StoreException {
+        if (!successful) {
+            status = savedStatus;
+            decommitmentBundle = savedDecommitmentBundle;
+        }
+        inTransaction = false;
+    }
+
+    @Override
+    public boolean hasElection(String electionId) throws StoreException {
+        return this.electionId.equals(electionId);
+    }
+
+    @Override
+    public Cursor getElection(String electionId, String[] columns) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Cursor getAllElections(String[] columns) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getElectionStatus(String electionId) throws StoreException {
+        checkElection(electionId);
+        return status;
+    }
+
+    @Override
+    public String getElectionAbb(String electionId) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getElectionDecommitmentKey(String electionId) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getElectionDecommitmentBundle(String electionId) throws StoreException {
+        checkElection(electionId);
+        return decommitmentBundle;
+    }
+
+    @Override
+    public String getBallotDecommitment(String electionId, String serialNumber, String voteCode)
+            throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Cursor getElectionMetrics(String electionId) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void createElection(String electionId, String question, long startTime, long endTime,
+                               String url, int status) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setElectionStatus(String electionId, int status) throws StoreException {
+        checkElection(electionId);
+        this.status = status;
+    }
+
+    @Override
+    public void saveKey(String electionId, String decommitmentKey) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void saveBallot(String electionId, String serialNo, String partId, String voteCode,
+                           String decommitment) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void saveDecommitmentBundle(String electionId, String decommitmentBundle)
+            throws StoreException {
+        checkElection(electionId);
+        if (this.decommitmentBundle != null) {
+            // Like the database, which inserts the bundle.
+            throw new StoreException("Decommitment bundle already saved");
+        }
+        this.decommitmentBundle = decommitmentBundle;
+    }
+
+    @Override
+    public void saveTally(String electionId, String tally) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void saveMetrics(String electionId, String task, String metrics) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void eraseElection(String electionId) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void eraseBallots(String electionId) throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() throws StoreException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {}
+
+}
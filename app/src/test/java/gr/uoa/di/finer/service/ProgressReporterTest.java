@@ -0,0 +1,135 @@
+package gr.uoa.di.finer.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the coalescing rules of {@link ProgressReporter}, with a fake clock.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class ProgressReporterTest {
+
+    private static final int UPDATES_PER_SECOND = 4;
+    private static final long INTERVAL_NANOS =
+            TimeUnit.SECONDS.toNanos(1) / UPDATES_PER_SECOND;
+
+    /**
+     * A reporter that records the counts it publishes.
+     */
+    private static final class RecordingReporter extends ProgressReporter {
+        final List<Long> published = new ArrayList<>();
+        long time = 1_000_000_000L;
+
+        RecordingReporter() {
+            super(UPDATES_PER_SECOND);
+        }
+
+        @Override
+        protected void publish(long count, long total) {
+            published.add(count);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+
+    private RecordingReporter reporter;
+
+    @Before
+    public void setUp() {
+        reporter = new RecordingReporter();
+    }
+
+    private void assertPublished(Long... counts) {
+        assertEquals(Arrays.asList(counts), reporter.published);
+    }
+
+    @Test
+    public void publishesFirstUpdate() {
+        reporter.update(0, 100);
+        assertPublished(0L);
+    }
+
+    @Test
+    public void capsUpdateRate() {
+        reporter.update(1, 100);
+        reporter.time += INTERVAL_NANOS - 1;
+        reporter.update(2, 100);
+        assertPublished(1L);
+        // Exactly the minimum interval after the last published update.
+        reporter.time += 1;
+        reporter.update(3, 100);
+        assertPublished(1L, 3L);
+
+        // A second of updates at a high rate is cut down to the maximum rate.
+        for (int i = 0; i < 1000; ++i) {
+            reporter.time += TimeUnit.MILLISECONDS.toNanos(1);
+            reporter.update(4 + i * 96 / 1000, 100);
+        }
+        assertEquals(2 + UPDATES_PER_SECOND, reporter.published.size());
+    }
+
+    @Test
+    public void dropsUpdatesWithSamePercentage() {
+        reporter.update(1_000, 100_000);
+        reporter.time += INTERVAL_NANOS;
+        reporter.update(1_999, 100_000);
+        assertPublished(1_000L);
+        reporter.time += INTERVAL_NANOS;
+        reporter.update(2_000, 100_000);
+        assertPublished(1_000L, 2_000L);
+    }
+
+    @Test
+    public void dropsUpdatesWithSameCountWhenTotalIsUnknown() {
+        reporter.update(10, ProgressReporter.UNKNOWN_TOTAL);
+        reporter.time += INTERVAL_NANOS;
+        reporter.update(10, ProgressReporter.UNKNOWN_TOTAL);
+        assertPublished(10L);
+        reporter.time += INTERVAL_NANOS;
+        reporter.update(11, ProgressReporter.UNKNOWN_TOTAL);
+        assertPublished(10L, 11L);
+    }
+
+    @Test
+    public void publishesLastUpdate() {
+        reporter.update(1_000, 100_000);
+        // Too early and the same percentage, but final.
+        reporter.time += 1;
+        reporter.finish(1_001, 100_000);
+        assertPublished(1_000L, 1_001L);
+    }
+
+    @Test
+    public void publishesLastUpdateWithoutEarlierOnes() {
+        reporter.finish(0, 0);
+        assertPublished(0L);
+    }
+
+    @Test
+    public void dropsLastUpdateIfUnchanged() {
+        reporter.update(100, 100);
+        reporter.time += INTERVAL_NANOS;
+        reporter.finish(100, 100);
+        assertPublished(100L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRate() {
+        new ProgressReporter(0) {
+            @Override
+            protected void publish(long count, long total) {}
+        };
+    }
+
+}
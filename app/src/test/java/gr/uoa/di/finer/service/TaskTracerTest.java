@@ -0,0 +1,63 @@
+package gr.uoa.di.finer.service;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the Chrome trace output of {@link TaskTracer}.
+ *
+ * @author Vasilis Poulimenos
+ */
+public class TaskTracerTest {
+
+    private static int countOccurrences(String s, String pattern) {
+        int count = 0;
+        for (int i = s.indexOf(pattern); i != -1; i = s.indexOf(pattern, i + 1)) {
+            ++count;
+        }
+        return count;
+    }
+
+    @Test
+    public void writesNestedSpans() throws Exception {
+        final TaskTracer tracer = new TaskTracer("verify");
+        final long transactionStart = tracer.begin(TaskTracer.SPAN_TRANSACTION);
+        final long decodeStart = tracer.begin(TaskTracer.SPAN_DECODE);
+        tracer.end(TaskTracer.SPAN_DECODE, decodeStart);
+        final long duration = tracer.end(TaskTracer.SPAN_TRANSACTION, transactionStart);
+        final StringWriter writer = new StringWriter();
+        tracer.write(writer);
+        final String json = writer.toString();
+
+        assertTrue(duration >= 0);
+        assertEquals(2, tracer.getSpanCount());
+        assertEquals(2, countOccurrences(json, "\"ph\":\"X\""));
+        // The enclosing span starts first, so the trace starts with it.
+        assertTrue(json, json.contains("{\"name\":\"transaction\",\"cat\":\"verify\",\"ph\":\"X\","
+                + "\"ts\":0.000,"));
+        assertTrue(json, json.contains("\"dropped\":0"));
+        assertTrue(json, json.endsWith("]}\n"));
+    }
+
+    @Test
+    public void keepsOnlyTheMostRecentSpans() throws Exception {
+        final TaskTracer tracer = new TaskTracer("initialize");
+        final int spans = 100_000;
+        for (int i = 0; i < spans; ++i) {
+            tracer.end(TaskTracer.SPAN_CRYPTO_ADD, tracer.begin(TaskTracer.SPAN_CRYPTO_ADD));
+        }
+        final StringWriter writer = new StringWriter();
+        tracer.write(writer);
+        final String json = writer.toString();
+        final int kept = countOccurrences(json, "\"ph\":\"X\"");
+
+        assertEquals(spans, tracer.getSpanCount());
+        assertTrue(kept < spans);
+        assertTrue(json, json.contains("\"dropped\":" + (spans - kept)));
+    }
+
+}
@@ -0,0 +1,144 @@
+package gr.uoa.di.finer.service;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import gr.uoa.di.finer.abb.ResponseSource;
+import gr.uoa.di.finer.abb.StubAbbServer;
+import gr.uoa.di.finer.abb.SyntheticResponseSource;
+import gr.uoa.di.finer.net.RetryPolicy;
+
+/**
+ * Runs the network side of election verification on the JVM, against a {@link StubAbbServer}.
+ * <p>
+ * The harness performs the same steps as the verification task (total count, ballot download
+ * with retries, result post) with the real HTTP sender, response parser and retry policy.
+ * Only the data store and the cryptosystem are replaced, so the measured throughput is that
+ * of the network and parsing path.
+ * <p>
+ * Usage: {@code VerifyHarness <ballots> [latency ms] [bandwidth bytes/s] [disconnects]}
+ * or {@code ./gradlew verifyHarness -Pargs="..."}
+ *
+ * @author Vasilis Poulimenos
+ */
+public class VerifyHarness {
+
+    static final String ELECTION_ID = "harness";
+    private static final long BATCH_SIZE = 100;
+
+    /**
+     * The outcome of a harness run.
+     */
+    static final class Result {
+        final long ballotCount;
+        final String bundle;
+        final long elapsedNanos;
+        final TaskMetrics metrics;
+
+        Result(long ballotCount, String bundle, long elapsedNanos, TaskMetrics metrics) {
+            this.ballotCount = ballotCount;
+            this.bundle = bundle;
+            this.elapsedNanos = elapsedNanos;
+            this.metrics = metrics;
+        }
+
+        double getBallotsPerSecond() {
+            return ballotCount / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Verifies all the ballots the server provides and posts the result back.
+     *
+     * @param server the (started) server to verify against
+     * @param source the data that the server serves
+     * @param retryPolicy the retry policy for all the requests
+     * @return the outcome of the verification
+     */
+    static Result run(StubAbbServer server, ResponseSource source, RetryPolicy retryPolicy)
+            throws Exception {
+        final TaskMetrics metrics = new TaskMetrics("verify");
+        return run(new AbbClient(server.getBaseUrl(), ELECTION_ID, retryPolicy, metrics),
+                source, metrics);
+    }
+
+    /**
+     * Verifies all the ballots with the client specified and posts the result back.
+     *
+     * @param client the client of the server to verify against
+     * @param source the data that the server serves
+     * @param metrics the metrics of the client
+     * @return the outcome of the verification
+     */
+    static Result run(AbbClient client, ResponseSource source, TaskMetrics metrics)
+            throws Exception {
+        final MemoryDataStore store = new MemoryDataStore(ELECTION_ID, null, source);
+        final long startNanos = System.nanoTime();
+
+        final long totalCount = client.getTotalBallotCount();
+        final Cryptosystem cryptosystem =
+                new MeasuredCryptosystem(new ChecksumCryptosystem(), metrics);
+        final long parsedCount = client.readResponses(totalCount, cryptosystem, store,
+                BATCH_SIZE, new AbbClient.ProgressListener() {
+                    @Override
+                    public void onProgress(long count) {}
+                });
+        final String bundle = cryptosystem.computeBundle();
+        client.postResult(bundle);
+        metrics.setBallotCount(parsedCount);
+        metrics.finish();
+
+        return new Result(parsedCount, bundle, System.nanoTime() - startNanos, metrics);
+    }
+
+    /**
+     * Computes the bundle that a correct verification of the source should produce.
+     *
+     * @param source the data to verify
+     * @return the expected bundle
+     */
+    static String expectedBundle(SyntheticResponseSource source) {
+        final Cryptosystem cryptosystem = new ChecksumCryptosystem();
+        for (long i = 0, n = source.getTotalCount(); i < n; ++i) {
+            cryptosystem.add(source.getDecommitment(i));
+        }
+        return cryptosystem.computeBundle();
+    }
+
+    private static long parseArg(String[] args, int index, long defaultValue) {
+        return (args.length > index) ? Long.parseLong(args[index]) : defaultValue;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final long ballots = parseArg(args, 0, 1_000_000);
+        final long latencyMillis = parseArg(args, 1, 0);
+        final long bytesPerSecond = parseArg(args, 2, 0);
+        final int disconnects = (int) parseArg(args, 3, 0);
+
+        final SyntheticResponseSource source = new SyntheticResponseSource(ballots, 1);
+        final StubAbbServer server = new StubAbbServer(source);
+        server.setLatencyMillis(latencyMillis);
+        server.setBandwidthLimit(bytesPerSecond);
+        // Spread the disconnects over the whole response (lines are about 20-30 bytes long).
+        server.setDisconnects(ballots * 20 / (disconnects + 1), disconnects);
+        server.start();
+        try {
+            final Result result = run(server, source, new RetryPolicy());
+            final boolean correct = result.bundle.equals(expectedBundle(source));
+            System.out.println(String.format(Locale.US,
+                    "%,d ballots in %,d ms: %,.0f ballots/s (%d ballot requests, result %s)",
+                    result.ballotCount,
+                    TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos),
+                    result.getBallotsPerSecond(),
+                    server.getResponseRequestCount(),
+                    correct ? "correct" : "WRONG"));
+            System.out.println(result.metrics.toJson());
+            if (!correct) {
+                System.exit(1);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+}